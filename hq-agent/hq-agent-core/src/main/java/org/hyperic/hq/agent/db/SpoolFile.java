@@ -0,0 +1,362 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.agent.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.hq.agent.stats.AgentStatsCollector;
+
+/**
+ * A SpoolFile is a fixed capacity FIFO of fixed size binary records, stored
+ * as a ring in a single memory-mapped file.  Unlike the {@link DiskList} there
+ * is no per-record index; records are only ever appended at the tail and
+ * consumed from the head, so the only state besides the records themselves
+ * is the head and tail sequence numbers kept in the file header.
+ *
+ * Appends and removals are done in batches and touch the mapped pages
+ * directly, so no seek/write system calls are made per record.  When the
+ * ring is full the oldest records are overwritten.
+ *
+ * Sequence numbers only ever grow, so a consumer which remembers the
+ * sequence of the first record it peeked can tell how many of those
+ * records were overwritten before it got to remove them.
+ *
+ * The format of the file is as follows:
+ *
+ * [Header] (HEADER_LEN bytes)
+ *      int      - Magic number
+ *      int      - Format version
+ *      int      - Record size in bytes
+ *      long     - Capacity in records
+ *      long     - Sequence number of the first (oldest) record
+ *      long     - Sequence number of the next record to be written
+ *
+ * [Record] * capacity
+ *      data     - recordSize bytes containing the raw data
+ *
+ * The record area is mapped in segments, which are only mapped once the
+ * ring reaches them, so a large capacity does not cost address space or
+ * disk blocks until it is used.
+ */
+public class SpoolFile {
+    private static final Log log = LogFactory.getLog(SpoolFile.class.getName());
+
+    private static final int MAGIC = 0x48515350; // "HQSP"
+    private static final int VERSION = 1;
+    private static final int HEADER_LEN = 64;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_RECSIZE = 8;
+    private static final int OFF_CAPACITY = 12;
+    private static final int OFF_HEAD = 20;
+    private static final int OFF_TAIL = 28;
+    private static final int SEGMENT_SIZE = 4 * 1024 * 1024; // 4MB
+
+    private static final AgentStatsCollector statsCollector = AgentStatsCollector.getInstance();
+    private static final String SPOOL_FILE_ADD_TIME = AgentStatsCollector.SPOOL_FILE_ADD_TIME;
+    private static final String SPOOL_FILE_READ_TIME = AgentStatsCollector.SPOOL_FILE_READ_TIME;
+    private static final String SPOOL_FILE_REMOVE_TIME = AgentStatsCollector.SPOOL_FILE_REMOVE_TIME;
+    private static final String SPOOL_FILE_OVERWRITTEN = AgentStatsCollector.SPOOL_FILE_OVERWRITTEN;
+    static {
+        statsCollector.register(SPOOL_FILE_ADD_TIME);
+        statsCollector.register(SPOOL_FILE_READ_TIME);
+        statsCollector.register(SPOOL_FILE_REMOVE_TIME);
+        statsCollector.register(SPOOL_FILE_OVERWRITTEN);
+    }
+
+    private final String           fileName;
+    private final RandomAccessFile file;
+    private final FileChannel      channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final int              recordSize;
+    private final byte[]           padding;
+    private final int              recsPerSegment;
+    private final long             capacity;   // Max number of records
+    private long                   head;       // Seq of the first record
+    private long                   tail;       // Seq of the next record
+    private boolean                closed;
+
+    /**
+     * Open or create a SpoolFile.
+     *
+     * @param spoolFile  the location of the spool file
+     * @param recordSize the size of each record.  Records shorter than this
+     *                   are padded with zeros.
+     * @param maxLength  the maximum size of the file in bytes, which
+     *                   determines the capacity of the ring.  If an existing
+     *                   file was created with a different capacity, the
+     *                   capacity of the existing file is kept.
+     */
+    public SpoolFile(File spoolFile, int recordSize, long maxLength) throws IOException {
+        if (recordSize <= 0) {
+            throw new IllegalArgumentException("Record size must be positive");
+        }
+        this.fileName       = spoolFile.getName();
+        this.recordSize     = recordSize;
+        this.padding        = new byte[recordSize];
+        this.file           = new RandomAccessFile(spoolFile, "rw");
+        this.channel        = this.file.getChannel();
+        boolean isNew       = this.file.length() < HEADER_LEN;
+        this.header         = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LEN);
+
+        long cap = -1;
+        if (!isNew) {
+            if (header.getInt(OFF_MAGIC) != MAGIC || header.getInt(OFF_VERSION) != VERSION ||
+                header.getInt(OFF_RECSIZE) != recordSize) {
+                log.error("Spool file " + this.fileName + " has an incompatible format, " +
+                          "discarding its contents");
+                isNew = true;
+            } else {
+                cap = header.getLong(OFF_CAPACITY);
+                this.head = header.getLong(OFF_HEAD);
+                this.tail = header.getLong(OFF_TAIL);
+                if (cap <= 0 || this.head < 0 || this.tail < this.head || (this.tail - this.head) > cap) {
+                    log.error("Spool file " + this.fileName + " has a corrupt header, " +
+                              "discarding its contents");
+                    isNew = true;
+                }
+            }
+        }
+        if (isNew) {
+            cap = Math.max(1, (maxLength - HEADER_LEN) / recordSize);
+            this.head = 0;
+            this.tail = 0;
+            this.file.setLength(HEADER_LEN);
+            header.putInt(OFF_MAGIC, MAGIC);
+            header.putInt(OFF_VERSION, VERSION);
+            header.putInt(OFF_RECSIZE, recordSize);
+            header.putLong(OFF_CAPACITY, cap);
+            writePositions();
+        }
+        this.capacity = cap;
+        this.recsPerSegment = (int) Math.min(Math.max(1, SEGMENT_SIZE / recordSize), this.capacity);
+        long numSegs = (this.capacity + this.recsPerSegment - 1) / this.recsPerSegment;
+        if (numSegs > Integer.MAX_VALUE) {
+            throw new IOException("Spool file " + this.fileName + " capacity is too large");
+        }
+        this.segments = new MappedByteBuffer[(int) numSegs];
+        this.closed   = false;
+        if (log.isDebugEnabled()) {
+            log.debug("Opened spool file " + this.fileName + " capacity=" + this.capacity +
+                      " records, size=" + size() + " records");
+        }
+    }
+
+    private void writePositions() {
+        header.putLong(OFF_HEAD, this.head);
+        header.putLong(OFF_TAIL, this.tail);
+    }
+
+    private void assertOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Spool file " + this.fileName + " already closed");
+        }
+    }
+
+    private MappedByteBuffer getSegment(int seg) throws IOException {
+        MappedByteBuffer buf = this.segments[seg];
+        if (buf == null) {
+            long firstSlot = (long) seg * this.recsPerSegment;
+            long numSlots = Math.min(this.recsPerSegment, this.capacity - firstSlot);
+            long pos = HEADER_LEN + (firstSlot * this.recordSize);
+            buf = this.channel.map(FileChannel.MapMode.READ_WRITE, pos, numSlots * this.recordSize);
+            this.segments[seg] = buf;
+        }
+        return buf;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return the number of records currently in the spool
+     */
+    public synchronized long size() {
+        return this.tail - this.head;
+    }
+
+    /**
+     * @return the sequence number of the first (oldest) record in the spool
+     */
+    public synchronized long getHead() {
+        return this.head;
+    }
+
+    /**
+     * @return the maximum number of records the spool can hold
+     */
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    public int getRecordSize() {
+        return this.recordSize;
+    }
+
+    /**
+     * Append a batch of records to the end of the spool.  If the spool
+     * does not have room for all of them, the oldest records are dropped.
+     */
+    public synchronized void addAll(List<byte[]> records) throws IOException {
+        assertOpen();
+        if (records.isEmpty()) {
+            return;
+        }
+        final long start = now();
+        for (byte[] rec : records) {
+            if (rec.length > this.recordSize) {
+                throw new IOException("Data length(" + rec.length + ") exceeds " +
+                                      "maximum record length(" + this.recordSize + ")");
+            }
+        }
+        long overwritten = 0;
+        for (byte[] rec : records) {
+            long slot = this.tail % this.capacity;
+            MappedByteBuffer seg = getSegment((int) (slot / this.recsPerSegment));
+            seg.position((int) (slot % this.recsPerSegment) * this.recordSize);
+            seg.put(rec);
+            seg.put(this.padding, 0, this.recordSize - rec.length);
+            this.tail++;
+            if ((this.tail - this.head) > this.capacity) {
+                this.head++;
+                overwritten++;
+            }
+        }
+        writePositions();
+        if (overwritten > 0) {
+            log.error("Maximum size for spool file " + this.fileName + " reached (" +
+                      this.capacity + " records), dropped the " + overwritten + " oldest records");
+            statsCollector.addStat(overwritten, SPOOL_FILE_OVERWRITTEN);
+        }
+        statsCollector.addStat(now() - start, SPOOL_FILE_ADD_TIME);
+    }
+
+    /**
+     * Read up to max records from the head of the spool without removing
+     * them.  Use {@link #remove(long, long)} to consume them once they have
+     * been processed.
+     *
+     * @return a list of records, each recordSize bytes long, oldest first
+     */
+    public synchronized List<byte[]> peek(int max) throws IOException {
+        assertOpen();
+        final long start = now();
+        int num = (int) Math.min(max, this.tail - this.head);
+        List<byte[]> rtn = new ArrayList<byte[]>(num);
+        long seq = this.head;
+        for (int n = 0; n < num; n++, seq++) {
+            long slot = seq % this.capacity;
+            MappedByteBuffer seg = getSegment((int) (slot / this.recsPerSegment));
+            seg.position((int) (slot % this.recsPerSegment) * this.recordSize);
+            byte[] rec = new byte[this.recordSize];
+            seg.get(rec);
+            rtn.add(rec);
+        }
+        statsCollector.addStat(now() - start, SPOOL_FILE_READ_TIME);
+        return rtn;
+    }
+
+    /**
+     * Remove up to num records from the head of the spool.
+     *
+     * @return the number of records removed
+     */
+    public synchronized long remove(long num) throws IOException {
+        return remove(this.head, num);
+    }
+
+    /**
+     * Remove the records with sequence numbers first to first + num - 1,
+     * as returned by a {@link #peek(int)} done when the head of the spool
+     * was first.  Records of that range which have since been overwritten
+     * are already gone, so only the ones still in the spool are removed.
+     * Only the header is forced to the storage device.
+     *
+     * @return the number of records removed
+     */
+    public synchronized long remove(long first, long num) throws IOException {
+        assertOpen();
+        if (first > this.head) {
+            throw new IllegalArgumentException("Sequence " + first + " is past the head (" +
+                                               this.head + ") of spool file " + this.fileName);
+        }
+        final long start = now();
+        long rtn = Math.max(0, Math.min(first + num, this.tail) - this.head);
+        if (rtn > 0) {
+            this.head += rtn;
+            writePositions();
+            this.header.force();
+        }
+        statsCollector.addStat(now() - start, SPOOL_FILE_REMOVE_TIME);
+        return rtn;
+    }
+
+    /**
+     * Delete all the records from the spool.
+     */
+    public synchronized void clear() throws IOException {
+        assertOpen();
+        this.head = this.tail;
+        writePositions();
+    }
+
+    /**
+     * Force any changes to the spool to the storage device.
+     */
+    public synchronized void flush() throws IOException {
+        assertOpen();
+        for (MappedByteBuffer seg : this.segments) {
+            if (seg != null) {
+                seg.force();
+            }
+        }
+        this.header.force();
+    }
+
+    /**
+     * Close the SpoolFile.  All subsequent methods will
+     * result in an IOException being thrown.
+     */
+    public synchronized void close() throws IOException {
+        assertOpen();
+        try {
+            flush();
+        } finally {
+            this.closed = true;
+            this.file.close();
+        }
+    }
+}
@@ -61,6 +61,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.agent.AgentKeystoreConfig;
 import org.hyperic.hq.agent.db.DiskList;
+import org.hyperic.hq.agent.db.SpoolFile;
 import org.hyperic.hq.agent.stats.AgentStatsCollector;
 import org.hyperic.hq.common.SystemException;
 import org.hyperic.util.file.FileUtil;
@@ -69,7 +70,7 @@ import org.hyperic.util.security.KeystoreManager;
 import org.hyperic.util.security.SecurityUtil;
 import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
 
-public class AgentDListProvider implements AgentStorageProvider {
+public class AgentDListProvider implements AgentStorageProvider, AgentSpoolStorage {
     private static final Log log = LogFactory.getLog(AgentDListProvider.class);
     private static final int RECSIZE  = 4000;
     private static final int OLD_RECSIZE = 1024;
@@ -81,6 +82,7 @@ public class AgentDListProvider implements AgentStorageProvider {
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
     private HashMap<EncVal, EncVal>  keyVals;
     private HashMap<String, DiskList>  lists;
+    private HashMap<String, SpoolFile> spools;
     private HashMap<String, ListInfo> overloads;
     private File writeDir;
     private File keyValFile;
@@ -120,7 +122,8 @@ public class AgentDListProvider implements AgentStorageProvider {
      * @return A string describing the functionality of the object.
      */
     public String getDescription(){
-        return "Agent D-list provider.  Data is written to data/idx files for lists, and a single file for key/values";
+        return "Agent D-list provider.  Data is written to data/idx files for lists, spool files for spools, " +
+               "and a single file for key/values";
     }
 
     private DiskList intrCreateList(String name, int recSize) throws IOException {
@@ -266,6 +269,7 @@ public class AgentDListProvider implements AgentStorageProvider {
         if (shutdown.get() && !toShutdown) {
             return;
         }
+        flushSpools();
         final long start = System.currentTimeMillis();
         BufferedOutputStream bOs = null;
         FileOutputStream fOs = null;
@@ -359,6 +363,7 @@ public class AgentDListProvider implements AgentStorageProvider {
 
         keyVals = new HashMap<EncVal, EncVal>();
         lists = new HashMap<String, DiskList>();
+        spools = new HashMap<String, SpoolFile>();
         overloads = new HashMap<String, ListInfo>();
         String dir = st.nextToken();
         this.writeDir = new File(dir);
@@ -612,7 +617,15 @@ public class AgentDListProvider implements AgentStorageProvider {
                 log.error("Unable to dispose of disk list '" + entry.getKey() + "'", exc);
             }
         }
-
+        synchronized (spools) {
+            for (final Entry<String, SpoolFile> entry : spools.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch(Exception exc){
+                    log.error("Unable to dispose of spool '" + entry.getKey() + "'", exc);
+                }
+            }
+        }
     }
 
     /*** LIST FUNCTIONALITY ***/
@@ -710,6 +723,110 @@ public class AgentDListProvider implements AgentStorageProvider {
         return dList;
     }
 
+    /*** SPOOL FUNCTIONALITY ***/
+
+    public void createSpool(String spoolName, int recSize) throws AgentStorageException {
+        long _maxSize = maxSize;
+        ListInfo info = overloads.get(spoolName);
+        if (info != null) {
+            _maxSize = info.maxSize;
+        }
+        synchronized (spools) {
+            if (spools.containsKey(spoolName)) {
+                return;
+            }
+            try {
+                File file = new File(this.writeDir, spoolName + ".spool");
+                spools.put(spoolName, new SpoolFile(file, recSize, _maxSize));
+            } catch (IOException e) {
+                AgentStorageException toThrow = new AgentStorageException("Unable to create spool: " +  e);
+                toThrow.initCause(e);
+                throw toThrow;
+            }
+        }
+    }
+
+    private SpoolFile getSpool(String spoolName) throws AgentStorageException {
+        synchronized (spools) {
+            SpoolFile spool = spools.get(spoolName);
+            if (spool == null) {
+                throw new AgentStorageException("Spool '" + spoolName + "' has not been created");
+            }
+            return spool;
+        }
+    }
+
+    public void addToSpool(String spoolName, List<byte[]> records) throws AgentStorageException {
+        if (shutdown.get()) {
+            return;
+        }
+        try {
+            getSpool(spoolName).addAll(records);
+        } catch (IOException exc) {
+            log.error("Error adding to spool '" + spoolName + "'", exc);
+            AgentStorageException toThrow = new AgentStorageException("Error adding data to spool: " + exc);
+            toThrow.initCause(exc);
+            throw toThrow;
+        }
+    }
+
+    public Batch peekSpool(String spoolName, int max) throws AgentStorageException {
+        try {
+            SpoolFile spool = getSpool(spoolName);
+            synchronized (spool) {
+                return new Batch(spool.getHead(), spool.peek(max));
+            }
+        } catch (IOException exc) {
+            AgentStorageException toThrow = new AgentStorageException("Error reading data from spool: " + exc);
+            toThrow.initCause(exc);
+            throw toThrow;
+        }
+    }
+
+    public long removeFromSpool(String spoolName, long first, int num) throws AgentStorageException {
+        if (shutdown.get()) {
+            return 0;
+        }
+        try {
+            return getSpool(spoolName).remove(first, num);
+        } catch (IOException exc) {
+            log.error("Error deleting from spool '" + spoolName + "'", exc);
+            AgentStorageException toThrow = new AgentStorageException("Error deleting data from spool: " + exc);
+            toThrow.initCause(exc);
+            throw toThrow;
+        }
+    }
+
+    public long getSpoolSize(String spoolName) {
+        synchronized (spools) {
+            SpoolFile spool = spools.get(spoolName);
+            return (spool == null) ? 0 : spool.size();
+        }
+    }
+
+    public void deleteSpool(String spoolName) {
+        if (shutdown.get()) {
+            return;
+        }
+        try {
+            getSpool(spoolName).clear();
+        } catch (Exception exc) {
+            log.error("Error deleting all records from spool '" + spoolName + "'", exc);
+        }
+    }
+
+    private void flushSpools() {
+        synchronized (spools) {
+            for (final Entry<String, SpoolFile> entry : spools.entrySet()) {
+                try {
+                    entry.getValue().flush();
+                } catch (IOException exc) {
+                    log.error("Error flushing spool '" + entry.getKey() + "'", exc);
+                }
+            }
+        }
+    }
+
     private static class ListInfo {
         long      maxSize;
         long      chkSize;
@@ -44,6 +44,10 @@ public class AgentStatsCollector extends AbstractStatsCollector {
     public static final String SCHEDULE_THREAD_METRICS_COLLECTED_TIME = "SCHEDULE_THREAD_METRICS_COLLECTED_TIME";
     public static final String SCHEDULE_THREAD_METRIC_TASKS_SUBMITTED = "SCHEDULE_THREAD_METRIC_TASKS_SUBMITTED";
     public static final String SCHEDULE_THREAD_METRIC_COLLECT_FAILED  = "SCHEDULE_THREAD_METRIC_COLLECT_FAILED";
+    public static final String SCHEDULE_THREAD_METRICS_LATE = "SCHEDULE_THREAD_METRICS_LATE";
+    public static final String SCHEDULE_THREAD_LANE_LATENCY_P50 = "SCHEDULE_THREAD_LANE_LATENCY_P50";
+    public static final String SCHEDULE_THREAD_LANE_LATENCY_P99 = "SCHEDULE_THREAD_LANE_LATENCY_P99";
+    public static final String SCHEDULE_THREAD_SLOWEST_LANE_P99 = "SCHEDULE_THREAD_SLOWEST_LANE_P99";
     public static final String COLLECTOR_THREAD_METRIC_COLLECTED_TIME = "COLLECTOR_THREAD_METRIC_COLLECTED_TIME";
     public static final String SENDER_THREAD_SEND_NUM_METRICS = "SENDER_THREAD_NUM_SEND_METRICS";
     public static final String SENDER_THREAD_SEND_METRICS_TIME = "SENDER_THREAD_SEND_METRICS_TIME";
@@ -52,6 +56,10 @@ public class AgentStatsCollector extends AbstractStatsCollector {
     public static final String DISK_LIST_ADD_TO_LIST_TIME = "DISK_LIST_ADD_TO_LIST_TIME";
     public static final String DISK_LIST_DELETE_ALL_RECORDS_TIME = "DISK_LIST_DELETE_ALL_RECORDS_TIME";
     public static final String DISK_LIST_KEYVALS_FLUSH_TIME = "DISK_LIST_KEYVALS_FLUSH_TIME";
+    public static final String SPOOL_FILE_ADD_TIME = "SPOOL_FILE_ADD_TIME";
+    public static final String SPOOL_FILE_READ_TIME = "SPOOL_FILE_READ_TIME";
+    public static final String SPOOL_FILE_REMOVE_TIME = "SPOOL_FILE_REMOVE_TIME";
+    public static final String SPOOL_FILE_OVERWRITTEN = "SPOOL_FILE_OVERWRITTEN";
 
     private AgentStatsCollector() {
         super(getMBeanServer());
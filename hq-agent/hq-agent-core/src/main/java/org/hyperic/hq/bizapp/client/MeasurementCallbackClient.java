@@ -50,6 +50,18 @@ public class MeasurementCallbackClient
      */
     public long measurementSendReport(MeasurementReport report)
         throws AgentCallbackClientException
+    {
+        return this.measurementSendReport(report, false);
+    }
+
+    /**
+     * Returns the current server time
+     *
+     * @param packed send the data points in the compact encoding, see
+     *        {@link MeasurementSendReport_args#setReport(MeasurementReport, boolean)}
+     */
+    public long measurementSendReport(MeasurementReport report, boolean packed)
+        throws AgentCallbackClientException
     {
         MeasurementSendReport_args args;
         MeasurementSendReport_result res;
@@ -57,7 +69,7 @@ public class MeasurementCallbackClient
 
         provider = this.getProvider();
         args = new MeasurementSendReport_args();
-        args.setReport(report);
+        args.setReport(report, packed);
 
         res = (MeasurementSendReport_result)
             this.invokeLatherCall(provider, 
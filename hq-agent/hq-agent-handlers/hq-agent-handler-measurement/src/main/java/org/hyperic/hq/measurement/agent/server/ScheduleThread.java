@@ -31,6 +31,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -38,8 +39,7 @@ import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -47,6 +47,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
@@ -70,6 +71,7 @@ import org.hyperic.hq.product.MetricUnreachableException;
 import org.hyperic.hq.product.MetricValue;
 import org.hyperic.hq.product.PluginException;
 import org.hyperic.hq.product.PluginNotFoundException;
+import org.hyperic.hq.stats.StatsHistogram;
 import org.hyperic.hq.util.properties.PropertiesUtil;
 import org.hyperic.util.TimeUtil;
 import org.hyperic.util.collection.IntHashMap;
@@ -78,20 +80,33 @@ import org.hyperic.util.schedule.Schedule;
 import org.hyperic.util.schedule.ScheduleException;
 import org.hyperic.util.schedule.ScheduledItem;
 import org.hyperic.util.schedule.UnscheduledItemException;
+import org.hyperic.util.stats.StatCollector;
+import org.hyperic.util.stats.StatUnreachableException;
 
 /**
  * The schedule thread which maintains the schedule, and dispatches on them.
  * After data is retrieved, it is sent to the SenderThread which handles
  * depositing the results on disk, and sending them to the bizapp.
+ *
+ * Collections are run on one thread pool per plugin, but each resource has
+ * its own lane in that pool: the metrics of a resource are collected one at
+ * a time, so a slow or hung target holds up at most one thread and only its
+ * own metrics.  Lanes with availability metrics waiting are served first.
+ * A collection which is still waiting in its lane when the next one for the
+ * same metric comes due is not queued twice, the waiting one keeps its place
+ * so that every metric of a busy resource gets its turn.  The pools are
+ * resized to the measured collection latency.
  */
 
 public class ScheduleThread  extends AgentMonitorSimple implements Runnable, AgentDiagnosticObject {
     private static final String SCHEDULE_THREAD_METRICS_COLLECTED_TIME = AgentStatsCollector.SCHEDULE_THREAD_METRICS_COLLECTED_TIME;
     private static final String SCHEDULE_THREAD_METRIC_TASKS_SUBMITTED = AgentStatsCollector.SCHEDULE_THREAD_METRIC_TASKS_SUBMITTED;
     private static final String SCHEDULE_THREAD_METRIC_COLLECT_FAILED  = AgentStatsCollector.SCHEDULE_THREAD_METRIC_COLLECT_FAILED;
+    private static final String SCHEDULE_THREAD_METRICS_LATE = AgentStatsCollector.SCHEDULE_THREAD_METRICS_LATE;
 
     // Agent properties configuration
     static final String PROP_POOLSIZE = "scheduleThread.poolsize."; // e.g. scheduleThread.poolsize.system=10
+    static final String PROP_MAX_POOLSIZE = "scheduleThread.maxpoolsize."; // e.g. scheduleThread.maxpoolsize.system=20
     static final String PROP_FETCH_LOG_TIMEOUT = "scheduleThread.fetchLogTimeout";
     static final String PROP_CANCEL_TIMEOUT = "scheduleThread.cancelTimeout";
     static final String PROP_QUEUE_SIZE = "scheduleThread.queuesize.";
@@ -106,6 +121,9 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
     private static final long FETCH_TIME  = 2000; // 2 seconds.
     private static final long CANCEL_TIME = 5000; // 5 seconds.
     private static final int  EXECUTOR_QUEUE_SIZE = 10000;
+    private static final int  MAX_POOL_SIZE = 8;
+    // How often the pools are resized and the latency histograms rolled
+    private static final long ADAPT_PERIOD = 10000;
 
     private long logFetchTimeout = FETCH_TIME;
     private long cancelTimeout = CANCEL_TIME;
@@ -122,15 +140,16 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
     private final HashMap<String,String> errors = new HashMap<String,String>();
     private final Properties agentConfig; // agent.properties
 
-    // Map of Executors, one per plugin
-    private final HashMap<String,ThreadPoolExecutor> executors = new HashMap<String,ThreadPoolExecutor>();
-    // Map of asynchronous MetricTasks pending confirmation
-    private final HashMap<Future<?>,MetricTask> metricCollections = new HashMap<Future<?>,MetricTask>();
+    // Map of thread pools, one per plugin
+    private final HashMap<String,PluginPool> executors = new HashMap<String,PluginPool>();
+    // MetricTasks currently being collected
+    private final Set<MetricTask> metricCollections = new HashSet<MetricTask>();
     // The executor confirming metric collections, cancelling tasks that exceed
     // our timeouts.
     private final ScheduledExecutorService metricVerificationService;
     private final ScheduledFuture<?> metricVerificationTask;
     private final ScheduledFuture<?> metricLoggingTask;
+    private final ScheduledFuture<?> poolAdaptTask;
     
     private final MeasurementValueGetter manager;
     private final Sender sender;  // Guy handling the results
@@ -148,12 +167,17 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
     private final Random rand = new Random();
     private final int offset;
     private final Map<AppdefEntityID, DiagInfo> diagInfo = new HashMap<AppdefEntityID, DiagInfo>();
+    // collection latency over all lanes, rolled every ADAPT_PERIOD
+    private final StatsHistogram collectionLatency = new StatsHistogram();
+    private volatile long slowestLaneP99 = 0;
 
     ScheduleThread(Sender sender, MeasurementValueGetter manager, Properties config) throws AgentStartException {
         this.statsCollector = AgentStatsCollector.getInstance();
         this.statsCollector.register(SCHEDULE_THREAD_METRIC_COLLECT_FAILED);
         this.statsCollector.register(SCHEDULE_THREAD_METRIC_TASKS_SUBMITTED);
         this.statsCollector.register(SCHEDULE_THREAD_METRICS_COLLECTED_TIME);
+        this.statsCollector.register(SCHEDULE_THREAD_METRICS_LATE);
+        registerLatencyStats();
         this.agentConfig = config;
         this.manager = manager;
         this.sender = sender;
@@ -193,6 +217,9 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
                                                                                TimeUnit.MILLISECONDS);
         metricLoggingTask = metricVerificationService.scheduleAtFixedRate(new MetricLoggingTask(),
                                                                           1, 600, TimeUnit.SECONDS);
+        poolAdaptTask = metricVerificationService.scheduleAtFixedRate(new PoolAdaptTask(),
+                                                                      ADAPT_PERIOD, ADAPT_PERIOD,
+                                                                      TimeUnit.MILLISECONDS);
         AgentDiagnostics.getInstance().addDiagnostic(this);
 
         // by default we the deduction feature is on
@@ -207,25 +234,26 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
      */
     private class MetricLoggingTask implements Runnable {
         public void run() {
-            for (String plugin : executors.keySet()) {
-                ThreadPoolExecutor executor = executors.get(plugin);
+            for (PluginPool pool : getPools().values()) {
+                ThreadPoolExecutor executor = pool.executor;
                 if (log.isDebugEnabled()) {
-                    log.debug("Plugin=" + plugin + ", " +
+                    log.debug("Plugin=" + pool.plugin + ", " +
                               "CompletedTaskCount=" + executor.getCompletedTaskCount() + ", " +
                               "ActiveCount=" + executor.getActiveCount() + ", " +
                               "TaskCount=" + executor.getTaskCount() + ", " +
-                              "PoolSize=" + executor.getPoolSize());
+                              "PoolSize=" + executor.getPoolSize() + ", " +
+                              "Pending=" + pool.pending.get());
                 }
             }
         }
     }
 
     /**
-     * The MetricVerificationTask iterates over the list of FutureTasks that
-     * have been submitted for execution.  Each task is checked for completion
-     * and then removed.  For tasks that do not complete within the timeout
-     * are cancelled, which will attempt to free up the executor running the
-     * task.
+     * The MetricVerificationTask iterates over the MetricTasks that are being
+     * collected.  Tasks that do not complete within the timeout, or are still
+     * running at their deadline, are cancelled by interrupting the thread
+     * running them.  The task itself is removed by
+     * its lane once the collection returns.
      * NOTE: This will only work if the hung task is in an interrupt-able state
      *       i.e. sleep() or wait()
      */
@@ -236,46 +264,300 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
                 if (isDebugEnabled && (metricCollections.size() > 0)) {
                     log.debug(metricCollections.size() + " metrics to validate.");
                 }
-                for (Iterator<Future<?>> i = metricCollections.keySet().iterator(); i.hasNext();) {
-                    Future<?> t = i.next();
-                    MetricTask mt = metricCollections.get(t);
-                    if (t.isDone()) {
-                        if (isDebugEnabled) {
-                            log.debug("Metric task '" + mt +
-                                   "' complete, duration: " +
-                                   mt.getExecutionDuration());
-                        }
-                        i.remove();
-                    } else {
-                        // Not complete, check for timeout
-                        if (mt.getExecutionDuration() > cancelTimeout) {
-                            boolean res = t.cancel(true);
-                            log.error("Metric '" + mt +
-                                       "' took too long to run (" + mt.getExecutionDuration() +
-                                       "ms), cancelled (result=" + res + ")");
-
-                            // If the metric is Availability, send a down data point in
-                            // case the metric cancellation fails.
-                            ParsedTemplate pt = getParsedTemplate(mt.meas);
-                            if (pt.metric.isAvail()) {
-                                MetricValue data = new MetricValue(MeasurementConstants.AVAIL_DOWN);
-                                sender.processData(mt.meas.getDsnID(), data,
-                                                   mt.meas.getDerivedID(), true);
-                            }
-                            // Task will be removed on next iteration
-                        }
+                final long now = System.currentTimeMillis();
+                for (MetricTask mt : metricCollections) {
+                    if (mt.cancelled || (mt.executeStartTime == 0) ||
+                        ((mt.getExecutionDuration() <= cancelTimeout) && (now < mt.deadline))) {
+                        continue;
+                    }
+                    boolean res = mt.cancel();
+                    log.error("Metric '" + mt +
+                               "' took too long to run (" + mt.getExecutionDuration() +
+                               "ms" + ((now < mt.deadline) ? "" : ", past its deadline") +
+                               "), cancelled (result=" + res + ")");
+
+                    // If the metric is Availability, send a down data point in
+                    // case the metric cancellation fails.
+                    ParsedTemplate pt = getParsedTemplate(mt.meas);
+                    if (pt.metric.isAvail()) {
+                        MetricValue data = new MetricValue(MeasurementConstants.AVAIL_DOWN);
+                        sender.processData(mt.meas.getDsnID(), data,
+                                           mt.meas.getDerivedID(), true);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Resizes each plugin's pool to the number of threads its collections kept
+     * busy during the last period, and rolls the lane latency histograms.
+     */
+    private class PoolAdaptTask implements Runnable {
+        public void run() {
+            for (PluginPool pool : getPools().values()) {
+                pool.adapt();
+            }
+            long slowest = 0;
+            for (ResourceSchedule rs : getSchedules()) {
+                for (CollectionLane lane : rs.getLanes()) {
+                    slowest = Math.max(slowest, lane.roll().getPercentile(0.99));
+                }
+            }
+            collectionLatency.roll();
+            slowestLaneP99 = slowest;
+        }
+    }
+
+    private void registerLatencyStats() {
+        statsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                return collectionLatency.getLastInterval().getPercentile(0.5);
+            }
+            public String getId() {
+                return AgentStatsCollector.SCHEDULE_THREAD_LANE_LATENCY_P50;
+            }
+        });
+        statsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                return collectionLatency.getLastInterval().getPercentile(0.99);
+            }
+            public String getId() {
+                return AgentStatsCollector.SCHEDULE_THREAD_LANE_LATENCY_P99;
+            }
+        });
+        statsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                return slowestLaneP99;
+            }
+            public String getId() {
+                return AgentStatsCollector.SCHEDULE_THREAD_SLOWEST_LANE_P99;
+            }
+        });
+    }
+
+    /**
+     * A plugin's thread pool.  The lanes waiting for a thread are ordered by
+     * {@link CollectionLane#compareTo(CollectionLane)}.
+     */
+    private class PluginPool {
+        private final String plugin;
+        private final ThreadPoolExecutor executor;
+        private final int minSize;
+        private final int maxSize;
+        private final int queueSize;
+        // number of collections waiting in this plugin's lanes
+        private final AtomicInteger pending = new AtomicInteger();
+        // collection time spent since the last adapt()
+        private final AtomicLong busyTime = new AtomicLong();
+        private long lastAdapt = System.currentTimeMillis();
+
+        private PluginPool(String plugin, int minSize, int maxSize, int queueSize) {
+            this.plugin = plugin;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.queueSize = queueSize;
+            this.executor = new ThreadPoolExecutor(minSize, maxSize, 60, TimeUnit.SECONDS,
+                                                   new PriorityBlockingQueue<Runnable>(),
+                                                   getFactory(plugin),
+                                                   new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        private void adapt() {
+            long now = System.currentTimeMillis();
+            long period = Math.max(1, now - lastAdapt);
+            lastAdapt = now;
+            // threads kept busy on average, plus one spare when work is waiting
+            int needed = (int) Math.ceil((double) busyTime.getAndSet(0) / period);
+            if (!executor.getQueue().isEmpty()) {
+                needed++;
+            }
+            int size = Math.max(minSize, Math.min(maxSize, needed));
+            if (size != executor.getCorePoolSize()) {
+                log.info("Resizing executor for plugin '" + plugin + "' from " +
+                         executor.getCorePoolSize() + " to " + size + " threads");
+                executor.setCorePoolSize(size);
+            }
+        }
+    }
+
+    /**
+     * The collections of one resource for one plugin.  The lane has at most
+     * one thread at a time; when a collection finishes the lane goes back in
+     * the pool's queue if there is more to do.
+     */
+    private class CollectionLane implements Runnable, Comparable<CollectionLane> {
+        private final AppdefEntityID id;
+        private final PluginPool pool;
+        private final LinkedList<MetricTask> avail = new LinkedList<MetricTask>();
+        private final LinkedList<MetricTask> other = new LinkedList<MetricTask>();
+        // a lane runs one collection at a time
+        private final StatsHistogram latency = new StatsHistogram(1);
+        private boolean queued = false;
+        // fixed while the lane sits in the pool's queue
+        private boolean queuedAvail;
+        private long queuedDeadline;
+
+        private CollectionLane(AppdefEntityID id, PluginPool pool) {
+            this.id = id;
+            this.pool = pool;
+        }
+
+        private void add(MetricTask task) {
+            synchronized (this) {
+                if (pool.pending.get() >= pool.queueSize) {
+                    throw new RejectedExecutionException();
+                }
+                LinkedList<MetricTask> tasks = task.avail ? avail : other;
+                if (isWaiting(tasks, task)) {
+                    skip(task);
+                    return;
+                }
+                tasks.add(task);
+                pool.pending.incrementAndGet();
+                if (queued) {
+                    return;
+                }
+                queue();
+            }
+            submit();
+        }
+
+        private void queue() {
+            queued = true;
+            queuedAvail = !avail.isEmpty();
+            queuedDeadline = (queuedAvail ? avail : other).getFirst().deadline;
+        }
+
+        private void submit() {
+            try {
+                pool.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                synchronized (this) {
+                    queued = false;
+                }
+            }
+        }
+
+        private boolean isWaiting(LinkedList<MetricTask> tasks, MetricTask task) {
+            final int derivedId = task.meas.getDerivedID();
+            for (MetricTask waiting : tasks) {
+                if (waiting.meas.getDerivedID() == derivedId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void skip(MetricTask task) {
+            statsCollector.addStat(1, SCHEDULE_THREAD_METRICS_LATE);
+            synchronized (statsLock) {
+                statNumMetricsFailed++;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Skipping metric '" + task + "' for " + id +
+                          ", its previous collection has not started yet");
+            }
+        }
+
+        private MetricTask poll() {
+            MetricTask rtn = avail.isEmpty() ? other.poll() : avail.poll();
+            if (rtn != null) {
+                pool.pending.decrementAndGet();
+            }
+            return rtn;
+        }
+
+        public void run() {
+            MetricTask task;
+            synchronized (this) {
+                task = poll();
+            }
+            if (task != null && !shouldDie.get()) {
+                runTask(task);
+            }
+            boolean more;
+            synchronized (this) {
+                more = !avail.isEmpty() || !other.isEmpty();
+                if (more) {
+                    queue();
+                } else {
+                    queued = false;
+                }
+            }
+            if (more) {
+                submit();
+            }
+        }
+
+        private void runTask(MetricTask task) {
+            task.runner = Thread.currentThread();
+            synchronized (metricCollections) {
+                metricCollections.add(task);
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (metricCollections) {
+                    metricCollections.remove(task);
+                }
+                task.runner = null;
+                // don't let a late cancel() interrupt the next collection
+                Thread.interrupted();
+            }
+            long duration = task.getExecutionDuration();
+            latency.record(duration);
+            collectionLatency.record(duration);
+            pool.busyTime.addAndGet(duration);
+        }
+
+        private StatsHistogram.Interval roll() {
+            return latency.roll();
+        }
+
+        private String getLatencySummary() {
+            StatsHistogram.Interval last = latency.getLastInterval();
+            return "count=" + last.getCount() +
+                   " p50=" + last.getPercentile(0.5) +
+                   " p99=" + last.getPercentile(0.99);
+        }
+
+        public int compareTo(CollectionLane o) {
+            if (queuedAvail != o.queuedAvail) {
+                return queuedAvail ? -1 : 1;
+            }
+            return (queuedDeadline < o.queuedDeadline) ? -1 :
+                   ((queuedDeadline == o.queuedDeadline) ? 0 : 1);
+        }
+    }
+
     private static class ResourceSchedule {
         private final Schedule       schedule = new Schedule();
         private AppdefEntityID id;
         private long           lastUnreachble = 0;
         private final List<ScheduledMeasurement> retry = new ArrayList<ScheduledMeasurement>();
         private final IntHashMap collected = new IntHashMap();
+        // plugin name -> lane
+        private final Map<String,CollectionLane> lanes = new HashMap<String,CollectionLane>();
+
+        private List<CollectionLane> getLanes() {
+            synchronized (lanes) {
+                return new ArrayList<CollectionLane>(lanes.values());
+            }
+        }
+    }
+
+    private List<ResourceSchedule> getSchedules() {
+        synchronized (schedules) {
+            return new ArrayList<ResourceSchedule>(schedules.values());
+        }
+    }
+
+    private Map<String,PluginPool> getPools() {
+        synchronized (executors) {
+            return new HashMap<String,PluginPool>(executors);
+        }
     }
 
     private ResourceSchedule getSchedule(ScheduledMeasurement meas) {
@@ -306,14 +588,14 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
      */
     void die(){
         shouldDie.set(true);
-        for (String s : executors.keySet()) {
-            ThreadPoolExecutor executor = executors.get(s);
-            List<Runnable> queuedMetrics = executor.shutdownNow();
-            log.info("Shut down executor service for plugin '" + s + "'" +
-                      " with " + queuedMetrics.size() + " queued collections");
+        for (PluginPool pool : getPools().values()) {
+            pool.executor.shutdownNow();
+            log.info("Shut down executor service for plugin '" + pool.plugin + "'" +
+                      " with " + pool.pending.get() + " queued collections");
         }
 
         metricLoggingTask.cancel(true);
+        poolAdaptTask.cancel(true);
         metricVerificationTask.cancel(true);
         List<Runnable> pending = metricVerificationService.shutdownNow();
         log.info("Shutdown metric verification task with " +
@@ -498,12 +780,34 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
     private class MetricTask implements Runnable {
         ResourceSchedule rs;
         ScheduledMeasurement meas;
-        long executeStartTime = 0;
-        long executeEndTime = 0;
+        final boolean avail;
+        // lanes with the earliest deadline are served first, and a collection
+        // still running at its deadline is cancelled
+        final long deadline;
+        volatile long executeStartTime = 0;
+        volatile long executeEndTime = 0;
+        volatile Thread runner;
+        volatile boolean cancelled = false;
 
         MetricTask(ResourceSchedule rs, ScheduledMeasurement meas) {
             this.rs = rs;
             this.meas = meas;
+            this.avail = MeasurementConstants.CAT_AVAILABILITY.equals(meas.getCategory());
+            this.deadline = System.currentTimeMillis() + meas.getInterval();
+        }
+
+        /**
+         * Interrupt the collection.
+         * @return false if the collection was not running
+         */
+        boolean cancel() {
+            cancelled = true;
+            Thread t = runner;
+            if (t == null) {
+                return false;
+            }
+            t.interrupt();
+            return true;
         }
 
         /**
@@ -729,6 +1033,45 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
         return 1;
     }
 
+    private int getMaxPoolSize(String plugin, int poolSize) {
+        String prop = PROP_MAX_POOLSIZE + plugin;
+        String sPoolSize = agentConfig.getProperty(prop);
+        if(sPoolSize != null){
+            try {
+                return Math.max(poolSize, Integer.parseInt(sPoolSize));
+            } catch(NumberFormatException exc){
+                log.error("Invalid setting for " + prop + " value=" +
+                           sPoolSize + " using defaults.");
+            }
+        }
+        return Math.max(poolSize, MAX_POOL_SIZE);
+    }
+
+    private CollectionLane getLane(ResourceSchedule rs, String plugin) {
+        PluginPool pool;
+        synchronized (executors) {
+            pool = executors.get(plugin);
+            if (pool == null) {
+                final int poolSize = getPoolSize(plugin);
+                final int maxPoolSize = getMaxPoolSize(plugin, poolSize);
+                final int queueSize = getQueueSize(plugin);
+                log.info("Creating executor for plugin '" + plugin +
+                          "' with a poolsize=" + poolSize + " maxpoolsize=" + maxPoolSize +
+                          " queuesize=" + queueSize);
+                pool = new PluginPool(plugin, poolSize, maxPoolSize, queueSize);
+                executors.put(plugin, pool);
+            }
+        }
+        synchronized (rs.lanes) {
+            CollectionLane lane = rs.lanes.get(plugin);
+            if (lane == null) {
+                lane = new CollectionLane(rs.id, pool);
+                rs.lanes.put(plugin, lane);
+            }
+            return lane;
+        }
+    }
+
     private void collect(ResourceSchedule rs, List<ScheduledMeasurement> items) {
         final boolean debug = log.isDebugEnabled();
         for (int i=0; (i<items.size()) && (!shouldDie.get()); i++) {
@@ -738,43 +1081,27 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
                 log.warn("template for meas id=" + meas.getDerivedID() + " is null");
                 continue;
             }
-            ThreadPoolExecutor executor;
             String plugin;
-            synchronized (executors) {
-                try {
-                    GenericPlugin p = manager.getPlugin(tmpl.plugin).getProductPlugin();
-                    plugin = p.getName();
-                } catch (PluginNotFoundException e) {
-                    if (debug) {
-                        log.debug("Could not find plugin name from template '" + tmpl.plugin +
-                                  "'. Associated plugin might not be initialized yet.");
-                    }
-                    continue;
-                }
-                executor = executors.get(plugin);
-                if (executor == null) {
-                    final int poolSize = getPoolSize(plugin);
-                    final int queueSize = getQueueSize(plugin);
-                    log.info("Creating executor for plugin '" + plugin +
-                              "' with a poolsize=" + poolSize + " queuesize=" + queueSize);
-                    final ThreadFactory factory = getFactory(plugin);
-                    executor = new ThreadPoolExecutor(poolSize, poolSize,
-                                                 60, TimeUnit.SECONDS,
-                                                 new LinkedBlockingQueue<Runnable>(queueSize), factory,
-                                                 new ThreadPoolExecutor.AbortPolicy());
-                    executors.put(plugin, executor);
+            try {
+                GenericPlugin p = manager.getPlugin(tmpl.plugin).getProductPlugin();
+                plugin = p.getName();
+            } catch (PluginNotFoundException e) {
+                if (debug) {
+                    log.debug("Could not find plugin name from template '" + tmpl.plugin +
+                              "'. Associated plugin might not be initialized yet.");
                 }
+                continue;
             }
+            CollectionLane lane = getLane(rs, plugin);
             MetricTask metricTask = new MetricTask(rs, meas);
             statsCollector.addStat(1, SCHEDULE_THREAD_METRIC_TASKS_SUBMITTED);
             try {
-                Future<?> task = executor.submit(metricTask);
-                synchronized (metricCollections) {
-                    metricCollections.put(task,metricTask);
-                }
+                lane.add(metricTask);
             } catch (RejectedExecutionException e) {
                 log.warn("Executor[" + plugin + "] rejected metric task " + metricTask);
-                statNumMetricsFailed++;
+                synchronized (statsLock) {
+                    statNumMetricsFailed++;
+                }
             }
         }
     }
@@ -984,6 +1311,14 @@ public class ScheduleThread  extends AgentMonitorSimple implements Runnable, Age
                 d.clear();
             }
         }
+        for (ResourceSchedule rs : getSchedules()) {
+            synchronized (rs.lanes) {
+                for (Entry<String, CollectionLane> entry : rs.lanes.entrySet()) {
+                    rtn.append(rs.id).append(":").append(entry.getKey()).append(" latency(")
+                       .append(entry.getValue().getLatencySummary()).append(")\n");
+                }
+            }
+        }
         return rtn.toString();
     }
     
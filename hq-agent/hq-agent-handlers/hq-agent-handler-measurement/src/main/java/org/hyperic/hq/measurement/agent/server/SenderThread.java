@@ -30,16 +30,19 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hyperic.hq.agent.server.AgentSpoolStorage;
 import org.hyperic.hq.agent.server.AgentStartException;
 import org.hyperic.hq.agent.server.AgentStorageException;
 import org.hyperic.hq.agent.server.AgentStorageProvider;
@@ -74,6 +77,10 @@ public class SenderThread
         "agent.maxBatchSize";
     private static final String PROP_METRICDEBUG  = 
         "agent.metricDebug";
+    private static final String PROP_BINARYSPOOL  = 
+        "agent.binarySpool";
+    private static final String PROP_PACKEDREPORTS  = 
+        "agent.packedReports";
 
     // The threshold for logging server offset issues in the agent log.
     // XXX: May need to revisit this, potentially alot of output for
@@ -82,6 +89,8 @@ public class SenderThread
     private static final long   MAX_SERVERDIFF = 3 * 60 * 1000;
 
     private static final int    PROP_RECSIZE  = 34; // 34 byte records.
+    // int derivedID, long timestamp, int dsnId, double value
+    private static final int    BINARY_RECSIZE = 4 + 8 + 4 + 8;
 
     private static final int    SEND_INTERVAL = 60000;
     private static final int    MAX_BATCHSIZE = 500;
@@ -97,8 +106,12 @@ public class SenderThread
     // This toggle will avoid displaying non-stop messages about server down 
     private          int                       metricDup = 0;
     private          int                       maxBatchSize = MAX_BATCHSIZE;
+    private final          boolean                   packedReports;
     private final          Set                       metricDebug;
     private final          MeasurementSchedule       schedule;
+    // non-null when records are spooled as raw binary records rather than
+    // as Base64 encoded list entries
+    private          AgentSpoolStorage         spool;
 
     // Current difference time between the server and agent in ns.
     // Update on each call to sendMeasurementReport().
@@ -184,6 +197,80 @@ public class SenderThread
         }
 
         this.log.info("Maximum metric batch size set to " +  this.maxBatchSize);
+
+        this.packedReports =
+            "true".equalsIgnoreCase(bootProps.getProperty(PROP_PACKEDREPORTS));
+        if (this.packedReports) {
+            this.log.info("Sending metric reports in the packed encoding");
+        }
+
+        if ("true".equalsIgnoreCase(bootProps.getProperty(PROP_BINARYSPOOL))) {
+            if (storage instanceof AgentSpoolStorage) {
+                setupBinarySpool((AgentSpoolStorage) storage);
+            } else {
+                this.log.warn(PROP_BINARYSPOOL + " is set but the storage provider " +
+                              storage.getClass().getName() + " does not support spools");
+            }
+        }
+    }
+
+    private void setupBinarySpool(AgentSpoolStorage spoolStorage)
+        throws AgentStartException
+    {
+        try {
+            spoolStorage.createSpool(MEASURENENT_LISTNAME, BINARY_RECSIZE);
+            spoolStorage.createSpool(AVAILABILITY_LISTNAME, BINARY_RECSIZE);
+        } catch (AgentStorageException e) {
+            throw new AgentStartException("Unable to create binary spool: " + e.getMessage());
+        }
+        this.spool = spoolStorage;
+        this.log.info("Spooling metrics as binary records");
+        // carry over anything left in the legacy lists so that switching
+        // the spool format does not lose backlogged data
+        migrateList(AVAILABILITY_LISTNAME);
+        migrateList(MEASURENENT_LISTNAME);
+    }
+
+    private void migrateList(String listName) {
+        List<byte[]> batch = new ArrayList<byte[]>();
+        int num = 0;
+        // number of list entries read, and how many of them are covered
+        // by the records already in the spool
+        int read = 0, moved = 0;
+        try {
+            for (Iterator<String> it=storage.getListIterator(listName); (it!=null) && it.hasNext(); ) {
+                read++;
+                try {
+                    batch.add(encodeBinaryRecord(decodeRecord(it.next())));
+                } catch (IOException exc) {
+                    this.log.error("Error accessing record -- deleting: " + exc, exc);
+                    continue;
+                }
+                if (batch.size() == this.maxBatchSize) {
+                    this.spool.addToSpool(listName, batch);
+                    num += batch.size();
+                    moved = read;
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                this.spool.addToSpool(listName, batch);
+                num += batch.size();
+            }
+            moved = read;
+        } catch (AgentStorageException exc) {
+            this.log.error("Unable to migrate records from " + listName + ": " + exc, exc);
+        }
+        if (moved < read) {
+            // keep what could not be moved in the list, it is migrated
+            // again on the next start
+            this.log.warn("Moved " + num + " records from " + listName + " to its binary spool, " +
+                          (read - moved) + " records were left in the list");
+            removeMeasurements(moved, listName);
+        } else if (read > 0) {
+            this.log.info("Moved " + num + " records from " + listName + " to its binary spool");
+            this.storage.deleteList(listName);
+        }
     }
 
     private MeasurementCallbackClient setupClient()
@@ -285,6 +372,24 @@ public class SenderThread
         return Base64.encode(bOs.toByteArray());
     }
 
+    private static Record decodeBinaryRecord(byte[] val) {
+        ByteBuffer buf = ByteBuffer.wrap(val);
+        int derivedID = buf.getInt();
+        long retTime  = buf.getLong();
+        int dsnID     = buf.getInt();
+        MetricValue measVal = new MetricValue(buf.getDouble(), retTime);
+        return new Record(dsnID, measVal, derivedID);
+    }
+
+    private static byte[] encodeBinaryRecord(Record record) {
+        ByteBuffer buf = ByteBuffer.allocate(BINARY_RECSIZE);
+        buf.putInt(record.derivedID);
+        buf.putLong(record.data.getTimestamp());
+        buf.putInt(record.dsnId);
+        buf.putDouble(record.data.getValue());
+        return buf.array();
+    }
+
     public void processData(int dsnId, MetricValue data, int derivedID, boolean isAvail){
         double val;
 
@@ -324,6 +429,10 @@ public class SenderThread
      * the storage provider, so it can be shipped to the server.
      */
     private void processTransitionQueue(){
+        if (this.spool != null) {
+            processTransitionQueueToSpool();
+            return;
+        }
     	String encodedRec;
     	synchronized(this.transitionQueue){
     		for (Record rec : this.transitionQueue) {
@@ -350,6 +459,67 @@ public class SenderThread
         }
     }
 
+    /**
+     * Same as {@link #processTransitionQueue()}, but appends the records to
+     * the binary spools in one batch per spool.
+     */
+    private void processTransitionQueueToSpool(){
+        List<byte[]> avails = new ArrayList<byte[]>();
+        List<byte[]> measurements = new ArrayList<byte[]>();
+        synchronized(this.transitionQueue){
+            for (Record rec : this.transitionQueue) {
+                if (rec.isAvail) {
+                    avails.add(encodeBinaryRecord(rec));
+                } else {
+                    measurements.add(encodeBinaryRecord(rec));
+                }
+            }
+            this.transitionQueue.clear();
+
+            try {
+                this.spool.addToSpool(AVAILABILITY_LISTNAME, avails);
+            } catch(Exception exc){
+                this.log.error("Unable to store data: " + exc, exc);
+            }
+            try {
+                this.spool.addToSpool(MEASURENENT_LISTNAME, measurements);
+            } catch(Exception exc){
+                this.log.error("Unable to store data: " + exc, exc);
+            }
+            try {
+                this.storage.flush();
+            } catch(Exception exc){
+                this.log.error("Unable to flush storage", exc);
+            }
+        }
+    }
+
+    /**
+     * Reads up to maxBatchSize records from the head of the binary spool
+     * into records, dropping duplicates.
+     *
+     * @return the batch read from the spool, including duplicates, since
+     *         those have to be removed as well.  null if the spool could
+     *         not be read
+     */
+    private AgentSpoolStorage.Batch readSpool(String listName, Set<Record> records) {
+        AgentSpoolStorage.Batch batch;
+        try {
+            batch = this.spool.peekSpool(listName, this.maxBatchSize);
+        } catch (AgentStorageException exc) {
+            this.log.error("Error reading spool " + listName + ": " + exc, exc);
+            return null;
+        }
+        final boolean debug = log.isDebugEnabled();
+        for (byte[] rec : batch.getRecords()) {
+            Record r = decodeBinaryRecord(rec);
+            if (!records.add(r) && debug) {
+                log.debug("Dropping duplicate entry for " + r);
+            }
+        }
+        return batch;
+    }
+
     /**
      * Send a batch of measurement points back to the server.  This
      * method sends at most maxBatchSize elements back.
@@ -364,6 +534,7 @@ public class SenderThread
         long batchStart = 0, batchEnd = 0, lastMetricTime = 0, serverTime = 0;
         boolean success;
         int numUsed, numDebuggedSent;
+        AgentSpoolStorage.Batch spooled = null;
 
         // Before sending the data off, make sure our transition queue is
         // empty
@@ -379,20 +550,25 @@ public class SenderThread
         Set<Record> records = new HashSet<Record>();
         // first we are going to ensure that all the data points that
         // we send over to the server are unique
-        for (Iterator<String> it=storage.getListIterator(listName); (it!=null) && it.hasNext() && (numUsed < maxBatchSize); numUsed++) {
-            try {
-                Record r = SenderThread.decodeRecord(it.next());
-                boolean didNotAlreadyExist = records.add(r); 
-                if (!didNotAlreadyExist) {
-                    // nuke the dup
-                    if (debug) {
-                        log.debug("Dropping duplicate entry for " + r);
+        if (this.spool != null) {
+            spooled = readSpool(listName, records);
+            numUsed = (spooled == null) ? 0 : spooled.getRecords().size();
+        } else {
+            for (Iterator<String> it=storage.getListIterator(listName); (it!=null) && it.hasNext() && (numUsed < maxBatchSize); numUsed++) {
+                try {
+                    Record r = SenderThread.decodeRecord(it.next());
+                    boolean didNotAlreadyExist = records.add(r); 
+                    if (!didNotAlreadyExist) {
+                        // nuke the dup
+                        if (debug) {
+                            log.debug("Dropping duplicate entry for " + r);
+                        }
+                        numUsed--;
                     }
-                    numUsed--;
+                } catch(IOException exc){
+                    this.log.error("Error accessing record -- deleting: " + exc, exc);
+                    continue;
                 }
-            } catch(IOException exc){
-                this.log.error("Error accessing record -- deleting: " + exc, exc);
-                continue;
             }
         }
 
@@ -435,7 +611,7 @@ public class SenderThread
             SRN[] srnList = this.schedule.getSRNsAsArray();
             if (srnList.length == 0) {
                 log.error("Agent does not have valid SRNs, but has metric data to send, removing measurements");
-                removeMeasurements(numUsed, listName);
+                removeMeasurements(numUsed, listName, spooled);
                 return null;
             }
             
@@ -454,7 +630,7 @@ public class SenderThread
             report.setSRNList(srnList);
             batchStart = now();
             try {
-                serverTime = this.client.measurementSendReport(report);
+                serverTime = this.client.measurementSendReport(report, this.packedReports);
             } catch (IllegalArgumentException e) {
                 throw new SystemException("error sending report: " + e + ", report=" + report, e);
             }
@@ -508,7 +684,7 @@ public class SenderThread
         }
         
         if(success){
-            removeMeasurements(numUsed, listName);
+            removeMeasurements(numUsed, listName, spooled);
 
             this.stat_numBatchesSent++;
             this.stat_totBatchSendTime += (batchEnd - batchStart);
@@ -527,6 +703,35 @@ public class SenderThread
         return System.currentTimeMillis();
     }
 
+    /**
+     * Removes the measurements of a sent batch from the list, or from the
+     * binary spool if the batch was read from it.
+     *
+     * @return The number of measurements removed from the metric storage.
+     *
+     * @param num The maximum number of datapoints to remove.
+     * @param spooled The batch read from the binary spool, null if the
+     *                datapoints were read from the list.
+     */
+    private int removeMeasurements(int num, String listName, AgentSpoolStorage.Batch spooled) {
+        if (spooled == null) {
+            return removeMeasurements(num, listName);
+        }
+        long removed;
+        try {
+            removed = this.spool.removeFromSpool(listName, spooled.getFirst(), num);
+        } catch (AgentStorageException exc) {
+            this.log.error("Failed to remove " + num + " records from " + listName, exc);
+            return 0;
+        }
+        if (removed != num) {
+            // the rest were overwritten while the batch was being sent
+            this.log.warn("Removed " + removed + " of the " + num + " records sent from " + listName +
+                          ", the others were already dropped from the spool");
+        }
+        return (int) removed;
+    }
+
     /**
      * @return The number of measurements removed from the metric storage.
      *
@@ -26,7 +26,9 @@
 
 package org.hyperic.hq.measurement.agent.server;
 
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -50,15 +52,20 @@ public class ScheduleThreadTest extends TestCase {
     private static final String DSN_PLATFORM_AVAIL = "system.avail:Type=Platform:Availability";
 
     private static final String DSN_HANG_COLLECTION = "hang:Type=Hang:Hang";
+    private static final String DSN_HANG_PLUGIN_LOAD = "hang:Type=Hang:Load";
+    private static final String DSN_SLOW_COLLECTION = "slow:Type=Slow:Slow";
 
     private int derivedId = 0;
     private int dsnId = 0;
     private int entityId = 0;
     private ScheduledMeasurement createMeasurement(String dsn, long interval) {
-        return new ScheduledMeasurement(dsn, interval, ++derivedId, ++dsnId,
-                                        new AppdefEntityID(1, ++entityId),
-                                        MeasurementConstants.CAT_PERFORMANCE);
+        return createMeasurement(dsn, interval, new AppdefEntityID(1, ++entityId));
+    }
 
+    private ScheduledMeasurement createMeasurement(String dsn, long interval,
+                                                   AppdefEntityID id) {
+        return new ScheduledMeasurement(dsn, interval, ++derivedId, ++dsnId, id,
+                                        MeasurementConstants.CAT_PERFORMANCE);
     }
     
     @Before
@@ -239,6 +246,37 @@ public class ScheduleThreadTest extends TestCase {
         }
     }
 
+    public void testHangCollectionCancelledAtDeadline() throws Exception {
+
+        Properties p = new Properties();
+        p.put(ScheduleThread.PROP_CANCEL_TIMEOUT, "30000");
+
+        ScheduleThread st = new ScheduleThread(new SimpleSender(), new SimpleValueGetter(), p);
+
+        st.scheduleMeasurement(createMeasurement(DSN_HANG_COLLECTION, 500));
+
+        Thread t = new Thread(st);
+        t.start();
+
+        try {
+            Thread.sleep(2500);
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+
+        // the hung collection only returns once it is cancelled
+        assertTrue("Collection not cancelled at its deadline", st.getMaxFetchTime() > 0);
+        assertTrue("Collection cancelled after the cancel timeout",
+                   st.getMaxFetchTime() < 30000);
+
+        st.die();
+        try {
+            t.join();
+        } catch (InterruptedException ie) {
+            fail("Thread should not be interrupted");
+        }
+    }
+
     public void testRejectedExecution() throws Exception {
 
         Properties p = new Properties();
@@ -274,12 +312,94 @@ public class ScheduleThreadTest extends TestCase {
 
     }
 
+    public void testSlowResourceCollectsAllMetrics() throws Exception {
+
+        RecordingSender sender = new RecordingSender();
+        ScheduleThread st = new ScheduleThread(sender, new SimpleValueGetter(),
+                                               new Properties());
+
+        // the lane of this resource needs 500ms to go through its metrics,
+        // ten times the collection interval
+        AppdefEntityID id = new AppdefEntityID(1, ++entityId);
+        for (int i = 0; i < 5; i++) {
+            st.scheduleMeasurement(createMeasurement(DSN_SLOW_COLLECTION + i, 50, id));
+        }
+
+        Thread t = new Thread(st);
+        t.start();
+
+        try {
+            Thread.sleep(1500);
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+
+        assertEquals("Wrong number of scheduled measurements",
+                     5.0, st.getNumMetricsScheduled());
+        assertEquals("Metrics waiting in the lane were not collected",
+                     5, sender.getCollected().size());
+
+        st.die();
+        try {
+            t.join();
+        } catch (InterruptedException ie) {
+            fail("Thread should not be interrupted");
+        }
+    }
+
+    public void testHungResourceHoldsOnlyItsLane() throws Exception {
+
+        Properties p = new Properties();
+        p.put(ScheduleThread.PROP_POOLSIZE + "hang", "2");
+
+        ScheduleThread st = new ScheduleThread(new SimpleSender(), new SimpleValueGetter(), p);
+
+        // both resources are collected by the same plugin
+        st.scheduleMeasurement(createMeasurement(DSN_HANG_COLLECTION, 20));
+        st.scheduleMeasurement(createMeasurement(DSN_HANG_PLUGIN_LOAD, 20));
+
+        Thread t = new Thread(st);
+        t.start();
+
+        try {
+            Thread.sleep(600);
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+
+        assertEquals("Wrong number of scheduled measurements",
+                     2.0, st.getNumMetricsScheduled());
+        assertTrue("Collection held up by another resource",
+                   st.getNumMetricsFetched() > 0);
+
+        st.die();
+        try {
+            t.join();
+        } catch (InterruptedException ie) {
+            fail("Thread should not be interrupted");
+        }
+    }
+
     public static class SimpleSender implements org.hyperic.hq.measurement.agent.server.Sender {
 
         public void processData(int dsnId, MetricValue data, int derivedID, boolean isAvail) {
         }
     }
 
+    public static class RecordingSender implements org.hyperic.hq.measurement.agent.server.Sender {
+
+        private final Set<Integer> collected = new HashSet<Integer>();
+
+        public synchronized void processData(int dsnId, MetricValue data, int derivedID,
+                                             boolean isAvail) {
+            collected.add(derivedID);
+        }
+
+        synchronized Set<Integer> getCollected() {
+            return new HashSet<Integer>(collected);
+        }
+    }
+
     public static class SimpleProductPlugin extends ProductPlugin {
 
         String _name;
@@ -323,6 +443,8 @@ public class ScheduleThreadTest extends TestCase {
             try {
                 if (metric.getAttributeName().equals("Hang")) {
                     Thread.sleep(60000); // Anything > test run time..
+                } else if (metric.getAttributeName().startsWith("Slow")) {
+                    Thread.sleep(100);
                 } else {
                     Thread.sleep(1);
                 }
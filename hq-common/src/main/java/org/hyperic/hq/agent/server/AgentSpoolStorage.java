@@ -0,0 +1,108 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.agent.server;
+
+import java.util.List;
+
+/**
+ * Optional extension of the {@link AgentStorageProvider} for storage
+ * providers which can spool fixed size binary records.  Spools are strict
+ * FIFOs:  records are appended in batches and consumed from the head, which
+ * lets the provider avoid the per-record encoding and index bookkeeping of
+ * the String based lists.
+ */
+public interface AgentSpoolStorage {
+
+    /**
+     * Records read from the head of a spool, along with the sequence number
+     * of the first of them.
+     */
+    public static class Batch {
+        private final long first;
+        private final List<byte[]> records;
+
+        public Batch(long first, List<byte[]> records) {
+            this.first = first;
+            this.records = records;
+        }
+
+        /**
+         * @return the sequence number of the first record of the batch
+         */
+        public long getFirst() {
+            return first;
+        }
+
+        public List<byte[]> getRecords() {
+            return records;
+        }
+    }
+
+    /**
+     * Create (or open an existing) spool.
+     *
+     * @param spoolName name of the spool
+     * @param recSize   size of each record in bytes
+     */
+    public void createSpool(String spoolName, int recSize)
+        throws AgentStorageException;
+
+    /**
+     * Append a batch of records to the end of a spool.
+     */
+    public void addToSpool(String spoolName, List<byte[]> records)
+        throws AgentStorageException;
+
+    /**
+     * Read up to max records from the head of a spool without consuming them.
+     *
+     * @return the records, oldest first.  An empty batch if the spool is empty
+     */
+    public Batch peekSpool(String spoolName, int max)
+        throws AgentStorageException;
+
+    /**
+     * Consume the records of a batch returned by {@link #peekSpool}.  If
+     * older records were overwritten since the batch was read, only the
+     * records of the batch still in the spool are removed.
+     *
+     * @param first the sequence number of the first record of the batch
+     * @param num   the number of records of the batch to consume
+     * @return the number of records removed
+     */
+    public long removeFromSpool(String spoolName, long first, int num)
+        throws AgentStorageException;
+
+    /**
+     * @return the number of records in the spool
+     */
+    public long getSpoolSize(String spoolName);
+
+    /**
+     * Delete all records from a spool.
+     */
+    public void deleteSpool(String spoolName);
+}
@@ -25,9 +25,10 @@
 
 package org.hyperic.hq.stats;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -35,6 +36,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
 import javax.management.MBeanException;
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
@@ -48,14 +50,16 @@ import org.hyperic.sigar.Sigar;
 import org.hyperic.sigar.SigarException;
 import org.hyperic.util.stats.StatCollector;
 import org.hyperic.util.stats.StatUnreachableException;
-import org.hyperic.util.stats.StatsObject;
 
 public abstract class AbstractStatsCollector {
 	private final Log log = LogFactory.getLog(AbstractStatsCollector.class);
 
     // using tree due to ordering capabilities
     private final Map<String, StatCollector> statKeys = new TreeMap<String, StatCollector>();
-	private final ConcurrentLinkedQueue<StatsObject> queue = new ConcurrentLinkedQueue<StatsObject>();
+    // one per stat registered by id, the values of those stats are recorded
+    // as they come rather than being sampled every interval
+    private final Map<String, StatsHistogram> histograms = new ConcurrentHashMap<String, StatsHistogram>();
+    private ObjectName histogramMBeanName;
     private final AtomicBoolean hasStarted = new AtomicBoolean(false);
     private Long pid;
     protected final Sigar sigar = new Sigar();
@@ -93,6 +97,69 @@ public abstract class AbstractStatsCollector {
     
     void setStarted(boolean started) {
         hasStarted.set(started);
+        if (started) {
+            registerHistogramMBean();
+        }
+    }
+
+    private void registerHistogramMBean() {
+        if (mBeanServer == null || histogramMBeanName != null) {
+            return;
+        }
+        try {
+            final ObjectName name =
+                new ObjectName("hyperic.jmx:type=Stats,name=" + getClass().getSimpleName());
+            mBeanServer.registerMBean(new StatsHistogramMBean(this), name);
+            histogramMBeanName = name;
+        } catch (JMException e) {
+            log.warn("Could not register the stats histograms: " + e, e);
+        }
+    }
+
+    /**
+     * @return the histogram of a stat registered by id, null if there is none
+     */
+    public StatsHistogram getHistogram(String statId) {
+        return histograms.get(statId);
+    }
+
+    /**
+     * @return the histograms of the stats registered by id, ordered by id
+     */
+    public Map<String, StatsHistogram> getHistograms() {
+        return new TreeMap<String, StatsHistogram>(histograms);
+    }
+
+    /**
+     * Closes the current interval of every histogram.
+     * @return the intervals closed, by stat id
+     */
+    Map<String, StatsHistogram.Interval> rollHistograms() {
+        final Map<String, StatsHistogram.Interval> rtn = new HashMap<String, StatsHistogram.Interval>();
+        for (Map.Entry<String, StatsHistogram> entry : histograms.entrySet()) {
+            rtn.put(entry.getKey(), entry.getValue().roll());
+        }
+        return rtn;
+    }
+
+    /**
+     * @return a line per stat registered by id with the count, p50, p99,
+     *         p999 and max of its last closed interval
+     */
+    public String getHistogramText() {
+        final StringBuilder rtn = new StringBuilder();
+        for (Map.Entry<String, StatsHistogram> entry : getHistograms().entrySet()) {
+            final StatsHistogram.Interval interval = entry.getValue().getLastInterval();
+            rtn.append(entry.getKey())
+               .append(" count=").append(interval.getCount())
+               .append(" p50=").append(interval.getPercentile(0.5))
+               .append(" p99=").append(interval.getPercentile(0.99))
+               .append(" p999=").append(interval.getPercentile(0.999))
+               .append(" max=").append(interval.getMax())
+               .append(" total=").append(entry.getValue().getTotalCount())
+               .append('\n');
+        }
+        return rtn.toString();
     }
 
 	public void register(final String statId) {
@@ -107,6 +174,7 @@ public abstract class AbstractStatsCollector {
             return;
         }
         statKeys.put(statId, null);
+        histograms.put(statId, new StatsHistogram());
     }
 
     public void register(final StatCollector stat) {
@@ -127,15 +195,11 @@ public abstract class AbstractStatsCollector {
     }
 
     public void addStat(final long value, final String id) {
-        if (!statKeys.containsKey(id)) {
+        final StatsHistogram histogram = histograms.get(id);
+        if (histogram == null) {
             return;
         }
-        final long now = System.currentTimeMillis();
-        // may want to look at pooling these objects to avoid creation overhead
-        final StatsObject stat = new StatsObject(value, id);
-        queue.add(stat);
-        final long total = System.currentTimeMillis() - now;
-        queue.add(new StatsObject(total, STATS_COLLECTOR));
+        histogram.record(value);
     }
 
     private final void registerInternalStats() {
@@ -302,16 +366,6 @@ public abstract class AbstractStatsCollector {
         return pid.longValue();
     }
     
-    public StatsObject generateMarker() {
-    	final StatsObject marker = new StatsObject(-1, null);
-    	queue.add(marker);
-    	return marker;
-    }
-
-    public StatsObject pollQueue() {
-    	return queue.poll();
-    }
-
     protected class StatSampler implements StatCollector {
         private final StatCollector stat;
         private final String id;
@@ -447,7 +501,15 @@ public abstract class AbstractStatsCollector {
     }
     
     public void destory() { 
-        this.queue.clear() ;
+        if (histogramMBeanName != null) {
+            try {
+                mBeanServer.unregisterMBean(histogramMBeanName);
+            } catch (JMException e) {
+                log.debug(e, e);
+            }
+            histogramMBeanName = null;
+        }
+        this.histograms.clear() ;
         this.statKeys.clear() ; 
     }//EOM 
 
@@ -34,11 +34,8 @@ import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
 import java.util.zip.GZIPOutputStream;
@@ -48,7 +45,6 @@ import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.measurement.MeasurementConstants;
 import org.hyperic.util.stats.StatCollector;
 import org.hyperic.util.stats.StatUnreachableException;
-import org.hyperic.util.stats.StatsObject;
 
 public abstract class AbstractStatsWriter {
 	private static final Log log = LogFactory.getLog(AbstractStatsWriter.class);
@@ -223,11 +219,13 @@ public abstract class AbstractStatsWriter {
     private class StatsWriter implements Runnable {
         public synchronized void run() {
             try {
-                Map<String, List<Number>> stats = getStatsByKey();
+                final long start = now();
+                Map<String, StatsHistogram.Interval> stats = statsCollector.rollHistograms();
                 StringBuilder buf = getCSVBuf(stats);
                 final FileWriter fw = getFileWriter();
                 fw.append(buf.append("\n").toString());
                 fw.flush();
+                statsCollector.addStat(now() - start, AbstractStatsCollector.STATS_COLLECTOR);
             } catch (Throwable e) {
                 log.warn(e.getMessage(), e);
             }
@@ -244,7 +242,7 @@ public abstract class AbstractStatsWriter {
             }
             return file;
         }
-        private final StringBuilder getCSVBuf(Map<String, List<Number>> stats) {
+        private final StringBuilder getCSVBuf(Map<String, StatsHistogram.Interval> stats) {
             final StringBuilder rtn = new StringBuilder();
             rtn.append(System.currentTimeMillis()).append(',');
             for (Map.Entry<String, StatCollector> entry : statsCollector.getStatKeys().entrySet()) {
@@ -262,13 +260,9 @@ public abstract class AbstractStatsWriter {
                         continue;
                     }
                 } else {
-                    List<Number> list = stats.get(key);
-                    long total = 0l;
-                    if (list != null) {
-                        for (Number val : list) {
-                            total += val.longValue();
-                        }
-                        rtn.append(total).append(',').append(list.size()).append(",");
+                    StatsHistogram.Interval interval = stats.get(key);
+                    if (interval != null && interval.getCount() > 0) {
+                        rtn.append(interval.getSum()).append(',').append(interval.getCount()).append(",");
                     } else {
                         rtn.append(',').append(',');
                     }
@@ -276,28 +270,6 @@ public abstract class AbstractStatsWriter {
             }
             return rtn;
         }
-        private Map<String, List<Number>> getStatsByKey() {
-            final Map<String, List<Number>> rtn = new HashMap<String, List<Number>>();
-            final StatsObject marker = statsCollector.generateMarker();
-            List<Number> tmp;
-            Object obj;
-            while (marker != (obj = statsCollector.pollQueue())) {
-                final StatsObject stat = (StatsObject) obj;
-                final String id = stat.getId();
-                // HHQ-5724 - this line should not be needed, but marker != (..) should do the trick
-                // id == null is the id of the marker.
-                if (id == null) {
-                    break;
-                }
-                final Long val = stat.getVal();
-                if (null == (tmp = rtn.get(id))) {
-                    tmp = new ArrayList<Number>();
-                    rtn.put(id, tmp);
-                }
-                tmp.add(new Long(val));
-            }
-            return rtn;
-        }
     }
 
     protected long now() {
@@ -0,0 +1,208 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2011], VMWare, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the values of a stat, usually latencies in milliseconds, in log
+ * scale buckets.  Values below 8 get a bucket each, above that every power
+ * of two is split in 8 buckets, so a percentile read from the buckets is
+ * within 12.5% of the actual value.  Values above 2^41 share the last
+ * bucket.
+ * <p>
+ * Recording does not lock or allocate.  The counts accumulate until
+ * {@link #roll()} closes the interval, the percentiles are read from the
+ * last closed interval.
+ */
+public class StatsHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private static final Interval EMPTY = new Interval(new long[0], 0, 0);
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final StripedCounter sum;
+    private final AtomicLong max = new AtomicLong();
+    private final StripedCounter totalCount;
+    private final StripedCounter totalSum;
+    private volatile Interval last = EMPTY;
+
+    public StatsHistogram() {
+        this(StripedCounter.DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes of the counters, see {@link StripedCounter}.  1 keeps
+     *        the histogram small where only one thread records at a time.
+     */
+    public StatsHistogram(int stripes) {
+        this.sum = new StripedCounter(stripes);
+        this.totalCount = new StripedCounter(stripes);
+        this.totalSum = new StripedCounter(stripes);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (value < 0) ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value counted in the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == NUM_BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket & (SUB_BUCKETS - 1);
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        totalCount.increment();
+        totalSum.add(value);
+        long curr;
+        while (value > (curr = max.get())) {
+            if (max.compareAndSet(curr, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes the current interval and starts a new one.
+     * @return the interval closed
+     */
+    public Interval roll() {
+        // only keep the buckets up to the highest one counted
+        long[] closed = null;
+        for (int i = NUM_BUCKETS - 1; i >= 0; i--) {
+            long count = counts.getAndSet(i, 0);
+            if ((closed == null) && (count != 0)) {
+                closed = new long[i + 1];
+            }
+            if (closed != null) {
+                closed[i] = count;
+            }
+        }
+        if (closed == null) {
+            closed = EMPTY.counts;
+        }
+        Interval rtn = new Interval(closed, sum.sumThenReset(), max.getAndSet(0));
+        last = rtn;
+        return rtn;
+    }
+
+    /**
+     * @return the last interval closed by {@link #roll()}
+     */
+    public Interval getLastInterval() {
+        return last;
+    }
+
+    /**
+     * @return the number of values recorded since the histogram was created
+     */
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return the sum of the values recorded since the histogram was created
+     */
+    public long getTotalSum() {
+        return totalSum.sum();
+    }
+
+    /**
+     * The counts of one interval of a histogram.
+     */
+    public static class Interval {
+        private final long[] counts;
+        private final long count, sum, max;
+
+        Interval(long[] counts, long sum, long max) {
+            long count = 0;
+            for (int i = 0; i < counts.length; i++) {
+                count += counts[i];
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param fraction e.g. 0.99
+         * @return the upper bound of the bucket holding the given fraction
+         *         of the values, capped by the largest value, 0 if there
+         *         are none
+         */
+        public long getPercentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
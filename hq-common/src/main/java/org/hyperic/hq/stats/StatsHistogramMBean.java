@@ -0,0 +1,128 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2011], VMWare, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the histograms of a stats collector, read from their last
+ * closed interval.  Each stat id has the attributes &lt;id&gt;_P50,
+ * &lt;id&gt;_P99, &lt;id&gt;_P999, &lt;id&gt;_MAX and &lt;id&gt;_COUNT,
+ * and the Text attribute has all of them in the format of
+ * {@link AbstractStatsCollector#getHistogramText()}.
+ */
+class StatsHistogramMBean implements DynamicMBean {
+    private static final String TEXT = "Text";
+    private static final String[] SUFFIXES = { "_P50", "_P99", "_P999", "_MAX", "_COUNT" };
+
+    private final AbstractStatsCollector statsCollector;
+
+    StatsHistogramMBean(AbstractStatsCollector statsCollector) {
+        this.statsCollector = statsCollector;
+    }
+
+    public Object getAttribute(String name) throws AttributeNotFoundException {
+        if (TEXT.equals(name)) {
+            return statsCollector.getHistogramText();
+        }
+        for (int i = 0; i < SUFFIXES.length; i++) {
+            if (!name.endsWith(SUFFIXES[i])) {
+                continue;
+            }
+            String id = name.substring(0, name.length() - SUFFIXES[i].length());
+            StatsHistogram histogram = statsCollector.getHistogram(id);
+            if (histogram == null) {
+                continue;
+            }
+            StatsHistogram.Interval interval = histogram.getLastInterval();
+            switch (i) {
+                case 0:
+                    return interval.getPercentile(0.5);
+                case 1:
+                    return interval.getPercentile(0.99);
+                case 2:
+                    return interval.getPercentile(0.999);
+                case 3:
+                    return interval.getMax();
+                default:
+                    return interval.getCount();
+            }
+        }
+        throw new AttributeNotFoundException(name);
+    }
+
+    public AttributeList getAttributes(String[] names) {
+        AttributeList rtn = new AttributeList();
+        for (int i = 0; i < names.length; i++) {
+            try {
+                rtn.add(new Attribute(names[i], getAttribute(names[i])));
+            } catch (AttributeNotFoundException e) {
+                // not included, as the spec asks
+            }
+        }
+        return rtn;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>();
+        attrs.add(new MBeanAttributeInfo(TEXT, String.class.getName(),
+            "p50, p99, p999 and max of every stat", true, false, false));
+        for (Map.Entry<String, StatsHistogram> entry : statsCollector.getHistograms().entrySet()) {
+            for (int i = 0; i < SUFFIXES.length; i++) {
+                attrs.add(new MBeanAttributeInfo(entry.getKey() + SUFFIXES[i], Long.class.getName(),
+                    null, true, false, false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Stats histograms",
+            attrs.toArray(new MBeanAttributeInfo[attrs.size()]), null,
+            new MBeanOperationInfo[0], null);
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature)
+        throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2011], VMWare, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which threads add to without contending on one memory
+ * location.  Each thread adds to one of a few stripes, picked from its
+ * id, and the stripes are summed when the counter is read.  Adding does
+ * not lock or allocate.
+ */
+public class StripedCounter {
+    static final int DEFAULT_STRIPES = 16;
+    //one stripe per 128 byte cache line pair
+    private static final int SPACING = 16;
+
+    private final int numStripes;
+    private final AtomicLongArray stripes;
+
+    public StripedCounter() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param numStripes a power of two, 1 for a counter which only one
+     *        thread adds to at a time
+     */
+    public StripedCounter(int numStripes) {
+        this.numStripes = numStripes;
+        this.stripes = new AtomicLongArray((numStripes - 1) * SPACING + 1);
+    }
+
+    private int stripe() {
+        return ((int) Thread.currentThread().getId() & (numStripes - 1)) * SPACING;
+    }
+
+    public void add(long value) {
+        stripes.addAndGet(stripe(), value);
+    }
+
+    public void increment() {
+        stripes.incrementAndGet(stripe());
+    }
+
+    public long sum() {
+        long rtn = 0;
+        for (int i = 0; i < numStripes; i++) {
+            rtn += stripes.get(i * SPACING);
+        }
+        return rtn;
+    }
+
+    /**
+     * @return the sum of what was added since the previous call
+     */
+    public long sumThenReset() {
+        long rtn = 0;
+        for (int i = 0; i < numStripes; i++) {
+            rtn += stripes.getAndSet(i * SPACING, 0);
+        }
+        return rtn;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.stats;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the StatsHistogram class.
+ */
+public class StatsHistogramTest extends TestCase {
+
+    public StatsHistogramTest(String name) {
+        super(name);
+    }
+
+    public void testBucketsCoverValues() throws Exception {
+        int last = -1;
+        for (long value = 0; value < (1L << 20); value += 1 + value / 64) {
+            int bucket = StatsHistogram.bucketOf(value);
+            assertTrue(bucket >= last);
+            assertTrue(value <= StatsHistogram.upperBound(bucket));
+            // within 12.5%
+            assertTrue(StatsHistogram.upperBound(bucket) <= value + value / 8 + 1);
+            last = bucket;
+        }
+        assertEquals(StatsHistogram.NUM_BUCKETS - 1, StatsHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    public void testPercentiles() throws Exception {
+        StatsHistogram histogram = new StatsHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        StatsHistogram.Interval interval = histogram.roll();
+
+        assertEquals(1000, interval.getCount());
+        assertEquals(500500, interval.getSum());
+        assertEquals(1000, interval.getMax());
+        assertEquals(500, interval.getPercentile(0.5), 500 / 8);
+        assertEquals(990, interval.getPercentile(0.99), 990 / 8);
+        assertEquals(999, interval.getPercentile(0.999), 999 / 8);
+        assertEquals(1000, interval.getPercentile(1));
+        assertSame(interval, histogram.getLastInterval());
+    }
+
+    public void testRollStartsNewInterval() throws Exception {
+        StatsHistogram histogram = new StatsHistogram();
+        histogram.record(100);
+        histogram.roll();
+        histogram.record(5);
+        StatsHistogram.Interval interval = histogram.roll();
+
+        assertEquals(1, interval.getCount());
+        assertEquals(5, interval.getMax());
+        assertEquals(5, interval.getPercentile(0.99));
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(105, histogram.getTotalSum());
+        assertEquals(0, histogram.roll().getPercentile(0.5));
+    }
+
+    public void testSingleStripe() throws Exception {
+        StatsHistogram histogram = new StatsHistogram(1);
+        histogram.record(3);
+        histogram.record(1L << 30);
+        StatsHistogram.Interval interval = histogram.roll();
+
+        assertEquals(2, interval.getCount());
+        assertEquals(3, interval.getPercentile(0.5));
+        assertEquals(1L << 30, interval.getPercentile(1));
+        assertEquals((1L << 30) + 3, histogram.getTotalSum());
+    }
+
+    public void testStripedCounter() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertEquals(40000, counter.sumThenReset());
+        assertEquals(0, counter.sum());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.agent.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SpoolFileTest extends TestCase {
+    private static final int RECSIZE = 24;
+
+    private File dataFile;
+
+    @Override
+    public void setUp() throws Exception {
+        dataFile = File.createTempFile("spoolfiletest", ".spool");
+        dataFile.delete();
+    }
+
+    @Override
+    public void tearDown() {
+        dataFile.delete();
+    }
+
+    private static List<byte[]> records(int start, int num) {
+        List<byte[]> rtn = new ArrayList<byte[]>(num);
+        for (int i = start; i < (start + num); i++) {
+            byte[] rec = new byte[RECSIZE];
+            rec[0] = (byte) (i >> 24);
+            rec[1] = (byte) (i >> 16);
+            rec[2] = (byte) (i >> 8);
+            rec[3] = (byte) i;
+            rtn.add(rec);
+        }
+        return rtn;
+    }
+
+    private static int id(byte[] rec) {
+        return ((rec[0] & 0xff) << 24) | ((rec[1] & 0xff) << 16) |
+               ((rec[2] & 0xff) << 8) | (rec[3] & 0xff);
+    }
+
+    public void testAddPeekRemove() throws Exception {
+        SpoolFile spool = new SpoolFile(dataFile, RECSIZE, 1024 * 1024);
+        try {
+            spool.addAll(records(0, 1000));
+            assertEquals(1000, spool.size());
+
+            List<byte[]> recs = spool.peek(300);
+            assertEquals(300, recs.size());
+            for (int i = 0; i < recs.size(); i++) {
+                assertEquals(i, id(recs.get(i)));
+            }
+            // peek does not consume
+            assertEquals(1000, spool.size());
+
+            assertEquals(300, spool.remove(300));
+            assertEquals(700, spool.size());
+            assertEquals(300, id(spool.peek(1).get(0)));
+
+            assertEquals(700, spool.remove(5000));
+            assertEquals(0, spool.size());
+            assertTrue(spool.peek(10).isEmpty());
+        } finally {
+            spool.close();
+        }
+    }
+
+    public void testReopen() throws Exception {
+        SpoolFile spool = new SpoolFile(dataFile, RECSIZE, 1024 * 1024);
+        spool.addAll(records(0, 500));
+        spool.remove(100);
+        spool.close();
+
+        spool = new SpoolFile(dataFile, RECSIZE, 1024 * 1024);
+        try {
+            assertEquals(400, spool.size());
+            List<byte[]> recs = spool.peek(400);
+            for (int i = 0; i < recs.size(); i++) {
+                assertEquals(i + 100, id(recs.get(i)));
+            }
+        } finally {
+            spool.close();
+        }
+    }
+
+    public void testOverflowDropsOldest() throws Exception {
+        SpoolFile spool = new SpoolFile(dataFile, RECSIZE, 1024);
+        try {
+            long cap = spool.getCapacity();
+            spool.addAll(records(0, (int) cap + 10));
+            assertEquals(cap, spool.size());
+            List<byte[]> recs = spool.peek((int) cap);
+            assertEquals(10, id(recs.get(0)));
+            assertEquals(cap + 9, id(recs.get(recs.size() - 1)));
+        } finally {
+            spool.close();
+        }
+    }
+
+    public void testRemoveAfterOverwrite() throws Exception {
+        SpoolFile spool = new SpoolFile(dataFile, RECSIZE, 1024);
+        try {
+            int cap = (int) spool.getCapacity();
+            spool.addAll(records(0, cap - 10));
+            long first = spool.getHead();
+            List<byte[]> sent = spool.peek(20);
+
+            // wrapping the ring drops the first 10 records being sent
+            spool.addAll(records(cap - 10, 20));
+            assertEquals(first + 10, spool.getHead());
+
+            // only the sent records still in the spool are removed
+            assertEquals(10, spool.remove(first, sent.size()));
+            assertEquals(cap - 10, spool.size());
+            assertEquals(20, id(spool.peek(1).get(0)));
+
+            // nothing left of the batch to remove
+            assertEquals(0, spool.remove(first, sent.size()));
+            assertEquals(cap - 10, spool.size());
+        } finally {
+            spool.close();
+        }
+    }
+
+    public void testShortRecordsArePadded() throws Exception {
+        SpoolFile spool = new SpoolFile(dataFile, RECSIZE, 1024);
+        try {
+            int cap = (int) spool.getCapacity();
+            List<byte[]> recs = new ArrayList<byte[]>();
+            for (int i = 0; i < cap; i++) {
+                byte[] full = new byte[RECSIZE];
+                Arrays.fill(full, (byte) 0x7f);
+                recs.add(full);
+            }
+            spool.addAll(recs);
+            spool.remove(cap);
+
+            // lands on the slot of the first full record
+            recs.clear();
+            recs.add(new byte[] {1, 2, 3});
+            spool.addAll(recs);
+
+            byte[] rec = spool.peek(1).get(0);
+            assertEquals(RECSIZE, rec.length);
+            assertEquals(3, rec[2]);
+            for (int i = 3; i < RECSIZE; i++) {
+                assertEquals(0, rec[i]);
+            }
+        } finally {
+            spool.close();
+        }
+    }
+
+    public void testIncompatibleRecordSizeResets() throws Exception {
+        SpoolFile spool = new SpoolFile(dataFile, RECSIZE, 1024 * 1024);
+        spool.addAll(records(0, 10));
+        spool.close();
+
+        spool = new SpoolFile(dataFile, RECSIZE * 2, 1024 * 1024);
+        try {
+            assertEquals(0, spool.size());
+        } finally {
+            spool.close();
+        }
+    }
+}
@@ -32,6 +32,7 @@ package org.hyperic.lather;
 public class LatherContext {
     private String callerIP;    // IP address of the caller
     private long   requestTime; // Time (in ms) that the request was received
+    private boolean binary;     // Request was sent in the binary encoding
 
     public LatherContext(){
         this.callerIP = null;
@@ -52,4 +53,16 @@ public class LatherContext {
     public long getRequestTime(){
         return this.requestTime;
     }
+
+    public void setBinary(boolean binary){
+        this.binary = binary;
+    }
+
+    /**
+     * @return true if the request was streamed in the binary encoding
+     *         rather than as a Base64 form parameter
+     */
+    public boolean isBinary(){
+        return this.binary;
+    }
 }
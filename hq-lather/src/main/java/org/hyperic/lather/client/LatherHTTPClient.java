@@ -25,13 +25,18 @@
 
 package org.hyperic.lather.client;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -59,10 +64,22 @@ public class LatherHTTPClient
 
     public static final String HDR_ERROR      = "X-error-response";
     public static final String HDR_VALUECLASS = "X-latherValue-class";
+    // Sent by servers which accept binary requests, see invokeBinary()
+    public static final String HDR_BINARY     = "X-lather-binary";
+
+    private static final String PROP_BINARY = "lather.binary";
+    private static final String PROP_GZIP   = "lather.gzip";
 
     private HQHttpClient client;
     private LatherXCoder xCoder;
     private String       baseURL;
+    private final boolean binaryEnabled = 
+        !"false".equalsIgnoreCase(System.getProperty(PROP_BINARY));
+    private final boolean gzip = Boolean.getBoolean(PROP_GZIP);
+    // Servers which have told us they understand binary requests, by URL.
+    // Shared since a client is created for each call.  Until a server is
+    // in here (and forever with older servers) the form encoding is used.
+    private static final Map<String, Boolean> binaryServers = new ConcurrentHashMap<String, Boolean>();
     
     public LatherHTTPClient(String baseURL) throws Exception {
         this(baseURL, TIMEOUT_CONN, TIMEOUT_DATA);
@@ -95,6 +112,9 @@ public class LatherHTTPClient
     }
 
     public LatherValue invoke(String method, LatherValue args) throws IOException, LatherRemoteException {
+        if (binaryEnabled && binaryServers.containsKey(baseURL)) {
+            return invokeBinary(method, args);
+        }
         ByteArrayOutputStream bOs = new ByteArrayOutputStream();
         DataOutputStream dOs = new DataOutputStream(bOs);
         
@@ -118,6 +138,10 @@ public class LatherHTTPClient
             HttpEntity entity = response.getEntity();
             String responseBody = EntityUtils.toString(entity);
 
+            if (response.getFirstHeader(HDR_BINARY) != null) {
+                binaryServers.put(baseURL, Boolean.TRUE);
+            }
+
             if (errHeader != null) {
                 throw new LatherRemoteException(responseBody);
             }
@@ -147,4 +171,72 @@ public class LatherHTTPClient
 	        throw new IOException("Connection failure: " + response.getStatusLine());
 	    }
     }
+
+    /**
+     * Invokes the method by streaming the binary encoding of the args as
+     * the request body, and decoding the binary response straight from the
+     * connection.  The method is passed on the URL and the args class in
+     * the {@link #HDR_VALUECLASS} header, and both bodies may be gzipped.
+     */
+    private LatherValue invokeBinary(String method, LatherValue args) throws IOException, LatherRemoteException {
+        String url = baseURL + (baseURL.indexOf('?') == -1 ? '?' : '&') + 
+                     "method=" + URLEncoder.encode(method, "UTF-8");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(HDR_VALUECLASS, args.getClass().getName());
+
+        HttpResponse response = client.post(url, headers, new LatherValueEntity(xCoder, args, gzip));
+
+        if ((response == null) || (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)) {
+            if ((response != null) && isBinaryUnsupported(response)) {
+                // go back to the form encoding until the server tells us
+                // otherwise
+                binaryServers.remove(baseURL);
+            }
+            throw new IOException("Connection failure: " + 
+                                  (response == null ? null : response.getStatusLine()));
+        }
+        HttpEntity entity = response.getEntity();
+        try {
+            if (response.getFirstHeader(HDR_ERROR) != null) {
+                throw new LatherRemoteException(EntityUtils.toString(entity));
+            }
+            Header clsHeader = response.getFirstHeader(HDR_VALUECLASS);
+            if (clsHeader == null) {
+                throw new IOException("Server returned malformed result: did not contain a value class header");
+            }
+
+            Class<?> resClass;
+
+            try {
+                resClass = Class.forName(clsHeader.getValue());
+            } catch(ClassNotFoundException exc){
+                throw new LatherRemoteException("Server returned a class '" + clsHeader.getValue() + 
+                                                "' which the client did not have access to");
+            }
+
+            InputStream in = new BufferedInputStream(entity.getContent());
+            Header encHeader = response.getFirstHeader("Content-Encoding");
+            if (encHeader != null && LatherValueEntity.GZIP.equalsIgnoreCase(encHeader.getValue())) {
+                in = new GZIPInputStream(in);
+            }
+            return this.xCoder.decode(new DataInputStream(in), resClass);
+        } finally {
+            EntityUtils.consume(entity);
+        }
+    }
+
+    /**
+     * @return true if the failure of a binary request means the server does
+     *         not take binary requests, rather than that it could not serve
+     *         this one (e.g. it is out of connections).  Servers which take
+     *         binary requests mark all their responses with
+     *         {@link #HDR_BINARY}, so one without it comes from an older
+     *         server which has taken the place of the one we knew.
+     */
+    private static boolean isBinaryUnsupported(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        return (status == HttpStatus.SC_BAD_REQUEST) ||
+               (status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) ||
+               (response.getFirstHeader(HDR_BINARY) == null);
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.lather.client;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.hyperic.lather.LatherValue;
+import org.hyperic.lather.xcode.LatherXCoder;
+
+/**
+ * An HTTP entity which writes the {@link LatherXCoder} encoding of a
+ * {@link LatherValue} straight to the connection, optionally gzipped,
+ * instead of building the encoded form in memory first.  The length is
+ * not known up front, so the entity is sent chunked.
+ */
+public class LatherValueEntity extends AbstractHttpEntity {
+    public static final String CONTENT_TYPE = "application/octet-stream";
+    public static final String GZIP = "gzip";
+
+    private static final int BUFSIZE = 8192;
+
+    private final LatherXCoder xCoder;
+    private final LatherValue value;
+    private final boolean gzip;
+
+    public LatherValueEntity(LatherXCoder xCoder, LatherValue value, boolean gzip) {
+        this.xCoder = xCoder;
+        this.value = value;
+        this.gzip = gzip;
+        setContentType(CONTENT_TYPE);
+        if (gzip) {
+            setContentEncoding(GZIP);
+        }
+        setChunked(true);
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * The content as a stream, for callers which read the entity rather
+     * than write it.  This encodes the value into memory first, so sending
+     * the request should go through {@link #writeTo(OutputStream)}.
+     */
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream bOs = new ByteArrayOutputStream();
+        writeTo(bOs);
+        return new ByteArrayInputStream(bOs.toByteArray());
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        write(xCoder, value, out, gzip);
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Encode the value onto the stream.  The stream itself is flushed but
+     * not closed.
+     */
+    public static void write(LatherXCoder xCoder, LatherValue value, OutputStream out, boolean gzip)
+        throws IOException
+    {
+        GZIPOutputStream gOs = null;
+        if (gzip) {
+            gOs = new GZIPOutputStream(out, BUFSIZE);
+            out = gOs;
+        }
+        DataOutputStream dOs = new DataOutputStream(new BufferedOutputStream(out, BUFSIZE));
+        xCoder.encode(value, dOs);
+        dOs.flush();
+        if (gOs != null) {
+            gOs.finish();
+        }
+        out.flush();
+    }
+}
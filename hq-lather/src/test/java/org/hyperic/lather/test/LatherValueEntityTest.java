@@ -0,0 +1,89 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.lather.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.hyperic.lather.client.LatherValueEntity;
+import org.hyperic.lather.xcode.LatherXCoder;
+
+public class LatherValueEntityTest
+    extends TestCase
+{
+    public LatherValueEntityTest(String name){
+        super(name);
+    }
+
+    public void testPlain() throws Exception {
+        roundTrip(false);
+    }
+
+    public void testGzip() throws Exception {
+        roundTrip(true);
+    }
+
+    public void testGetContent() throws Exception {
+        LatherXCoder xCoder = new LatherXCoder();
+        PassThroughLatherValue val = new PassThroughLatherValue();
+        val.setStringValue("name", "value");
+        LatherValueEntity entity = new LatherValueEntity(xCoder, val, false);
+
+        // repeatable, so reading it more than once gives the same content
+        for (int i = 0; i < 2; i++) {
+            PassThroughLatherValue decoded = (PassThroughLatherValue)
+                xCoder.decode(new DataInputStream(entity.getContent()), PassThroughLatherValue.class);
+            assertEquals("value", decoded.getStringValue("name"));
+        }
+    }
+
+    private void roundTrip(boolean gzip) throws Exception {
+        LatherXCoder xCoder = new LatherXCoder();
+        PassThroughLatherValue val = new PassThroughLatherValue();
+        val.setStringValue("name", "value");
+        val.setIntValue("int", 42);
+        val.setByteAValue("bytes", new byte[] { 1, 2, 3 });
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new LatherValueEntity(xCoder, val, gzip).writeTo(bos);
+
+        InputStream in = new ByteArrayInputStream(bos.toByteArray());
+        if (gzip) {
+            in = new GZIPInputStream(in);
+        }
+        PassThroughLatherValue decoded = (PassThroughLatherValue)
+            xCoder.decode(new DataInputStream(in), PassThroughLatherValue.class);
+
+        assertEquals("value", decoded.getStringValue("name"));
+        assertEquals(42, decoded.getIntValue("int"));
+        assertEquals(3, decoded.getByteAValue("bytes").length);
+    }
+}
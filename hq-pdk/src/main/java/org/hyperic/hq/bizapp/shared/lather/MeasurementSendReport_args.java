@@ -33,6 +33,7 @@ import org.hyperic.hq.measurement.server.session.SRN;
 import org.hyperic.hq.measurement.data.DSNList;
 import org.hyperic.hq.measurement.data.MeasurementReport;
 import org.hyperic.hq.measurement.data.MeasurementReportConstructor;
+import org.hyperic.hq.measurement.data.PackedMeasurementCodec;
 import org.hyperic.hq.measurement.data.ValueList;
 import org.hyperic.hq.product.MetricValue;
 
@@ -54,12 +55,22 @@ public class MeasurementSendReport_args
     private static final String PROP_SRN_ENT_ID   = "srnEntId";
     private static final String PROP_SRN_REVNO    = "srnRevNo";
     private static final String PROP_AGENT_TOKEN  = "agentToken";
+    private static final String PROP_PACKED       = "packed";
 
     public MeasurementSendReport_args(){
         super();
     }
 
     public void setReport(MeasurementReport report){
+        this.setReport(report, false);
+    }
+
+    /**
+     * @param packed send the data points in the compact encoding of
+     *        {@link PackedMeasurementCodec}, which servers older than the
+     *        agent do not understand
+     */
+    public void setReport(MeasurementReport report, boolean packed){
         DSNList[] clientIDs;
         SRN[] srnList;
 
@@ -67,6 +78,11 @@ public class MeasurementSendReport_args
                              report.getAgentToken());
 
         clientIDs = report.getClientIdList();
+        if(packed){
+            this.setByteAValue(PROP_PACKED,
+                               PackedMeasurementCodec.encode(clientIDs));
+            clientIDs = new DSNList[0];
+        }
         for(int cidIdx=0; cidIdx < clientIDs.length; cidIdx++){
             ValueList[] dsns = clientIDs[cidIdx].getDsns();
 
@@ -101,36 +117,52 @@ public class MeasurementSendReport_args
     {
         MeasurementReportConstructor con;
         MeasurementReport res;
+        DSNList[] clientIDs;
         double[] tStampList;
         double[] valueList;
         int[] cidList, dsnIdList, srnEntTypeList, srnEntIdList, srnRevNoList;
         SRN[] srnList;
 
-        con = new MeasurementReportConstructor();
-
-        cidList    = this.getIntList(PROP_CIDLIST);
-        dsnIdList  = this.getIntList(PROP_DSNIDLIST);
-        tStampList = this.getDoubleList(PROP_TSTAMPLIST);
-        valueList  = this.getDoubleList(PROP_VALUELIST);
-
         srnEntTypeList = this.getIntList(PROP_SRN_ENT_TYPE);
         srnEntIdList   = this.getIntList(PROP_SRN_ENT_ID);
         srnRevNoList   = this.getIntList(PROP_SRN_REVNO);
 
-        if(dsnIdList.length       != tStampList.length   ||
-           dsnIdList.length       != valueList.length    ||
-           dsnIdList.length       != cidList.length      ||
-           srnEntTypeList.length  != srnEntIdList.length ||
+        if(srnEntTypeList.length  != srnEntIdList.length ||
            srnEntTypeList.length  != srnRevNoList.length)
         {
             throw new LatherRemoteException("Measurement report mismatch");
         }
 
-        for(int i=0; i<dsnIdList.length; i++)
-        {
-            con.addDataPoint(cidList[i], dsnIdList[i],
-                             new MetricValue(valueList[i],
-                                             (long)tStampList[i]));
+        if(this.getByteAVals().containsKey(PROP_PACKED)){
+            try {
+                clientIDs = PackedMeasurementCodec.decode(
+                    this.getByteAValue(PROP_PACKED));
+            } catch(IllegalArgumentException e){
+                throw new LatherRemoteException("Invalid packed measurement " +
+                                                "report: " + e.getMessage());
+            }
+        } else {
+            con = new MeasurementReportConstructor();
+
+            cidList    = this.getIntList(PROP_CIDLIST);
+            dsnIdList  = this.getIntList(PROP_DSNIDLIST);
+            tStampList = this.getDoubleList(PROP_TSTAMPLIST);
+            valueList  = this.getDoubleList(PROP_VALUELIST);
+
+            if(dsnIdList.length       != tStampList.length   ||
+               dsnIdList.length       != valueList.length    ||
+               dsnIdList.length       != cidList.length)
+            {
+                throw new LatherRemoteException("Measurement report mismatch");
+            }
+
+            for(int i=0; i<dsnIdList.length; i++)
+            {
+                con.addDataPoint(cidList[i], dsnIdList[i],
+                                 new MetricValue(valueList[i],
+                                                 (long)tStampList[i]));
+            }
+            clientIDs = con.constructDSNList();
         }
 
         res = new MeasurementReport();
@@ -140,7 +172,7 @@ public class MeasurementSendReport_args
             _log.error("Unable to find agent token", e);
         }
 
-        res.setClientIdList(con.constructDSNList());
+        res.setClientIdList(clientIDs);
 
         srnList = new SRN[srnEntTypeList.length];
 
@@ -0,0 +1,308 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ * 
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of HQ.
+ * 
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.hyperic.hq.product.MetricValue;
+
+/**
+ * Compact binary encoding of the data points in a MeasurementReport.
+ *
+ * Points are written as one series per (derived id, DSN id), ordered by
+ * the timestamp of their first point so that series collected together sit
+ * next to each other.  Ids and the first timestamp of each series are
+ * zig-zag varint deltas from the previous series, later timestamps are
+ * delta-of-deltas, and values are XOR-compressed against the previous value
+ * in the series as described in Facebook's Gorilla paper.  Metrics that are
+ * collected on the same tick and change little between collections cost a
+ * few bytes per point rather than the 24 of the list encoding.
+ */
+public class PackedMeasurementCodec {
+    private static final int VERSION = 1;
+
+    private PackedMeasurementCodec() {
+    }
+
+    public static byte[] encode(DSNList[] clientIds) {
+        final List<Series> series = new ArrayList<Series>();
+        int numPoints = 0;
+        for (int i = 0; i < clientIds.length; i++) {
+            final ValueList[] dsns = clientIds[i].getDsns();
+            for (int j = 0; j < dsns.length; j++) {
+                series.add(new Series(clientIds[i].getClientId(), dsns[j].getDsnId(),
+                                      dsns[j].getValues()));
+                numPoints += dsns[j].getValues().length;
+            }
+        }
+        Collections.sort(series, new Comparator<Series>() {
+            public int compare(Series a, Series b) {
+                if (a.firstTimestamp != b.firstTimestamp) {
+                    return (a.firstTimestamp < b.firstTimestamp) ? -1 : 1;
+                }
+                if (a.clientId != b.clientId) {
+                    return (a.clientId < b.clientId) ? -1 : 1;
+                }
+                return (a.dsnId < b.dsnId) ? -1 : ((a.dsnId == b.dsnId) ? 0 : 1);
+            }
+        });
+
+        final BitWriter out = new BitWriter(16 + numPoints * 8);
+        out.writeBits(VERSION, 8);
+        out.writeVarLong(series.size());
+        long prevClientId = 0, prevDsnId = 0, prevFirstTimestamp = 0;
+        for (final Series s : series) {
+            out.writeVarLong(zigZag(s.clientId - prevClientId));
+            out.writeVarLong(zigZag(s.dsnId - prevDsnId));
+            out.writeVarLong(s.values.length);
+            prevClientId = s.clientId;
+            prevDsnId = s.dsnId;
+            if (s.values.length == 0) {
+                continue;
+            }
+            out.writeVarLong(zigZag(s.firstTimestamp - prevFirstTimestamp));
+            prevFirstTimestamp = s.firstTimestamp;
+
+            long prevTimestamp = s.firstTimestamp, prevDelta = 0;
+            final ValueState state = new ValueState();
+            state.write(out, s.values[0].getValue());
+            for (int i = 1; i < s.values.length; i++) {
+                final long timestamp = s.values[i].getTimestamp();
+                final long delta = timestamp - prevTimestamp;
+                out.writeVarLong(zigZag(delta - prevDelta));
+                prevTimestamp = timestamp;
+                prevDelta = delta;
+                state.write(out, s.values[i].getValue());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the data is truncated or was
+     *         written by an unknown version of the encoding
+     */
+    public static DSNList[] decode(byte[] data) {
+        final BitReader in = new BitReader(data);
+        final int version = (int) in.readBits(8);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported packed report version " + version);
+        }
+        final MeasurementReportConstructor con = new MeasurementReportConstructor();
+        final long numSeries = in.readVarLong();
+        long clientId = 0, dsnId = 0, firstTimestamp = 0;
+        for (long n = 0; n < numSeries; n++) {
+            clientId += unZigZag(in.readVarLong());
+            dsnId += unZigZag(in.readVarLong());
+            final long numValues = in.readVarLong();
+            if (numValues == 0) {
+                continue;
+            }
+            // every point takes at least one bit, don't trust a count
+            // that could not possibly fit in what is left
+            if (numValues > in.remaining()) {
+                throw new IllegalArgumentException("Packed report is truncated");
+            }
+            firstTimestamp += unZigZag(in.readVarLong());
+
+            long timestamp = firstTimestamp, delta = 0;
+            final ValueState state = new ValueState();
+            con.addDataPoint((int) clientId, (int) dsnId,
+                             new MetricValue(state.read(in), timestamp));
+            for (long i = 1; i < numValues; i++) {
+                delta += unZigZag(in.readVarLong());
+                timestamp += delta;
+                con.addDataPoint((int) clientId, (int) dsnId,
+                                 new MetricValue(state.read(in), timestamp));
+            }
+        }
+        return con.constructDSNList();
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static class Series {
+        private final int clientId;
+        private final int dsnId;
+        private final MetricValue[] values;
+        private final long firstTimestamp;
+
+        private Series(int clientId, int dsnId, MetricValue[] values) {
+            this.clientId = clientId;
+            this.dsnId = dsnId;
+            this.values = values;
+            this.firstTimestamp = (values.length == 0) ? 0 : values[0].getTimestamp();
+        }
+    }
+
+    /**
+     * XOR compression state of one series.  The first value is XORed
+     * against zero, which still drops the trailing zero bits of small whole
+     * numbers.
+     */
+    private static class ValueState {
+        private long prevBits = 0;
+        private int leading = -1;
+        private int trailing = 0;
+
+        private void write(BitWriter out, double value) {
+            final long bits = Double.doubleToRawLongBits(value);
+            final long xor = bits ^ prevBits;
+            prevBits = bits;
+            if (xor == 0) {
+                out.writeBit(0);
+                return;
+            }
+            out.writeBit(1);
+            final int lz = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            final int tz = Long.numberOfTrailingZeros(xor);
+            if (leading >= 0 && lz >= leading && tz >= trailing) {
+                // meaningful bits fit in the previous window
+                out.writeBit(0);
+                out.writeBits(xor >>> trailing, 64 - leading - trailing);
+                return;
+            }
+            leading = lz;
+            trailing = tz;
+            final int len = 64 - lz - tz;
+            out.writeBit(1);
+            out.writeBits(lz, 5);
+            out.writeBits(len - 1, 6);
+            out.writeBits(xor >>> tz, len);
+        }
+
+        private double read(BitReader in) {
+            if (in.readBit() == 1) {
+                if (in.readBit() == 1) {
+                    leading = (int) in.readBits(5);
+                    final int len = (int) in.readBits(6) + 1;
+                    trailing = 64 - leading - len;
+                    if (trailing < 0) {
+                        throw new IllegalArgumentException("Corrupt value in packed report");
+                    }
+                } else if (leading < 0) {
+                    throw new IllegalArgumentException("Corrupt value in packed report");
+                }
+                prevBits ^= in.readBits(64 - leading - trailing) << trailing;
+            }
+            return Double.longBitsToDouble(prevBits);
+        }
+    }
+
+    private static class BitWriter {
+        private byte[] buf;
+        private long bitPos = 0;
+
+        private BitWriter(int initialBytes) {
+            buf = new byte[initialBytes];
+        }
+
+        private void writeBit(int bit) {
+            final int idx = (int) (bitPos >>> 3);
+            if (idx == buf.length) {
+                final byte[] tmp = new byte[buf.length * 2];
+                System.arraycopy(buf, 0, tmp, 0, buf.length);
+                buf = tmp;
+            }
+            if (bit != 0) {
+                buf[idx] |= 0x80 >>> (bitPos & 7);
+            }
+            bitPos++;
+        }
+
+        private void writeBits(long value, int numBits) {
+            for (int i = numBits - 1; i >= 0; i--) {
+                writeBit((int) (value >>> i) & 1);
+            }
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeBits((value & 0x7F) | 0x80, 8);
+                value >>>= 7;
+            }
+            writeBits(value, 8);
+        }
+
+        private byte[] toByteArray() {
+            final byte[] rtn = new byte[(int) ((bitPos + 7) >>> 3)];
+            System.arraycopy(buf, 0, rtn, 0, rtn.length);
+            return rtn;
+        }
+    }
+
+    private static class BitReader {
+        private final byte[] buf;
+        private long bitPos = 0;
+
+        private BitReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private long remaining() {
+            return ((long) buf.length << 3) - bitPos;
+        }
+
+        private int readBit() {
+            final int idx = (int) (bitPos >>> 3);
+            if (idx >= buf.length) {
+                throw new IllegalArgumentException("Packed report is truncated");
+            }
+            final int bit = (buf[idx] >>> (7 - (bitPos & 7))) & 1;
+            bitPos++;
+            return bit;
+        }
+
+        private long readBits(int numBits) {
+            long rtn = 0;
+            for (int i = 0; i < numBits; i++) {
+                rtn = (rtn << 1) | readBit();
+            }
+            return rtn;
+        }
+
+        private long readVarLong() {
+            long rtn = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final long b = readBits(8);
+                rtn |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return rtn;
+                }
+            }
+            throw new IllegalArgumentException("Corrupt varint in packed report");
+        }
+    }
+}
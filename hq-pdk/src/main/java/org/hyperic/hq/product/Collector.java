@@ -109,7 +109,9 @@ public abstract class Collector implements Runnable {
     private GenericPlugin plugin;
     private Properties props;
 
-    private boolean isRunning = false;
+    //collections deferred by deferResult() complete on other threads
+    private volatile boolean isRunning = false;
+    private boolean isDeferred = false;
     private int timeout = -1;
     private long startTime, endTime;
     //use a ref to Metric: ScheduleThread.unscheduleMetric unsets interval
@@ -359,6 +361,23 @@ public abstract class Collector implements Runnable {
         this.endTime = System.currentTimeMillis();
     }
 
+    /**
+     * Called from collect() by collectors which finish collecting on
+     * another thread.  The result is not published when collect()
+     * returns, and the collector is not run again, until
+     * completeResult() is called.
+     */
+    protected void deferResult() {
+        this.isDeferred = true;
+    }
+
+    /**
+     * Publish the result of a collection deferred by deferResult().
+     */
+    protected void completeResult() {
+        publishResult();
+    }
+
     String mapToString(Map map) {
         Map props = new HashMap();
         for (Iterator it = map.entrySet().iterator();
@@ -554,6 +573,7 @@ public abstract class Collector implements Runnable {
 
     public void run() {
         this.isRunning = true;
+        this.isDeferred = false;
         this.result.values.clear();
         this.result.level = -1;
         this.startTime = this.endTime = -1;
@@ -574,6 +594,12 @@ public abstract class Collector implements Runnable {
             }
         }
 
+        if (!this.isDeferred) {
+            publishResult();
+        }
+    }
+
+    private void publishResult() {
         if (this.endTime != -1) {
             this.result.timestamp = this.endTime;
             setResponseTime(this.endTime-this.startTime);
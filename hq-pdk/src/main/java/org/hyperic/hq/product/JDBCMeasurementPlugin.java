@@ -35,13 +35,17 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -65,6 +69,13 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
 
     public static final String PROP_TABLE    = "table";
     public static final String PROP_INDEX    = "index";
+
+    /** Total milliseconds spent running the shared queries of a database */
+    public static final String ATTR_QUERY_TIME  = "JDBCQueryTime";
+    /** Total number of shared queries run against a database */
+    public static final String ATTR_QUERY_COUNT = "JDBCQueryCount";
+    /** Total number of rows read by the shared queries of a database */
+    public static final String ATTR_QUERY_ROWS  = "JDBCQueryRows";
     
     private static final String USER_KEY = "user";
     private static final String PASSWORD_KEY = "password";
@@ -73,6 +84,19 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
 
     private static long FIVE_MINUTES_MILLIS = 5 * 60 * 1000;
 
+    //longest a shared query result is used for, capped by half the
+    //collection interval of the metric asking for it
+    private static final long QUERY_MAX_AGE =
+        Long.parseLong(System.getProperty("jdbc.query.maxAge", "30000"));
+    //shared queries run at once against a database
+    private static final int POOL_MAX_ACTIVE =
+        Integer.parseInt(System.getProperty("jdbc.pool.maxActive", "4"));
+    //idle connections kept for a database
+    private static final int POOL_MAX_IDLE =
+        Integer.parseInt(System.getProperty("jdbc.pool.maxIdle", "4"));
+    //connections idle for longer are checked with isValid() before use
+    private static final long POOL_VALIDATE_IDLE = 30 * 1000;
+
     protected String _sqlLog;
     
     private Double _data;
@@ -82,29 +106,120 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
 
     private int _numRows;
     
-    private final static HashMap<String,Queue> connectionPools = new HashMap<String, Queue>();
+    private final static Map<String,Queue<IdleConnection>> connectionPools =
+        new ConcurrentHashMap<String,Queue<IdleConnection>>();
+    private final static Map<String,Target> targets =
+        new ConcurrentHashMap<String,Target>();
     private final static Timer poolsShrinkTimer = new Timer("JDBCMeasurementPlugin.poolsShrink");
     static {
         poolsShrinkTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
                 log.debug("[poolsShrink] run");
-                Set<Entry<String, Queue>> pools = connectionPools.entrySet();
-                Iterator<Entry<String, Queue>> it = pools.iterator();
+                Set<Entry<String, Queue<IdleConnection>>> pools = connectionPools.entrySet();
+                Iterator<Entry<String, Queue<IdleConnection>>> it = pools.iterator();
                 while (it.hasNext()) {
-                    Entry<String, Queue> entry = it.next();
-                    Queue<Connection> pool = entry.getValue();
+                    Entry<String, Queue<IdleConnection>> entry = it.next();
+                    Queue<IdleConnection> pool = entry.getValue();
                     if (pool.size() > 1) {
                         log.debug("[poolsShrink] '"+entry.getKey()+"' pool.size()=" + pool.size());
                         while (pool.size() > 1) {
-                            Connection conn = pool.poll();
-                            DBUtil.closeJDBCObjects(log, conn, null, null);
+                            IdleConnection idle = pool.poll();
+                            if (idle != null) {
+                                DBUtil.closeJDBCObjects(log, idle.conn, null, null);
+                            }
                         }
                     }
                 }
+                long expire = System.currentTimeMillis() - FIVE_MINUTES_MILLIS;
+                for (Target target : targets.values()) {
+                    target.expire(expire);
+                }
             }
         }, FIVE_MINUTES_MILLIS, FIVE_MINUTES_MILLIS);
     }
+
+    private static class IdleConnection {
+        private final Connection conn;
+        private final long since = System.currentTimeMillis();
+
+        private IdleConnection(Connection conn) {
+            this.conn = conn;
+        }
+    }
+
+    /**
+     * The result of a query, shared by all the metrics of a database
+     * which map to the same query.
+     */
+    private static class QueryResult {
+        private long fetched = -1;
+        private long used;
+        private SQLException error;
+        private String[] columns;
+        private List<Object[]> rows;
+        private Map<String,Object[]> keyedRows;
+
+        private Object[] getRow(String key) {
+            if (this.rows.isEmpty()) {
+                return null;
+            }
+            if (key == null) {
+                return this.rows.get(0);
+            }
+            if (this.keyedRows == null) {
+                Map<String,Object[]> keyedRows =
+                    new HashMap<String,Object[]>(this.rows.size() * 2);
+                for (Object[] row : this.rows) {
+                    keyedRows.put(String.valueOf(row[0]), row);
+                }
+                this.keyedRows = keyedRows;
+            }
+            return this.keyedRows.get(key);
+        }
+
+        private int getColumn(String name) {
+            for (int i=0; i<this.columns.length; i++) {
+                if (this.columns[i].equalsIgnoreCase(name)) {
+                    return i+1;
+                }
+            }
+            return COL_INVALID;
+        }
+    }
+
+    /**
+     * The shared query results and statistics of a database.
+     */
+    private static class Target {
+        private final ConcurrentHashMap<String,QueryResult> results =
+            new ConcurrentHashMap<String,QueryResult>();
+        private final Semaphore active = new Semaphore(POOL_MAX_ACTIVE);
+        private final AtomicLong queryTime = new AtomicLong();
+        private final AtomicLong queryCount = new AtomicLong();
+        private final AtomicLong queryRows = new AtomicLong();
+
+        private QueryResult getResult(String query) {
+            QueryResult result = this.results.get(query);
+            if (result == null) {
+                QueryResult exists =
+                    this.results.putIfAbsent(query, result = new QueryResult());
+                if (exists != null) {
+                    result = exists;
+                }
+            }
+            return result;
+        }
+
+        private void expire(long time) {
+            Iterator<QueryResult> it = this.results.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().used < time) {
+                    it.remove();
+                }
+            }
+        }
+    }
     
     /**
      * Config schema includes jdbc URL, database username and password.
@@ -152,19 +267,12 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
     {
         super.shutdown();
         poolsShrinkTimer.cancel();
-        synchronized (connectionPools) {
-            Set<Entry<String, Queue>> pools = connectionPools.entrySet();
-            Iterator<Entry<String, Queue>> it = pools.iterator();
-            while (it.hasNext()) {
-                Entry<String, Queue> entry = it.next();
-                Queue<Connection> pool = entry.getValue();
-                Connection conn;
-                while ((conn = pool.poll()) != null) {
-                    DBUtil.closeJDBCObjects(log, conn, null, null);
-                }
-            }
-            connectionPools.clear();
+        Iterator<Queue<IdleConnection>> it = connectionPools.values().iterator();
+        while (it.hasNext()) {
+            closeIdleConnections(it.next());
+            it.remove();
         }
+        targets.clear();
     }
 
     /**
@@ -244,22 +352,68 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
         return cacheKey;
     }
 
+    private static Queue<IdleConnection> getPool(String cacheKey) {
+        Queue<IdleConnection> pool = connectionPools.get(cacheKey);
+        if (pool == null) {
+            synchronized (connectionPools) {
+                pool = connectionPools.get(cacheKey);
+                if (pool == null) {
+                    pool = new ConcurrentLinkedQueue<IdleConnection>();
+                    connectionPools.put(cacheKey, pool);
+                    log.debug("[getCC] Pool for '" + cacheKey + "' created");
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return an idle connection from the pool which is still usable,
+     * or null if there is none.
+     */
+    private static Connection pollConnection(Queue<IdleConnection> pool) {
+        IdleConnection idle;
+        while ((idle = pool.poll()) != null) {
+            if (isUsable(idle)) {
+                return idle.conn;
+            }
+            DBUtil.closeJDBCObjects(log, idle.conn, null, null);
+            log.debug("[getCC] Closed stale connection (pool.size=" + pool.size() + ")");
+        }
+        return null;
+    }
+
+    private static boolean isUsable(IdleConnection idle) {
+        try {
+            if (idle.conn.isClosed()) {
+                return false;
+            }
+            if ((System.currentTimeMillis() - idle.since) < POOL_VALIDATE_IDLE) {
+                return true;
+            }
+            return idle.conn.isValid(5);
+        } catch (SQLException e) {
+            return false;
+        } catch (AbstractMethodError e) {
+            //pre JDBC 4 driver, isClosed() will have to do
+            return true;
+        }
+    }
+
+    private static void closeIdleConnections(Queue<IdleConnection> pool) {
+        IdleConnection idle;
+        while ((idle = pool.poll()) != null) {
+            DBUtil.closeJDBCObjects(log, idle.conn, null, null);
+        }
+    }
+
     protected Connection getCachedConnection(String url, String user, String pass) throws SQLException {
         String cacheKey = calculateKey(url, user, pass);
+        Queue<IdleConnection> pool = getPool(cacheKey);
         Connection conn;
-        Queue<Connection> pool;
-
-        synchronized (connectionPools) {
-            pool = connectionPools.get(cacheKey);
-            if (pool == null) {
-                pool = new ConcurrentLinkedQueue<Connection>();
-                connectionPools.put(cacheKey, pool);
-                log.debug("[getCC] Pool for '" + cacheKey + "' created");
-            }
-        }
 
         int count = 0;
-        while (((conn = pool.poll()) == null) && (count++ < 5)) {
+        while (((conn = pollConnection(pool)) == null) && (count++ < 5)) {
             try {
                 Thread.sleep(100);
             } catch (InterruptedException ex) {
@@ -277,29 +431,65 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
 
     protected void removeCachedConnection(String url, String user, String pass) {
         String cacheKey = calculateKey(url, user, pass);
-        Queue<Connection> pool = connectionPools.get(cacheKey);
+        Queue<IdleConnection> pool = connectionPools.remove(cacheKey);
         if (pool != null) {
-            Connection conn;
-            while ((conn = pool.poll()) != null) {
-                DBUtil.closeJDBCObjects(log, conn, null, null);
-                log.debug("[remCC] Connection for '" + cacheKey + "' closed (pool.size=" + pool.size() + ")");
-            }
-            connectionPools.remove(cacheKey);
+            closeIdleConnections(pool);
+            log.debug("[remCC] Connections for '" + cacheKey + "' closed");
         } else {
             log.debug("[remCC] Pool for '" + cacheKey + "' not found");
         }
     }
 
     protected void returnCachedConnection(String url, String user, String pass, Connection conn) {
+        if (conn == null) {
+            return;
+        }
         String cacheKey = calculateKey(url, user, pass);
-        Queue<Connection> pool = connectionPools.get(cacheKey);
-        if (pool != null) {
-            pool.add(conn);
-            log.debug("[retCC] Connection for '" + cacheKey + "' returned (pool.size=" + pool.size() + ")");
-        } else {
+        Queue<IdleConnection> pool = connectionPools.get(cacheKey);
+        if (pool == null) {
             DBUtil.closeJDBCObjects(log, conn, null, null);
             log.debug("[retCC] Pool for '" + cacheKey + "' not found, closing connection");
+        } else if (pool.size() >= POOL_MAX_IDLE) {
+            DBUtil.closeJDBCObjects(log, conn, null, null);
+            log.debug("[retCC] Pool for '" + cacheKey + "' full, closing connection");
+        } else {
+            pool.add(new IdleConnection(conn));
+            log.debug("[retCC] Connection for '" + cacheKey + "' returned (pool.size=" + pool.size() + ")");
+        }
+    }
+
+    private static Target getTarget(String cacheKey) {
+        Target target = targets.get(cacheKey);
+        if (target == null) {
+            synchronized (targets) {
+                target = targets.get(cacheKey);
+                if (target == null) {
+                    targets.put(cacheKey, target = new Target());
+                }
+            }
         }
+        return target;
+    }
+
+    /**
+     * The key of the row holding the value of the metric, for queries
+     * which return one row per object keyed by their first column.  All
+     * the metrics mapped to such a query are served by running it once.
+     * By default the first row holds the value.
+     */
+    protected String getRowKey(Metric metric) {
+        return null;
+    }
+
+    /**
+     * The value of a metric whose row is not in the result of its query.
+     * Plugins whose rows hold a sum return 0, as the query of the single
+     * object would have.
+     * @throws MetricNotFoundException by default
+     */
+    protected double getMissingRowValue(Metric metric)
+        throws MetricNotFoundException {
+        throw new MetricNotFoundException(metric.getAttributeName());
     }
 
     /**
@@ -318,9 +508,25 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
         throws MetricNotFoundException, PluginException,
                MetricUnreachableException
     {
+        String attr = jdsn.getAttributeName();
+        Properties props = jdsn.getProperties();
+        String
+            url = props.getProperty(PROP_URL),
+            user = props.getProperty(PROP_USER),
+            pass = props.getProperty(PROP_PASSWORD);
+
+        if (attr.equals(ATTR_QUERY_TIME)) {
+            return getTarget(calculateKey(url, user, pass)).queryTime.get();
+        }
+        if (attr.equals(ATTR_QUERY_COUNT)) {
+            return getTarget(calculateKey(url, user, pass)).queryCount.get();
+        }
+        if (attr.equals(ATTR_QUERY_ROWS)) {
+            return getTarget(calculateKey(url, user, pass)).queryRows.get();
+        }
+
         initQueries();
         String query = getQuery(jdsn);
-        String attr = jdsn.getAttributeName();
 
         if (query == null) {
             //plugin bug or hq-plugin.xml typo bug
@@ -330,15 +536,13 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
 
         //ignore case to allow the stanard case "Availability"
         boolean isAvail = attr.equalsIgnoreCase(AVAIL_ATTR);
-        Properties props = jdsn.getProperties();
-        String
-            url = props.getProperty(PROP_URL),
-            user = props.getProperty(PROP_USER),
-            pass = props.getProperty(PROP_PASSWORD);
+
+        if (!logSql) {
+            return getSharedQueryValue(jdsn, query, isAvail, url, user, pass);
+        }
 
         Connection conn = null;
         Statement stmt = null;
-        ResultSet rs = null;
         
         try {
             conn = getCachedConnection(url, user, pass);
@@ -351,53 +555,197 @@ public abstract class JDBCMeasurementPlugin extends MeasurementPlugin {
                 return Metric.AVAIL_UP;
             }
 
-            int column = getColumn(jdsn);
-            if (logSql) {
-                _data = null;
-                _sqlLog = getSqlRow(stmt);
-            } else if (column != COL_INVALID) {
-                rs = stmt.getResultSet();
-                if (rs != null && rs.next()) {
-                    return rs.getDouble(column);
-                } else {
-                    throw new MetricNotFoundException(attr);
-                }
-            }
+            _data = null;
+            _sqlLog = getSqlRow(stmt);
             if (_data != null) {
                 return _data.doubleValue();
             }
-            return rs.getDouble(getColumnName(jdsn));
+            throw new MetricNotFoundException(attr);
         } catch (SQLException e) {
             // Remove this connection from the cache.
             removeCachedConnection(url, user, pass);
 
-            if (isAvail) {
-                log.debug("AVAIL_DOWN", e);
-                return Metric.AVAIL_DOWN;
+            return getFailedQueryValue(attr, query, isAvail, e);
+        } finally {
+            returnCachedConnection(url, user, pass, conn);
+            DBUtil.closeJDBCObjects(log, null, stmt, null);
+        }
+    }
+
+    private double getFailedQueryValue(String attr, String query,
+                                       boolean isAvail, SQLException e)
+        throws MetricNotFoundException, MetricUnreachableException
+    {
+        if (isAvail) {
+            log.debug("AVAIL_DOWN", e);
+            return Metric.AVAIL_DOWN;
+        }
+
+        String msg = "Query failed for " + attr +
+            ", while attempting to issue query " + query +
+            ":" + e.getMessage();
+
+        //XXX these two are oracle specific.
+        // Catch divide by 0 errors and return 0
+        if(e.getErrorCode() == DBUtil.ORACLE_ERROR_DIVIDE_BY_ZERO ||
+           e.getErrorCode() == DBUtil.POSTGRES_ERROR_DIVIDE_BY_ZERO)
+            return 0;
+        if(e.getErrorCode() == DBUtil.ORACLE_ERROR_NOT_AVAILABLE    ||
+           e.getErrorCode() == DBUtil.POSTGRES_CONNECTION_EXCEPTION ||
+           e.getErrorCode() == DBUtil.POSTGRES_CONNECTION_FAILURE   ||
+           e.getErrorCode() == DBUtil.POSTGRES_UNABLE_TO_CONNECT    ||
+           e.getErrorCode() == DBUtil.MYSQL_LOCAL_CONN_ERROR        ||
+           e.getErrorCode() == DBUtil.MYSQL_REMOTE_CONN_ERROR)
+            throw new MetricUnreachableException(msg, e);
+            
+        throw new MetricNotFoundException(msg, e);
+    }
+
+    private long getMaxAge(Metric metric) {
+        long interval = metric.getInterval();
+        if (interval > 0) {
+            return Math.min(QUERY_MAX_AGE, interval / 2);
+        }
+        return QUERY_MAX_AGE;
+    }
+
+    /**
+     * Serve the metric from the result of its query shared with the other
+     * metrics of the database.  The first metric to find the result older
+     * than the max age runs the query again, the others wait for it.
+     */
+    private double getSharedQueryValue(Metric jdsn, String query, boolean isAvail,
+                                       String url, String user, String pass)
+        throws MetricNotFoundException, MetricUnreachableException
+    {
+        String attr = jdsn.getAttributeName();
+        Target target = getTarget(calculateKey(url, user, pass));
+        QueryResult result = target.getResult(query);
+        long now = System.currentTimeMillis();
+        SQLException error;
+        Object[] row;
+        int column = getColumn(jdsn);
+
+        synchronized (result) {
+            result.used = now;
+            if ((now - result.fetched) > getMaxAge(jdsn)) {
+                runQuery(target, result, query, url, user, pass);
             }
+            error = result.error;
+            row = result.getRow(getRowKey(jdsn));
+            if (column == COL_INVALID) {
+                column = result.getColumn(getColumnName(jdsn));
+            }
+        }
+
+        if (error != null) {
+            return getFailedQueryValue(attr, query, isAvail, error);
+        }
+
+        // If the query executed without error, we don't care if any 
+        // results were returned.
+        if (isAvail) {
+            return Metric.AVAIL_UP;
+        }
+
+        if (row == null) {
+            return getMissingRowValue(jdsn);
+        }
+        if ((column < 1) || (column > row.length)) {
+            throw new MetricNotFoundException("Column for " + attr +
+                                              " not found in query " + query);
+        }
+
+        Object value = row[column-1];
+        if (value == null) {
+            return 0; //as ResultSet.getDouble
+        }
+        if (value instanceof Number) {
+            return ((Number)value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean)value).booleanValue() ? 1 : 0;
+        }
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new MetricNotFoundException("Value of " + attr +
+                                              " is not a number: " + value, e);
+        }
+    }
+
+    private void runQuery(Target target, QueryResult result, String query,
+                          String url, String user, String pass)
+        throws MetricUnreachableException
+    {
+        String cacheKey = calculateKey(url, user, pass);
+        Connection conn = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        List<Object[]> rows = new ArrayList<Object[]>();
+        String[] columns = new String[0];
 
-            String msg = "Query failed for " + attr +
-                ", while attempting to issue query " + query +
-                ":" + e.getMessage();
-
-            //XXX these two are oracle specific.
-            // Catch divide by 0 errors and return 0
-            if(e.getErrorCode() == DBUtil.ORACLE_ERROR_DIVIDE_BY_ZERO ||
-               e.getErrorCode() == DBUtil.POSTGRES_ERROR_DIVIDE_BY_ZERO)
-                return 0;
-            if(e.getErrorCode() == DBUtil.ORACLE_ERROR_NOT_AVAILABLE    ||
-               e.getErrorCode() == DBUtil.POSTGRES_CONNECTION_EXCEPTION ||
-               e.getErrorCode() == DBUtil.POSTGRES_CONNECTION_FAILURE   ||
-               e.getErrorCode() == DBUtil.POSTGRES_UNABLE_TO_CONNECT    ||
-               e.getErrorCode() == DBUtil.MYSQL_LOCAL_CONN_ERROR        ||
-               e.getErrorCode() == DBUtil.MYSQL_REMOTE_CONN_ERROR)
-                throw new MetricUnreachableException(msg, e);
-                
-            throw new MetricNotFoundException(msg, e);
+        try {
+            target.active.acquire();
+        } catch (InterruptedException e) {
+            //the collection was cancelled
+            Thread.currentThread().interrupt();
+            throw new MetricUnreachableException("Interrupted waiting to issue query " +
+                                                 query, e);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            conn = pollConnection(getPool(cacheKey));
+            if (conn == null) {
+                conn = getConnection(url, user, pass);
+                log.debug("[runQuery] Connection for '" + cacheKey + "' created");
+            }
+            stmt = conn.createStatement();
+            if (stmt.execute(query)) {
+                rs = stmt.getResultSet();
+                ResultSetMetaData md = rs.getMetaData();
+                columns = new String[md.getColumnCount()];
+                for (int i=0; i<columns.length; i++) {
+                    columns[i] = md.getColumnLabel(i+1);
+                }
+                while (rs.next()) {
+                    Object[] row = new Object[columns.length];
+                    for (int i=0; i<row.length; i++) {
+                        row[i] = rs.getObject(i+1);
+                    }
+                    rows.add(row);
+                }
+            }
+            result.error = null;
+        } catch (SQLException e) {
+            result.error = e;
+            removeCachedConnection(url, user, pass);
         } finally {
-            returnCachedConnection(url, user, pass, conn);
             DBUtil.closeJDBCObjects(log, null, stmt, rs);
+            if (result.error == null) {
+                returnCachedConnection(url, user, pass, conn);
+            } else if (conn != null) {
+                DBUtil.closeJDBCObjects(log, conn, null, null);
+            }
+            target.active.release();
         }
+
+        long time = System.currentTimeMillis() - start;
+        target.queryTime.addAndGet(time);
+        target.queryCount.incrementAndGet();
+        target.queryRows.addAndGet(rows.size());
+        if (log.isDebugEnabled()) {
+            log.debug("[runQuery] '" + query + "' returned " + rows.size() +
+                      " rows in " + time + "ms" +
+                      ((result.error == null) ? "" : ": " + result.error));
+        }
+
+        //even if the query failed the result is kept until it is due,
+        //so a database which is down is not queried by every metric
+        result.columns = columns;
+        result.rows = rows;
+        result.keyedRows = null;
+        result.fetched = System.currentTimeMillis();
     }
     
     private String getSqlRow(Statement stmt) throws SQLException {
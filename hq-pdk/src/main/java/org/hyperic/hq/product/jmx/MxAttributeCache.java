@@ -0,0 +1,242 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.product.jmx;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Fetches the attributes of an MBean that are collected as metrics with one
+ * getAttributes() call instead of one getAttribute() call each.  The
+ * attributes asked for are remembered per connection and ObjectName, and the
+ * first metric of a collection tick fetches all of them.  The values are
+ * kept for the ttl of the cache, long enough for the rest of the metrics of
+ * the tick to be served from memory.  Each {@link MxMeasurementPlugin} has
+ * its own cache.
+ */
+class MxAttributeCache {
+
+    static final String PROP_TTL = "jmx.batch.ttl";
+    static final long DEFAULT_TTL = 5000;
+    // entries not asked for in this long are dropped
+    private static final long STALE_TIME = 60 * 60 * 1000;
+
+    private static final Log log = LogFactory.getLog(MxAttributeCache.class);
+
+    private final long ttl;
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+    private long lastPrune = System.currentTimeMillis();
+
+    /**
+     * @param ttl ms to keep fetched values, 0 turns batching off.
+     */
+    MxAttributeCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param value the {@link #PROP_TTL} property, may be null
+     */
+    static MxAttributeCache create(String value) {
+        long ttl = DEFAULT_TTL;
+        if (value != null) {
+            try {
+                ttl = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid " + PROP_TTL + "=" + value + ", using " + ttl);
+            }
+        }
+        return new MxAttributeCache(ttl);
+    }
+
+    long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @param connection identifies the connection the values were fetched
+     * over, e.g. the url and credentials
+     */
+    Object getAttribute(Object connection, MBeanServerConnection mServer,
+                        ObjectName objName, String attribute)
+        throws IOException,
+               MBeanException,
+               AttributeNotFoundException,
+               InstanceNotFoundException,
+               ReflectionException {
+
+        if (ttl <= 0) {
+            return mServer.getAttribute(objName, attribute);
+        }
+        final Entry entry = getEntry(new Key(connection, objName));
+        String[] names = null;
+        synchronized (entry) {
+            entry.lastUsed = System.currentTimeMillis();
+            entry.attributes.add(attribute);
+            while (entry.fetching) {
+                try {
+                    entry.wait();
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted fetching " + objName);
+                }
+            }
+            if (!entry.isFresh()) {
+                entry.fetching = true;
+                names = entry.attributes.toArray(new String[entry.attributes.size()]);
+            } else if (entry.values.containsKey(attribute)) {
+                return entry.values.get(attribute);
+            }
+        }
+
+        if (names != null) {
+            Map<String, Object> values = null;
+            try {
+                long start = System.currentTimeMillis();
+                values = toMap(mServer.getAttributes(objName, names));
+                if (log.isDebugEnabled()) {
+                    log.debug("Fetched " + values.size() + "/" + names.length + " attributes of " +
+                              objName + " in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            } finally {
+                synchronized (entry) {
+                    if (values != null) {
+                        entry.values = values;
+                        entry.fetched = System.currentTimeMillis();
+                    }
+                    entry.fetching = false;
+                    entry.notifyAll();
+                }
+            }
+            synchronized (entry) {
+                if (values.containsKey(attribute)) {
+                    return values.get(attribute);
+                }
+            }
+        }
+
+        // not part of the last fetch, or getAttributes() failed for it: get
+        // it by itself for the value or the exception.  Other metrics of the
+        // MBean are not held up while it is fetched
+        Object value = mServer.getAttribute(objName, attribute);
+        synchronized (entry) {
+            if (entry.isFresh()) {
+                entry.values.put(attribute, value);
+            }
+        }
+        return value;
+    }
+
+    private static Map<String, Object> toMap(AttributeList list) {
+        Map<String, Object> rtn = new HashMap<String, Object>(list.size() * 2);
+        for (Object obj : (List<?>) list) {
+            Attribute attr = (Attribute) obj;
+            rtn.put(attr.getName(), attr.getValue());
+        }
+        return rtn;
+    }
+
+    private Entry getEntry(Key key) {
+        synchronized (entries) {
+            Entry rtn = entries.get(key);
+            if (rtn == null) {
+                prune();
+                rtn = new Entry();
+                entries.put(key, rtn);
+            }
+            return rtn;
+        }
+    }
+
+    private void prune() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune < STALE_TIME) {
+            return;
+        }
+        lastPrune = now;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            synchronized (entry) {
+                if (now - entry.lastUsed > STALE_TIME) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private class Entry {
+        private final Set<String> attributes = new HashSet<String>();
+        private Map<String, Object> values = new HashMap<String, Object>();
+        private long fetched = 0;
+        private long lastUsed;
+        private boolean fetching = false;
+
+        private boolean isFresh() {
+            return System.currentTimeMillis() - fetched < ttl;
+        }
+    }
+
+    private static class Key {
+        private final Object connection;
+        private final ObjectName objName;
+
+        private Key(Object connection, ObjectName objName) {
+            this.connection = connection;
+            this.objName = objName;
+        }
+
+        public boolean equals(Object rhs) {
+            if (this == rhs) {
+                return true;
+            }
+            if (!(rhs instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) rhs;
+            return key.connection.equals(connection) && key.objName.equals(objName);
+        }
+
+        public int hashCode() {
+            return connection.hashCode() * 31 + objName.hashCode();
+        }
+    }
+}
@@ -33,11 +33,23 @@ import org.hyperic.hq.product.MetricNotFoundException;
 import org.hyperic.hq.product.MetricUnreachableException;
 import org.hyperic.hq.product.MetricValue;
 import org.hyperic.hq.product.PluginException;
+import org.hyperic.hq.product.PluginManager;
 import org.hyperic.util.config.ConfigResponse;
 
 public class MxMeasurementPlugin
     extends MeasurementPlugin {
 
+    private MxAttributeCache attributeCache =
+        new MxAttributeCache(MxAttributeCache.DEFAULT_TTL);
+
+    public void init(PluginManager manager)
+        throws PluginException {
+
+        super.init(manager);
+        attributeCache =
+            MxAttributeCache.create(manager.getProperty(MxAttributeCache.PROP_TTL));
+    }
+
     private double doubleValue(Object obj)
         throws PluginException {
 
@@ -55,7 +67,7 @@ public class MxMeasurementPlugin
                MetricUnreachableException 
     {
         double doubleVal;
-        Object objectVal = MxUtil.getValue(metric);
+        Object objectVal = MxUtil.getValue(metric, attributeCache);
         String stringVal = objectVal.toString();
 
         //check for value mappings in plugin.xml:
@@ -279,6 +279,13 @@ public class MxUtil {
                ReflectionException,
                PluginException {
 
+        String[] attrKey = splitCompositeAttribute(attribute);
+        Object obj = mServer.getAttribute(objName, attrKey[0]);
+        return getCompositeValue(obj, attrKey[1]);
+    }
+
+    //e.g. "Composite.Usage.committed" -> {"Usage", "committed"}
+    private static String[] splitCompositeAttribute(String attribute) {
         String name =
             attribute.substring(COMPOSITE_PREFIX.length());
 
@@ -287,10 +294,11 @@ public class MxUtil {
             throw new MetricInvalidException("Missing composite key");
         }
 
-        String attr = name.substring(0, ix);
-        String key = name.substring(ix+1);
-        
-        Object obj = mServer.getAttribute(objName, attr);
+        return new String[] { name.substring(0, ix), name.substring(ix+1) };
+    }
+
+    private static Object getCompositeValue(Object obj, String key)
+        throws PluginException {
         if (obj instanceof CompositeData) {
             return MxCompositeData.getValue((CompositeData)obj, key);
         }
@@ -304,13 +312,26 @@ public class MxUtil {
                MetricInvalidException,
                MetricUnreachableException,
                PluginException
+    {
+        return getValue(metric, null);
+    }
+
+    /**
+     * @param attributeCache batches the attributes of an MBean, null to fetch each
+     * attribute by itself
+     */
+    static Object getValue(Metric metric, MxAttributeCache attributeCache)
+        throws MetricNotFoundException,
+               MetricInvalidException,
+               MetricUnreachableException,
+               PluginException
     {
         String objectName = Metric.decode(metric.getObjectName());
         String attribute = metric.getAttributeName();
         Properties config = metric.getProperties();
 
         try {
-            return getValue(config, objectName, attribute);
+            return getBatchedValue(config, objectName, attribute, attributeCache);
         } catch (MalformedURLException e) {
             throw invalidURL(metric.getProperties(), e);
         } catch (MalformedObjectNameException e) {
@@ -666,6 +687,43 @@ public class MxUtil {
         }
     }
 
+    /**
+     * Same as {@link #getValue(Properties, String, String)}, but plain and
+     * composite attributes are fetched together with the other attributes
+     * of the MBean collected during this tick, see {@link MxAttributeCache}.
+     */
+    private static Object getBatchedValue(Properties config, String objectName, String attribute,
+                                          MxAttributeCache attributeCache)
+    throws MalformedURLException,
+           MalformedObjectNameException,
+           IOException,
+           MBeanException,
+           AttributeNotFoundException,
+           InstanceNotFoundException,
+           ReflectionException,
+           PluginException {
+        if (attributeCache == null || attribute.startsWith(STATS_PREFIX)) {
+            return getValue(config, objectName, attribute);
+        }
+        ObjectName objName = new ObjectName(objectName);
+        JMXConnectorKey key = new JMXConnectorKey(config.getProperty(MxUtil.PROP_JMX_URL),
+                                                  config.getProperty(PROP_JMX_USERNAME),
+                                                  config.getProperty(PROP_JMX_PASSWORD));
+        JMXConnector connector = null;
+        try {
+            connector = getCachedMBeanConnector(config);
+            MBeanServerConnection mServer = connector.getMBeanServerConnection();
+            if (attribute.startsWith(COMPOSITE_PREFIX)) {
+                String[] attrKey = splitCompositeAttribute(attribute);
+                Object obj = attributeCache.getAttribute(key, mServer, objName, attrKey[0]);
+                return getCompositeValue(obj, attrKey[1]);
+            }
+            return attributeCache.getAttribute(key, mServer, objName, attribute);
+        } finally {
+            close(connector);
+        }
+    }
+
     private static Object setAttribute(MBeanServerConnection mServer,
                                        ObjectName obj,
                                        String name, Object value)
@@ -62,4 +62,13 @@ public interface SNMPSession {
     public SNMPValue getTableValue(String name, int index, String leaf) throws SNMPException;
 
     public List getBulk(String mibName) throws SNMPException;
+
+    /*
+     * Retrieves several columns with as few requests as possible.
+     * @param mibNames The names of the columns.
+     * @return a Map of column name to a List of SNMPValue objects.
+     * @exception SNMPException if an error occurs communicating with the SNMP
+     * agent.
+     */
+    public Map getColumns(String[] mibNames) throws SNMPException;
 }
@@ -18,7 +18,13 @@
 
 package org.hyperic.snmp;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import java.lang.reflect.Proxy;
 import java.lang.reflect.InvocationHandler;
@@ -32,14 +38,23 @@ import org.hyperic.util.timer.StopWatch;
 
 /*
  * SNMPSession interface cache. Cache is per-session instance. Currently
- * supports getColumn and getBulk methods only.
+ * supports getColumn, getBulk and getTable methods only.
+ *
+ * getColumn and getBulk share one cache.  The columns asked for are
+ * remembered, and when one has expired all the expired columns are walked
+ * together, so the metrics collected from a device at the same time cost a
+ * few requests between them.
  */
 class SNMPSessionCache implements InvocationHandler {
     private SNMPSession session;
 
     private HashMap columnCache = new HashMap();
-    private HashMap bulkCache = new HashMap();
     private HashMap tableCache = new HashMap();
+    // column names asked for through this session
+    private Set columnNames = new LinkedHashSet();
+
+    // more columns per walk make each response mostly request overhead
+    private static final int MAX_COALESCED_COLUMNS = 16;
 
     private static Log log = LogFactory.getLog(SNMPSessionCache.class);
 
@@ -132,21 +147,24 @@ class SNMPSessionCache implements InvocationHandler {
         long timeNow = 0;
 
         // Perhaps more later...
-        if (name.equals("getBulk")) {
-            cache = this.bulkCache;
+        if (name.equals("getBulk") || name.equals("getColumn")) {
+            cache = this.columnCache;
 
             cacheKey = args[0];
         } else if (name.equals("getTable")) {
             cache = this.tableCache;
 
             cacheKey = new Integer(args[0].hashCode() ^ args[1].hashCode());
-        } else if (name.equals("getColumn")) {
-            cache = this.columnCache;
+        }
 
-            cacheKey = args[0];
+        if (cache == null) {
+            return invoke(method, args, cacheKey);
         }
 
-        if (cache != null) {
+        // the lock only guards the cache, the requests are made outside it
+        List names = null;
+
+        synchronized (this) {
             timeNow = System.currentTimeMillis();
 
             cacheVal = getFromCache(timeNow, cache, name, cacheKey);
@@ -154,8 +172,110 @@ class SNMPSessionCache implements InvocationHandler {
             if (cacheVal.value != null) {
                 return cacheVal.value;
             }
+
+            if (cache == this.columnCache) {
+                this.columnNames.add(cacheKey);
+
+                names = getExpiredColumns(timeNow, (String) cacheKey);
+            }
+        }
+
+        if (names != null) {
+            Map columns = walkColumns(timeNow, names);
+
+            if (columns != null) {
+                synchronized (this) {
+                    for (Iterator it = columns.entrySet().iterator(); it.hasNext();) {
+                        Map.Entry entry = (Map.Entry) it.next();
+                        SNMPCacheObject column =
+                            getFromCache(timeNow, this.columnCache, "getColumn", entry.getKey());
+
+                        column.value = entry.getValue();
+                        column.timestamp = timeNow;
+                    }
+                }
+
+                retval = columns.get(cacheKey);
+
+                if (retval != null) {
+                    return retval;
+                }
+            }
+        }
+
+        retval = invoke(method, args, cacheKey);
+
+        synchronized (this) {
+            cacheVal.value = retval;
+            cacheVal.timestamp = timeNow;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(invokerToString(name, args, cacheKey) + " took: " + new StopWatch(timeNow));
+        }
+
+        return retval;
+    }
+
+    /**
+     * @return the requested column along with the other remembered columns
+     * which have expired, or null if there is nothing to walk along with name
+     */
+    private List getExpiredColumns(long timeNow, String name) {
+        List names = new ArrayList();
+
+        names.add(name);
+
+        for (Iterator it = this.columnNames.iterator(); it.hasNext() && names.size() < MAX_COALESCED_COLUMNS;) {
+            String column = (String) it.next();
+
+            if (column.equals(name)) {
+                continue;
+            }
+
+            SNMPCacheObject cacheVal = getFromCache(timeNow, this.columnCache, "getColumn", column);
+
+            if (cacheVal.value == null) {
+                names.add(column);
+            }
+        }
+
+        if (names.size() == 1) {
+            return null;
         }
 
+        return names;
+    }
+
+    /**
+     * Walks the columns together.
+     * @return the columns by name, or null if the combined walk failed
+     */
+    private Map walkColumns(long timeNow, List names) {
+        Map columns;
+
+        try {
+            columns = this.session.getColumns((String[]) names.toArray(new String[names.size()]));
+        } catch (SNMPException e) {
+            // walk them one by one to find out which one is the problem
+            if (log.isDebugEnabled()) {
+                log.debug("Walk of " + names + " failed: " + e.getMessage());
+            }
+
+            return null;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("getColumns(" + names + ") took: " + new StopWatch(timeNow));
+        }
+
+        return columns;
+    }
+
+    private Object invoke(Method method, Object[] args, Object cacheKey) throws SNMPException {
+        String name = method.getName();
+        Object retval;
+
         try {
             retval = method.invoke(this.session, args);
         } catch (InvocationTargetException e) {
@@ -183,15 +303,6 @@ class SNMPSessionCache implements InvocationHandler {
             throw new SNMPException(msg, e);
         }
 
-        if (cacheVal != null) {
-            cacheVal.value = retval;
-            cacheVal.timestamp = timeNow;
-
-            if (log.isDebugEnabled()) {
-                log.debug(invokerToString(name, args, cacheKey) + " took: " + new StopWatch(timeNow));
-            }
-        }
-
         return retval;
     }
 }
@@ -61,6 +61,12 @@ class SNMPSession_v1 implements SNMPSession {
     private static Snmp sessionInstance = null;
     protected static Log log = LogFactory.getLog("SNMPSession");
 
+    // variable bindings asked for per GETBULK response, adapted to what
+    // the agent manages to answer
+    private static final int MIN_BULK_SIZE = 10;
+    private static final int MAX_BULK_SIZE = 500;
+    private volatile int bulkSize = 40;
+
     private Snmp getSessionInstance() throws IOException {
         if (sessionInstance == null) {
             String listen = "0.0.0.0/0";
@@ -250,6 +256,10 @@ class SNMPSession_v1 implements SNMPSession {
     }
 
     public List getColumn(String name) throws SNMPException {
+        if (isBulkSupported()) {
+            return (List) getColumns(new String[] { name }).get(name);
+        }
+
         List values = new ArrayList();
 
         try {
@@ -333,4 +343,135 @@ class SNMPSession_v1 implements SNMPSession {
     public List getBulk(String name) throws SNMPException {
         return getColumn(name);
     }
+
+    public Map getColumns(String[] names) throws SNMPException {
+        OID[] roots = new OID[names.length];
+        for (int i = 0; i < names.length; i++) {
+            roots[i] = getOID(names[i]);
+        }
+        List[] columns;
+        try {
+            columns = walkColumns(roots);
+        } catch (IOException e) {
+            throw new SNMPException(e.getMessage(), e);
+        }
+        Map rtn = new HashMap();
+        for (int i = 0; i < names.length; i++) {
+            rtn.put(names[i], columns[i]);
+        }
+        return rtn;
+    }
+
+    protected boolean isBulkSupported() {
+        return this.version != SnmpConstants.version1;
+    }
+
+    /**
+     * Walks several columns at once: each request carries the next OID of
+     * every column not yet finished.  SNMPv2c/v3 agents are sent GETBULK
+     * requests for as many rows as fit in the current bulk size, which is
+     * halved when the agent answers tooBig or not at all and doubled
+     * otherwise.  SNMPv1 agents get one GETNEXT row per request.
+     */
+    private List[] walkColumns(OID[] roots) throws IOException, SNMPException {
+        List[] columns = new List[roots.length];
+        OID[] next = new OID[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            columns[i] = new ArrayList();
+            next[i] = roots[i];
+        }
+        final boolean bulk = isBulkSupported();
+        int requests = 0;
+        int vars = 0;
+        List active = new ArrayList();
+        for (int i = 0; i < roots.length; i++) {
+            active.add(new Integer(i));
+        }
+        while (!active.isEmpty()) {
+            int width = active.size();
+            PDU request = newPDU();
+            int rows = 1;
+            if (bulk) {
+                rows = Math.max(1, this.bulkSize / width);
+                request.setType(PDU.GETBULK);
+                request.setMaxRepetitions(rows);
+                request.setNonRepeaters(0);
+            } else {
+                request.setType(PDU.GETNEXT);
+            }
+            for (int i = 0; i < width; i++) {
+                int col = ((Integer) active.get(i)).intValue();
+                request.add(new VariableBinding(next[col]));
+            }
+
+            requests++;
+            ResponseEvent event = this.session.send(request, this.target);
+            PDU response = (event == null) ? null : event.getResponse();
+            if (bulk && (response == null || response.getErrorStatus() == PDU.tooBig)) {
+                int reduced = Math.max(MIN_BULK_SIZE, this.bulkSize / 2);
+                if (reduced < this.bulkSize) {
+                    this.bulkSize = reduced;
+                    log.debug("Reduced GETBULK size to " + this.bulkSize + " vars for " + this.target.getAddress());
+                    // retry tooBig right away, a timeout fails this walk
+                    if (response != null && rows > 1) {
+                        continue;
+                    }
+                }
+            }
+            validateResponsePDU(roots[0].toString(), response);
+            if (!bulk && response.getErrorStatus() == PDU.noSuchName) {
+                // an SNMPv1 agent fails the whole request when one of the
+                // columns is at the end of its view, drop that column
+                int index = response.getErrorIndex() - 1;
+                if (index < 0 || index >= width) {
+                    break;
+                }
+                active.remove(index);
+                continue;
+            }
+            if (response.getErrorStatus() != PDU.noError) {
+                throw new SNMPException("Walk of " + roots[0] + " failed: " + response.getErrorStatusText());
+            }
+
+            List stillActive = new ArrayList();
+            int size = response.size();
+            if (size == 0) {
+                // nothing to go on, keep what was walked so far
+                log.debug("Empty response walking " + roots[0] + " on " + this.target.getAddress());
+                break;
+            }
+            vars += size;
+            for (int i = 0; i < width; i++) {
+                int col = ((Integer) active.get(i)).intValue();
+                boolean done = false;
+                int row = 0;
+                // responses are laid out row by row
+                for (; row < rows && (row * width + i) < size; row++) {
+                    VariableBinding vb = response.get(row * width + i);
+                    OID oid = vb.getOid();
+                    if (vb.isException() || !oid.startsWith(roots[col]) || oid.compareTo(next[col]) <= 0) {
+                        done = true;
+                        break;
+                    }
+                    columns[col].add(new SNMPValue(vb));
+                    next[col] = oid;
+                }
+                // a column the agent had no room for in a truncated
+                // response is asked for again from where it stands
+                if (!done) {
+                    stillActive.add(active.get(i));
+                }
+            }
+            active = stillActive;
+            if (bulk && size >= rows * width && this.bulkSize < MAX_BULK_SIZE) {
+                this.bulkSize = Math.min(MAX_BULK_SIZE, this.bulkSize * 2);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(roots.length + " column walk from " + roots[0] + ": " + requests + " requests, " +
+                      vars + " vars, bulk size=" + this.bulkSize);
+        }
+        return columns;
+    }
 }
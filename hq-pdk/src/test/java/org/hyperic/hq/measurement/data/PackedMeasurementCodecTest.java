@@ -0,0 +1,92 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2009], Hyperic, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.product.MetricValue;
+
+public class PackedMeasurementCodecTest extends TestCase {
+
+    private static Map<String, Double> flatten(DSNList[] cids) {
+        final Map<String, Double> rtn = new HashMap<String, Double>();
+        for (int i = 0; i < cids.length; i++) {
+            final ValueList[] dsns = cids[i].getDsns();
+            for (int j = 0; j < dsns.length; j++) {
+                final MetricValue[] values = dsns[j].getValues();
+                for (int k = 0; k < values.length; k++) {
+                    rtn.put(cids[i].getClientId() + "/" + dsns[j].getDsnId() + "@" +
+                            values[k].getTimestamp(), values[k].getValue());
+                }
+            }
+        }
+        return rtn;
+    }
+
+    public void testRoundTrip() {
+        final MeasurementReportConstructor con = new MeasurementReportConstructor();
+        final long now = 1300000000000L;
+        final double[] specials = { 0, -0.0, 1, 1.5, -42, Double.NaN, Double.MAX_VALUE,
+                                    Double.MIN_VALUE, Double.POSITIVE_INFINITY, 123456.789 };
+        for (int mid = 0; mid < 50; mid++) {
+            for (int i = 0; i < 5; i++) {
+                final double value = (mid < specials.length) ? specials[(mid + i) % specials.length]
+                                                             : mid * 10 + (i % 2);
+                con.addDataPoint(10000 + mid * 7, 500 - mid, new MetricValue(value, now + i * 60000L +
+                                 (i == 3 ? -17 : 0)));
+            }
+        }
+        con.addDataPoint(Integer.MAX_VALUE, Integer.MIN_VALUE, new MetricValue(3, 0));
+        final DSNList[] cids = con.constructDSNList();
+
+        final byte[] packed = PackedMeasurementCodec.encode(cids);
+        assertEquals(flatten(cids), flatten(PackedMeasurementCodec.decode(packed)));
+        // 251 points at 24 bytes each in the list encoding
+        assertTrue("packed to " + packed.length, packed.length < 251 * 24 / 4);
+    }
+
+    public void testEmptyReport() {
+        final DSNList[] cids = PackedMeasurementCodec.decode(PackedMeasurementCodec.encode(new DSNList[0]));
+        assertEquals(0, cids.length);
+    }
+
+    public void testTruncatedReportIsRejected() {
+        final MeasurementReportConstructor con = new MeasurementReportConstructor();
+        con.addDataPoint(1, 2, new MetricValue(Math.PI, 1000));
+        con.addDataPoint(1, 2, new MetricValue(Math.E, 2000));
+        final byte[] packed = PackedMeasurementCodec.encode(con.constructDSNList());
+        final byte[] truncated = new byte[packed.length - 2];
+        System.arraycopy(packed, 0, truncated, 0, truncated.length);
+        try {
+            PackedMeasurementCodec.decode(truncated);
+            fail("decoded a truncated report");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2009], Hyperic, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.product;
+
+import org.hyperic.util.config.ConfigResponse;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the publishing of Collector results.
+ */
+public class CollectorTest extends TestCase {
+
+    private static class TestCollector extends Collector {
+        boolean isDeferring;
+
+        public void collect() {
+            if (this.isDeferring) {
+                deferResult();
+            }
+            setAvailability(true);
+        }
+    }
+
+    private TestCollector collector;
+
+    public CollectorTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        GenericPlugin plugin = new GenericPlugin() {};
+        plugin.setName("collector-test-" + getName());
+        ConfigResponse config = new ConfigResponse();
+        config.setValue("hostname", getName());
+        this.collector = new TestCollector();
+        this.collector.init(plugin, config);
+    }
+
+    private CollectorResult getPublished() {
+        return (CollectorResult)Collector.PluginContainer.get(this.collector.getPlugin())
+            .results.get(this.collector.getProperties());
+    }
+
+    public void testResultPublishedByRun() throws Exception {
+        this.collector.run();
+        assertNotNull(getPublished());
+        assertEquals(Metric.AVAIL_UP,
+                     getPublished().getMetricValue(Metric.ATTR_AVAIL).getValue(), 0);
+    }
+
+    public void testDeferredResultPublishedOnComplete() throws Exception {
+        this.collector.isDeferring = true;
+        this.collector.run();
+        assertNull(getPublished());
+
+        this.collector.completeResult();
+        assertNotNull(getPublished());
+        assertEquals(Metric.AVAIL_UP,
+                     getPublished().getMetricValue(Metric.ATTR_AVAIL).getValue(), 0);
+    }
+}
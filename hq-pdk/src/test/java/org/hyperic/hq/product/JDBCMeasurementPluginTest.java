@@ -0,0 +1,242 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2009], Hyperic, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.product;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the queries shared by the metrics of a JDBCMeasurementPlugin.
+ */
+public class JDBCMeasurementPluginTest extends TestCase {
+
+    private static final String[] COLUMNS = { "name", "reads", "writes" };
+    private static final Object[][] ROWS = {
+        { "t1", new Integer(10), new Long(20) },
+        { "t2", new Integer(30), null }
+    };
+
+    /**
+     * Serves every metric from a fake query returning ROWS,
+     * keyed by the "table" property of the metric.
+     */
+    private static class TestPlugin extends JDBCMeasurementPlugin {
+        int queries = 0;
+        int connections = 0;
+
+        protected void initQueries() {
+        }
+
+        protected String getQuery(Metric metric) {
+            return "select name, reads, writes from tables";
+        }
+
+        protected void getDriver() {
+        }
+
+        protected String getDefaultURL() {
+            return null;
+        }
+
+        protected String getRowKey(Metric metric) {
+            return metric.getObjectProperty(PROP_TABLE);
+        }
+
+        protected int getColumn(Metric metric) {
+            return COL_INVALID;
+        }
+
+        protected String getColumnName(Metric metric) {
+            return metric.getAttributeName();
+        }
+
+        protected Connection getConnection(String url, String user, String password) {
+            this.connections++;
+            return (Connection)proxy(Connection.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("createStatement")) {
+                        return createStatement();
+                    }
+                    if (method.getName().equals("isClosed")) {
+                        return Boolean.FALSE;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private Statement createStatement() {
+            return (Statement)proxy(Statement.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("execute")) {
+                        queries++;
+                        return Boolean.TRUE;
+                    }
+                    if (method.getName().equals("getResultSet")) {
+                        return createResultSet();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private ResultSet createResultSet() {
+            final int[] row = { -1 };
+            final ResultSetMetaData md = (ResultSetMetaData)
+                proxy(ResultSetMetaData.class, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getColumnCount")) {
+                            return new Integer(COLUMNS.length);
+                        }
+                        if (method.getName().equals("getColumnLabel")) {
+                            return COLUMNS[((Integer)args[0]).intValue()-1];
+                        }
+                        return null;
+                    }
+                });
+            return (ResultSet)proxy(ResultSet.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getMetaData")) {
+                        return md;
+                    }
+                    if (method.getName().equals("next")) {
+                        return Boolean.valueOf(++row[0] < ROWS.length);
+                    }
+                    if (method.getName().equals("getObject")) {
+                        return ROWS[row[0]][((Integer)args[0]).intValue()-1];
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static Object proxy(Class type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(JDBCMeasurementPluginTest.class.getClassLoader(),
+                                      new Class[] { type }, handler);
+    }
+
+    private static Metric getMetric(String url, String table, String attr) {
+        return Metric.parse("test:" + JDBCMeasurementPlugin.PROP_TABLE + "=" + table + ":" + attr +
+                            ":" + JDBCMeasurementPlugin.PROP_URL + "=" + url +
+                            "," + JDBCMeasurementPlugin.PROP_USER + "=test");
+    }
+
+    public JDBCMeasurementPluginTest(String name) {
+        super(name);
+    }
+
+    public void testMetricsShareQuery() throws Exception {
+        TestPlugin plugin = new TestPlugin();
+
+        assertEquals(10, plugin.getQueryValue(getMetric("shared", "t1", "reads")), 0);
+        assertEquals(20, plugin.getQueryValue(getMetric("shared", "t1", "writes")), 0);
+        assertEquals(30, plugin.getQueryValue(getMetric("shared", "t2", "reads")), 0);
+        assertEquals(0, plugin.getQueryValue(getMetric("shared", "t2", "writes")), 0);
+        assertEquals(Metric.AVAIL_UP,
+                     plugin.getQueryValue(getMetric("shared", "t2", "Availability")), 0);
+
+        assertEquals(1, plugin.queries);
+        assertEquals(1, plugin.connections);
+
+        Metric stats = getMetric("shared", "t1", JDBCMeasurementPlugin.ATTR_QUERY_ROWS);
+        assertEquals(ROWS.length, plugin.getQueryValue(stats), 0);
+        stats = getMetric("shared", "t1", JDBCMeasurementPlugin.ATTR_QUERY_COUNT);
+        assertEquals(1, plugin.getQueryValue(stats), 0);
+    }
+
+    public void testMissingRowOrColumn() throws Exception {
+        TestPlugin plugin = new TestPlugin();
+
+        try {
+            plugin.getQueryValue(getMetric("missing", "t3", "reads"));
+            fail("row t3 does not exist");
+        } catch (MetricNotFoundException e) {
+        }
+        try {
+            plugin.getQueryValue(getMetric("missing", "t1", "deletes"));
+            fail("column deletes does not exist");
+        } catch (MetricNotFoundException e) {
+        }
+        assertEquals(1, plugin.queries);
+    }
+
+    public void testMissingRowValue() throws Exception {
+        TestPlugin plugin = new TestPlugin() {
+            protected double getMissingRowValue(Metric metric) throws MetricNotFoundException {
+                if (metric.getAttributeName().equals("reads")) {
+                    return 0;
+                }
+                return super.getMissingRowValue(metric);
+            }
+        };
+
+        assertEquals(0, plugin.getQueryValue(getMetric("missingValue", "t3", "reads")), 0);
+        try {
+            plugin.getQueryValue(getMetric("missingValue", "t3", "writes"));
+            fail("row t3 does not exist");
+        } catch (MetricNotFoundException e) {
+        }
+    }
+
+    public void testInterruptedQuery() throws Exception {
+        TestPlugin plugin = new TestPlugin();
+
+        Thread.currentThread().interrupt();
+        try {
+            plugin.getQueryValue(getMetric("interrupted", "t1", "reads"));
+            fail("the interrupted collection issued its query");
+        } catch (MetricUnreachableException e) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, plugin.queries);
+
+        assertEquals(10, plugin.getQueryValue(getMetric("interrupted", "t1", "reads")), 0);
+        assertEquals(1, plugin.queries);
+    }
+
+    public void testDueResultIsQueriedAgain() throws Exception {
+        TestPlugin plugin = new TestPlugin();
+        Metric metric = getMetric("interval", "t1", "reads");
+        metric.setInterval(2);
+
+        plugin.getQueryValue(metric);
+        Thread.sleep(10);
+        plugin.getQueryValue(metric);
+
+        assertEquals(2, plugin.queries);
+        //the connection was returned to the pool and reused
+        assertEquals(1, plugin.connections);
+    }
+}
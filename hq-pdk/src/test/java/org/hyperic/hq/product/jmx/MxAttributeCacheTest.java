@@ -0,0 +1,172 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.product.jmx;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class MxAttributeCacheTest extends TestCase {
+
+    private static final String CONNECTION = "service:jmx:rmi:///jndi/rmi://localhost:1099/jmxrmi";
+
+    private MBeanServer server;
+    private ObjectName name;
+    private AtomicInteger getAttributeCalls;
+    private AtomicInteger getAttributesCalls;
+    private MBeanServerConnection connection;
+
+    public interface CounterMBean {
+        int getFast();
+
+        int getOther();
+
+        int getSlow();
+    }
+
+    public static class Counter implements CounterMBean {
+        public int getFast() {
+            return 1;
+        }
+
+        public int getOther() {
+            return 2;
+        }
+
+        public int getSlow() {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 3;
+        }
+    }
+
+    public void setUp() throws Exception {
+        server = MBeanServerFactory.newMBeanServer();
+        name = new ObjectName("test:type=Counter");
+        server.registerMBean(new Counter(), name);
+        getAttributeCalls = new AtomicInteger();
+        getAttributesCalls = new AtomicInteger();
+        connection = (MBeanServerConnection) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class[] { MBeanServerConnection.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getAttribute")) {
+                        getAttributeCalls.incrementAndGet();
+                    } else if (method.getName().equals("getAttributes")) {
+                        getAttributesCalls.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(server, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            });
+    }
+
+    public void testAttributesFetchedTogether() throws Exception {
+        MxAttributeCache cache = new MxAttributeCache(100);
+        // the first tick learns which attributes are collected
+        assertEquals(1, cache.getAttribute(CONNECTION, connection, name, "Fast"));
+        assertEquals(2, cache.getAttribute(CONNECTION, connection, name, "Other"));
+        assertEquals(1, getAttributesCalls.get());
+        assertEquals(1, getAttributeCalls.get());
+
+        Thread.sleep(200);
+        assertEquals(1, cache.getAttribute(CONNECTION, connection, name, "Fast"));
+        assertEquals(2, cache.getAttribute(CONNECTION, connection, name, "Other"));
+        assertEquals(2, getAttributesCalls.get());
+        assertEquals(1, getAttributeCalls.get());
+    }
+
+    public void testTtlIsPerCache() throws Exception {
+        MxAttributeCache batched = new MxAttributeCache(60000);
+        MxAttributeCache direct = MxAttributeCache.create("0");
+        assertEquals(0, direct.getTtl());
+
+        batched.getAttribute(CONNECTION, connection, name, "Fast");
+        batched.getAttribute(CONNECTION, connection, name, "Fast");
+        direct.getAttribute(CONNECTION, connection, name, "Fast");
+        direct.getAttribute(CONNECTION, connection, name, "Fast");
+        assertEquals(1, getAttributesCalls.get());
+        assertEquals(2, getAttributeCalls.get());
+        assertEquals(60000, batched.getTtl());
+    }
+
+    public void testInvalidTtl() throws Exception {
+        assertEquals(MxAttributeCache.DEFAULT_TTL, MxAttributeCache.create("soon").getTtl());
+        assertEquals(MxAttributeCache.DEFAULT_TTL, MxAttributeCache.create(null).getTtl());
+    }
+
+    public void testMissingAttribute() throws Exception {
+        MxAttributeCache cache = new MxAttributeCache(60000);
+        cache.getAttribute(CONNECTION, connection, name, "Fast");
+        try {
+            cache.getAttribute(CONNECTION, connection, name, "Missing");
+            fail("Expected AttributeNotFoundException");
+        } catch (AttributeNotFoundException e) {
+            // expected
+        }
+        assertEquals(1, cache.getAttribute(CONNECTION, connection, name, "Fast"));
+    }
+
+    public void testSlowAttributeDoesNotHoldUpOthers() throws Exception {
+        final MxAttributeCache cache = new MxAttributeCache(60000);
+        cache.getAttribute(CONNECTION, connection, name, "Fast");
+
+        // Slow is not part of the last fetch, so it is fetched by itself
+        Thread slow = new Thread() {
+            public void run() {
+                try {
+                    cache.getAttribute(CONNECTION, connection, name, "Slow");
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        slow.start();
+        Thread.sleep(100);
+
+        long start = System.currentTimeMillis();
+        assertEquals(1, cache.getAttribute(CONNECTION, connection, name, "Fast"));
+        assertTrue("Waited for the slow attribute",
+                   System.currentTimeMillis() - start < 500);
+        slow.join();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.snmp;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+public class SNMPSessionTest extends TestCase {
+
+    private static final String COLUMN_1 = "1.3.6.1.4.1.9999.1";
+    private static final String COLUMN_2 = "1.3.6.1.4.1.9999.2";
+    private static final int ROWS = 5;
+
+    /**
+     * Answers GETBULK requests from a table, cutting responses down to at
+     * most maxVars variable bindings.
+     */
+    private static class TableAgent extends Snmp {
+        private final TreeMap<OID, Variable> table = new TreeMap<OID, Variable>();
+        private final int[] maxVars;
+        private int requests = 0;
+
+        TableAgent(int[] maxVars) {
+            super((TransportMapping) null);
+            this.maxVars = maxVars;
+            for (int row = 1; row <= ROWS; row++) {
+                table.put(new OID(COLUMN_1 + "." + row), new Integer32(row));
+                table.put(new OID(COLUMN_2 + "." + row), new Integer32(row * 10));
+            }
+            table.put(new OID("1.3.6.1.4.1.9999.3.1"), new Integer32(0));
+        }
+
+        public ResponseEvent send(PDU request, Target target) throws IOException {
+            int limit = (requests < maxVars.length) ? maxVars[requests] : Integer.MAX_VALUE;
+            requests++;
+            PDU response = new PDU();
+            response.setType(PDU.RESPONSE);
+            int width = request.size();
+            OID[] next = new OID[width];
+            for (int i = 0; i < width; i++) {
+                next[i] = request.get(i).getOid();
+            }
+            for (int row = 0; row < request.getMaxRepetitions(); row++) {
+                for (int i = 0; i < width; i++) {
+                    if (response.size() >= limit) {
+                        return new ResponseEvent(this, null, request, response, null);
+                    }
+                    OID oid = next(next[i]);
+                    if (oid == null) {
+                        VariableBinding vb = new VariableBinding(next[i], Null.endOfMibView);
+                        response.add(vb);
+                    } else {
+                        response.add(new VariableBinding(oid, table.get(oid)));
+                        next[i] = oid;
+                    }
+                }
+            }
+            return new ResponseEvent(this, null, request, response, null);
+        }
+
+        private OID next(OID oid) {
+            SortedMap<OID, Variable> tail = table.tailMap(oid);
+            for (Iterator<OID> it = tail.keySet().iterator(); it.hasNext();) {
+                OID key = it.next();
+                if (key.compareTo(oid) > 0) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+
+    private Map walk(TableAgent agent) throws SNMPException {
+        SNMPSession_v2c session = new SNMPSession_v2c();
+        session.session = agent;
+        session.target = new CommunityTarget();
+        return session.getColumns(new String[] { COLUMN_1, COLUMN_2 });
+    }
+
+    private void assertColumn(List column, int factor) {
+        assertEquals(ROWS, column.size());
+        for (int row = 1; row <= ROWS; row++) {
+            assertEquals(row * factor, ((SNMPValue) column.get(row - 1)).toLong());
+        }
+    }
+
+    public void testWalkColumns() throws Exception {
+        Map columns = walk(new TableAgent(new int[0]));
+        assertColumn((List) columns.get(COLUMN_1), 1);
+        assertColumn((List) columns.get(COLUMN_2), 10);
+    }
+
+    public void testTruncatedResponse() throws Exception {
+        // the first response only has room for the first column
+        Map columns = walk(new TableAgent(new int[] { 1, 3 }));
+        assertColumn((List) columns.get(COLUMN_1), 1);
+        assertColumn((List) columns.get(COLUMN_2), 10);
+    }
+}
@@ -56,7 +56,7 @@ public class MySQLMeasurementPlugin
     static final String JDBC_DRIVER = "com.mysql.jdbc.Driver";
 
     // Measurement Queries
-    private static final String STATUSQUERY = "SHOW /*!50002 GLOBAL */ STATUS LIKE ";
+    private static final String STATUSQUERY = "SHOW /*!50002 GLOBAL */ STATUS";
     private static final String TABLEQUERY  = "SHOW TABLE STATUS LIKE %table%";
     private static final String INDEXQUERY  = "SHOW INDEX FROM %table%";
     private static final String DBQUERY     = "SHOW TABLE STATUS";
@@ -148,6 +148,23 @@ public class MySQLMeasurementPlugin
             attr.equals("AvgCardinality");
     }
 
+    private boolean isTableMetric(Metric metric) {
+        return metric.getObjectProperties().getProperty("Type").
+            equals(MySQLServerDetector.TABLE);
+    }
+
+    /**
+     * The server status metrics share one SHOW STATUS, each is served
+     * from the row of its variable.
+     */
+    protected String getRowKey(Metric metric) {
+        String attr = metric.getAttributeName();
+        if (isIndexMetric(attr) || isTableMetric(metric) || isCumulativeMetric(attr)) {
+            return null;
+        }
+        return attr;
+    }
+
     public MetricValue getValue(Metric metric)
         throws PluginException,
                MetricUnreachableException,
@@ -204,8 +221,7 @@ public class MySQLMeasurementPlugin
             return StringUtil.replace(INDEXQUERY, "%table%", table);
         }
         
-        if (objectProps.getProperty("Type").
-            equals(MySQLServerDetector.TABLE)) {
+        if (isTableMetric(metric)) {
             String table = objectProps.getProperty(PROP_TABLE);
             if (table == null) {
                 // Backwards compat
@@ -219,7 +235,7 @@ public class MySQLMeasurementPlugin
             return DBQUERY;
         }
 
-        return STATUSQUERY + "'" + queryVal + "'";
+        return STATUSQUERY;
     }
 
     public ConfigSchema getConfigSchema(TypeInfo info, ConfigResponse config)
@@ -0,0 +1,614 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ * 
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of HQ.
+ * 
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.plugin.netservices;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.util.thread.ThreadGroupFactory;
+
+/**
+ * Runs the socket checks of the net services collectors on a shared
+ * Selector.  The connect, the TLS handshake and the CheckScript of each
+ * check are driven as a state machine by a single thread, so an endpoint
+ * which is slow or hangs doesn't hold a collector thread.  The delegated
+ * tasks of the TLS handshakes, mostly certificate checks, run on a few
+ * threads of their own so they don't hold up the other checks.
+ */
+class CheckEngine implements Runnable {
+
+    private static Log log = LogFactory.getLog(CheckEngine.class.getName());
+
+    private static final int TASK_THREADS = 2;
+    private static final int MAX_LINE = 8192;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static CheckEngine instance = null;
+
+    private final Selector selector;
+    private final Executor tasks;
+    private final Queue<Check> submitted = new ConcurrentLinkedQueue<Check>();
+    // checks whose delegated TLS tasks are done
+    private final Queue<Check> resumed = new ConcurrentLinkedQueue<Check>();
+
+    CheckEngine(Selector selector, Executor tasks) {
+        this.selector = selector;
+        this.tasks = tasks;
+    }
+
+    static synchronized CheckEngine getInstance() throws IOException {
+        if (instance == null) {
+            ThreadGroupFactory factory = new ThreadGroupFactory("NetServicesCheckTask-");
+            factory.createDaemonThreads(true);
+            ExecutorService tasks =
+                new ThreadPoolExecutor(TASK_THREADS, TASK_THREADS, 60, TimeUnit.SECONDS,
+                                       new LinkedBlockingQueue<Runnable>(), factory);
+            ((ThreadPoolExecutor)tasks).allowCoreThreadTimeOut(true);
+            CheckEngine engine = new CheckEngine(Selector.open(), tasks);
+            Thread thread = new Thread(engine, "NetServicesCheckEngine");
+            thread.setDaemon(true);
+            thread.start();
+            instance = engine;
+        }
+        return instance;
+    }
+
+    void submit(Check check) {
+        this.submitted.add(check);
+        this.selector.wakeup();
+    }
+
+    private void resume(Check check) {
+        this.resumed.add(check);
+        this.selector.wakeup();
+    }
+
+    public void run() {
+        // no check expires before, checks only ever move their deadline on
+        long nextDeadline = Long.MAX_VALUE;
+        while (true) {
+            try {
+                long now = System.currentTimeMillis();
+                if (nextDeadline == Long.MAX_VALUE) {
+                    this.selector.select();
+                }
+                else if (nextDeadline > now) {
+                    this.selector.select(nextDeadline - now);
+                }
+                else {
+                    this.selector.selectNow();
+                }
+
+                for (Check check; (check = this.submitted.poll()) != null;) {
+                    check.start(this);
+                    nextDeadline = Math.min(nextDeadline, check.deadline);
+                }
+
+                for (Check check; (check = this.resumed.poll()) != null;) {
+                    check.resume();
+                }
+
+                Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    ((Check)key.attachment()).ready(key);
+                }
+
+                now = System.currentTimeMillis();
+                if (now >= nextDeadline) {
+                    nextDeadline = Long.MAX_VALUE;
+                    for (SelectionKey key : this.selector.keys()) {
+                        Check check = (Check)key.attachment();
+                        check.expire(now);
+                        if (!check.isDone) {
+                            nextDeadline = Math.min(nextDeadline, check.deadline);
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                log.error("Error running checks: " + t, t);
+            }
+        }
+    }
+
+    /**
+     * A check of one endpoint, from the connect to the end of its script.
+     */
+    static class Check {
+        private final SocketChecker collector;
+        private final InetSocketAddress address;
+        private final SSLContext sslContext;
+        private final List<CheckScript.Step> steps;
+        private final long timeout;
+
+        private CheckEngine engine;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private SSLEngine ssl;
+        private ByteBuffer netIn, netOut, appIn, appOut;
+        private final StringBuilder line = new StringBuilder();
+        private boolean isContinued = false;
+        private boolean isRunningTasks = false;
+        private int step = 0;
+
+        private long started, connected = -1, firstByte = -1, deadline;
+        private boolean isDone = false, isAvailable = false;
+        private String message;
+        private IOException failure;
+
+        Check(SocketChecker collector, InetSocketAddress address,
+              SSLContext sslContext, CheckScript script, long timeout) {
+            this.collector = collector;
+            this.address = address;
+            this.sslContext = sslContext;
+            this.steps = script.getSteps();
+            this.timeout = timeout;
+        }
+
+        /**
+         * @return true if the endpoint answered as expected
+         */
+        boolean isAvailable() {
+            return this.isAvailable;
+        }
+
+        /**
+         * @return the I/O error which ended the check, if any
+         */
+        IOException getFailure() {
+            return this.failure;
+        }
+
+        String getMessage() {
+            return this.message;
+        }
+
+        /**
+         * @return milliseconds to connect, -1 if the check didn't connect
+         */
+        long getConnectTime() {
+            return (this.connected == -1) ? -1 : this.connected - this.started;
+        }
+
+        /**
+         * @return milliseconds to the first byte received, -1 if none was
+         */
+        long getFirstByteTime() {
+            return (this.firstByte == -1) ? -1 : this.firstByte - this.started;
+        }
+
+        private void start(CheckEngine engine) {
+            this.engine = engine;
+            this.started = System.currentTimeMillis();
+            this.deadline = this.started + this.timeout;
+            try {
+                this.channel = SocketChannel.open();
+                this.channel.configureBlocking(false);
+                this.key = this.channel.register(engine.selector, 0, this);
+                if (this.channel.connect(this.address)) {
+                    connected();
+                }
+                else {
+                    this.key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (IOException e) {
+                fail("connect " + this.address, e);
+            } catch (UnresolvedAddressException e) {
+                fail("connect " + this.address,
+                     new UnknownHostException(this.address.getHostName()));
+            } catch (RuntimeException e) {
+                IOException failure = new IOException(e.toString());
+                failure.initCause(e);
+                fail("connect " + this.address, failure);
+            }
+        }
+
+        private void ready(SelectionKey key) {
+            if (this.isDone || this.isRunningTasks || !key.isValid()) {
+                return;
+            }
+            try {
+                if (key.isConnectable()) {
+                    if (this.channel.finishConnect()) {
+                        connected();
+                    }
+                }
+                else {
+                    advance();
+                }
+            } catch (IOException e) {
+                fail(getPhase(), e);
+            }
+        }
+
+        /**
+         * Goes on once the delegated TLS tasks are done.
+         */
+        private void resume() {
+            this.isRunningTasks = false;
+            if (this.isDone) {
+                return;
+            }
+            try {
+                advance();
+            } catch (IOException e) {
+                fail(getPhase(), e);
+            }
+        }
+
+        private void expire(long now) {
+            if (!this.isDone && (now >= this.deadline)) {
+                fail(getPhase(), new SocketTimeoutException("Timed out after " +
+                                                           this.timeout + "ms"));
+            }
+        }
+
+        private String getPhase() {
+            if (this.connected == -1) {
+                return "connect " + this.address;
+            }
+            if ((this.ssl != null) && isHandshaking()) {
+                return "TLS handshake with " + this.address;
+            }
+            if (this.step < this.steps.size()) {
+                CheckScript.Step step = this.steps.get(this.step);
+                return step.isSend() ?
+                    "Failed to send " + step.line :
+                    "Failed to read " + step.what;
+            }
+            return this.address.toString();
+        }
+
+        private void connected() throws IOException {
+            this.connected = System.currentTimeMillis();
+            this.deadline = this.connected + this.timeout;
+            if (this.sslContext != null) {
+                this.ssl = this.sslContext.createSSLEngine(this.address.getHostName(),
+                                                           this.address.getPort());
+                this.ssl.setUseClientMode(true);
+                int packetSize = this.ssl.getSession().getPacketBufferSize();
+                this.netIn = ByteBuffer.allocate(packetSize);
+                this.netOut = ByteBuffer.allocate(packetSize);
+                this.appIn = ByteBuffer.allocate(this.ssl.getSession().getApplicationBufferSize());
+                this.ssl.beginHandshake();
+            }
+            else {
+                this.appIn = ByteBuffer.allocate(1024);
+            }
+            advance();
+        }
+
+        private boolean isHandshaking() {
+            SSLEngineResult.HandshakeStatus status = this.ssl.getHandshakeStatus();
+            return (status != SSLEngineResult.HandshakeStatus.FINISHED) &&
+                   (status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING);
+        }
+
+        private void advance() throws IOException {
+            if ((this.ssl != null) && isHandshaking()) {
+                if (!handshake()) {
+                    return;
+                }
+                this.deadline = System.currentTimeMillis() + this.timeout;
+            }
+
+            while (this.step < this.steps.size()) {
+                // the server may start a new handshake at any time
+                if ((this.ssl != null) && isHandshaking() && !handshake()) {
+                    return;
+                }
+                CheckScript.Step step = this.steps.get(this.step);
+                if (step.isSend()) {
+                    if (!send(step)) {
+                        this.key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                else {
+                    String line = readReply(step);
+                    if (line == null) {
+                        if ((this.ssl != null) && isHandshaking()) {
+                            continue;
+                        }
+                        this.key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                    if (!step.matches(line)) {
+                        finish(false, "Unexpected " + step.what + ": " + line, null);
+                        return;
+                    }
+                }
+                this.step++;
+                this.deadline = System.currentTimeMillis() + this.timeout;
+            }
+
+            finish(true, "OK", null);
+        }
+
+        private boolean handshake() throws IOException {
+            while (true) {
+                SSLEngineResult result;
+                switch (this.ssl.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runTasks();
+                    return false;
+                case NEED_WRAP:
+                    result = this.ssl.wrap(EMPTY, this.netOut);
+                    checkClosed(result);
+                    if (!flush()) {
+                        this.key.interestOps(SelectionKey.OP_WRITE);
+                        return false;
+                    }
+                    break;
+                case NEED_UNWRAP:
+                    this.netIn.flip();
+                    result = this.ssl.unwrap(this.netIn, this.appIn);
+                    this.netIn.compact();
+                    checkClosed(result);
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        int n = readNet();
+                        if (n < 0) {
+                            throw new EOFException("Connection closed");
+                        }
+                        if (n == 0) {
+                            this.key.interestOps(SelectionKey.OP_READ);
+                            return false;
+                        }
+                    }
+                    break;
+                default:
+                    if (!flush()) {
+                        this.key.interestOps(SelectionKey.OP_WRITE);
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Hands the delegated tasks of the SSLEngine to the task threads,
+         * the check waits without selecting until they are done.
+         */
+        private void runTasks() {
+            this.isRunningTasks = true;
+            this.key.interestOps(0);
+            final SSLEngine ssl = this.ssl;
+            this.engine.tasks.execute(new Runnable() {
+                public void run() {
+                    try {
+                        for (Runnable task; (task = ssl.getDelegatedTask()) != null;) {
+                            task.run();
+                        }
+                    } finally {
+                        engine.resume(Check.this);
+                    }
+                }
+            });
+        }
+
+        private void checkClosed(SSLEngineResult result) throws SSLException {
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("TLS session closed by " + this.address);
+            }
+        }
+
+        private int readNet() throws IOException {
+            int n = this.channel.read(this.netIn);
+            if ((n > 0) && (this.firstByte == -1)) {
+                this.firstByte = System.currentTimeMillis();
+            }
+            return n;
+        }
+
+        private boolean flush() throws IOException {
+            this.netOut.flip();
+            this.channel.write(this.netOut);
+            boolean isFlushed = !this.netOut.hasRemaining();
+            this.netOut.compact();
+            return isFlushed;
+        }
+
+        /**
+         * @return true once the whole line is written
+         */
+        private boolean send(CheckScript.Step step) throws IOException {
+            if (this.appOut == null) {
+                this.appOut = ByteBuffer.wrap((step.line + SocketWrapper.CRLF).getBytes("US-ASCII"));
+            }
+            if (this.ssl == null) {
+                this.channel.write(this.appOut);
+                if (this.appOut.hasRemaining()) {
+                    return false;
+                }
+            }
+            else {
+                while (this.appOut.hasRemaining()) {
+                    SSLEngineResult result = this.ssl.wrap(this.appOut, this.netOut);
+                    checkClosed(result);
+                    if ((result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) &&
+                        !flush()) {
+                        return false;
+                    }
+                }
+                if (!flush()) {
+                    return false;
+                }
+            }
+            this.appOut = null;
+            return true;
+        }
+
+        /**
+         * @return the reply, or null until a whole reply is read
+         */
+        private String readReply(CheckScript.Step step) throws IOException {
+            while (true) {
+                String line = nextLine();
+                if (line == null) {
+                    int n = read();
+                    if (n < 0) {
+                        throw new EOFException("Connection closed");
+                    }
+                    if (n == 0) {
+                        return null;
+                    }
+                    continue;
+                }
+                if (step.isReply) {
+                    if ((line.length() > 3) && (line.charAt(3) == '-')) {
+                        this.isContinued = true;
+                        continue;
+                    }
+                    if (this.isContinued && ((line.length() == 0) ||
+                                             !Character.isDigit(line.charAt(0)))) {
+                        continue;
+                    }
+                }
+                this.isContinued = false;
+                return line;
+            }
+        }
+
+        private String nextLine() {
+            this.appIn.flip();
+            try {
+                while (this.appIn.hasRemaining()) {
+                    char c = (char)(this.appIn.get() & 0xff);
+                    if ((c == '\n') || (this.line.length() >= MAX_LINE)) {
+                        int len = this.line.length();
+                        if ((len > 0) && (this.line.charAt(len-1) == '\r')) {
+                            this.line.setLength(len-1);
+                        }
+                        String line = this.line.toString();
+                        this.line.setLength(0);
+                        return line;
+                    }
+                    this.line.append(c);
+                }
+                return null;
+            } finally {
+                this.appIn.compact();
+            }
+        }
+
+        /**
+         * @return the number of application bytes read, -1 at the end of the stream
+         */
+        private int read() throws IOException {
+            if (this.ssl == null) {
+                int n = this.channel.read(this.appIn);
+                if ((n > 0) && (this.firstByte == -1)) {
+                    this.firstByte = System.currentTimeMillis();
+                }
+                return n;
+            }
+
+            // the handshake may have left application data behind
+            int n = readNet();
+            int produced = 0;
+            this.netIn.flip();
+            try {
+                while (this.netIn.hasRemaining() && this.appIn.hasRemaining()) {
+                    SSLEngineResult result = this.ssl.unwrap(this.netIn, this.appIn);
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        return (produced == 0) ? -1 : produced;
+                    }
+                    if (result.getStatus() != SSLEngineResult.Status.OK) {
+                        break;
+                    }
+                    produced += result.bytesProduced();
+                    if (isHandshaking()) {
+                        // advance() does the handshake first
+                        break;
+                    }
+                }
+            } finally {
+                this.netIn.compact();
+            }
+            if (produced == 0 && n < 0) {
+                return -1;
+            }
+            return produced;
+        }
+
+        private void fail(String message, IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(message + ": " + e);
+            }
+            finish(false, message, e);
+        }
+
+        private void finish(boolean isAvailable, String message, IOException failure) {
+            if (this.isDone) {
+                return;
+            }
+            this.isDone = true;
+            this.isAvailable = isAvailable;
+            this.message = message;
+            this.failure = failure;
+            if (this.key != null) {
+                this.key.cancel();
+            }
+            if (this.channel != null) {
+                try {
+                    this.channel.close();
+                } catch (IOException e) {
+                }
+            }
+            try {
+                this.collector.checkDone(this);
+            } catch (Throwable t) {
+                log.error("Error completing check of " + this.address + ": " + t, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ * 
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of HQ.
+ * 
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.plugin.netservices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The request/response exchange of a line based protocol, as driven by
+ * the CheckEngine once the socket is connected.  An empty script only
+ * checks that the socket connects.
+ */
+public class CheckScript {
+
+    static class Step {
+        final String line;
+        final String what;
+        final String[] prefixes;
+        final boolean isReply;
+
+        Step(String line, String what, String[] prefixes, boolean isReply) {
+            this.line = line;
+            this.what = what;
+            this.prefixes = prefixes;
+            this.isReply = isReply;
+        }
+
+        boolean isSend() {
+            return this.line != null;
+        }
+
+        boolean matches(String line) {
+            for (int i=0; i<this.prefixes.length; i++) {
+                if (line.startsWith(this.prefixes[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<Step>();
+
+    /**
+     * Read a line, the check fails unless it starts with one of the prefixes.
+     */
+    public CheckScript expect(String what, String... prefixes) {
+        this.steps.add(new Step(null, what, prefixes, false));
+        return this;
+    }
+
+    /**
+     * Read a reply which may continue over lines marked
+     * with a '-' after the reply code, as FTP does.
+     */
+    public CheckScript expectReply(String what, String... prefixes) {
+        this.steps.add(new Step(null, what, prefixes, true));
+        return this;
+    }
+
+    /**
+     * Write a line.
+     */
+    public CheckScript send(String line) {
+        this.steps.add(new Step(line, null, null, false));
+        return this;
+    }
+
+    List<Step> getSteps() {
+        return this.steps;
+    }
+}
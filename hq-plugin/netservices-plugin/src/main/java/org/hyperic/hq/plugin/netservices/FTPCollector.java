@@ -39,6 +39,19 @@ public class FTPCollector extends SocketChecker {
             line.startsWith("3");   // 300 response
     }
 
+    protected CheckScript getScript() {
+        String user = hasCredentials() ? getUsername() : ANONYMOUS_USER;
+        String pass = hasCredentials() ? getPassword() : ANONYMOUS_PASS;
+        return new CheckScript()
+            .expectReply("welcome response", "1", "2", "3")
+            .send("USER " + user)
+            .expectReply("USER response", "1", "2", "3")
+            .send("PASS " + pass)
+            .expectReply("PASS response", "1", "2", "3")
+            .send("QUIT")
+            .expectReply("QUIT response", "1", "2", "3");
+    }
+
     private boolean isERR(String line) {
         return 
             line.startsWith("4") || // 400 response
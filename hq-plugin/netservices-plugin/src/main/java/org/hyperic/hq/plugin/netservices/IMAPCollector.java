@@ -35,6 +35,12 @@ public class IMAPCollector extends SocketChecker {
         return line.startsWith(OK);
     }
 
+    protected CheckScript getScript() {
+        return new CheckScript()
+            .expect("welcome response", OK)
+            .send("a1 LOGOUT");
+    }
+
     protected boolean check(SocketWrapper socket)
         throws IOException {
 
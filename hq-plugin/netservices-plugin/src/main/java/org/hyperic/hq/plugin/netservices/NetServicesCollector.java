@@ -30,6 +30,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.Properties;
 
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocket;
 
 import org.apache.commons.logging.Log;
@@ -55,6 +56,7 @@ public abstract class NetServicesCollector extends Collector {
     private String sslProtcol;
     private AgentKeystoreConfig keystoreConfig;
     private String user, pass;
+    private SSLContext sslContext;
 
     private boolean hasCredentials;
 
@@ -258,6 +260,20 @@ public abstract class NetServicesCollector extends Collector {
         }        
     }
     
+    /**
+     * @return the SSLContext for the non-blocking checks of the CheckEngine,
+     * created from the agent keystore on first use.
+     */
+    protected SSLContext getSSLContext() {
+        if (this.sslContext == null) {
+            SSLProvider sslProvider =
+                new DefaultSSLProviderImpl(keystoreConfig,
+                                           keystoreConfig.isAcceptUnverifiedCert());
+            this.sslContext = sslProvider.getSSLContext();
+        }
+        return this.sslContext;
+    }
+
     public SocketWrapper getSocketWrapper(boolean acceptUnverifiedCertificatesOverride) throws IOException {
         if (isSSL()) { 
             // Sometimes we may want to override what's set in the keystore config...mostly for init purposes...
@@ -267,10 +283,11 @@ public abstract class NetServicesCollector extends Collector {
             Socket socket = factory.createSocket();
 
             socket.connect(getSocketAddress(), getTimeoutMillis());
+            long connected = System.currentTimeMillis();
             socket.setSoTimeout(getTimeoutMillis());
             ((SSLSocket) socket).startHandshake();       
 
-            return new SocketWrapper(socket);
+            return new SocketWrapper(socket, connected);
         } else {
             Socket socket = new Socket();
             connect(socket);
@@ -44,6 +44,16 @@ public class POP3Collector extends SocketChecker {
         return line.substring(ERR.length());
     }
 
+    protected CheckScript getScript() {
+        if (hasCredentials()) {
+            return null; //reads the LIST output
+        }
+        return new CheckScript()
+            .expect("welcome response", OK)
+            .send("QUIT")
+            .expect("QUIT response", OK);
+    }
+
     private boolean sendCommand(SocketWrapper socket, String cmd)
         throws IOException {
 
@@ -34,6 +34,12 @@ public class SMTPCollector extends SocketChecker {
         return line.startsWith(OK);
     }
 
+    protected CheckScript getScript() {
+        return new CheckScript()
+            .expect("welcome response", OK)
+            .send("QUIT");
+    }
+
     protected boolean check(SocketWrapper socket)
         throws IOException {
 
@@ -26,9 +26,28 @@
 package org.hyperic.hq.plugin.netservices;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLContext;
 
 public class SocketChecker extends NetServicesCollector {
 
+    private static final boolean useCheckEngine =
+        !"false".equals(System.getProperty("netservices.checkEngine"));
+
+    /**
+     * The exchange to run on the CheckEngine in place of check(),
+     * or null to check with a blocking socket.  Subclasses which
+     * override check() without providing a script stay blocking.
+     */
+    protected CheckScript getScript() {
+        if (getClass() == SocketChecker.class) {
+            return new CheckScript();
+        }
+        return null;
+    }
+
     protected boolean check(SocketWrapper socket)
         throws IOException {
 
@@ -36,12 +55,40 @@ public class SocketChecker extends NetServicesCollector {
     }
 
     public void collect() {
+        CheckScript script = useCheckEngine ? getScript() : null;
+        if (script != null) {
+            InetSocketAddress address = getSocketAddress();
+            if (address.isUnresolved()) {
+                // as the blocking connect reports it
+                setAvailability(false);
+                setErrorMessage("connect " + address,
+                                new UnknownHostException(address.getHostName()));
+                return;
+            }
+            try {
+                SSLContext sslContext = isSSL() ? getSSLContext() : null;
+                CheckEngine engine = CheckEngine.getInstance();
+                netstat();
+                startTime();
+                deferResult();
+                engine.submit(new CheckEngine.Check(this, address,
+                                                    sslContext, script,
+                                                    getTimeoutMillis()));
+            } catch (IOException e) {
+                setAvailability(false);
+                setErrorMessage(e.getMessage(), e);
+            }
+            return;
+        }
+
         SocketWrapper socket = null;
+        long started = System.currentTimeMillis();
 
         try {
             startTime();
 
             socket = getSocketWrapper();
+            setValue("ConnectTime", socket.getConnectedTime() - started);
 
             setAvailability(check(socket));
             
@@ -53,10 +100,40 @@ public class SocketChecker extends NetServicesCollector {
             }
         } finally {
             if (socket != null) {
+                if (socket.getFirstByteTime() != -1) {
+                    setValue("FirstByteTime", socket.getFirstByteTime() - started);
+                }
                 socket.close();
             }
         }
 
         netstat();
     }
+
+    /**
+     * Called by the CheckEngine when a check submitted by collect() ends.
+     */
+    void checkDone(CheckEngine.Check check) {
+        if (check.getFailure() != null) {
+            setAvailability(false);
+            setErrorMessage(check.getMessage(), check.getFailure());
+        }
+        else {
+            setAvailability(check.isAvailable());
+            if (check.isAvailable()) {
+                setMessage(check.getMessage());
+            }
+            else {
+                setErrorMessage(check.getMessage());
+            }
+            endTime();
+        }
+        if (check.getConnectTime() != -1) {
+            setValue("ConnectTime", check.getConnectTime());
+        }
+        if (check.getFirstByteTime() != -1) {
+            setValue("FirstByteTime", check.getFirstByteTime());
+        }
+        completeResult();
+    }
 }
@@ -27,7 +27,9 @@ package org.hyperic.hq.plugin.netservices;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
@@ -46,15 +48,38 @@ public class SocketWrapper {
     Socket socket;
     BufferedReader reader = null;
     BufferedWriter writer = null;
+    private final long connected;
+    private volatile long firstByte = -1;
     
     public SocketWrapper(Socket socket) {
+        this(socket, System.currentTimeMillis());
+    }
+
+    /**
+     * @param connected the time the socket was connected, before any TLS
+     * handshake
+     */
+    public SocketWrapper(Socket socket, long connected) {
         this.socket = socket;
+        this.connected = connected;
     }
 
     public Socket getSocket() {
         return this.socket;
     }
 
+    public long getConnectedTime() {
+        return this.connected;
+    }
+
+    /**
+     * @return the time the first byte was read through getReader(),
+     * -1 if none was
+     */
+    public long getFirstByteTime() {
+        return this.firstByte;
+    }
+
     public void close() {
         close(this.socket);
     }
@@ -71,10 +96,33 @@ public class SocketWrapper {
 
     public BufferedReader getReader() throws IOException {
         if (this.reader == null) {
-            this.reader = getReader(this.socket);
+            InputStream is = new FilterInputStream(this.socket.getInputStream()) {
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c != -1) {
+                        received();
+                    }
+                    return c;
+                }
+
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        received();
+                    }
+                    return n;
+                }
+            };
+            this.reader = new BufferedReader(new InputStreamReader(is));
         }
         return this.reader;
     }
+
+    private void received() {
+        if (this.firstByte == -1) {
+            this.firstByte = System.currentTimeMillis();
+        }
+    }
     
     public BufferedWriter getWriter() throws IOException {
         if (this.writer == null) {
@@ -0,0 +1,314 @@
+/**
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ *  "derived work".
+ *
+ *  Copyright (C) [2010], VMware, Inc.
+ *  This file is part of HQ.
+ *
+ *  HQ is free software; you can redistribute it and/or modify
+ *  it under the terms version 2 of the GNU General Public License as
+ *  published by the Free Software Foundation. This program is distributed
+ *  in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ *  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ *  PARTICULAR PURPOSE. See the GNU General Public License for more
+ *  details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ */
+
+package org.hyperic.hq.plugin.netservices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.Selector;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckEngineTest {
+
+    private static final String KEYSTORE = "test.keystore";
+    private static final String KEYSTORE_PASSWORD = "hyperic";
+    private static final long TIMEOUT = 5000;
+
+    private CheckEngine engine;
+    private ServerSocket server;
+    private final RecordingChecker checker = new RecordingChecker();
+
+    /**
+     * Records the checks as the engine completes them.
+     */
+    private static class RecordingChecker extends SocketChecker {
+        private final BlockingQueue<CheckEngine.Check> done =
+            new LinkedBlockingQueue<CheckEngine.Check>();
+
+        void checkDone(CheckEngine.Check check) {
+            this.done.add(check);
+        }
+
+        CheckEngine.Check take() throws InterruptedException {
+            CheckEngine.Check check = this.done.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertNotNull("check not done", check);
+            return check;
+        }
+    }
+
+    /**
+     * What the server does with each accepted connection.
+     */
+    private interface Session {
+        void run(Socket socket) throws IOException;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.engine = new CheckEngine(Selector.open(), Executors.newSingleThreadExecutor());
+        Thread thread = new Thread(this.engine, "CheckEngineTest");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    private void serve(ServerSocket server, final Session session) {
+        this.server = server;
+        Thread thread = new Thread("CheckEngineTestServer") {
+            public void run() {
+                Socket socket = null;
+                try {
+                    socket = CheckEngineTest.this.server.accept();
+                    session.run(socket);
+                } catch (IOException e) {
+                } finally {
+                    if (socket != null) {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                        }
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void serve(Session session) throws IOException {
+        serve(new ServerSocket(0, 1, getLoopbackAddress()), session);
+    }
+
+    private CheckEngine.Check check(SSLContext sslContext, CheckScript script, long timeout)
+        throws IOException, InterruptedException {
+
+        InetSocketAddress address =
+            new InetSocketAddress(getLoopbackAddress(), this.server.getLocalPort());
+        this.engine.submit(new CheckEngine.Check(this.checker, address, sslContext,
+                                                 script, timeout));
+        return this.checker.take();
+    }
+
+    private static InetAddress getLoopbackAddress() throws IOException {
+        return InetAddress.getByName("127.0.0.1");
+    }
+
+    private static void write(Socket socket, String lines) throws IOException {
+        OutputStream os = socket.getOutputStream();
+        os.write(lines.getBytes("US-ASCII"));
+        os.flush();
+    }
+
+    private static String readLine(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+        }
+    }
+
+    @Test
+    public void testScript() throws Exception {
+        final String[] received = new String[1];
+        serve(new Session() {
+            public void run(Socket socket) throws IOException {
+                sleep(50);
+                write(socket, "+OK ready\r\n");
+                received[0] = readLine(socket);
+                write(socket, "+OK bye\r\n");
+            }
+        });
+        CheckEngine.Check check =
+            check(null, new CheckScript().expect("greeting", "+OK").send("QUIT")
+                  .expect("reply", "+OK"), TIMEOUT);
+
+        assertTrue(check.getMessage(), check.isAvailable());
+        assertNull(check.getFailure());
+        assertEquals("QUIT", received[0]);
+        assertTrue(check.getConnectTime() >= 0);
+        assertTrue(check.getFirstByteTime() >= 50);
+        assertTrue(check.getFirstByteTime() >= check.getConnectTime());
+    }
+
+    @Test
+    public void testMultiLineReply() throws Exception {
+        serve(new Session() {
+            public void run(Socket socket) throws IOException {
+                write(socket, "220-Welcome\r\n" +
+                              "  to the test server\r\n" +
+                              "220 ready\r\n");
+                readLine(socket);
+                write(socket, "221 bye\r\n");
+            }
+        });
+        CheckEngine.Check check =
+            check(null, new CheckScript().expectReply("greeting", "220").send("QUIT")
+                  .expectReply("reply", "221"), TIMEOUT);
+
+        assertTrue(check.getMessage(), check.isAvailable());
+    }
+
+    @Test
+    public void testUnexpectedReply() throws Exception {
+        serve(new Session() {
+            public void run(Socket socket) throws IOException {
+                write(socket, "-ERR go away\r\n");
+                readLine(socket);
+            }
+        });
+        CheckEngine.Check check =
+            check(null, new CheckScript().expect("greeting", "+OK"), TIMEOUT);
+
+        assertFalse(check.isAvailable());
+        assertNull(check.getFailure());
+        assertEquals("Unexpected greeting: -ERR go away", check.getMessage());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        serve(new Session() {
+            public void run(Socket socket) throws IOException {
+                readLine(socket);
+            }
+        });
+        long start = System.currentTimeMillis();
+        CheckEngine.Check check =
+            check(null, new CheckScript().expect("greeting", "+OK"), 200);
+
+        assertFalse(check.isAvailable());
+        assertTrue(check.getFailure() instanceof SocketTimeoutException);
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertTrue(check.getConnectTime() >= 0);
+        assertEquals(-1, check.getFirstByteTime());
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        this.server = new ServerSocket(0, 1, getLoopbackAddress());
+        this.server.close();
+        CheckEngine.Check check = check(null, new CheckScript(), TIMEOUT);
+
+        assertFalse(check.isAvailable());
+        assertNotNull(check.getFailure());
+        assertEquals(-1, check.getConnectTime());
+    }
+
+    @Test
+    public void testUnresolvedHost() throws Exception {
+        InetSocketAddress address = InetSocketAddress.createUnresolved("no.such.host.invalid", 80);
+        this.engine.submit(new CheckEngine.Check(this.checker, address, null,
+                                                 new CheckScript(), TIMEOUT));
+        CheckEngine.Check check = this.checker.take();
+
+        assertFalse(check.isAvailable());
+        assertTrue(check.getFailure() instanceof UnknownHostException);
+        assertEquals(-1, check.getConnectTime());
+    }
+
+    @Test
+    public void testHandshake() throws Exception {
+        KeyStore keystore = KeyStore.getInstance("JKS");
+        InputStream is = getClass().getResourceAsStream(KEYSTORE);
+        try {
+            keystore.load(is, KEYSTORE_PASSWORD.toCharArray());
+        } finally {
+            is.close();
+        }
+        KeyManagerFactory kmf =
+            KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keystore, KEYSTORE_PASSWORD.toCharArray());
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[] { new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        } }, null);
+
+        final String[] received = new String[1];
+        SSLServerSocket server = (SSLServerSocket)serverContext.getServerSocketFactory()
+            .createServerSocket(0, 1, getLoopbackAddress());
+        serve(server, new Session() {
+            public void run(Socket socket) throws IOException {
+                write(socket, "* OK ready\r\n");
+                received[0] = readLine(socket);
+                write(socket, "* BYE\r\n");
+            }
+        });
+        CheckEngine.Check check =
+            check(clientContext, new CheckScript().expect("greeting", "* OK").send("a1 LOGOUT")
+                  .expect("reply", "* BYE"), TIMEOUT);
+
+        assertTrue(check.getMessage(), check.isAvailable());
+        assertEquals("a1 LOGOUT", received[0]);
+        assertTrue(check.getFirstByteTime() >= check.getConnectTime());
+    }
+}
@@ -27,39 +27,78 @@ package org.hyperic.hq.plugin.postgresql;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.product.Metric;
+import org.hyperic.hq.product.MetricNotFoundException;
 
 public class TableMeasurementPlugin extends ResourceMeasurement {
 
     private static Log log = LogFactory.getLog(TableMeasurementPlugin.class);
 
-    @Override
-    protected String getQuery(Metric metric) {
-        String tableName = metric.getObjectProperties().getProperty(PostgreSQL.PROP_TABLE);
-        String schemaName = metric.getObjectProperties().getProperty(PostgreSQL.PROP_SCHEMA);
-        String attributeName = metric.getAttributeName();
+    // one row per table, keyed by "schema.table", shared by all the
+    // tables of the database
+    private static final String DATA_SPACE_QUERY =
+            "SELECT n.nspname || '.' || c.relname, SUM(c.relpages) * 8 FROM pg_class c "
+            + "JOIN pg_catalog.pg_namespace n ON n.oid = c.relnamespace "
+            + "GROUP BY n.nspname, c.relname";
+    private static final String INDEX_SPACE_QUERY =
+            "SELECT t.schemaname || '.' || t.relname, SUM(c.relpages) * 8 "
+            + "FROM pg_stat_user_tables t "
+            + "LEFT JOIN pg_stat_user_indexes i ON i.relid = t.relid "
+            + "LEFT JOIN pg_class c ON c.oid = i.indexrelid "
+            + "GROUP BY t.schemaname, t.relname";
+    private static final String TABLE_STATS_QUERY =
+            "SELECT schemaname || '.' || relname AS table_key, * FROM pg_stat_user_tables";
+
+    private static String getAttributeName(Metric metric) {
         if (metric.isAvail()) {
-            attributeName = "seq_scan";
+            return "seq_scan";
         }
-        String tableQuery = null;
+        return metric.getAttributeName();
+    }
+
+    @Override
+    protected String getQuery(Metric metric) {
+        String attributeName = getAttributeName(metric);
+        String tableQuery;
         if (attributeName.equals("DataSpaceUsed")) {
-            tableQuery = "SELECT SUM(relpages) * 8 FROM pg_class "
-                    + "JOIN pg_catalog.pg_namespace n ON n.oid = pg_class.relnamespace "
-                    + "WHERE pg_class.relname = '" + tableName + "' "
-                    + "AND n.nspname ='" + schemaName + "'";
+            tableQuery = DATA_SPACE_QUERY;
         } else if (attributeName.equals("IndexSpaceUsed")) {
-            tableQuery = "SELECT SUM(relpages) * 8 FROM pg_class "
-                    + "JOIN pg_catalog.pg_namespace n ON n.oid = pg_class.relnamespace "
-                    + "WHERE n.nspname = '" + schemaName + "' "
-                    + "AND relname IN (SELECT indexrelname FROM "
-                    + "pg_stat_user_indexes WHERE relname='"
-                    + tableName + "' AND schemaname='" + schemaName + "')";
+            tableQuery = INDEX_SPACE_QUERY;
         } else {
             // Else normal query from pg_stat_user_table
-            tableQuery = "SELECT " + attributeName + " FROM pg_stat_user_tables "
-                    + "WHERE relname='" + tableName + "' "
-                    + "AND schemaname='" + schemaName + "'";
+            tableQuery = TABLE_STATS_QUERY;
         }
         log.debug("[getQuery] tableQuery='" + tableQuery + "'");
         return tableQuery;
     }
+
+    @Override
+    protected String getRowKey(Metric metric) {
+        String tableName = metric.getObjectProperties().getProperty(PostgreSQL.PROP_TABLE);
+        String schemaName = metric.getObjectProperties().getProperty(PostgreSQL.PROP_SCHEMA);
+        return schemaName + "." + tableName;
+    }
+
+    @Override
+    protected double getMissingRowValue(Metric metric) throws MetricNotFoundException {
+        String attributeName = getAttributeName(metric);
+        if (attributeName.equals("DataSpaceUsed") || attributeName.equals("IndexSpaceUsed")) {
+            // the sum over no pages
+            return 0;
+        }
+        return super.getMissingRowValue(metric);
+    }
+
+    @Override
+    protected int getColumn(Metric metric) {
+        String attributeName = getAttributeName(metric);
+        if (attributeName.equals("DataSpaceUsed") || attributeName.equals("IndexSpaceUsed")) {
+            return 2;
+        }
+        return COL_INVALID;
+    }
+
+    @Override
+    protected String getColumnName(Metric metric) {
+        return getAttributeName(metric);
+    }
 }
@@ -32,6 +32,7 @@ import org.hyperic.hq.plugin.rabbitmq.core.*;
 
 import java.util.Properties;
 import org.hyperic.hq.product.Metric;
+import org.hyperic.hq.product.PluginException;
 
 /**
  * ChannelCollector
@@ -41,6 +42,31 @@ public class ChannelCollector extends RabbitStatsCollector {
 
     private static final Log logger = LogFactory.getLog(ChannelCollector.class);
 
+    @Override
+    public void collect(HypericRabbitAdmin rabbitAdmin) {
+        String chName = getProperties().getProperty(MetricConstants.CHANNEL);
+
+        RabbitSnapshot.Record c = null;
+        try {
+            c = rabbitAdmin.getSnapshot().getRecord(rabbitAdmin, RabbitSnapshot.Kind.CHANNELS, null, chName);
+        } catch (PluginException ex) {
+            logger.debug("[collect] no snapshot: " + ex.getMessage());
+        }
+        if (c == null) {
+            // not in the snapshot, ask the broker for the channel itself
+            super.collect(rabbitAdmin);
+            return;
+        }
+
+        setAvailability(c.isIdle() ? Metric.AVAIL_PAUSED : Metric.AVAIL_UP);
+        setValue("idleTime", c.isIdle() ? new Date().getTime() - c.getIdleSince() : 0);
+        setValue("consumerCount", c.get("consumer_count", 0));
+        setValue("prefetchCount", c.get("prefetch_count", 0));
+        setValue("acksUncommitted", c.get("acks_uncommitted", 0));
+        setValue("messagesUnacknowledged", c.get("messages_unacknowledged", 0));
+        processMessageStatsMetrics(c);
+    }
+
     public RabbitStatsObject collectStats(HypericRabbitAdmin rabbitAdmin) {
         Properties props = getProperties();
         String chName = props.getProperty(MetricConstants.CHANNEL);
@@ -29,10 +29,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.plugin.rabbitmq.core.HypericRabbitAdmin;
 import org.hyperic.hq.plugin.rabbitmq.core.RabbitConnection;
+import org.hyperic.hq.plugin.rabbitmq.core.RabbitSnapshot;
 
 import java.util.List;
 import java.util.Properties;
 import org.hyperic.hq.product.Metric;
+import org.hyperic.hq.product.PluginException;
 import org.hyperic.util.config.ConfigResponse;
 
 /**
@@ -48,6 +50,28 @@ public class ConnectionCollector extends RabbitMQDefaultCollector {
         String cName = props.getProperty(MetricConstants.CONNECTION);
         logger.debug("[collect] ConnectionName=" + cName);
 
+        RabbitSnapshot.Record conn = null;
+        try {
+            conn = rabbitAdmin.getSnapshot().getRecord(rabbitAdmin, RabbitSnapshot.Kind.CONNECTIONS, null, cName);
+        } catch (PluginException ex) {
+            logger.debug("[collect] no snapshot: " + ex.getMessage());
+        }
+        if (conn == null) {
+            // not in the snapshot, ask the broker for the connection itself
+            collectConnection(rabbitAdmin, cName);
+            return;
+        }
+
+        setValue("Availability", Metric.AVAIL_UP);
+        setValue("packetsReceived", conn.get("recv_cnt", 0));
+        setValue("packetsSent", conn.get("send_cnt", 0));
+        setValue("channelCount", conn.get("channels", 0));
+        setValue("octetsReceived", conn.get("recv_oct", 0));
+        setValue("octetsSent", conn.get("send_oct", 0));
+        setValue("pendingSends", conn.get("send_pend", 0));
+    }
+
+    private void collectConnection(HypericRabbitAdmin rabbitAdmin, String cName) {
         try {
             logger.debug("[collect] RabbitConnection=" + cName);
             RabbitConnection conn = rabbitAdmin.getConnection(cName);
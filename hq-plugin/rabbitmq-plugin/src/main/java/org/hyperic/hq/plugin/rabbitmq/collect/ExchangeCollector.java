@@ -31,6 +31,8 @@ import org.hyperic.hq.plugin.rabbitmq.core.HypericRabbitAdmin;
 
 import java.util.Properties;
 import org.hyperic.hq.plugin.rabbitmq.core.RabbitExchange;
+import org.hyperic.hq.plugin.rabbitmq.core.RabbitSnapshot;
+import org.hyperic.hq.product.PluginException;
 
 /**
  * ExchangeCollector
@@ -52,6 +54,24 @@ public class ExchangeCollector extends RabbitMQDefaultCollector {
             logger.debug("[collect] exch='" + exch + "' vhost='" + vhost + "' node='" + node + "'");
         }
 
+        RabbitSnapshot.Record e = null;
+        try {
+            e = rabbitAdmin.getSnapshot().getRecord(rabbitAdmin, RabbitSnapshot.Kind.EXCHANGES, vhost, exch);
+        } catch (PluginException ex) {
+            logger.debug("[collect] no snapshot: " + ex.getMessage());
+        }
+        if (e == null) {
+            // not in the snapshot, ask the broker for the exchange itself
+            collectExchange(rabbitAdmin, vhost, exch);
+            return;
+        }
+
+        setAvailability(true);
+        setValue("in_publish_details", e.get("message_stats_in.publish_details.rate", 0));
+        setValue("out_publish_details", e.get("message_stats_out.publish_details.rate", 0));
+    }
+
+    private void collectExchange(HypericRabbitAdmin rabbitAdmin, String vhost, String exch) {
         try {
             RabbitExchange e = rabbitAdmin.getExchange(vhost, exch);
             setAvailability(true);
@@ -32,8 +32,10 @@ import org.hyperic.hq.plugin.rabbitmq.core.HypericRabbitAdmin;
 
 import java.util.Properties;
 import org.hyperic.hq.plugin.rabbitmq.core.RabbitQueue;
+import org.hyperic.hq.plugin.rabbitmq.core.RabbitSnapshot;
 import org.hyperic.hq.plugin.rabbitmq.core.RabbitStatsObject;
 import org.hyperic.hq.product.Metric;
+import org.hyperic.hq.product.PluginException;
 
 /**
  * QueueCollector
@@ -43,6 +45,34 @@ public class QueueCollector extends RabbitStatsCollector {
 
     private static final Log logger = LogFactory.getLog(QueueCollector.class);
 
+    @Override
+    public void collect(HypericRabbitAdmin rabbitAdmin) {
+        Properties props = getProperties();
+        String vhost = (String) props.get(MetricConstants.VHOST);
+        String queue = (String) props.get(MetricConstants.QUEUE);
+
+        RabbitSnapshot.Record q = null;
+        try {
+            q = rabbitAdmin.getSnapshot().getRecord(rabbitAdmin, RabbitSnapshot.Kind.QUEUES, vhost, queue);
+        } catch (PluginException ex) {
+            logger.debug("[collect] no snapshot: " + ex.getMessage());
+        }
+        if (q == null) {
+            // not in the snapshot, ask the broker for the queue itself
+            super.collect(rabbitAdmin);
+            return;
+        }
+
+        setAvailability(q.isIdle() ? Metric.AVAIL_PAUSED : Metric.AVAIL_UP);
+        setValue("idleTime", q.isIdle() ? new Date().getTime() - q.getIdleSince() : 0);
+        setValue("messages", q.get("messages", 0));
+        setValue("consumers", q.get("consumers", 0));
+        setValue("messagesReady", q.get("messages_ready", 0));
+        setValue("messagesUnacknowledged", q.get("messages_unacknowledged", 0));
+        setValue("memory", q.get("memory", 0));
+        processMessageStatsMetrics(q);
+    }
+
     public RabbitStatsObject collectStats(HypericRabbitAdmin rabbitAdmin) {
         Properties props = getProperties();
         String vhost = (String) props.get(MetricConstants.VHOST);
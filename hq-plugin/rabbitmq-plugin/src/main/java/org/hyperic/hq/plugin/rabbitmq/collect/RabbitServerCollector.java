@@ -59,8 +59,11 @@ public class RabbitServerCollector extends RabbitStatsCollector {
             setValue("proc_used", n.getProcUsed());
             setValue("proc_used_percentage", (double) n.getProcUsed() / (double) n.getProcTotal());
             setValue("fd_percentage", (double) n.getFdUsed() / (double) n.getFdTotal());
-            setValue("connectionCount", rabbitAdmin.getConnections().size());
-            setValue("channelCount", rabbitAdmin.getChannels().size());
+            RabbitSnapshot snapshot = rabbitAdmin.getSnapshot();
+            setValue("connectionCount", snapshot.getCount(rabbitAdmin, RabbitSnapshot.Kind.CONNECTIONS));
+            setValue("channelCount", snapshot.getCount(rabbitAdmin, RabbitSnapshot.Kind.CHANNELS));
+            setValue("snapshotFetchTime", snapshot.getFetchTime());
+            setValue("snapshotParseTime", snapshot.getParseTime());
 
             QueueTotals queueTotals = o.getQueueTotals();
             if (queueTotals != null) {
@@ -7,6 +7,7 @@ package org.hyperic.hq.plugin.rabbitmq.collect;
 import java.util.Map;
 import org.hyperic.hq.plugin.rabbitmq.core.HypericRabbitAdmin;
 import org.hyperic.hq.plugin.rabbitmq.core.MessageStats;
+import org.hyperic.hq.plugin.rabbitmq.core.RabbitSnapshot;
 import org.hyperic.hq.plugin.rabbitmq.core.RabbitStatsObject;
 
 /**
@@ -37,6 +38,21 @@ public abstract class RabbitStatsCollector extends RabbitMQDefaultCollector {
         }
     }
 
+    protected void processMessageStatsMetrics(RabbitSnapshot.Record record) {
+        setRate("publishDetails", record, "publish");
+        setRate("confirmDetails", record, "confirm");
+        setRate("deliverDetails", record, "deliver");
+        setRate("ackDetails", record, "ack");
+        setRate("getDetails", record, "get");
+        setRate("getNoAckDetails", record, "get_no_ack");
+        setRate("deliverNoAckDetails", record, "deliver_no_ack");
+        setRate("deliverGetDetails", record, "deliver_get");
+    }
+
+    private void setRate(String string, RabbitSnapshot.Record record, String stat) {
+        setValue(string, record.get("message_stats." + stat + "_details.rate", 0));
+    }
+
     private void setVal(String string, Map<String, Double> detail) {
         if (detail != null) {
             setValue(string, detail.get("rate"));
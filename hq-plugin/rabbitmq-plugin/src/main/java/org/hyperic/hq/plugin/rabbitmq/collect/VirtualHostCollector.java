@@ -30,7 +30,7 @@ import java.util.logging.Logger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.plugin.rabbitmq.core.HypericRabbitAdmin;
-import org.hyperic.hq.plugin.rabbitmq.core.RabbitVirtualHost;
+import org.hyperic.hq.plugin.rabbitmq.core.RabbitSnapshot;
 import org.hyperic.hq.product.PluginException;
 import org.hyperic.util.config.ConfigResponse;
 
@@ -63,10 +63,11 @@ public class VirtualHostCollector extends RabbitMQDefaultCollector {
         }
 
         try {
-            RabbitVirtualHost virtualHost = rabbitAdmin.getVirtualHost(vhost);
+            rabbitAdmin.getVirtualHost(vhost);
             setAvailability(true);
-            setValue("queueCount", rabbitAdmin.getQueues(virtualHost).size());
-            setValue("exchangeCount", rabbitAdmin.getQueues(virtualHost).size());
+            RabbitSnapshot snapshot = rabbitAdmin.getSnapshot();
+            setValue("queueCount", snapshot.getCount(rabbitAdmin, RabbitSnapshot.Kind.QUEUES, vhost));
+            setValue("exchangeCount", snapshot.getCount(rabbitAdmin, RabbitSnapshot.Kind.EXCHANGES, vhost));
         } catch (Exception ex) {
             setAvailability(false);
             logger.debug(ex.getMessage(), ex);
@@ -226,6 +226,50 @@ public final class HypericRabbitAdmin {
         return res;
     }
 
+    /**
+     * @return the snapshot shared by the collectors of this broker
+     */
+    public RabbitSnapshot getSnapshot() {
+        return RabbitSnapshot.getInstance(targetHost.toURI() + "," + user);
+    }
+
+    /**
+     * Reads a response while it streams in, instead of loading it in memory.
+     */
+    interface ResponseReader {
+
+        void read(InputStream in) throws IOException;
+    }
+
+    void read(String api, ResponseReader reader) throws PluginException {
+        try {
+            HttpGet get = new HttpGet(targetHost.toURI() + api);
+            HttpResponse response = client.execute(get, localcontext);
+            int r = response.getStatusLine().getStatusCode();
+            InputStream in = response.getEntity().getContent();
+            try {
+                if (r != 200) {
+                    String responseBody = readInputString(in);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("[" + api + "] -(" + r + ")-> " + responseBody);
+                    }
+                    throw new PluginException("[" + api + "] http error code: '" + r + "'");
+                }
+                reader.read(in);
+            } finally {
+                // closing the content releases the connection
+                in.close();
+            }
+        } catch (IOException ex) {
+            logger.debug(ex.getMessage(), ex);
+            throw new PluginException(ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            // gson reports malformed json as runtime exceptions
+            logger.debug(ex.getMessage(), ex);
+            throw new PluginException("[" + api + "] " + ex.getMessage(), ex);
+        }
+    }
+
     private <T extends Object> T get(String api, Class<T> classOfT) throws PluginException {
         T res = null;
         try {
@@ -0,0 +1,339 @@
+/**
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ *  Copyright (C) [2010], VMware, Inc.
+ *  This file is part of Hyperic.
+ *
+ *  Hyperic is free software; you can redistribute it and/or modify
+ *  it under the terms version 2 of the GNU General Public License as
+ *  published by the Free Software Foundation. This program is distributed
+ *  in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ *  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ *  PARTICULAR PURPOSE. See the GNU General Public License for more
+ *  details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ */
+package org.hyperic.hq.plugin.rabbitmq.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.hq.product.PluginException;
+
+/**
+ * Snapshot of the queues, exchanges, channels and connections of a broker
+ * shared by all the collectors of the broker. Each list is fetched at most
+ * once per collection tick and parsed as it streams in, keeping only the
+ * metrics the collectors report.
+ */
+public final class RabbitSnapshot {
+
+    private static final Log logger = LogFactory.getLog(RabbitSnapshot.class);
+    private static final Map<String, RabbitSnapshot> snapshots = new HashMap<String, RabbitSnapshot>();
+    // lists fetched within are shared by the collectors
+    private static final long MAX_AGE = Long.getLong("rabbitmq.snapshot.maxAge", 30000).longValue();
+
+    private static final String[] MESSAGE_STATS = {
+        "message_stats.publish_details.rate",
+        "message_stats.confirm_details.rate",
+        "message_stats.deliver_details.rate",
+        "message_stats.ack_details.rate",
+        "message_stats.get_details.rate",
+        "message_stats.get_no_ack_details.rate",
+        "message_stats.deliver_no_ack_details.rate",
+        "message_stats.deliver_get_details.rate"
+    };
+
+    public enum Kind {
+
+        QUEUES("/api/queues", true, MESSAGE_STATS,
+                "messages", "consumers", "messages_ready", "messages_unacknowledged", "memory"),
+        EXCHANGES("/api/exchanges", true, new String[0],
+                "message_stats_in.publish_details.rate", "message_stats_out.publish_details.rate"),
+        CHANNELS("/api/channels", false, MESSAGE_STATS,
+                "consumer_count", "prefetch_count", "acks_uncommitted", "messages_unacknowledged"),
+        CONNECTIONS("/api/connections", false, new String[0],
+                "recv_cnt", "send_cnt", "channels", "recv_oct", "send_oct", "send_pend");
+
+        private final String api;
+        private final boolean perVhost;
+        private final Map<String, Integer> paths = new HashMap<String, Integer>();
+        private final Set<String> prefixes = new HashSet<String>();
+
+        private Kind(String api, boolean perVhost, String[] stats, String... metrics) {
+            this.api = api;
+            this.perVhost = perVhost;
+            add(metrics);
+            add(stats);
+        }
+
+        private void add(String[] metrics) {
+            for (String path : metrics) {
+                paths.put(path, paths.size());
+                for (int i = path.indexOf('.'); i != -1; i = path.indexOf('.', i + 1)) {
+                    prefixes.add(path.substring(0, i + 1));
+                }
+            }
+        }
+
+        private String key(String vhost, String name) {
+            return perVhost ? vhost + '\0' + name : name;
+        }
+    }
+
+    /**
+     * The metrics of a queue, exchange, channel or connection.
+     */
+    public static final class Record {
+
+        private final Kind kind;
+        private final double[] values;
+        private final long idleSince;
+
+        private Record(Kind kind, double[] values, long idleSince) {
+            this.kind = kind;
+            this.values = values;
+            this.idleSince = idleSince;
+        }
+
+        /**
+         * @param path the dot separated path of the metric in the api's json
+         * @return the value of the metric or NaN if the broker didn't report it
+         */
+        public double get(String path) {
+            Integer i = kind.paths.get(path);
+            return (i == null) ? Double.NaN : values[i.intValue()];
+        }
+
+        /**
+         * @param path the dot separated path of the metric in the api's json
+         * @param missing the value of a metric the broker didn't report
+         */
+        public double get(String path, double missing) {
+            double value = get(path);
+            return Double.isNaN(value) ? missing : value;
+        }
+
+        public boolean isIdle() {
+            return idleSince != 0;
+        }
+
+        public long getIdleSince() {
+            return idleSince;
+        }
+    }
+
+    static final class Section {
+
+        private long fetched;
+        Map<String, Record> records;
+        Map<String, int[]> counts;
+        private PluginException error;
+        private long fetchTime;
+        private long parseTime;
+    }
+
+    private final String broker;
+    private final Map<Kind, Section> sections = new HashMap<Kind, Section>();
+
+    private RabbitSnapshot(String broker) {
+        this.broker = broker;
+        for (Kind kind : Kind.values()) {
+            sections.put(kind, new Section());
+        }
+    }
+
+    static RabbitSnapshot getInstance(String broker) {
+        synchronized (snapshots) {
+            RabbitSnapshot snapshot = snapshots.get(broker);
+            if (snapshot == null) {
+                snapshot = new RabbitSnapshot(broker);
+                snapshots.put(broker, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @param vhost the vhost of a queue or exchange, ignored for channels and connections
+     * @return the record or null if the object wasn't listed by the broker
+     */
+    public Record getRecord(HypericRabbitAdmin admin, Kind kind, String vhost, String name)
+            throws PluginException {
+        return getRecords(admin, kind).get(kind.key(vhost, name));
+    }
+
+    public int getCount(HypericRabbitAdmin admin, Kind kind) throws PluginException {
+        return getRecords(admin, kind).size();
+    }
+
+    public int getCount(HypericRabbitAdmin admin, Kind kind, String vhost) throws PluginException {
+        int[] count = getCounts(admin, kind).get(vhost);
+        return (count == null) ? 0 : count[0];
+    }
+
+    /**
+     * @return milliseconds spent waiting for the broker to answer the last fetch of each list
+     */
+    public long getFetchTime() {
+        long rtn = 0;
+        for (Section section : sections.values()) {
+            synchronized (section) {
+                rtn += section.fetchTime;
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * @return milliseconds spent reading and parsing the last fetch of each list
+     */
+    public long getParseTime() {
+        long rtn = 0;
+        for (Section section : sections.values()) {
+            synchronized (section) {
+                rtn += section.parseTime;
+            }
+        }
+        return rtn;
+    }
+
+    private Map<String, Record> getRecords(HypericRabbitAdmin admin, Kind kind)
+            throws PluginException {
+        Section section = sections.get(kind);
+        synchronized (section) {
+            refresh(admin, kind, section);
+            return section.records;
+        }
+    }
+
+    private Map<String, int[]> getCounts(HypericRabbitAdmin admin, Kind kind)
+            throws PluginException {
+        Section section = sections.get(kind);
+        synchronized (section) {
+            refresh(admin, kind, section);
+            return section.counts;
+        }
+    }
+
+    /**
+     * Fetches the list again once it is too old, must hold the section's lock.
+     * The maps of a section are replaced by a fetch, never changed.
+     */
+    private void refresh(HypericRabbitAdmin admin, final Kind kind, final Section section)
+            throws PluginException {
+        final long start = System.currentTimeMillis();
+        if (start - section.fetched > MAX_AGE) {
+            section.fetched = start;
+            section.error = null;
+            try {
+                admin.read(kind.api, new HypericRabbitAdmin.ResponseReader() {
+                    public void read(InputStream in) throws IOException {
+                        long parsing = System.currentTimeMillis();
+                        section.fetchTime = parsing - start;
+                        parse(kind, section, in);
+                        section.parseTime = System.currentTimeMillis() - parsing;
+                    }
+                });
+            } catch (PluginException ex) {
+                // don't let every collector of the tick retry the broker
+                section.error = ex;
+                section.records = null;
+                section.counts = null;
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("[" + broker + kind.api + "] records="
+                        + (section.records == null ? 0 : section.records.size())
+                        + " fetch=" + section.fetchTime + "ms parse=" + section.parseTime + "ms");
+            }
+        }
+        if (section.error != null) {
+            throw section.error;
+        }
+    }
+
+    static void parse(Kind kind, Section section, InputStream in) throws IOException {
+        Map<String, Record> records = new HashMap<String, Record>();
+        Map<String, int[]> counts = new HashMap<String, int[]>();
+        DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        reader.beginArray();
+        while (reader.hasNext()) {
+            double[] values = new double[kind.paths.size()];
+            Arrays.fill(values, Double.NaN);
+            // name, vhost and idle_since
+            String[] strings = new String[3];
+            readObject(reader, kind, "", values, strings);
+
+            long idleSince = 0;
+            if (strings[2] != null) {
+                try {
+                    idleSince = formatter.parse(strings[2]).getTime();
+                } catch (ParseException ex) {
+                    logger.debug("[parse] idle_since='" + strings[2] + "' " + ex.getMessage());
+                }
+            }
+            if (strings[0] == null) {
+                continue;
+            }
+            records.put(kind.key(strings[1], strings[0]), new Record(kind, values, idleSince));
+            int[] count = counts.get(strings[1]);
+            if (count == null) {
+                counts.put(strings[1], new int[] {1});
+            } else {
+                count[0]++;
+            }
+        }
+        reader.endArray();
+        section.records = records;
+        section.counts = counts;
+    }
+
+    private static void readObject(JsonReader reader, Kind kind, String prefix,
+            double[] values, String[] strings) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String path = prefix + reader.nextName();
+            JsonToken token = reader.peek();
+            Integer i = kind.paths.get(path);
+            if (token == JsonToken.BEGIN_OBJECT && kind.prefixes.contains(path + ".")) {
+                readObject(reader, kind, path + ".", values, strings);
+            } else if (i != null && (token == JsonToken.NUMBER || token == JsonToken.STRING)) {
+                String value = reader.nextString();
+                try {
+                    values[i.intValue()] = Double.parseDouble(value);
+                } catch (NumberFormatException ex) {
+                    logger.debug("[parse] " + path + "='" + value + "'");
+                }
+            } else if (prefix.length() == 0 && token == JsonToken.STRING
+                    && (path.equals("name") || path.equals("vhost") || path.equals("idle_since"))) {
+                strings[path.equals("name") ? 0 : path.equals("vhost") ? 1 : 2] = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ *  Copyright (C) [2010], VMware, Inc.
+ *  This file is part of Hyperic.
+ *
+ *  Hyperic is free software; you can redistribute it and/or modify
+ *  it under the terms version 2 of the GNU General Public License as
+ *  published by the Free Software Foundation. This program is distributed
+ *  in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ *  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ *  PARTICULAR PURPOSE. See the GNU General Public License for more
+ *  details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ */
+package org.hyperic.hq.plugin.rabbitmq.core;
+
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Parses a recorded /api/queues response with the streaming reader.
+ */
+public class RabbitSnapshotTest {
+
+    private RabbitSnapshot.Section parse(RabbitSnapshot.Kind kind, String resource) throws Exception {
+        RabbitSnapshot.Section section = new RabbitSnapshot.Section();
+        InputStream in = getClass().getResourceAsStream(resource);
+        try {
+            RabbitSnapshot.parse(kind, section, in);
+        } finally {
+            in.close();
+        }
+        return section;
+    }
+
+    @Test
+    public void testParseQueues() throws Exception {
+        RabbitSnapshot.Section section = parse(RabbitSnapshot.Kind.QUEUES, "queues.json");
+
+        // queues with the same name are kept apart by their vhost
+        assertEquals(3, section.records.size());
+        assertEquals(1, section.counts.get("/")[0]);
+        assertEquals(2, section.counts.get("billing")[0]);
+
+        RabbitSnapshot.Record idle = section.records.get("/\0orders");
+        assertNotNull(idle);
+        assertEquals(4, idle.get("messages"), 0);
+        assertEquals(3, idle.get("messages_ready"), 0);
+        assertEquals(1, idle.get("messages_unacknowledged"), 0);
+        assertEquals(9120, idle.get("memory"), 0);
+        assertTrue(Double.isNaN(idle.get("message_stats.publish_details.rate")));
+        assertTrue(idle.isIdle());
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2013-06-04 10:14:32").getTime(),
+                idle.getIdleSince());
+
+        RabbitSnapshot.Record busy = section.records.get("billing\0orders");
+        assertNotNull(busy);
+        assertFalse(busy.isIdle());
+        assertEquals(2, busy.get("consumers"), 0);
+        assertEquals(3.0, busy.get("message_stats.publish_details.rate"), 0);
+        assertEquals(2.25, busy.get("message_stats.deliver_get_details.rate"), 0);
+        assertEquals(1.5, busy.get("message_stats.ack_details.rate"), 0);
+        assertTrue(Double.isNaN(busy.get("message_stats.confirm_details.rate")));
+        // not one of the reported metrics
+        assertTrue(Double.isNaN(busy.get("backing_queue_status.len")));
+
+        RabbitSnapshot.Record audit = section.records.get("billing\0audit");
+        assertEquals(7, audit.get("messages"), 0);
+        assertTrue(Double.isNaN(audit.get("memory")));
+        assertEquals(0, audit.get("memory", 0), 0);
+        assertEquals(7, audit.get("messages", 0), 0);
+    }
+}
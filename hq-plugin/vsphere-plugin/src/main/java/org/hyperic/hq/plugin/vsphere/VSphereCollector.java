@@ -25,6 +25,8 @@
 
 package org.hyperic.hq.plugin.vsphere;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.logging.Log;
@@ -41,9 +43,11 @@ import com.vmware.vim25.mo.PerformanceManager;
 
 public abstract class VSphereCollector extends Collector {
 
-    private static final long CACHE_TIMEOUT = 60000;
+    // counter definitions only change with the vCenter version
+    private static final long CACHE_TIMEOUT = 30 * 60000;
     private static final Log _log = LogFactory.getLog(VSphereCollector.class.getName());
-    private static ObjectCache<IntHashMap> cached;
+    private static final Map<String, ObjectCache<IntHashMap>> cached =
+        new HashMap<String, ObjectCache<IntHashMap>>();
     private static final Object CACHE_LOCK = new Object();
 
     public static final String PROP_URL = "url";
@@ -123,7 +127,8 @@ public abstract class VSphereCollector extends Collector {
     
     private IntHashMap getCounterCached() {
         synchronized (CACHE_LOCK) {
-            return (cached == null || cached.isExpired()) ? null : cached.getEntity();
+            ObjectCache<IntHashMap> counters = cached.get(getSource());
+            return (counters == null || counters.isExpired()) ? null : counters.getEntity();
         }
     }
 
@@ -139,7 +144,7 @@ public abstract class VSphereCollector extends Collector {
             info.put(counters[i].getKey(), counters[i]);
         }
         synchronized (CACHE_LOCK) {
-            cached = new ObjectCache<IntHashMap>(info, CACHE_TIMEOUT);
+            cached.put(getSource(), new ObjectCache<IntHashMap>(info, CACHE_TIMEOUT));
         }
         return info;
     }
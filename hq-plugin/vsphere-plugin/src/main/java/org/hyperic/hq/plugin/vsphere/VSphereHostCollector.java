@@ -40,11 +40,8 @@ import org.hyperic.util.collection.IntHashMap;
 import com.vmware.vim25.HostSystemPowerState;
 import com.vmware.vim25.PerfCounterInfo;
 import com.vmware.vim25.PerfEntityMetric;
-import com.vmware.vim25.PerfEntityMetricBase;
-import com.vmware.vim25.PerfMetricId;
 import com.vmware.vim25.PerfMetricIntSeries;
 import com.vmware.vim25.PerfMetricSeries;
-import com.vmware.vim25.PerfQuerySpec;
 import com.vmware.vim25.mo.HostSystem;
 import com.vmware.vim25.mo.ManagedEntity;
 import com.vmware.vim25.mo.PerformanceManager;
@@ -156,43 +153,21 @@ public class VSphereHostCollector extends VSphereCollector {
         }
         
         PerformanceManager perfManager = vim.getPerformanceManager();
-        PerfMetricId[] ids = getPerfMetricIds(perfManager, mor);
+        PerfEntityMetric metric =
+            VSpherePerfBatch.getInstance(getSource()).getValues(perfManager, mor);
 
-        if (ids == null || ids.length == 0) {
-            _log.info("No available performance metrics for "
-               + getType() + "[name=" + getName()
-               + "]");
-            return;
-        }
-        
-        Integer refreshRate = getRefreshRate(perfManager, mor);
-        PerfQuerySpec spec = new PerfQuerySpec();
-        spec.setEntity(mor.getMOR());
-        spec.setMetricId(ids);
-        spec.setMaxSample(new Integer(1));
-        spec.setIntervalId(refreshRate);
-       
-        PerfQuerySpec[] query = new PerfQuerySpec[] { spec };      
-        PerfEntityMetricBase[] values =
-            perfManager.queryPerf(query);
-
-        if (values == null) {
+        if (metric == null) {
             _log.info("No performance metrics for "
                 + getType() + "[name=" + getName()
-                + ", refreshRate=" + refreshRate
-                + ", availablePerfMetric=" + ids.length
                 + "]");
             return;
         }
         
         IntHashMap counters = getCounterInfo(perfManager);
-        PerfEntityMetric metric = (PerfEntityMetric)values[0];
         PerfMetricSeries[] vals = metric.getValue();
 
         if (_log.isDebugEnabled()) {
             _log.debug(getType() + "[name=" + getName()
-                       + ", refreshRate=" + refreshRate
-                       + ", availablePerfMetric=" + ids.length
                        + ", perfQuery=" + (vals == null ? 0 : vals.length)
                        + "]");
         }
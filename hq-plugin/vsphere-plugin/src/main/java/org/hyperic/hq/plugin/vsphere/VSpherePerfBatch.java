@@ -0,0 +1,303 @@
+/**
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ *  "derived work".
+ *
+ *  Copyright (C) [2010], VMware, Inc.
+ *  This file is part of HQ.
+ *
+ *  HQ is free software; you can redistribute it and/or modify
+ *  it under the terms version 2 of the GNU General Public License as
+ *  published by the Free Software Foundation. This program is distributed
+ *  in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ *  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ *  PARTICULAR PURPOSE. See the GNU General Public License for more
+ *  details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ */
+package org.hyperic.hq.plugin.vsphere;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.util.timer.StopWatch;
+
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.PerformanceManager;
+
+/**
+ * Collects the performance metrics of all the entities of a vCenter with
+ * batched queryPerf calls.  The collectors register their entity on first
+ * use.  The first collector of a pass which finds no result waiting for
+ * its entity queries every registered entity, the other collectors of the
+ * pass pick their results up.  A result is only picked up within the
+ * collection interval of its entity, a collector which comes late queries
+ * again.  The error of an entity whose query failed is handed to its
+ * collector in place of the result.
+ * 
+ * One query runs at a time, collectors which need one wait for it and use
+ * its results if they are fresh.  Results are picked up without waiting for
+ * a running query.
+ */
+class VSpherePerfBatch {
+
+    private static final Log _log = LogFactory.getLog(VSpherePerfBatch.class.getName());
+    private static final Map<String, VSpherePerfBatch> _batches =
+        new HashMap<String, VSpherePerfBatch>();
+
+    // number of entities per queryPerf call
+    private static final int BATCH_SIZE =
+        Integer.valueOf(System.getProperty("vsphere.perf.batch.size", "250"));
+    // available metrics and refresh rates of an entity are looked up again after
+    private static final long SPEC_TIMEOUT = 30 * 60000;
+    // entities which aren't asked for within are dropped, results are used
+    // within this until the collection interval of the entity is known
+    private static final long ENTITY_TIMEOUT = 10 * 60000;
+
+    //http://pubs.vmware.com/vi3/sdk/ReferenceGuide/vim.PerformanceManager.html
+    //interval that summarizes statistics for five minute intervals, the ID is 300
+    private static final Integer PERF_INTERVAL_ID = new Integer(300);
+
+    private final String _url;
+    // guarded by this
+    private final Map<String, Entity> _entities = new HashMap<String, Entity>();
+    // held while querying, never while holding this
+    private final Object _queryLock = new Object();
+
+    private VSpherePerfBatch(String url) {
+        _url = url;
+    }
+
+    static VSpherePerfBatch getInstance(String url) {
+        synchronized (_batches) {
+            VSpherePerfBatch batch = _batches.get(url);
+            if (batch == null) {
+                batch = new VSpherePerfBatch(url);
+                _batches.put(url, batch);
+            }
+            return batch;
+        }
+    }
+
+    private static class Entity {
+        private final ManagedEntity entity;
+        private ObjectCache<PerfQuerySpec> spec;
+        // the fields below are guarded by the batch
+        private PerfEntityMetric result;
+        private Exception error;
+        private boolean pending = false;
+        private long queried;
+        private long used;
+        // time between the last two collections
+        private long interval = ENTITY_TIMEOUT;
+
+        private Entity(ManagedEntity entity) {
+            this.entity = entity;
+        }
+
+        private String getKey() {
+            return entity.getMOR().getVal();
+        }
+
+        private synchronized PerfQuerySpec getSpec(PerformanceManager perfManager)
+            throws Exception {
+            if (spec != null && !spec.isExpired()) {
+                return spec.getEntity();
+            }
+            PerfQuerySpec rtn = null;
+            PerfMetricId[] ids =
+                perfManager.queryAvailablePerfMetric(entity, null, null, PERF_INTERVAL_ID);
+            if (ids != null && ids.length != 0) {
+                rtn = new PerfQuerySpec();
+                rtn.setEntity(entity.getMOR());
+                rtn.setMetricId(ids);
+                rtn.setMaxSample(new Integer(1));
+                rtn.setIntervalId(perfManager.queryPerfProviderSummary(entity).getRefreshRate());
+            }
+            spec = new ObjectCache<PerfQuerySpec>(rtn, SPEC_TIMEOUT);
+            return rtn;
+        }
+
+        private synchronized PerfQuerySpec getCachedSpec() {
+            return (spec == null) ? null : spec.getEntity();
+        }
+    }
+
+    /**
+     * @return the latest sample of the entity's metrics, or null if the
+     * entity has none available
+     */
+    PerfEntityMetric getValues(PerformanceManager perfManager, ManagedEntity mor)
+        throws Exception {
+
+        final String key = mor.getMOR().getVal();
+        final long now = System.currentTimeMillis();
+        final Entity entity;
+        final long interval;
+        synchronized (this) {
+            Entity e = _entities.get(key);
+            if (e == null) {
+                e = new Entity(mor);
+                _entities.put(key, e);
+            }
+            entity = e;
+            // results are judged by the interval the entity has been
+            // collected at so far, not by the gap to this late collection
+            interval = entity.interval;
+            if (entity.used != 0) {
+                entity.interval = now - entity.used;
+            }
+            entity.used = now;
+        }
+
+        if (entity.getSpec(perfManager) == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (isFresh(entity, interval)) {
+                return take(entity);
+            }
+        }
+        synchronized (_queryLock) {
+            final List<Entity> entities;
+            synchronized (this) {
+                // the query this collector waited for may have done its work
+                if (isFresh(entity, interval)) {
+                    return take(entity);
+                }
+                if (entity.queried == 0) {
+                    // joined after the batch of this pass
+                    entities = Collections.singletonList(entity);
+                } else {
+                    entities = getEntities();
+                }
+            }
+            final long queried = System.currentTimeMillis();
+            final Map<String, Exception> errors = new HashMap<String, Exception>();
+            final Map<String, PerfEntityMetric> results = query(perfManager, entities, errors);
+            synchronized (this) {
+                for (Entity e : entities) {
+                    e.result = results.get(e.getKey());
+                    e.error = errors.get(e.getKey());
+                    e.pending = true;
+                    e.queried = queried;
+                }
+                return take(entity);
+            }
+        }
+    }
+
+    private boolean isFresh(Entity entity, long interval) {
+        return entity.pending && System.currentTimeMillis() - entity.queried < interval;
+    }
+
+    private PerfEntityMetric take(Entity entity) throws Exception {
+        final PerfEntityMetric rtn = entity.result;
+        final Exception error = entity.error;
+        entity.result = null;
+        entity.error = null;
+        entity.pending = false;
+        if (error != null) {
+            throw error;
+        }
+        return rtn;
+    }
+
+    /**
+     * @return the entities which are still collected, must hold the lock
+     */
+    private List<Entity> getEntities() {
+        final long now = System.currentTimeMillis();
+        final List<Entity> entities = new ArrayList<Entity>(_entities.size());
+        for (Iterator<Entity> it = _entities.values().iterator(); it.hasNext();) {
+            Entity entity = it.next();
+            if (now - entity.used > ENTITY_TIMEOUT) {
+                // the collector of the entity is gone
+                it.remove();
+            } else {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * @param errors filled with the errors of the entities whose query failed
+     * @return the results by entity key
+     */
+    private Map<String, PerfEntityMetric> query(PerformanceManager perfManager,
+                                                List<Entity> candidates,
+                                                Map<String, Exception> errors) {
+        final StopWatch watch = new StopWatch();
+        final List<Entity> entities = new ArrayList<Entity>(candidates.size());
+        final List<PerfQuerySpec> specs = new ArrayList<PerfQuerySpec>(candidates.size());
+        for (Entity entity : candidates) {
+            PerfQuerySpec spec = entity.getCachedSpec();
+            if (spec != null) {
+                entities.add(entity);
+                specs.add(spec);
+            }
+        }
+
+        final Map<String, PerfEntityMetric> results = new HashMap<String, PerfEntityMetric>();
+        for (int i = 0; i < specs.size(); i += BATCH_SIZE) {
+            final int last = Math.min(i + BATCH_SIZE, specs.size());
+            try {
+                add(results, perfManager.queryPerf(
+                    specs.subList(i, last).toArray(new PerfQuerySpec[last - i])));
+            } catch (Exception e) {
+                if (last - i == 1) {
+                    errors.put(entities.get(i).getKey(), e);
+                    continue;
+                }
+                // an entity removed since its registration fails the whole
+                // call, query the entities of the chunk one at a time
+                if (_log.isDebugEnabled()) {
+                    _log.debug("queryPerf of " + (last - i) + " entities failed for " +
+                               _url + ", querying them one at a time: " + e);
+                }
+                for (int j = i; j < last; j++) {
+                    try {
+                        add(results, perfManager.queryPerf(new PerfQuerySpec[] { specs.get(j) }));
+                    } catch (Exception ex) {
+                        errors.put(entities.get(j).getKey(), ex);
+                    }
+                }
+            }
+        }
+
+        if (_log.isDebugEnabled()) {
+            _log.debug("queryPerf: url=" + _url + ", entities=" + specs.size() +
+                       ", results=" + results.size() + ", calls=" +
+                       ((specs.size() + BATCH_SIZE - 1) / BATCH_SIZE) + ", time=" + watch);
+        }
+        return results;
+    }
+
+    private void add(Map<String, PerfEntityMetric> results, PerfEntityMetricBase[] values) {
+        for (int i = 0; values != null && i < values.length; i++) {
+            if (values[i] instanceof PerfEntityMetric) {
+                results.put(values[i].getEntity().getVal(), (PerfEntityMetric) values[i]);
+            }
+        }
+    }
+}
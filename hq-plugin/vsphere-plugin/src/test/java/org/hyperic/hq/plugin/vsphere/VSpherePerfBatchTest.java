@@ -0,0 +1,203 @@
+/**
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ *  "derived work".
+ *
+ *  Copyright (C) [2010], VMware, Inc.
+ *  This file is part of HQ.
+ *
+ *  HQ is free software; you can redistribute it and/or modify
+ *  it under the terms version 2 of the GNU General Public License as
+ *  published by the Free Software Foundation. This program is distributed
+ *  in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ *  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ *  PARTICULAR PURPOSE. See the GNU General Public License for more
+ *  details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ */
+
+package org.hyperic.hq.plugin.vsphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.rmi.RemoteException;
+import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfProviderSummary;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.PerformanceManager;
+
+public class VSpherePerfBatchTest {
+
+    private final ManagedEntity host1 = entity("host-1");
+    private final ManagedEntity host2 = entity("host-2");
+    private final QueryCountingPerformanceManager perfManager = new QueryCountingPerformanceManager();
+
+    @Test
+    public void testPassSharesOneQuery() throws Exception {
+        final VSpherePerfBatch batch = VSpherePerfBatch.getInstance("https://pass/sdk");
+        // each entity is queried on its own on first use
+        assertNotNull(batch.getValues(perfManager, host1));
+        assertNotNull(batch.getValues(perfManager, host2));
+        assertEquals(2, perfManager.queries.get());
+
+        Thread.sleep(50);
+        assertNotNull(batch.getValues(perfManager, host1));
+        assertEquals(3, perfManager.queries.get());
+        assertEquals(2, perfManager.specs.get());
+        assertNotNull(batch.getValues(perfManager, host2));
+        assertEquals(3, perfManager.queries.get());
+    }
+
+    @Test
+    public void testLateCollectionQueriesAgain() throws Exception {
+        final VSpherePerfBatch batch = VSpherePerfBatch.getInstance("https://late/sdk");
+        batch.getValues(perfManager, host1);
+        batch.getValues(perfManager, host2);
+        Thread.sleep(50);
+        batch.getValues(perfManager, host1);
+        batch.getValues(perfManager, host2);
+        assertEquals(3, perfManager.queries.get());
+
+        // host-2 is collected every 50 ms, the result host-1 queried for it
+        // is too old by the time it comes
+        Thread.sleep(50);
+        batch.getValues(perfManager, host1);
+        Thread.sleep(200);
+        assertNotNull(batch.getValues(perfManager, host2));
+        assertEquals(5, perfManager.queries.get());
+    }
+
+    @Test
+    public void testResultIsPickedUpDuringQuery() throws Exception {
+        final VSpherePerfBatch batch = VSpherePerfBatch.getInstance("https://running/sdk");
+        batch.getValues(perfManager, host1);
+        batch.getValues(perfManager, host2);
+        Thread.sleep(50);
+        batch.getValues(perfManager, host1);
+
+        perfManager.release = new CountDownLatch(1);
+        final Thread querying = new Thread() {
+            public void run() {
+                try {
+                    batch.getValues(perfManager, host1);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        querying.start();
+        assertTrue(perfManager.started.await(5, TimeUnit.SECONDS));
+        try {
+            // host-2 has the result of the last query waiting
+            assertNotNull(batch.getValues(perfManager, host2));
+        } finally {
+            perfManager.release.countDown();
+        }
+        querying.join(5000);
+        assertEquals(4, perfManager.queries.get());
+    }
+
+    @Test
+    public void testEntityErrorReachesItsCollector() throws Exception {
+        final VSpherePerfBatch batch = VSpherePerfBatch.getInstance("https://error/sdk");
+        perfManager.failing = "host-2";
+        assertNotNull(batch.getValues(perfManager, host1));
+        assertQueryFails(batch, host2);
+
+        // the failed batch is queried one entity at a time
+        Thread.sleep(50);
+        assertNotNull(batch.getValues(perfManager, host1));
+        assertQueryFails(batch, host2);
+        assertEquals(5, perfManager.queries.get());
+    }
+
+    private void assertQueryFails(VSpherePerfBatch batch, ManagedEntity entity) {
+        try {
+            batch.getValues(perfManager, entity);
+            fail("query of " + entity.getMOR().getVal() + " did not fail");
+        } catch (Exception e) {
+            assertEquals("no such entity: " + entity.getMOR().getVal(), e.getMessage());
+        }
+    }
+
+    private static ManagedEntity entity(String id) {
+        final ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType("HostSystem");
+        mor.setVal(id);
+        return new ManagedEntity(null, mor);
+    }
+
+    private static class QueryCountingPerformanceManager extends PerformanceManager {
+        private final AtomicInteger queries = new AtomicInteger();
+        private final AtomicInteger specs = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch release;
+        // queries which include this entity fail
+        private volatile String failing;
+
+        private QueryCountingPerformanceManager() {
+            super(null, null);
+        }
+
+        @Override
+        public PerfMetricId[] queryAvailablePerfMetric(ManagedEntity entity, Calendar beginTime,
+                                                       Calendar endTime, Integer intervalId) {
+            return new PerfMetricId[] { new PerfMetricId() };
+        }
+
+        @Override
+        public PerfProviderSummary queryPerfProviderSummary(ManagedEntity entity) {
+            final PerfProviderSummary summary = new PerfProviderSummary();
+            summary.setRefreshRate(20);
+            return summary;
+        }
+
+        @Override
+        public PerfEntityMetricBase[] queryPerf(PerfQuerySpec[] querySpecs)
+            throws RemoteException {
+            queries.incrementAndGet();
+            specs.set(querySpecs.length);
+            for (int i = 0; i < querySpecs.length; i++) {
+                if (querySpecs[i].getEntity().getVal().equals(failing)) {
+                    throw new RemoteException("no such entity: " + failing);
+                }
+            }
+            if (release != null) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final PerfEntityMetricBase[] rtn = new PerfEntityMetricBase[querySpecs.length];
+            for (int i = 0; i < querySpecs.length; i++) {
+                rtn[i] = new PerfEntityMetric();
+                rtn[i].setEntity(querySpecs[i].getEntity());
+            }
+            return rtn;
+        }
+    }
+}
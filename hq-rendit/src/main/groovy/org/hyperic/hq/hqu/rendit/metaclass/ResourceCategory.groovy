@@ -66,6 +66,7 @@ import org.hyperic.hq.measurement.MeasurementConstants;
 import org.hyperic.hq.measurement.shared.MeasurementManager;
 import org.hyperic.hq.livedata.shared.LiveDataManager;
 import org.hyperic.hq.livedata.shared.LiveDataResult
+import org.hyperic.hq.livedata.shared.LiveDataResultListener
 import org.hyperic.util.config.ConfigResponse
 import org.hyperic.util.pager.PageControl
 import org.hyperic.hq.authz.shared.ResourceGroupManager;
@@ -324,6 +325,21 @@ class ResourceCategory {
         }
         liveDataMan.getData(user, cmds as LiveDataCommand[]) as List
     }
+
+    /**
+     * Run a live data command on all the resources at once, passing each
+     * {@link LiveDataResult} to the closure as soon as it arrives.  Resources
+     * which have not answered within timeout ms get an error result.
+     */
+    static void getLiveData(Collection resources, AuthzSubject user,
+    String cmd, ConfigResponse cfg, long timeout, Closure onResult) {
+        def cmds = []
+        for (r in resources) {
+            cmds << new LiveDataCommand(r.entityId, cmd, cfg)
+        }
+        liveDataMan.getData(user, cmds as LiveDataCommand[], -1, timeout,
+                            { res -> onResult(res) } as LiveDataResultListener)
+    }
     
     static boolean isPlatform(Resource r) {
         r.resourceType.id == AuthzConstants.authzPlatform
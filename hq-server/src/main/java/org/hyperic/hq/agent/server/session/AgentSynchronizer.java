@@ -31,16 +31,23 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -54,12 +61,12 @@ import org.hyperic.hq.authz.server.session.AuthzSubject;
 import org.hyperic.hq.authz.shared.AuthzSubjectManager;
 import org.hyperic.hq.common.DiagnosticObject;
 import org.hyperic.hq.common.DiagnosticsLogger;
-import org.hyperic.hq.common.SystemException;
 import org.hyperic.hq.measurement.MeasurementConstants;
 import org.hyperic.hq.measurement.shared.AvailabilityManager;
 import org.hyperic.hq.stats.ConcurrentStatsCollector;
 import org.hyperic.util.stats.StatCollector;
 import org.hyperic.util.stats.StatUnreachableException;
+import org.hyperic.util.thread.ThreadGroupFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -67,64 +74,80 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
+/**
+ * Runs {@link AgentDataTransferJob}s in the background.
+ * 
+ * The queued jobs are kept in a list per agent, and every agent with a job
+ * which may run is waiting in a {@link DelayQueue} until the job is due, jobs
+ * being retried a minute after their last run.  A dispatcher thread takes the
+ * agents off the queue as workers become available and runs their next job,
+ * so that no more than maxJobs jobs run at once across the server and no more
+ * than maxJobsPerAgent of them for the same agent.  Priority jobs go ahead of
+ * the other jobs of their agent and their agent goes ahead of the agents
+ * without priority jobs.
+ * 
+ * A {@link CoalescingAgentDataTransferJob} which is added while another one
+ * with the same description is queued for the agent and hasn't run yet is
+ * dropped, as the queued job will do its work.  One which failed and waits to
+ * be retried doesn't take it in.
+ */
 @Component
 public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAware {
     
-    private final int NUM_WORKERS;
     private static final long WAIT_TIME = 5 * MeasurementConstants.MINUTE;
-    private static final int DEFAULT_NUM_WORKERS = 20;
+    private static final int DEFAULT_MAX_JOBS = 20;
+    private static final int DEFAULT_MAX_JOBS_PER_AGENT = 1;
     private final Log log = LogFactory.getLog(AgentSynchronizer.class.getName());
-    private final Set<Integer> activeAgents = Collections.synchronizedSet(new HashSet<Integer>());
-    private final LinkedList<StatefulAgentDataTransferJob> agentJobs =
-        new LinkedList<StatefulAgentDataTransferJob>();
+    private final int maxJobs;
+    private final int maxJobsPerAgent;
+    private final Object lock = new Object();
+    /** guarded by lock */
+    private final Map<Integer, AgentJobs> jobsByAgent = new HashMap<Integer, AgentJobs>();
+    /** guarded by lock */
+    private int numQueuedJobs = 0;
+    /** guarded by lock, orders agents queued at the same time */
+    private long sequence = 0;
+    private final DelayQueue<AgentJobs> readyAgents = new DelayQueue<AgentJobs>();
+    private final Semaphore runningJobs;
     /** used mainly for diagnostics.  map of job description and number of times it has run */
     private final Map<String, Integer> fullDiagInfo = new HashMap<String, Integer>();
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
-    private final AtomicLong executorNum = new AtomicLong(0);
     private final ConcurrentStatsCollector concurrentStatsCollector;
     private final AuthzSubject overlord;
     private final AgentPluginSyncRestartThrottle agentPluginSyncRestartThrottle;
     private ApplicationContext ctx;
-    private ScheduledThreadPoolExecutor executor ; 
+    private ExecutorService executor;
+    // interrupts the jobs which run for more than WAIT_TIME
+    private ScheduledExecutorService watchdog;
+    private Thread dispatcher;
 
     @Autowired
     public AgentSynchronizer(ConcurrentStatsCollector concurrentStatsCollector,
                              DiagnosticsLogger diagnosticsLogger,
                              AgentPluginSyncRestartThrottle agentPluginSyncRestartThrottle,
-                             AuthzSubjectManager authzSubjectManager) {
+                             AuthzSubjectManager authzSubjectManager,
+                             @Value("#{tweakProperties['hq.agentSync.maxJobs'] }") Integer maxJobs,
+                             @Value("#{tweakProperties['hq.agentSync.maxJobsPerAgent'] }") Integer maxJobsPerAgent) {
         this.concurrentStatsCollector = concurrentStatsCollector;
         this.overlord = authzSubjectManager.getOverlordPojo();
         this.agentPluginSyncRestartThrottle = agentPluginSyncRestartThrottle;
+        this.maxJobs = (maxJobs == null || maxJobs < 1) ? DEFAULT_MAX_JOBS : maxJobs.intValue();
+        this.maxJobsPerAgent = (maxJobsPerAgent == null || maxJobsPerAgent < 1) ?
+            DEFAULT_MAX_JOBS_PER_AGENT : maxJobsPerAgent.intValue();
+        this.runningJobs = new Semaphore(this.maxJobs);
         diagnosticsLogger.addDiagnosticObject(this);
-        NUM_WORKERS = getNumWorkers();
-    }
-    
-    private int getNumWorkers() {
-        if (DEFAULT_NUM_WORKERS > 0) {
-            return DEFAULT_NUM_WORKERS;
-        }
-        else {
-            int cpus = Runtime.getRuntime().availableProcessors();
-            if (cpus > 4) {
-                return 4;
-            } else if (cpus <= 1) {
-                return 1;
-            } else {
-                return cpus;
-            }
-        }
     }
 
     public Set<Integer> getJobListByDescription(Collection<String> descriptions) {
-        List<AgentDataTransferJob> jobs;
         final Set<String> descs = new HashSet<String>(descriptions);
-        synchronized (agentJobs) {
-            jobs = new ArrayList<AgentDataTransferJob>(agentJobs);
-        }
         final Set<Integer> rtn = new HashSet<Integer>();
-        for (final AgentDataTransferJob job : jobs) {
-            if (descs.contains(job.getJobDescription())) {
-                rtn.add(job.getAgentId());
+        synchronized (lock) {
+            for (final AgentJobs agentJobs : jobsByAgent.values()) {
+                for (final AgentDataTransferJob job : agentJobs.jobs) {
+                    if (descs.contains(job.getJobDescription())) {
+                        rtn.add(job.getAgentId());
+                    }
+                }
             }
         }
         return rtn;
@@ -132,29 +155,30 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
     
     @PostConstruct
     void initialize() {
-        this.executor =
-            new ScheduledThreadPoolExecutor(NUM_WORKERS, new ThreadFactory() {
-            private final AtomicLong i = new AtomicLong(0);
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "AgentSynchronizer" + i.getAndIncrement());
-            }
-        });
-        log.info("starting AgentSynchronizer with " + NUM_WORKERS + " threads");
-        for (int i=0; i<NUM_WORKERS; i++) {
-            SchedulerThread worker = new SchedulerThread("AgentSynchronizer" + i, i*1000);
-            executor.scheduleWithFixedDelay(worker, i+1, NUM_WORKERS, TimeUnit.SECONDS);
-        }
+        final ThreadGroupFactory factory = new ThreadGroupFactory("AgentSynchronizer");
+        factory.createDaemonThreads(true);
+        this.executor = Executors.newFixedThreadPool(maxJobs, factory);
+        final ThreadGroupFactory watchdogFactory = new ThreadGroupFactory("AgentSynchronizerWatchdog");
+        watchdogFactory.createDaemonThreads(true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(watchdogFactory);
+        log.info("starting AgentSynchronizer with " + maxJobs + " threads");
         concurrentStatsCollector.register(ConcurrentStatsCollector.AGENT_SYNC_JOB_QUEUE_ADDS);
+        concurrentStatsCollector.register(ConcurrentStatsCollector.AGENT_SYNC_JOB_QUEUE_TIME);
+        concurrentStatsCollector.register(ConcurrentStatsCollector.AGENT_SYNC_JOBS_EXECUTED);
+        concurrentStatsCollector.register(ConcurrentStatsCollector.AGENT_SYNC_JOBS_COALESCED);
         concurrentStatsCollector.register(new StatCollector() {
             public long getVal() throws StatUnreachableException {
-                synchronized (agentJobs) {
-                    return agentJobs.size();
+                synchronized (lock) {
+                    return numQueuedJobs;
                 }
             }
             public String getId() {
                 return ConcurrentStatsCollector.AGENT_SYNCHRONIZER_QUEUE_SIZE;
             }
         });
+        this.dispatcher = new Thread(new Dispatcher(), "AgentSynchronizerDispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
     }
     
     public void addAgentJob(AgentDataTransferJob agentJob) {
@@ -163,44 +187,89 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
 
     /**
      * @param agentJob job to execute in the background
-     * @param isPriority - will add job to the top of the list
+     * @param isPriority - will run the job ahead of the jobs without priority
      */
     public void addAgentJob(AgentDataTransferJob agentJob, boolean isPriority) {
         if (log.isDebugEnabled()) log.debug("adding job=" + agentJob);
-        synchronized (agentJobs) {
-            if (isPriority) {
-                agentJobs.add(new StatefulAgentDataTransferJob(agentJob));
+        final Integer agentId = agentJob.getAgentId();
+        synchronized (lock) {
+            AgentJobs agentJobs = jobsByAgent.get(agentId);
+            if (agentJobs == null) {
+                agentJobs = new AgentJobs(agentId);
+                jobsByAgent.put(agentId, agentJobs);
+            }
+            StatefulAgentDataTransferJob job = null;
+            if (agentJob instanceof CoalescingAgentDataTransferJob) {
+                job = agentJobs.find(agentJob.getJobDescription());
+            }
+            if (job == null) {
+                job = new StatefulAgentDataTransferJob(agentJob);
+                numQueuedJobs++;
             } else {
-                agentJobs.addFirst(new StatefulAgentDataTransferJob(agentJob));
+                if (log.isDebugEnabled()) log.debug("coalesced job=" + agentJob + " with a queued one");
+                concurrentStatsCollector.addStat(1, ConcurrentStatsCollector.AGENT_SYNC_JOBS_COALESCED);
+                if (!isPriority || job.isPriority) {
+                    return;
+                }
+                agentJobs.jobs.remove(job);
             }
+            job.isPriority = isPriority;
+            agentJobs.add(job);
+            // the priority of the agent depends on its first job
+            dequeue(agentJobs);
+            enqueue(agentJobs);
         }
         concurrentStatsCollector.addStat(1, ConcurrentStatsCollector.AGENT_SYNC_JOB_QUEUE_ADDS);
     }
-    
-    private class SchedulerThread implements Runnable {
-        private final String name;
-        private final long initialSleep;
-        private SchedulerThread(String name, long initialSleep) {
-            this.name = name;
-            this.initialSleep = initialSleep;
-        }
-        @Override
-        public String toString() {
-            return name;
-        }
-        public synchronized void run() {
-            try {
-                Thread.sleep(initialSleep);
-            } catch (InterruptedException e) {
-                log.debug(e,e);
-            }
+
+    /**
+     * Puts the agent on the queue of agents waiting to run a job if it has a
+     * job and may run one more of them, must hold the lock
+     */
+    private void enqueue(AgentJobs agentJobs) {
+        if (agentJobs.isQueued || agentJobs.jobs.isEmpty() || agentJobs.numRunning >= maxJobsPerAgent) {
+            return;
+        }
+        final StatefulAgentDataTransferJob first = agentJobs.jobs.getFirst();
+        agentJobs.readyTime = Long.MAX_VALUE;
+        for (final StatefulAgentDataTransferJob job : agentJobs.jobs) {
+            agentJobs.readyTime = Math.min(agentJobs.readyTime, job.getReadyTime());
+        }
+        // priority jobs never wait, so they can't hold up ready agents
+        agentJobs.isPriority = first.isPriority && first.getReadyTime() <= now();
+        agentJobs.sequence = sequence++;
+        agentJobs.isQueued = true;
+        readyAgents.add(agentJobs);
+    }
+
+    /**
+     * Takes the agent off the queue before any of the fields it is ordered
+     * by changes, must hold the lock
+     */
+    private void dequeue(AgentJobs agentJobs) {
+        if (agentJobs.isQueued) {
+            readyAgents.remove(agentJobs);
+            agentJobs.isQueued = false;
+        }
+    }
+
+    private class Dispatcher implements Runnable {
+        public void run() {
             while (!shutdown.get()) {
                 try {
-                    boolean hasMoreScheduleJobs = true;
-                    while (hasMoreScheduleJobs) {
-                        hasMoreScheduleJobs = syncData();
+                    runningJobs.acquire();
+                    boolean dispatched = false;
+                    try {
+                        dispatched = dispatch(readyAgents.take());
+                    } finally {
+                        if (!dispatched) {
+                            runningJobs.release();
+                        }
                     }
-                    Thread.sleep(NUM_WORKERS*1000);
+                } catch (InterruptedException e) {
+                    log.debug(e,e);
+                } catch (RejectedExecutionException e) {
+                    log.debug(e,e);
                 } catch (Throwable t) {
                     log.error(t, t);
                 }
@@ -208,89 +277,106 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
         }
     }
 
-    private boolean syncData() {
-        StatefulAgentDataTransferJob job = null;
-        synchronized (agentJobs) {
-            job = agentJobs.poll();
-            
-        }
-        if (job == null) {
-            return false;
+    private boolean dispatch(final AgentJobs agentJobs) {
+        final StatefulAgentDataTransferJob job;
+        synchronized (lock) {
+            agentJobs.isQueued = false;
+            job = agentJobs.pollReady(now());
+            if (job == null) {
+                enqueue(agentJobs);
+                return false;
+            }
+            numQueuedJobs--;
+            agentJobs.numRunning++;
+            enqueue(agentJobs);
         }
         if (log.isDebugEnabled()) {
-        	log.debug("agentJobs, working on new job from agentJobs queue:" + getJobInfo(job) + " RuntimeId: "+ job.getRuntimeTime() +" , number of jobs left: " + agentJobs.size());
+            log.debug("agentJobs, working on new job from agentJobs queue:" + getJobInfo(job) +
+                      " RuntimeId: "+ job.getRuntimeTime());
         }
-        Integer agentId = null;
+        concurrentStatsCollector.addStat(now() - job.queuedTime, ConcurrentStatsCollector.AGENT_SYNC_JOB_QUEUE_TIME);
         try {
-            agentId = job.getAgentId();
-            final boolean debug = log.isDebugEnabled();
-            boolean added;
-            if (!job.canRun()) {
-                added = false;
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (log.isDebugEnabled()) log.debug("executing agent data transfer agentId=" +
+                                                            job.getAgentId() + " jobdesc=" + job.getJobDescription());
+                        executeJob(job);
+                        setDiags(job);
+                        concurrentStatsCollector.addStat(1, ConcurrentStatsCollector.AGENT_SYNC_JOBS_EXECUTED);
+                    } catch (Throwable t) {
+                        log.error("Error executing " + getJobInfo(job), t);
+                    } finally {
+                        finished(agentJobs);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finished(agentJobs);
+            throw e;
+        }
+        return true;
+    }
+
+    private void finished(AgentJobs agentJobs) {
+        synchronized (lock) {
+            agentJobs.numRunning--;
+            if (agentJobs.numRunning == 0 && agentJobs.jobs.isEmpty()) {
+                jobsByAgent.remove(agentJobs.agentId);
             } else {
-                added = activeAgents.add(agentId);
-            }
-            if (!added) {
-                reAddJob(job);
-                agentId = null;
-                // return false so that this mechanism doesn't spin out of control
-                // allow the other thread some time to get its job done
-                return false;
-            }
-            if (debug) log.debug("executing agent data transfer agentId=" + agentId +
-                                 " jobdesc=" + job.getJobDescription());
-            executeJob(job);
-            setDiags(job);
-            synchronized (agentJobs) {
-                return !agentJobs.isEmpty();
-            }
-        } catch (Exception e) {
-            throw new SystemException("Error executing " + getJobInfo(job), e);
-        } finally {
-            if (agentId != null) {
-                activeAgents.remove(agentId);
+                enqueue(agentJobs);
             }
         }
+        runningJobs.release();
     }
 
-    private void executeJob(final StatefulAgentDataTransferJob job) throws InterruptedException {
-        final String name = Thread.currentThread().getName() + "-" + executorNum.getAndIncrement();
-        final Thread thread = new Thread(name) {
-            @Override
+    private void executeJob(final StatefulAgentDataTransferJob job) {
+        final Thread thread = Thread.currentThread();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        final ScheduledFuture<?> timeout = watchdog.schedule(new Runnable() {
             public void run() {
-                job.setLastRuntime();
-                if (agentIsPingable(job)) {
-                    try {
-                        job.execute();
-                    } catch (Throwable e) {
-                        if (e instanceof InterruptedException) {
-                            log.warn("jobdesc=" + job.getJobDescription() + " was interrupted: " + e);
-                            log.debug(e,e);
-                        } else {
-                            log.error(e,e);
-                        }
+                synchronized (done) {
+                    if (!done.get()) {
+                        timedOut.set(true);
+                        thread.interrupt();
                     }
-                    return;
-                } else {
-                    log.warn("Could not ping agent in order to run job " + getJobInfo(job));
                 }
             }
-        };
-        thread.start();
-        thread.join(WAIT_TIME);
-        // if the thread is alive just try to interrupt it and keep going
-        final boolean threadIsAlive = thread.isAlive();
+        }, WAIT_TIME, TimeUnit.MILLISECONDS);
+        job.setLastRuntime();
+        try {
+            if (agentIsPingable(job)) {
+                try {
+                    job.execute();
+                } catch (Throwable e) {
+                    if (e instanceof InterruptedException) {
+                        log.warn("jobdesc=" + job.getJobDescription() + " was interrupted: " + e);
+                        log.debug(e,e);
+                    } else {
+                        log.error(e,e);
+                    }
+                }
+            } else {
+                log.warn("Could not ping agent in order to run job " + getJobInfo(job));
+            }
+        } finally {
+            synchronized (done) {
+                done.set(true);
+            }
+            timeout.cancel(false);
+            // don't leave the interrupt of the watchdog to the next job
+            Thread.interrupted();
+        }
         final boolean jobWasSuccessful = job.wasSuccessful();
-        final AvailabilityManager availabilityManager = ctx.getBean(AvailabilityManager.class);
-        final boolean platformIsAvailable =
-            availabilityManager.platformIsAvailableOrUnknown(job.getAgentId()) || isInRestartState(job.getAgentId());
         if (jobWasSuccessful) {
             // do nothing, this is good!
             return;
-        } else if (platformIsAvailable) {
-            if (threadIsAlive) {
-                thread.interrupt();
-            }
+        }
+        final AvailabilityManager availabilityManager = ctx.getBean(AvailabilityManager.class);
+        final boolean platformIsAvailable =
+            availabilityManager.platformIsAvailableOrUnknown(job.getAgentId()) || isInRestartState(job.getAgentId());
+        if (platformIsAvailable) {
             job.incrementFailures();
             
             if(log.isDebugEnabled()){
@@ -300,7 +386,7 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
                 job.onFailure("Too many failures on agent " + job.getAgentId() +  " RuntimeId: "+ job.getRuntimeTime() );
             } else {
                 reAddJob(job);
-                if (threadIsAlive) {
+                if (timedOut.get()) {
                     log.warn("AgentDataTransferJob=" + getJobInfo(job) +
                              " has take more than " + WAIT_TIME/1000/60 +
                              " minutes to run.  The agent appears alive so therefore the job was" +
@@ -313,8 +399,7 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
                 }
             }
         } else {
-            if (threadIsAlive) {
-                thread.interrupt();
+            if (timedOut.get()) {
                 log.warn("AgentDataTransferJob=" + getJobInfo(job) +
                          " has take more than " + WAIT_TIME/1000/60 +
                          " minutes to run.  Discarding job threadName={" + thread.getName() + "}");
@@ -328,15 +413,29 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
         return agentPluginSyncRestartThrottle.getAgentIdsInRestartState().containsKey(agentId);
     }
 
+    /**
+     * Queues a failed job again behind the other jobs of its agent, it is
+     * run once TIME_BTWN_RUNS passed since its last run
+     */
     private boolean reAddJob(StatefulAgentDataTransferJob job) {
         if (job.discardJob()) {
             return false;
         }
-        synchronized (agentJobs) {
-            agentJobs.add(job);
+        synchronized (lock) {
+            AgentJobs agentJobs = jobsByAgent.get(job.getAgentId());
+            if (agentJobs == null) {
+                agentJobs = new AgentJobs(job.getAgentId());
+                jobsByAgent.put(job.getAgentId(), agentJobs);
+            }
+            job.isPriority = false;
+            job.queuedTime = now();
+            agentJobs.jobs.add(job);
+            numQueuedJobs++;
             if(log.isDebugEnabled()){
-            	log.debug("Readd job to the queue: " + job.getJobDescription()  +  " RuntimeId: "+ job.getRuntimeTime() +" queue size: " +agentJobs.size());
+            	log.debug("Readd job to the queue: " + job.getJobDescription()  +  " RuntimeId: "+ job.getRuntimeTime() +" queue size: " + numQueuedJobs);
             }
+            dequeue(agentJobs);
+            enqueue(agentJobs);
         }
         return true;
     }
@@ -435,6 +534,78 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
         this.ctx = applicationContext;
     }
 
+    /**
+     * The queued jobs of an agent, waiting on the queue of ready agents while
+     * it has a job and may run one more of them.
+     */
+    private class AgentJobs implements Delayed {
+        private final Integer agentId;
+        /** priority jobs first, guarded by lock */
+        private final LinkedList<StatefulAgentDataTransferJob> jobs =
+            new LinkedList<StatefulAgentDataTransferJob>();
+        private int numRunning = 0;
+        private boolean isQueued = false;
+        // the fields the queue is ordered by, only changed while not queued
+        private boolean isPriority;
+        private long readyTime;
+        private long sequence;
+
+        private AgentJobs(Integer agentId) {
+            this.agentId = agentId;
+        }
+        private void add(StatefulAgentDataTransferJob job) {
+            if (!job.isPriority) {
+                jobs.add(job);
+                return;
+            }
+            final ListIterator<StatefulAgentDataTransferJob> it = jobs.listIterator();
+            while (it.hasNext()) {
+                if (!it.next().isPriority) {
+                    it.previous();
+                    break;
+                }
+            }
+            it.add(job);
+        }
+        private StatefulAgentDataTransferJob find(String description) {
+            for (final StatefulAgentDataTransferJob job : jobs) {
+                // only coalesce into a job which hasn't run yet, a failed one
+                // waiting to be retried would hold up the new one
+                if (job.job instanceof CoalescingAgentDataTransferJob && !job.hasRun() &&
+                        job.getJobDescription().equals(description)) {
+                    return job;
+                }
+            }
+            return null;
+        }
+        private StatefulAgentDataTransferJob pollReady(long now) {
+            for (final Iterator<StatefulAgentDataTransferJob> it = jobs.iterator(); it.hasNext(); ) {
+                final StatefulAgentDataTransferJob job = it.next();
+                if (job.getReadyTime() <= now) {
+                    it.remove();
+                    return job;
+                }
+            }
+            return null;
+        }
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyTime - now(), TimeUnit.MILLISECONDS);
+        }
+        public int compareTo(Delayed o) {
+            if (o == this) {
+                return 0;
+            }
+            final AgentJobs other = (AgentJobs) o;
+            if (isPriority != other.isPriority) {
+                return isPriority ? -1 : 1;
+            }
+            if (readyTime != other.readyTime) {
+                return (readyTime < other.readyTime) ? -1 : 1;
+            }
+            return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+        }
+    }
+
     private class StatefulAgentDataTransferJob implements AgentDataTransferJob {
         private static final int MAX_FAILURES = 5;//60;
         private static final long TIME_BTWN_RUNS = MeasurementConstants.MINUTE;
@@ -442,6 +613,8 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
         private int numFailures = 0;
         private long lastRuntime = Long.MIN_VALUE;
         private long runtimeTime = now();
+        private long queuedTime = runtimeTime;
+        private boolean isPriority = false;
         
         private StatefulAgentDataTransferJob(AgentDataTransferJob job) {
             this.job = job;
@@ -470,14 +643,17 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
         private boolean discardJob() {
             return numFailures >= MAX_FAILURES;
         }
-        private boolean canRun() {
-            if (numFailures >= MAX_FAILURES) {
-                return false;
-            }
-            if (lastRuntime != Long.MIN_VALUE && (lastRuntime+TIME_BTWN_RUNS) > now()) {
-                return false;
+        private boolean hasRun() {
+            return lastRuntime != Long.MIN_VALUE;
+        }
+        /**
+         * @return the earliest time the job may run again
+         */
+        private long getReadyTime() {
+            if (!hasRun()) {
+                return 0;
             }
-            return true;
+            return lastRuntime + TIME_BTWN_RUNS;
         }
         public int getNumberOfFailures(){
         	return numFailures;
@@ -495,7 +671,9 @@ public class AgentSynchronizer implements DiagnosticObject, ApplicationContextAw
     @PreDestroy
     public void shutdown() {
         shutdown.set(true);
+        this.dispatcher.interrupt();
         this.executor.shutdown() ;
+        this.watchdog.shutdownNow();
     }//EOM 
 
 }
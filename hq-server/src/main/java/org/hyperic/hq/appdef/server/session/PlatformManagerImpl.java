@@ -475,7 +475,7 @@ public class PlatformManagerImpl implements PlatformManager {
     }
 
     public void handleResourceDelete(Resource resource) {
-        resource.setResourceType(null);
+        resourceManager.markAsyncDelete(resource);
     }
 
     /**
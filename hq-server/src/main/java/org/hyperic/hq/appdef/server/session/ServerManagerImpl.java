@@ -532,7 +532,7 @@ public class ServerManagerImpl implements ServerManager {
      * 
      */
     public void handleResourceDelete(Resource resource) {
-        resource.setResourceType(null);
+        resourceManager.markAsyncDelete(resource);
     }
 
     /**
@@ -1562,7 +1562,7 @@ public class ServiceManagerImpl implements ServiceManager {
     }
 
     public void handleResourceDelete(Resource resource) {
-        resource.setResourceType(null);
+        resourceManager.markAsyncDelete(resource);
     }
 
     /**
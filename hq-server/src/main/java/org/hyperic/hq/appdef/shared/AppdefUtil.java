@@ -115,34 +115,54 @@ public class AppdefUtil {
                 throw new IllegalArgumentException(rv.getName() + 
                     " does not have a Resource Type");
             }
-            int entityID = rv.getInstanceId().intValue();
-            int entityType;
-            if(resType.getId().equals(AuthzConstants.authzPlatform)) {
-                entityType = AppdefEntityConstants.APPDEF_TYPE_PLATFORM;
-            }
-            else if(resType.getId().equals(AuthzConstants.authzServer)) {
-                entityType = AppdefEntityConstants.APPDEF_TYPE_SERVER;
-            }
-            else if(resType.getId().equals(AuthzConstants.authzService)) {
-                entityType = AppdefEntityConstants.APPDEF_TYPE_SERVICE;
-            }
-            else if(resType.getId().equals(AuthzConstants.authzApplication)) {
-                entityType = AppdefEntityConstants.APPDEF_TYPE_APPLICATION;
-            }
-            else if(resType.getId().equals(AuthzConstants.authzGroup)) {
-                entityType = AppdefEntityConstants.APPDEF_TYPE_GROUP;
-            } 
-            else if(resType.getId().equals(AuthzConstants.authzPolicy)) {
-                entityType = AppdefEntityConstants.APPDEF_TYPE_POLICY;
-            } 
-            else {
+            int entityType = resTypeToAppdefType(resType.getId());
+            if (entityType == -1) {
                 throw new IllegalArgumentException(resType.getName() + 
                     " is not a valid Appdef Resource Type");
             }
-            return new AppdefEntityID(entityType, entityID);
+            return new AppdefEntityID(entityType, rv.getInstanceId().intValue());
         
     }
 
+    /**
+     * Same as {@link #newAppdefEntityId(Resource)} for callers which only
+     * have the ids of the resource type and instance.
+     */
+    public static AppdefEntityID newAppdefEntityId(Integer resTypeId, Integer instanceId) {
+        int entityType = resTypeToAppdefType(resTypeId);
+        if (entityType == -1) {
+            throw new IllegalArgumentException("Resource Type " + resTypeId + 
+                " is not a valid Appdef Resource Type");
+        }
+        return new AppdefEntityID(entityType, instanceId.intValue());
+    }
+
+    /**
+     * @return the appdef type of the authz resource type, or -1 if it does
+     * not map to one
+     */
+    private static int resTypeToAppdefType(Integer resTypeId) {
+        if(resTypeId.equals(AuthzConstants.authzPlatform)) {
+            return AppdefEntityConstants.APPDEF_TYPE_PLATFORM;
+        }
+        else if(resTypeId.equals(AuthzConstants.authzServer)) {
+            return AppdefEntityConstants.APPDEF_TYPE_SERVER;
+        }
+        else if(resTypeId.equals(AuthzConstants.authzService)) {
+            return AppdefEntityConstants.APPDEF_TYPE_SERVICE;
+        }
+        else if(resTypeId.equals(AuthzConstants.authzApplication)) {
+            return AppdefEntityConstants.APPDEF_TYPE_APPLICATION;
+        }
+        else if(resTypeId.equals(AuthzConstants.authzGroup)) {
+            return AppdefEntityConstants.APPDEF_TYPE_GROUP;
+        } 
+        else if(resTypeId.equals(AuthzConstants.authzPolicy)) {
+            return AppdefEntityConstants.APPDEF_TYPE_POLICY;
+        } 
+        return -1;
+    }
+
     public static Map groupByAppdefType(AppdefEntityID[] ids) {
         HashMap m = new HashMap();
         for (int i = 0; i < ids.length; i++) {
@@ -65,11 +65,14 @@ public class ResourceDAO
     private Log _log = LogFactory.getLog(ResourceDAO.class);
 
     private PermissionManager permissionManager;
+    private ViewableResourceIndex viewableResourceIndex;
 
     @Autowired
-    public ResourceDAO(SessionFactory f, PermissionManager permissionManager) {
+    public ResourceDAO(SessionFactory f, PermissionManager permissionManager,
+                       ViewableResourceIndex viewableResourceIndex) {
         super(Resource.class, f);
         this.permissionManager = permissionManager;
+        this.viewableResourceIndex = viewableResourceIndex;
     }
 
     Resource create(ResourceType type, Resource prototype, String name, AuthzSubject creator,
@@ -93,6 +96,7 @@ public class ResourceDAO
         Resource resource = new Resource(type, prototype, name, creator, instanceId, system);
 
         save(resource);
+        viewableResourceIndex.invalidate();
 
         // Need to flush so that later permission checking can succeed
         getSession().flush();
@@ -108,6 +112,33 @@ public class ResourceDAO
         // need this to ensure that the optimistic locking doesn't fail
         entity.markDirty();
         super.remove(entity);
+        viewableResourceIndex.invalidate();
+    }
+
+    void setOwner(Resource entity, AuthzSubject owner) {
+        entity.setOwner(owner);
+        viewableResourceIndex.invalidate();
+    }
+
+    /**
+     * Nulls out the resource type, which flags the resource as being in the
+     * async delete state.
+     */
+    void markAsyncDelete(Resource entity) {
+        entity.setResourceType(null);
+        viewableResourceIndex.invalidate();
+    }
+
+    /**
+     * @return the id, resource type id, owner id and instance id of each
+     *         resource which is neither a system resource nor in the async
+     *         delete state
+     */
+    @SuppressWarnings("unchecked")
+    List<Object[]> findViewableIndexRows() {
+        String hql = "select r.id, r.resourceType.id, r.owner.id, r.instanceId from Resource r "
+                     + "where r.resourceType is not null and r.system = :system";
+        return getSession().createQuery(hql).setBoolean("system", false).list();
     }
 
     public boolean isOwner(Resource entity, Integer possibleOwner) {
@@ -352,6 +383,7 @@ public class ResourceDAO
     }
 
     int reassignResources(int oldOwner, int newOwner) {
+        viewableResourceIndex.invalidate();
         return getSession().createQuery(
             "UPDATE Resource " + "SET owner.id = :newOwner " + "WHERE owner.id = :oldOwner")
             .setInteger("oldOwner", oldOwner).setInteger("newOwner", newOwner).executeUpdate();
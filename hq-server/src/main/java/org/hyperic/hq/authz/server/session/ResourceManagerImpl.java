@@ -597,6 +597,10 @@ public class ResourceManagerImpl implements ResourceManager {
 		 resourceRemover.removeResource(subject, r);
 	 }
 
+	 public void markAsyncDelete(Resource r) {
+		 resourceDAO.markAsyncDelete(r);
+	 }
+
 	 /**
 	  * 
 	  */
@@ -605,7 +609,7 @@ public class ResourceManagerImpl implements ResourceManager {
 		 PermissionManager pm = PermissionManagerFactory.getInstance();
 
 		 if (pm.hasAdminPermission(whoami.getId()) || resourceDAO.isOwner(resource, whoami.getId())) {
-			 resource.setOwner(newOwner);
+			 resourceDAO.setOwner(resource, newOwner);
 		 } else {
 			 throw new PermissionException("Only an owner or admin may " + "reassign ownership.");
 		 }
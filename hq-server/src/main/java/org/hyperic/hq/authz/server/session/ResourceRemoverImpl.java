@@ -67,7 +67,7 @@ public class ResourceRemoverImpl implements ResourceRemover, ApplicationContextA
             watch.markTimeEnd("removeResource.removeEdges");
         }
         if (nullResourceType) {
-            r.setResourceType(null);
+            resourceDAO.markAsyncDelete(r);
         }
         final long now = System.currentTimeMillis();
         if (debug) {
@@ -346,7 +346,7 @@ public class RoleManagerImpl implements RoleManager, ApplicationContextAware {
         permissionManager.check(whoami.getId(), roleLocal.getResource().getResourceType(), roleLocal.getId(),
             AuthzConstants.roleOpModifyRole);
 
-        roleLocal.getResource().setOwner(owner);
+        resourceDAO.setOwner(roleLocal.getResource(), owner);
     }
 
     /**
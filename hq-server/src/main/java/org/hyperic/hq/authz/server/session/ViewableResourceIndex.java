@@ -0,0 +1,202 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2008], Hyperic, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.authz.server.session;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.hq.authz.shared.AuthzConstants;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory index of the resources each subject may view, used by the
+ * PermissionManager instead of loading every Resource entity on each
+ * "viewable" lookup.
+ *
+ * Resource ids are handed out by a sequence, so they are dense enough for a
+ * plain BitSet per owner and per resource type; a viewable lookup is an
+ * AND of the owner's set with the union of the requested type sets.
+ *
+ * The index is built from a single projection query the first time it is
+ * needed and is dropped whenever a resource is created, removed, marked for
+ * async delete or given a new owner.  It is dropped again after the
+ * surrounding transaction completes, so a rebuild racing an uncommitted
+ * change is never kept.
+ */
+@Component
+public class ViewableResourceIndex {
+    private final Log log = LogFactory.getLog(ViewableResourceIndex.class);
+
+    private final Object buildLock = new Object();
+    private volatile Snapshot snapshot;
+    private volatile long generation;
+
+    /**
+     * @return the current snapshot, building it from the resource table if
+     *         it has been invalidated
+     */
+    public Snapshot getSnapshot(ResourceDAO resourceDAO) {
+        Snapshot rtn = snapshot;
+        if (rtn != null) {
+            return rtn;
+        }
+        synchronized (buildLock) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            final long gen = generation;
+            final long start = System.currentTimeMillis();
+            rtn = new Snapshot(resourceDAO.findViewableIndexRows());
+            if (log.isDebugEnabled()) {
+                log.debug("built viewable resource index of " + rtn.size() + " resources in " +
+                          (System.currentTimeMillis() - start) + " ms");
+            }
+            // a resource changed while the rows were being read, the
+            // snapshot may already be stale so only hand it to this caller
+            if (gen == generation) {
+                snapshot = rtn;
+            }
+            return rtn;
+        }
+    }
+
+    /**
+     * Drops the index now and once more when the current transaction, if
+     * any, completes.
+     */
+    void invalidate() {
+        clear();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                clear();
+            }
+        });
+    }
+
+    private void clear() {
+        synchronized (buildLock) {
+            generation++;
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Immutable view of the viewable, non-system resources.
+     */
+    public static class Snapshot {
+        private final BitSet all = new BitSet();
+        private final Map<Integer, BitSet> byOwner = new HashMap<Integer, BitSet>();
+        private final Map<Integer, BitSet> byType = new HashMap<Integer, BitSet>();
+        // indexed by resource id, only set for the ids in all
+        private final int[] typeIds;
+        private final int[] instanceIds;
+        private final BitSet hasInstanceId = new BitSet();
+
+        /**
+         * @param rows resource id, resource type id, owner id and instance id
+         *        of each resource that is neither a system resource nor
+         *        marked for async delete
+         */
+        Snapshot(List<Object[]> rows) {
+            int maxId = -1;
+            for (final Object[] row : rows) {
+                maxId = Math.max(maxId, ((Integer) row[0]).intValue());
+            }
+            typeIds = new int[maxId + 1];
+            instanceIds = new int[maxId + 1];
+            for (final Object[] row : rows) {
+                final Integer id = (Integer) row[0];
+                final Integer typeId = (Integer) row[1];
+                final Integer ownerId = (Integer) row[2];
+                all.set(id);
+                bits(byType, typeId).set(id);
+                if (ownerId != null) {
+                    bits(byOwner, ownerId).set(id);
+                }
+                typeIds[id] = typeId.intValue();
+                if (row[3] != null) {
+                    instanceIds[id] = ((Integer) row[3]).intValue();
+                    hasInstanceId.set(id);
+                }
+            }
+        }
+
+        private static BitSet bits(Map<Integer, BitSet> map, Integer key) {
+            BitSet rtn = map.get(key);
+            if (rtn == null) {
+                rtn = new BitSet();
+                map.put(key, rtn);
+            }
+            return rtn;
+        }
+
+        /**
+         * @return a new set of the ids of resources of the given types which
+         *         are owned by the subject, or all of them for the root subject
+         */
+        public BitSet getViewable(Integer subjectId, Collection<Integer> resourceTypeIds) {
+            final BitSet rtn = new BitSet();
+            for (final Integer typeId : resourceTypeIds) {
+                final BitSet ofType = byType.get(typeId);
+                if (ofType != null) {
+                    rtn.or(ofType);
+                }
+            }
+            if (!AuthzConstants.rootSubjectId.equals(subjectId)) {
+                final BitSet owned = byOwner.get(subjectId);
+                if (owned == null) {
+                    rtn.clear();
+                } else {
+                    rtn.and(owned);
+                }
+            }
+            return rtn;
+        }
+
+        public Integer getResourceTypeId(int resourceId) {
+            return all.get(resourceId) ? Integer.valueOf(typeIds[resourceId]) : null;
+        }
+
+        public Integer getInstanceId(int resourceId) {
+            return hasInstanceId.get(resourceId) ? Integer.valueOf(instanceIds[resourceId]) : null;
+        }
+
+        int size() {
+            return all.cardinality();
+        }
+    }
+}
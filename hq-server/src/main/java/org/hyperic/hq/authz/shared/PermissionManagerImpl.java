@@ -30,6 +30,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -53,6 +54,7 @@ import org.hyperic.hq.authz.server.session.ResourceGroupDAO;
 import org.hyperic.hq.authz.server.session.ResourceType;
 import org.hyperic.hq.authz.server.session.Role;
 import org.hyperic.hq.authz.server.session.RoleDAO;
+import org.hyperic.hq.authz.server.session.ViewableResourceIndex;
 import org.hyperic.hq.common.ApplicationException;
 import org.hyperic.hq.common.NotFoundException;
 import org.hyperic.hq.common.SystemException;
@@ -78,6 +80,8 @@ public class PermissionManagerImpl extends PermissionManager {
 
     private OperationDAO operationDAO;
 
+    private ViewableResourceIndex viewableResourceIndex;
+
     private static final String VIEWABLE_SELECT = "SELECT instance_id, EAM_RESOURCE.sort_name, EAM_RESOURCE.id, "
                                                   + "EAM_RESOURCE.resource_type_id "
                                                   + "FROM EAM_RESOURCE ";
@@ -105,10 +109,12 @@ public class PermissionManagerImpl extends PermissionManager {
     }
 
     @Autowired
-    public PermissionManagerImpl(DBUtil dbUtil, OperationDAO operationDAO) {
+    public PermissionManagerImpl(DBUtil dbUtil, OperationDAO operationDAO,
+                                 ViewableResourceIndex viewableResourceIndex) {
         Connection conn = null;
         this.dbUtil = dbUtil;
         this.operationDAO = operationDAO;
+        this.viewableResourceIndex = viewableResourceIndex;
         try {
             conn = getConnection();
             _falseToken = DBUtil.getBooleanValue(false, conn);
@@ -464,23 +470,21 @@ public class PermissionManagerImpl extends PermissionManager {
         if (resourceTypes.isEmpty()) {
             return Collections.emptyList();
         }
-        final ResourceDAO resourceDAO = getResourceDAO();
-        final Collection<Resource> resources = (subj.getId().equals(1)) ?
-            resourceDAO.findAll() : resourceDAO.findByOwner(subj, PageControl.SORT_UNSORTED);
-        final List<AppdefEntityID> rtn = new ArrayList<AppdefEntityID>(resources.size());
+        final ViewableResourceIndex.Snapshot index = viewableResourceIndex.getSnapshot(getResourceDAO());
+        final BitSet ids = index.getViewable(subj.getId(), getTypeIds(resourceTypes));
+        final List<AppdefEntityID> rtn = new ArrayList<AppdefEntityID>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            rtn.add(AppdefUtil.newAppdefEntityId(index.getResourceTypeId(id), index.getInstanceId(id)));
+        }
+        return rtn;
+    }
+
+    private Set<Integer> getTypeIds(Collection<ResourceType> resourceTypes) {
         final Set<Integer> typeIds = new HashSet<Integer>();
         for (final ResourceType type : resourceTypes) {
             typeIds.add(type.getId());
         }
-        for (final Resource r : resources) {
-            if (r == null || r.isInAsyncDeleteState() || r.isSystem()) {
-                continue;
-            }
-            if (typeIds.contains(r.getResourceType().getId())) {
-                rtn.add(AppdefUtil.newAppdefEntityId(r));
-            }
-        }
-        return rtn;
+        return typeIds;
     }
 
     public Set<Integer> findViewableResources(AuthzSubject subj, Collection<ResourceType> resourceTypes) {
@@ -508,25 +512,15 @@ public class PermissionManagerImpl extends PermissionManager {
         if (resourceTypes.isEmpty()) {
             return Collections.emptySet();
         }
-        final ResourceDAO resourceDAO = getResourceDAO();
-        final Collection<Resource> resources = (subj.getId().equals(1)) ?
-            resourceDAO.findAllOrderByName() : resourceDAO.findByOwner(subj, sortName);
-        final Set<Integer> typeIds = new HashSet<Integer>();
+        // the result is a set, so the order the ids are visited in does not
+        // depend on sortName
+        final BitSet ids = viewableResourceIndex.getSnapshot(getResourceDAO())
+            .getViewable(subj.getId(), getTypeIds(resourceTypes));
         final Set<T> rtn = (comparator != null) ? new TreeSet<T>(comparator) : new HashSet<T>();
-        for (final ResourceType type : resourceTypes) {
-            typeIds.add(type.getId());
-        }
-        for (final Resource r : resources) {
-            if (r == null || r.isInAsyncDeleteState() || r.isSystem()) {
-                continue;
-            }
-            final Integer id = r.getId();
-            final int typeId = r.getResourceType().getId();
-            if (typeIds.contains(typeId)) {
-                T val = transformer.transform(id);
-                if (val != null) {
-                    rtn.add(val);
-                }
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            T val = transformer.transform(id);
+            if (val != null) {
+                rtn.add(val);
             }
         }
         return rtn;
@@ -548,10 +542,7 @@ public class PermissionManagerImpl extends PermissionManager {
         final ResourceDAO resourceDAO = getResourceDAO();
         final Collection<Resource> resources = (subj.getId().equals(1)) ?
             resourceDAO.findAll() : resourceDAO.findByOwner(subj, PageControl.SORT_UNSORTED);
-        final Set<Integer> typeIds = new HashSet<Integer>();
-        for (final ResourceType type : types) {
-            typeIds.add(type.getId());
-        }
+        final Set<Integer> typeIds = getTypeIds(types);
         ResourceGroupManager resourceGroupManager = Bootstrap.getBean(ResourceGroupManager.class);
         for (final Resource r : resources) {
             if (r == null || r.isInAsyncDeleteState() || r.isSystem() || !typeIds.contains(r.getResourceType().getId())) {
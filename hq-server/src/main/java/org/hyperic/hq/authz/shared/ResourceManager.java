@@ -167,6 +167,12 @@ public interface ResourceManager {
 
     public void removeResource(AuthzSubject subject, Resource r) throws VetoException;
 
+    /**
+     * Nulls out the resource type, which flags the resource as being in the
+     * async delete state.
+     */
+    public void markAsyncDelete(Resource r);
+
     public void setResourceOwner(AuthzSubject whoami, Resource resource, AuthzSubject newOwner)
         throws PermissionException;
 
@@ -35,6 +35,7 @@ import org.hyperic.hq.events.HeartBeatEvent;
 import org.hyperic.hq.events.TriggerInterface;
 import org.hyperic.hq.events.ext.RegisterableTriggerInterface;
 import org.hyperic.hq.events.ext.RegisteredTriggers;
+import org.hyperic.hq.events.ext.TriggerVisitor;
 import org.hyperic.hq.stats.ConcurrentStatsCollector;
 import org.hyperic.util.TimeUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -57,6 +58,7 @@ public class RegisteredDispatcherImpl implements MessageListener, HeartbeatCurre
     private RegisteredTriggers registeredTriggers;
     private ConcurrentStatsCollector concurrentStatsCollector;
     private AtomicLong heartbeatTime = new AtomicLong();
+    private final TriggerVisitor dispatcher = new TriggerDispatcher();
     
     @Autowired
     public RegisteredDispatcherImpl(RegisteredTriggers registeredTriggers, ConcurrentStatsCollector concurrentStatsCollector) {
@@ -76,15 +78,18 @@ public class RegisteredDispatcherImpl implements MessageListener, HeartbeatCurre
      * @param event The event.
      */
     private void dispatchEvent(AbstractEvent event) {
-        // Get interested triggers
-        Collection<RegisterableTriggerInterface> triggers = getInterestedTriggers(event);
+        int triggers = registeredTriggers.visitInterestedTriggers(event, dispatcher);
 
         if (log.isDebugEnabled()) {
-            log.debug("There are " + triggers.size() + " registered for event");
+            log.debug("There were " + triggers + " registered for event");
         }
+    }
 
-        // Dispatch to each trigger
-        for (RegisterableTriggerInterface registerableTrigger : triggers) {
+    /**
+     * Hands an event to each interested trigger as the registry finds them
+     */
+    private class TriggerDispatcher implements TriggerVisitor {
+        public void visit(AbstractEvent event, RegisterableTriggerInterface registerableTrigger) {
             TriggerInterface trigger = (TriggerInterface) registerableTrigger;
             long startTime = System.currentTimeMillis();
             try {
@@ -101,10 +106,6 @@ public class RegisteredDispatcherImpl implements MessageListener, HeartbeatCurre
         }
     }
 
-    protected Collection<RegisterableTriggerInterface> getInterestedTriggers(AbstractEvent evt) {
-        return registeredTriggers.getInterestedTriggers(evt);
-    }
-
     /**
      * The onMessage method
      * 
@@ -137,6 +137,7 @@ public class LatherDispatcherImpl implements LatherDispatcher {
 
     private static final String LATHER_RUN_COMMAND_TIME = ConcurrentStatsCollector.LATHER_RUN_COMMAND_TIME;
     private static final String LATHER_REMOTE_EXCEPTION = ConcurrentStatsCollector.LATHER_REMOTE_EXCEPTION;
+    private static final String LATHER_BINARY_REQUESTS = ConcurrentStatsCollector.LATHER_BINARY_REQUESTS;
 
     private final AgentManager agentManager;
     private final AuthManager authManager;
@@ -189,6 +190,7 @@ public class LatherDispatcherImpl implements LatherDispatcher {
     public void initStatsCollector() {
     	concurrentStatsCollector.register(LATHER_RUN_COMMAND_TIME);
     	concurrentStatsCollector.register(LATHER_REMOTE_EXCEPTION);
+    	concurrentStatsCollector.register(LATHER_BINARY_REQUESTS);
         concurrentStatsCollector.register(ConcurrentStatsCollector.CMD_PING);
         concurrentStatsCollector.register(ConcurrentStatsCollector.CMD_USERISVALID);
         concurrentStatsCollector.register(ConcurrentStatsCollector.CMD_MEASUREMENT_SEND_REPORT);
@@ -705,7 +707,11 @@ public class LatherDispatcherImpl implements LatherDispatcher {
         }
 
         if (log.isDebugEnabled()) {
-            log.debug("Request for " + method + "() from " + ctx.getCallerIP());
+            log.debug("Request for " + method + "() from " + ctx.getCallerIP() +
+                      (ctx.isBinary() ? " (binary)" : ""));
+        }
+        if (ctx.isBinary()) {
+            concurrentStatsCollector.addStat(1, LATHER_BINARY_REQUESTS);
         }
 
         if (!HAUtil.isMasterNode()) {
@@ -38,6 +38,7 @@ import org.hyperic.hq.livedata.shared.LiveDataCommand;
 import org.hyperic.hq.livedata.shared.LiveDataException;
 import org.hyperic.hq.livedata.shared.LiveDataManager;
 import org.hyperic.hq.livedata.shared.LiveDataResult;
+import org.hyperic.hq.livedata.shared.LiveDataResultListener;
 import org.hyperic.hq.product.PluginException;
 import org.hyperic.util.config.ConfigSchema;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -85,6 +86,21 @@ public class LiveDataBossImpl implements LiveDataBoss {
         return liveDataManager.getData(subject, commands);
     }
 
+    /**
+     * Get live data for the given commands, passing each result to the
+     * listener as it arrives
+     */
+    @Transactional(readOnly=true)
+    public void getLiveData(int sessionId, LiveDataCommand[] commands, long timeout,
+                            LiveDataResultListener listener)
+        throws PermissionException, AgentNotFoundException,
+        AppdefEntityNotFoundException, LiveDataException,
+        SessionTimeoutException, SessionNotFoundException {
+        AuthzSubject subject = sessionManager.getSubject(sessionId);
+        // no cache timeout, always ask the agents
+        liveDataManager.getData(subject, commands, -1, timeout, listener);
+    }
+
     /**
      * Get the commands for a given resource.
      */
@@ -1168,6 +1168,39 @@ public class MeasurementBossImpl implements MeasurementBoss {
             .getCollectionType(), returnNulls, pc);
     }
 
+    /**
+     * Get a stamp of the data stored for a measurement template on the given
+     * resources.  Availability is stored apart from the measurement data and
+     * isn't stamped.
+     * @param tid the template ID
+     * @param aids the resources
+     * @return the stamp, or -1 if the data cannot be stamped
+     * 
+     */
+    @Transactional(readOnly = true)
+    public long getMeasurementDataStamp(int sessionId, Integer tid, AppdefEntityID[] aids)
+        throws SessionNotFoundException, SessionTimeoutException, AppdefEntityNotFoundException,
+        PermissionException {
+        final AuthzSubject subject = sessionManager.getSubject(sessionId);
+
+        MeasurementTemplate tmpl = templateManager.getTemplate(tid);
+        if (tmpl.isAvailability()) {
+            return -1;
+        }
+
+        List<Integer> mids = new ArrayList<Integer>();
+        for (AppdefEntityID aid : aids) {
+            try {
+                for (Measurement m : getMeasurementsForResource(subject, aid, tmpl)) {
+                    mids.add(m.getId());
+                }
+            } catch (MeasurementNotFoundException e) {
+                // nothing to chart for the resource
+            }
+        }
+        return dataManager.getDataStamp(mids.toArray(new Integer[mids.size()]));
+    }
+
     /**
      * Dumps data for a specific measurement template for an auto-group based on
      * an interval.
@@ -34,6 +34,7 @@ import org.hyperic.hq.authz.shared.PermissionException;
 import org.hyperic.hq.livedata.shared.LiveDataCommand;
 import org.hyperic.hq.livedata.shared.LiveDataException;
 import org.hyperic.hq.livedata.shared.LiveDataResult;
+import org.hyperic.hq.livedata.shared.LiveDataResultListener;
 import org.hyperic.hq.product.PluginException;
 import org.hyperic.util.config.ConfigSchema;
 
@@ -55,6 +56,15 @@ public interface LiveDataBoss {
         AgentNotFoundException, AppdefEntityNotFoundException, LiveDataException, SessionTimeoutException,
         SessionNotFoundException;
 
+    /**
+     * Get live data for the given commands, passing each result to the
+     * listener as it arrives
+     */
+    public void getLiveData(int sessionId, LiveDataCommand[] commands, long timeout,
+                            LiveDataResultListener listener) throws PermissionException,
+        AgentNotFoundException, AppdefEntityNotFoundException, LiveDataException, SessionTimeoutException,
+        SessionNotFoundException;
+
     /**
      * Get the commands for a given resource.
      */
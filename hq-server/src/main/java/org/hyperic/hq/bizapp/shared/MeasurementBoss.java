@@ -328,6 +328,17 @@ public interface MeasurementBoss {
         throws SessionNotFoundException, SessionTimeoutException, AppdefEntityNotFoundException, PermissionException,
         MeasurementNotFoundException;
 
+    /**
+     * Get a stamp of the data stored for a measurement template on the given
+     * resources.  The stamp changes when new data arrives for or is rolled up
+     * over the measurements.
+     * @param tid the template ID
+     * @param aids the resources
+     * @return the stamp, or -1 if the data cannot be stamped
+     */
+    public long getMeasurementDataStamp(int sessionId, Integer tid, AppdefEntityID[] aids)
+        throws SessionNotFoundException, SessionTimeoutException, AppdefEntityNotFoundException, PermissionException;
+
     /**
      * Dumps data for a specific measurement template for an auto-group based on
      * an interval.
@@ -26,20 +26,17 @@ package org.hyperic.hq.escalation.server.session;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -55,11 +52,16 @@ import org.hyperic.hq.events.AlertDefinitionInterface;
 import org.hyperic.hq.events.AlertInterface;
 import org.hyperic.hq.events.server.session.Action;
 import org.hyperic.hq.events.server.session.AlertDAO;
+import org.hyperic.hq.escalation.server.session.EscalationTimingWheel.Timeout;
 import org.hyperic.hq.events.server.session.ClassicEscalationAlertType;
 import org.hyperic.hq.galerts.server.session.GalertEscalationAlertType;
 import org.hyperic.hq.galerts.server.session.GalertLogDAO;
 import org.hyperic.hq.stats.ConcurrentStatsCollector;
+import org.hyperic.util.stats.StatCollector;
+import org.hyperic.util.stats.StatUnreachableException;
+import org.hyperic.util.thread.ThreadGroupFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronization;
@@ -82,17 +84,26 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * EscalationRunner | ->EsclManager.executeState
  * 
  * 
- * The Runtime puts {@link EscalationState}s into the schedule. When the
- * schedule determines the state's time is ready to run, the task is passed off
- * into an EscalationRunner (which comes from a thread pool) and kicked off.
+ * The Runtime puts {@link EscalationState}s into the schedule, a timing wheel.
+ * When the schedule determines the states' time is ready to run, they are
+ * passed off in batches to the thread pool, which runs an EscalationRunner for
+ * each of them.  The pool grows with the number of batches waiting for a
+ * thread and shrinks back once they are done.
  */
 @Component
 public class EscalationRuntimeImpl implements EscalationRuntime {
 
 	private final ThreadLocal _batchUnscheduleTxnListeners = new ThreadLocal();
 
-	private final Timer _schedule = new Timer("EscalationRuntime", true);
-	private final Map _stateIdsToTasks = new HashMap();
+	private static final long TICK_MILLIS = 1000;
+	// a revolution of the wheel covers the usual wait between two steps
+	private static final int WHEEL_SLOTS = 512;
+	private static final int DEFAULT_MIN_THREADS = 3;
+	private static final int DEFAULT_MAX_THREADS = 24;
+	private static final int DEFAULT_BATCH_SIZE = 20;
+
+	private final EscalationTimingWheel _schedule;
+	private final Map<Integer, Timeout> _stateIdsToTasks = new HashMap<Integer, Timeout>();
 	private final Map _esclEntityIdsToStateIds = new HashMap();
 
 	private final Semaphore _mutex = new Semaphore(1);
@@ -100,6 +111,11 @@ public class EscalationRuntimeImpl implements EscalationRuntime {
 	private final Set _uncomittedEscalatingEntities = Collections
 			.synchronizedSet(new HashSet());
 	private final ThreadPoolExecutor _executor;
+	private final int _minThreads;
+	private final int _maxThreads;
+	private final int _batchSize;
+	// steps handed to the executor which didn't start yet
+	private final AtomicInteger _backlog = new AtomicInteger();
 	private final EscalationStateDAO escalationStateDao;
 	private final AuthzSubjectManager authzSubjectManager;
 	private final AlertDAO alertDAO;
@@ -110,50 +126,89 @@ public class EscalationRuntimeImpl implements EscalationRuntime {
 	@Autowired
 	public EscalationRuntimeImpl(EscalationStateDAO escalationStateDao,
 			AuthzSubjectManager authzSubjectManager, AlertDAO alertDAO,
-			GalertLogDAO galertLogDAO, ConcurrentStatsCollector concurrentStatsCollector) {
+			GalertLogDAO galertLogDAO, ConcurrentStatsCollector concurrentStatsCollector,
+			@Value("#{tweakProperties['hq.escalation.minThreads'] }") Integer minThreads,
+			@Value("#{tweakProperties['hq.escalation.maxThreads'] }") Integer maxThreads,
+			@Value("#{tweakProperties['hq.escalation.batchSize'] }") Integer batchSize) {
 		this.escalationStateDao = escalationStateDao;
 		this.authzSubjectManager = authzSubjectManager;
 		this.alertDAO = alertDAO;
 		this.galertLogDAO = galertLogDAO;
 		this.concurrentStatsCollector = concurrentStatsCollector;
-		// Want threads to never die (XXX, scottmf, keeping current
-		// functionality to get rid of
-		// backport apis but don't think this is a good idea)
-		// 3 threads to service requests
-		_executor = new ThreadPoolExecutor(3, 3, Long.MAX_VALUE, TimeUnit.SECONDS, new LinkedBlockingQueue());
+		_minThreads = (minThreads == null || minThreads < 1) ? DEFAULT_MIN_THREADS : minThreads.intValue();
+		_maxThreads = Math.max(_minThreads,
+				(maxThreads == null || maxThreads < 1) ? DEFAULT_MAX_THREADS : maxThreads.intValue());
+		_batchSize = (batchSize == null || batchSize < 1) ? DEFAULT_BATCH_SIZE : batchSize.intValue();
+		// threads above the current core size die after a minute idle
+		_executor = new ThreadPoolExecutor(_minThreads, _maxThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadGroupFactory("EscalationRunner-"));
+		_schedule = new EscalationTimingWheel("EscalationRuntime", TICK_MILLIS, WHEEL_SLOTS,
+				new ScheduleWatcher());
 	}
 	
 	@PostConstruct
 	public void initStatsCollection() {
 		concurrentStatsCollector.register(ConcurrentStatsCollector.ESCALATION_EXECUTE_STATE_TIME);
+		concurrentStatsCollector.register(ConcurrentStatsCollector.ESCALATION_STEP_LAG);
+		concurrentStatsCollector.register(new StatCollector() {
+			public long getVal() throws StatUnreachableException {
+				return _backlog.get();
+			}
+			public String getId() {
+				return ConcurrentStatsCollector.ESCALATION_BACKLOG;
+			}
+		});
 	}
 	
 	@PreDestroy 
 	public final void destroy() { 
 	    this._executor.shutdown() ;
-	    this._schedule.cancel() ;
+	    this._schedule.stop() ;
 	}//EOM 
 
 	/**
-	 * This class is invoked when the clock daemon wakes up and decides that it
-	 * is time to look at an escalation.
+	 * This class is invoked when the timing wheel decides that it is time to
+	 * look at a set of escalations.
 	 */
-	private class ScheduleWatcher extends TimerTask {
-		private final Integer _stateId;
-		private final Executor _executor;
+	private class ScheduleWatcher implements EscalationTimingWheel.Handler {
+		public void expired(List<Timeout> due) {
+			_backlog.addAndGet(due.size());
+			for (int i = 0; i < due.size(); i += _batchSize) {
+				_executor.execute(new BatchRunner(due.subList(i, Math.min(i + _batchSize, due.size()))));
+			}
+			resizeExecutor();
+		}
+	}
 
-		private ScheduleWatcher(Integer stateId, Executor executor) {
-			_stateId = stateId;
-			_executor = executor;
+	/**
+	 * Runs the escalation states of a batch one after the other, reporting
+	 * how late each of them started.
+	 */
+	private class BatchRunner implements Runnable {
+		private final List<Timeout> _timeouts;
+
+		private BatchRunner(List<Timeout> timeouts) {
+			_timeouts = timeouts;
 		}
 
-		@Override
-        public void run() {
-			try {
-				_executor.execute(new EscalationRunner(_stateId));
-			}  catch(Throwable t) {
-				log.error(t,t); 
+		public void run() {
+			for (Timeout timeout : _timeouts) {
+				_backlog.decrementAndGet();
+				concurrentStatsCollector.addStat(System.currentTimeMillis() - timeout.getDeadline(),
+						ConcurrentStatsCollector.ESCALATION_STEP_LAG);
+				new EscalationRunner(timeout.getStateId()).run();
 			}
+			resizeExecutor();
+		}
+	}
+
+	/**
+	 * One thread more than the minimum for each batch waiting for a thread.
+	 */
+	private void resizeExecutor() {
+		final int threads = Math.min(_maxThreads, _minThreads + _executor.getQueue().size());
+		if (threads != _executor.getCorePoolSize()) {
+			_executor.setCorePoolSize(threads);
 		}
 	}
 
@@ -305,7 +360,7 @@ public class EscalationRuntimeImpl implements EscalationRuntime {
 
 	private void doUnscheduleEscalation_(Integer stateId) {
 		if (stateId != null) {
-			TimerTask task = (TimerTask) _stateIdsToTasks.remove(stateId);
+			Timeout task = _stateIdsToTasks.remove(stateId);
 
 			if (task != null) {
 				task.cancel();
@@ -448,7 +503,7 @@ public class EscalationRuntimeImpl implements EscalationRuntime {
 		}
 
 		synchronized (_stateIdsToTasks) {
-			   ScheduleWatcher task = (ScheduleWatcher) _stateIdsToTasks.get(stateId);
+			Timeout task = _stateIdsToTasks.get(stateId);
 
 			if (task != null) {
 				// Previously scheduled. Unschedule
@@ -458,8 +513,7 @@ public class EscalationRuntimeImpl implements EscalationRuntime {
 				log.debug("Scheduling state[" + stateId + "]");
 			}
 			
-			 task = new ScheduleWatcher(stateId, _executor);
-			 _schedule.schedule(task, new Date(schedTime));
+			task = _schedule.schedule(stateId, schedTime);
 
 			_stateIdsToTasks.put(stateId, task);
 			_esclEntityIdsToStateIds.put(new EscalatingEntityIdentifier(state),
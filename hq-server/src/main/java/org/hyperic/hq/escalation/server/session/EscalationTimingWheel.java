@@ -0,0 +1,215 @@
+/**
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ *  "derived work".
+ *
+ *  Copyright (C) [2009-2010], VMware, Inc.
+ *  This file is part of HQ.
+ *
+ *  HQ is free software; you can redistribute it and/or modify
+ *  it under the terms version 2 of the GNU General Public License as
+ *  published by the Free Software Foundation. This program is distributed
+ *  in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ *  even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ *  PARTICULAR PURPOSE. See the GNU General Public License for more
+ *  details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ */
+
+package org.hyperic.hq.escalation.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A hashed timing wheel which wakes up escalation states at their next action
+ * time.  Scheduling and canceling a state is constant time no matter how many
+ * states are scheduled, and all the states falling due within the same tick
+ * are handed to the {@link Handler} together so that they can be executed in
+ * batches.
+ * 
+ * A state never fires before its time but may fire up to one tick late.
+ */
+class EscalationTimingWheel {
+    private final Log log = LogFactory.getLog(EscalationTimingWheel.class);
+
+    interface Handler {
+        /**
+         * Called on the wheel's thread with the states which fell due, in no
+         * particular order.  Should hand them off rather than run them.
+         */
+        void expired(List<Timeout> due);
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout[] slots;
+    private final Handler handler;
+    private final Thread thread;
+    // guarded by this
+    private long processedTick;
+    private int size;
+    private volatile boolean running = true;
+
+    /**
+     * @param slots rounded up to a power of two, a revolution of the wheel
+     *        should cover the usual wait time of an escalation step
+     */
+    EscalationTimingWheel(String name, long tickMillis, int slots, Handler handler) {
+        int n = 1;
+        while (n < slots) {
+            n <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.mask = n - 1;
+        this.slots = new Timeout[n];
+        this.handler = handler;
+        this.processedTick = System.currentTimeMillis() / tickMillis;
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                turn();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * @return the handle to cancel the timeout with
+     */
+    synchronized Timeout schedule(Integer stateId, long deadline) {
+        final Timeout timeout = new Timeout(stateId, deadline);
+        timeout.tick = Math.max((deadline + tickMillis - 1) / tickMillis, processedTick + 1);
+        link(timeout);
+        return timeout;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private synchronized void cancel(Timeout timeout) {
+        if (timeout.slot >= 0) {
+            unlink(timeout);
+        }
+    }
+
+    private void link(Timeout timeout) {
+        final int slot = (int) (timeout.tick & mask);
+        timeout.slot = slot;
+        timeout.next = slots[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        slots[slot] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev == null) {
+            slots[timeout.slot] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        size--;
+    }
+
+    private void turn() {
+        while (running) {
+            final long now = System.currentTimeMillis();
+            final long current = now / tickMillis;
+            final List<Timeout> due = new ArrayList<Timeout>();
+            synchronized (this) {
+                if (current - processedTick > slots.length) {
+                    // fell more than a revolution behind, look at every slot once
+                    for (int i = 0; i < slots.length; i++) {
+                        expire(i, current, due);
+                    }
+                    processedTick = current;
+                }
+                while (processedTick < current) {
+                    processedTick++;
+                    expire((int) (processedTick & mask), processedTick, due);
+                }
+            }
+            if (!due.isEmpty()) {
+                try {
+                    handler.expired(due);
+                } catch (Throwable t) {
+                    log.error(t, t);
+                }
+            }
+            try {
+                Thread.sleep(Math.max(1, ((current + 1) * tickMillis) - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void expire(int slot, long tick, List<Timeout> due) {
+        Timeout timeout = slots[slot];
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.tick <= tick) {
+                unlink(timeout);
+                due.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A scheduled escalation state, linked into the list of its slot until it
+     * fires or is canceled.
+     */
+    class Timeout {
+        private final Integer stateId;
+        private final long deadline;
+        private long tick;
+        private int slot = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Integer stateId, long deadline) {
+            this.stateId = stateId;
+            this.deadline = deadline;
+        }
+
+        Integer getStateId() {
+            return stateId;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+
+        void cancel() {
+            EscalationTimingWheel.this.cancel(this);
+        }
+    }
+}
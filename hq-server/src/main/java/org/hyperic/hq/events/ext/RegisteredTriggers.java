@@ -23,10 +23,8 @@ package org.hyperic.hq.events.ext;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,7 +36,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 /**
- * Repository of in memory triggers for event processing
+ * Repository of in memory triggers for event processing. Triggers are kept in
+ * a {@link TriggerIndex} so events can be matched to them without taking locks
+ * or allocating, see
+ * {@link #visitInterestedTriggers(AbstractEvent, TriggerVisitor)}.
  * @author jhickey
  * 
  */
@@ -47,9 +48,7 @@ public class RegisteredTriggers implements RegisterableTriggerRepository {
 
     public static final Integer KEY_ALL = new Integer(0);
 
-    private final Object triggerUpdateLock = new Object();
-
-    private Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> triggers = new ConcurrentHashMap<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>>();
+    private final TriggerIndex triggers = new TriggerIndex();
 
     private final AlertRegulator alertRegulator;
 
@@ -62,40 +61,81 @@ public class RegisteredTriggers implements RegisterableTriggerRepository {
     }
 
     Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> getTriggers() {
-        return this.triggers;
+        return this.triggers.toMap();
     }
    
     public void init() {
-        this.triggers = new ConcurrentHashMap<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>>();
+        this.triggers.clear();
     }
 
     public Collection<RegisterableTriggerInterface> getInterestedTriggers(AbstractEvent event,
                                                                           Integer instanceId) {
         HashSet<RegisterableTriggerInterface> trigs = new HashSet<RegisterableTriggerInterface>();
+        visit(event, getTriggers(event, instanceId.intValue()), null, new Collector(trigs));
+        return trigs;
+    }
+
+    /**
+     * Calls the visitor for each enabled trigger interested in the event,
+     * whether through the event's instance or through {@link #KEY_ALL}.
+     * @param event The event
+     * @param visitor The visitor, called on the calling thread
+     * @return The number of triggers visited
+     */
+    public int visitInterestedTriggers(AbstractEvent event, TriggerVisitor visitor) {
+        RegisterableTriggerInterface[] instanceTriggers = TriggerIndex.NONE;
+        int visited = 0;
+        // Can't very well look up a null object
+        if (event.getInstanceId() != null) {
+            instanceTriggers = getTriggers(event, event.getInstanceId().intValue());
+            visited += visit(event, instanceTriggers, null, visitor);
+        }
+        visited += visit(event, getTriggers(event, KEY_ALL.intValue()), instanceTriggers, visitor);
+        return visited;
+    }
+
+    private RegisterableTriggerInterface[] getTriggers(AbstractEvent event, int instanceId) {
         // All alerts are disabled, so no triggers should be processing events
         if (!alertRegulator.alertsAllowed()) {
-            return trigs;
+            return TriggerIndex.NONE;
         }
-        TriggerEventKey key = new TriggerEventKey(event.getClass(), instanceId.intValue());
-        Map<Integer, RegisterableTriggerInterface> triggersById = triggers
-            .get(key);
-        if (triggersById != null) {
-            trigs.addAll(triggersById.values());
-        }
-        // Remove disabled triggers from new set so don't have to synchronize
-        // retrieval around concurrent triggers map
-        for (Iterator<RegisterableTriggerInterface> iterator = trigs.iterator(); iterator.hasNext();) {
-            RegisterableTriggerInterface trigger = iterator.next();
+        return triggers.get(event.getClass(), instanceId);
+    }
+
+    /**
+     * @param visited Triggers already visited for this event, or null
+     * @param visitor The visitor, or null to only count the enabled triggers
+     */
+    private int visit(AbstractEvent event, RegisterableTriggerInterface[] trigs,
+                      RegisterableTriggerInterface[] visited, TriggerVisitor visitor) {
+        int count = 0;
+        for (RegisterableTriggerInterface trigger : trigs) {
             if (!trigger.isEnabled()) {
                 if (trigger instanceof ValueChangeTrigger) {
                     if (event instanceof MeasurementEvent) {
                         ((ValueChangeTrigger)trigger).setLast(((MeasurementEvent)event));
                     }
                 }
-                iterator.remove();
+                continue;
+            }
+            if (visited != null && contains(visited, trigger)) {
+                continue;
+            }
+            count++;
+            if (visitor != null) {
+                visitor.visit(event, trigger);
             }
         }
-        return trigs;
+        return count;
+    }
+
+    private static boolean contains(RegisterableTriggerInterface[] trigs, RegisterableTriggerInterface trigger) {
+        for (RegisterableTriggerInterface t : trigs) {
+            if (t == trigger) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public void addTrigger(RegisterableTriggerInterface trigger) {
@@ -109,52 +149,29 @@ public class RegisteredTriggers implements RegisterableTriggerRepository {
             }
 
             for (Integer instance : instances) {
-                TriggerEventKey key = new TriggerEventKey(type, instance.intValue());
-                // Despite using ConcurrentHashMaps - need to synchronize
-                // updates due to iteration required by unregisterTrigger
-                synchronized (triggerUpdateLock) {
-                    Map<Integer, RegisterableTriggerInterface> triggersById = triggers
-                        .get(key);
-                    if (triggersById == null) {
-                        triggersById = new ConcurrentHashMap<Integer, RegisterableTriggerInterface>();
-                    }
-                    triggersById.put(trigger.getId(), trigger);
-                    triggers.put(key, triggersById);
-                }
+                triggers.add(type, instance.intValue(), trigger.getId(), trigger);
             }
         }
     }
 
     void setTriggers(Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> triggers) {
-        this.triggers = triggers;
+        this.triggers.clear();
+        for (Map.Entry<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> entry : triggers.entrySet()) {
+            TriggerEventKey key = entry.getKey();
+            for (Map.Entry<Integer, RegisterableTriggerInterface> trigger : entry.getValue().entrySet()) {
+                this.triggers.add(key.getEventClass(), key.getInstanceId(), trigger.getKey(), trigger.getValue());
+            }
+        }
     }
 
     public void removeTrigger(Integer triggerId) {
-        synchronized (triggerUpdateLock) {
-            for (Iterator<Map<Integer, RegisterableTriggerInterface>> triggerMaps = triggers
-                .values().iterator(); triggerMaps.hasNext();) {
-                Map<Integer, RegisterableTriggerInterface> triggerIdsToTriggers = triggerMaps
-                    .next();
-                triggerIdsToTriggers.remove(triggerId);
-                if (triggerIdsToTriggers.isEmpty()) {
-                    triggerMaps.remove();
-                }
-            }
+        if (triggers.remove(triggerId) == null && log.isDebugEnabled()) {
+            log.debug("Trigger " + triggerId + " was not registered");
         }
     }
 
     public RegisterableTriggerInterface getTriggerById(Integer triggerId) {
-        synchronized (triggerUpdateLock) {
-            for (Map<Integer, RegisterableTriggerInterface> triggerIdsToTriggers : triggers
-                .values()) {
-                RegisterableTriggerInterface trigger = triggerIdsToTriggers
-                    .get(triggerId);
-                if (trigger != null) {
-                    return trigger;
-                }
-            }
-            return null;
-        }
+        return triggers.getById(triggerId);
     }
 
     public void setTriggersEnabled(Collection<Integer> triggerIds, boolean enabled) {
@@ -174,14 +191,7 @@ public class RegisteredTriggers implements RegisterableTriggerRepository {
 
     public Collection<RegisterableTriggerInterface> getInterestedTriggers(AbstractEvent event) {
         HashSet<RegisterableTriggerInterface> trigs = new HashSet<RegisterableTriggerInterface>();
-
-        // Can't very well look up a null object
-        if (event.getInstanceId() != null) {
-            // Get the triggers that are interested in this instance
-            trigs.addAll(getInterestedTriggers(event, event.getInstanceId()));
-        }
-        // Get the triggers that are interested in all instances
-        trigs.addAll(getInterestedTriggers(event, KEY_ALL));
+        visitInterestedTriggers(event, new Collector(trigs));
         return trigs;
     }
 
@@ -196,16 +206,24 @@ public class RegisteredTriggers implements RegisterableTriggerRepository {
         // Can't very well look up a null object
         if (event.getInstanceId() != null) {
             // Get the triggers that are interested in this instance
-            Collection<RegisterableTriggerInterface> trigs = getInterestedTriggers(
-event, event.getInstanceId());
-            if (trigs.size() > 0) {
+            if (visit(event, getTriggers(event, event.getInstanceId().intValue()), null, null) > 0) {
                 return true;
             }
         }
 
         // Check the triggers that are interested in all instances
-        Collection<RegisterableTriggerInterface> trigs = getInterestedTriggers(event,
-            KEY_ALL);
-        return (trigs.size() > 0);
+        return visit(event, getTriggers(event, KEY_ALL.intValue()), null, null) > 0;
+    }
+
+    private static class Collector implements TriggerVisitor {
+        private final Collection<RegisterableTriggerInterface> trigs;
+
+        Collector(Collection<RegisterableTriggerInterface> trigs) {
+            this.trigs = trigs;
+        }
+
+        public void visit(AbstractEvent event, RegisterableTriggerInterface trigger) {
+            trigs.add(trigger);
+        }
     }
 }
@@ -48,6 +48,14 @@ public class TriggerEventKey {
         this.instanceId = instanceId;
     }
 
+    public Class<?> getEventClass() {
+        return eventClass;
+    }
+
+    public int getInstanceId() {
+        return instanceId;
+    }
+
     public boolean equals(Object obj) {
         if (this == obj) {
             return true;
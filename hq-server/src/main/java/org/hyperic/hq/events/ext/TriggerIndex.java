@@ -0,0 +1,342 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.events.ext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index of registered triggers by event class and instance id, read without
+ * locks or allocation on the event path.
+ * <p>
+ * Event classes are numbered in the order triggers register for them and
+ * the (class number, instance id) pair packed into a long is looked up in an
+ * open addressed table.  The triggers for a key are held in an immutable
+ * bucket which is replaced on every change, and the table itself is rebuilt
+ * and republished when it fills up, so readers always see a consistent
+ * snapshot of a key.  Updates are serialized on the index.
+ * <p>
+ * A reverse index from trigger id to the keys the trigger is registered
+ * under makes removal and lookup by id independent of the number of keys.
+ */
+class TriggerIndex {
+
+    static final RegisterableTriggerInterface[] NONE = new RegisterableTriggerInterface[0];
+
+    private static final Bucket EMPTY = new Bucket(new int[0], NONE);
+
+    private static final int MIN_CAPACITY = 64;
+
+    // event classes with registered triggers, the position is the class number
+    private volatile Class<?>[] eventClasses = new Class<?>[0];
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+
+    private final Map<Integer, Registration> registrations = new ConcurrentHashMap<Integer, Registration>();
+
+    /**
+     * @return The triggers registered for the event class and instance, never
+     *         null.  The array must not be modified.
+     */
+    RegisterableTriggerInterface[] get(Class<?> eventClass, int instanceId) {
+        int classNum = getClassNumber(eventClass);
+        if (classNum < 0) {
+            return NONE;
+        }
+        Bucket bucket = table.get(toKey(classNum, instanceId));
+        return (bucket == null) ? NONE : bucket.triggers;
+    }
+
+    RegisterableTriggerInterface getById(Integer triggerId) {
+        Registration reg = registrations.get(triggerId);
+        return (reg == null) ? null : reg.trigger;
+    }
+
+    synchronized void add(Class<?> eventClass, int instanceId, Integer triggerId,
+                          RegisterableTriggerInterface trigger) {
+        int classNum = getClassNumber(eventClass);
+        if (classNum < 0) {
+            Class<?>[] classes = new Class<?>[eventClasses.length + 1];
+            System.arraycopy(eventClasses, 0, classes, 0, eventClasses.length);
+            classNum = eventClasses.length;
+            classes[classNum] = eventClass;
+            eventClasses = classes;
+        }
+        long key = toKey(classNum, instanceId);
+        int id = triggerId.intValue();
+
+        Table t = table;
+        Bucket bucket = t.get(key);
+        if (bucket == null) {
+            if (t.used + 1 > t.capacity() / 2) {
+                t = rebuild(t);
+            }
+            bucket = EMPTY;
+        }
+        t.put(key, bucket.with(id, trigger));
+
+        Registration reg = registrations.get(triggerId);
+        if (reg == null) {
+            registrations.put(triggerId, new Registration(trigger, new long[] { key }));
+        } else {
+            registrations.put(triggerId, reg.with(trigger, key));
+        }
+    }
+
+    /**
+     * @return The trigger removed or null if none was registered with the id
+     */
+    synchronized RegisterableTriggerInterface remove(Integer triggerId) {
+        Registration reg = registrations.remove(triggerId);
+        if (reg == null) {
+            return null;
+        }
+        int id = triggerId.intValue();
+        Table t = table;
+        for (long key : reg.keys) {
+            Bucket bucket = t.get(key);
+            if (bucket != null) {
+                t.put(key, bucket.without(id));
+            }
+        }
+        return reg.trigger;
+    }
+
+    synchronized void clear() {
+        registrations.clear();
+        table = new Table(MIN_CAPACITY);
+        eventClasses = new Class<?>[0];
+    }
+
+    /**
+     * @return A copy of the index in the layout of the Map it replaced
+     */
+    synchronized Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> toMap() {
+        Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> rtn = new HashMap<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>>();
+        Table t = table;
+        for (int i = 0; i < t.capacity(); i++) {
+            long key = t.keys.get(i);
+            Bucket bucket = t.values.get(i);
+            if (key == 0 || bucket == null || bucket.ids.length == 0) {
+                continue;
+            }
+            Map<Integer, RegisterableTriggerInterface> triggersById = new HashMap<Integer, RegisterableTriggerInterface>();
+            for (int j = 0; j < bucket.ids.length; j++) {
+                triggersById.put(bucket.ids[j], bucket.triggers[j]);
+            }
+            Class<?> eventClass = eventClasses[(int) (key >>> 32) - 1];
+            rtn.put(new TriggerEventKey(eventClass, (int) key), triggersById);
+        }
+        return rtn;
+    }
+
+    int size() {
+        return registrations.size();
+    }
+
+    private int getClassNumber(Class<?> eventClass) {
+        Class<?>[] classes = eventClasses;
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i] == eventClass) {
+                return i;
+            }
+        }
+        // TriggerEventKey matched classes by name, keep doing so for classes
+        // from another loader
+        String name = eventClass.getName();
+        for (int i = 0; i < classes.length; i++) {
+            if (classes[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long toKey(int classNum, int instanceId) {
+        // class numbers start at 1 so no key is 0, which marks a free slot
+        return ((long) (classNum + 1) << 32) | (instanceId & 0xffffffffL);
+    }
+
+    /**
+     * Copies the keys which still have triggers into a table with room for as
+     * many again and publishes it.
+     */
+    private Table rebuild(Table old) {
+        int live = 0;
+        for (int i = 0; i < old.capacity(); i++) {
+            Bucket bucket = old.values.get(i);
+            if (bucket != null && bucket.ids.length > 0) {
+                live++;
+            }
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity < (live + 1) * 4) {
+            capacity <<= 1;
+        }
+        Table t = new Table(capacity);
+        for (int i = 0; i < old.capacity(); i++) {
+            Bucket bucket = old.values.get(i);
+            if (bucket != null && bucket.ids.length > 0) {
+                t.put(old.keys.get(i), bucket);
+            }
+        }
+        table = t;
+        return t;
+    }
+
+    /**
+     * Open addressed table with linear probing.  A slot's value is always
+     * set before its key, so a reader which finds the key finds a bucket.
+     * Keys are never removed, a key without triggers keeps an empty bucket
+     * until the table is rebuilt.
+     */
+    private static final class Table {
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<Bucket> values;
+        private final int mask;
+        // slots with a key, only used by writers
+        private int used;
+
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new AtomicReferenceArray<Bucket>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        Bucket get(long key) {
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                long k = keys.get(i);
+                if (k == key) {
+                    return values.get(i);
+                }
+                if (k == 0) {
+                    return null;
+                }
+            }
+        }
+
+        void put(long key, Bucket bucket) {
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                long k = keys.get(i);
+                if (k == key) {
+                    values.set(i, bucket);
+                    return;
+                }
+                if (k == 0) {
+                    values.set(i, bucket);
+                    keys.set(i, key);
+                    used++;
+                    return;
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Immutable set of the triggers registered under one key
+     */
+    private static final class Bucket {
+        private final int[] ids;
+        private final RegisterableTriggerInterface[] triggers;
+
+        Bucket(int[] ids, RegisterableTriggerInterface[] triggers) {
+            this.ids = ids;
+            this.triggers = triggers;
+        }
+
+        Bucket with(int id, RegisterableTriggerInterface trigger) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    RegisterableTriggerInterface[] newTriggers = triggers.clone();
+                    newTriggers[i] = trigger;
+                    return new Bucket(ids, newTriggers);
+                }
+            }
+            int[] newIds = new int[ids.length + 1];
+            RegisterableTriggerInterface[] newTriggers = new RegisterableTriggerInterface[ids.length + 1];
+            System.arraycopy(ids, 0, newIds, 0, ids.length);
+            System.arraycopy(triggers, 0, newTriggers, 0, ids.length);
+            newIds[ids.length] = id;
+            newTriggers[ids.length] = trigger;
+            return new Bucket(newIds, newTriggers);
+        }
+
+        Bucket without(int id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    if (ids.length == 1) {
+                        return EMPTY;
+                    }
+                    int[] newIds = new int[ids.length - 1];
+                    RegisterableTriggerInterface[] newTriggers = new RegisterableTriggerInterface[ids.length - 1];
+                    System.arraycopy(ids, 0, newIds, 0, i);
+                    System.arraycopy(ids, i + 1, newIds, i, ids.length - i - 1);
+                    System.arraycopy(triggers, 0, newTriggers, 0, i);
+                    System.arraycopy(triggers, i + 1, newTriggers, i, ids.length - i - 1);
+                    return new Bucket(newIds, newTriggers);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * The keys a trigger is registered under
+     */
+    private static final class Registration {
+        private final RegisterableTriggerInterface trigger;
+        private final long[] keys;
+
+        Registration(RegisterableTriggerInterface trigger, long[] keys) {
+            this.trigger = trigger;
+            this.keys = keys;
+        }
+
+        Registration with(RegisterableTriggerInterface newTrigger, long key) {
+            for (long k : keys) {
+                if (k == key) {
+                    return new Registration(newTrigger, keys);
+                }
+            }
+            long[] newKeys = new long[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, keys.length);
+            newKeys[keys.length] = key;
+            return new Registration(newTrigger, newKeys);
+        }
+    }
+}
@@ -46,6 +46,9 @@ class LiveDataCacheKey {
         }
 
         LiveDataCommand[] cmds = ((LiveDataCacheKey)o).getCommands();
+        if (cmds.length != _commands.length) {
+            return false;
+        }
         for (int i = 0; i < cmds.length; i++) {
             if (!(cmds[i].equals(_commands[i]))) {
                 return false;
@@ -27,6 +27,11 @@ package org.hyperic.hq.livedata.server.session;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -37,41 +42,143 @@ import org.hyperic.hq.agent.AgentRemoteException;
 import org.hyperic.hq.livedata.agent.client.LiveDataCommandsClient;
 import org.hyperic.hq.livedata.shared.LiveDataResult;
 import org.hyperic.util.PluginLoader;
-
-
-
+import org.hyperic.util.thread.ThreadGroupFactory;
+
+/**
+ * Pool shared by all live data requests which runs the commands for each
+ * resource as one task.  A request for the same commands as a task which is
+ * still running joins that task instead of calling the agent again.  A task
+ * every request has given up on is cancelled, so that late agents don't keep
+ * the threads from the other requests.
+ */
 public class LiveDataExecutor extends ThreadPoolExecutor {
 
     private static Log _log = LogFactory.getLog(LiveDataExecutor.class);
 
-    private static final int THREAD_MAX = 30;
+    private final ConcurrentMap<LiveDataCacheKey, GatherTask> _inFlight =
+        new ConcurrentHashMap<LiveDataCacheKey, GatherTask>();
 
-    private List<LiveDataResult> _results;
-
-    public LiveDataExecutor() {
+    public LiveDataExecutor(int threads) {
         // Fixed sized threadpool.  The ThreadPoolExecutor will only spawn
-        // the threads a necessary.
-        super(THREAD_MAX, THREAD_MAX, 1, TimeUnit.SECONDS,
-              new LinkedBlockingQueue());
-        _results = new ArrayList<LiveDataResult>();
+        // the threads a necessary and lets idle ones go.
+        super(threads, threads, 60, TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(), createThreadFactory());
+        allowCoreThreadTimeOut(true);
+    }
+
+    private static ThreadGroupFactory createThreadFactory() {
+        final ThreadGroupFactory factory = new ThreadGroupFactory("LiveData-");
+        factory.createDaemonThreads(true);
+        return factory;
+    }
+
+    /**
+     * Runs the commands, which must all be for the same resource, or joins
+     * an identical request which is already running.
+     *
+     * @param key key of the commands, as used for the result cache
+     * @param completed the task is added to this queue once it is done
+     * @return true if a running task was joined
+     */
+    boolean getData(LiveDataCacheKey key, LiveDataCommandsClient client,
+                    List<LiveDataExecutorCommand> commands, Queue<GatherTask> completed) {
+        while (true) {
+            GatherTask task = _inFlight.get(key);
+            boolean joined = true;
+            if (task == null) {
+                final GatherTask newTask = new GatherTask(key, client, commands);
+                task = _inFlight.putIfAbsent(key, newTask);
+                if (task == null) {
+                    task = newTask;
+                    joined = false;
+                }
+            }
+            // listen before executing so the completion can't be missed
+            if (task.notifyWhenDone(completed)) {
+                if (!joined) {
+                    execute(task);
+                }
+                return joined;
+            }
+            // the requests waiting for the task just gave up on it, it is
+            // gone from _inFlight so start a new one
+        }
+    }
+
+    /**
+     * Stops waiting for the running task of the commands.  The task is
+     * cancelled, interrupting the agent call or taking it off the queue, once
+     * no request is waiting for it any more.
+     *
+     * @param completed the queue which was passed to getData
+     * @return true if the task was cancelled
+     */
+    boolean abandon(LiveDataCacheKey key, Queue<GatherTask> completed) {
+        final GatherTask task = _inFlight.get(key);
+        return task != null && task.abandon(completed);
     }
 
-    public void getData(LiveDataCommandsClient client, List<LiveDataExecutorCommand> commands) {
-        execute(new LiveDataGatherer(client, commands));
+    int getInFlightCount() {
+        return _inFlight.size();
     }
 
-    public LiveDataResult[] getResult() {
-        try {
-            awaitTermination(60, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            _log.warn("Executor interrputed!");
+    class GatherTask extends FutureTask<LiveDataResult[]> {
+        private final LiveDataCacheKey _key;
+        private final List<Queue<GatherTask>> _listeners = new ArrayList<Queue<GatherTask>>();
+
+        GatherTask(LiveDataCacheKey key, LiveDataCommandsClient client,
+                   List<LiveDataExecutorCommand> commands) {
+            super(new LiveDataGatherer(client, commands));
+            _key = key;
+        }
+
+        LiveDataCacheKey getKey() {
+            return _key;
+        }
+
+        /**
+         * @return false if the task has been cancelled
+         */
+        private boolean notifyWhenDone(Queue<GatherTask> completed) {
+            synchronized (_listeners) {
+                if (isCancelled()) {
+                    return false;
+                }
+                if (!isDone()) {
+                    _listeners.add(completed);
+                    return true;
+                }
+            }
+            completed.add(this);
+            return true;
         }
 
-        _log.debug("Returning results for " + _results.size() + " elements");
-        return (LiveDataResult[])_results.toArray(new LiveDataResult[0]);
+        private boolean abandon(Queue<GatherTask> completed) {
+            synchronized (_listeners) {
+                if (!_listeners.remove(completed) || !_listeners.isEmpty() || isDone()) {
+                    return false;
+                }
+                // cancel while holding the lock, so no request can join the
+                // task in between
+                cancel(true);
+            }
+            remove(this);
+            return true;
+        }
+
+        @Override
+        protected void done() {
+            _inFlight.remove(_key, this);
+            synchronized (_listeners) {
+                for (final Queue<GatherTask> completed : _listeners) {
+                    completed.add(this);
+                }
+                _listeners.clear();
+            }
+        }
     }
-        
-    private class LiveDataGatherer implements Runnable {
+
+    private static class LiveDataGatherer implements Callable<LiveDataResult[]> {
 
         private LiveDataCommandsClient _client;
         private List<LiveDataExecutorCommand> _commands;
@@ -81,8 +188,10 @@ public class LiveDataExecutor extends ThreadPoolExecutor {
             _commands = commands;
         }
 
-        public void run() {
+        public LiveDataResult[] call() {
             _log.debug("Starting gather thread...");
+            final LiveDataResult[] results = new LiveDataResult[_commands.size()];
+            int i = 0;
             for (LiveDataExecutorCommand cmd : _commands ) {
                 _log.debug("Running cmd '" + cmd + "' in thread " +
                            Thread.currentThread().getName());
@@ -106,8 +215,9 @@ public class LiveDataExecutor extends ThreadPoolExecutor {
                     }
                 }
                 
-                _results.add(res);
+                results[i++] = res;
             }
+            return results;
         }
     }
 }
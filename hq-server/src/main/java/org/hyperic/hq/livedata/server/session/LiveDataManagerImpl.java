@@ -26,11 +26,19 @@
 package org.hyperic.hq.livedata.server.session;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
@@ -67,6 +75,7 @@ import org.hyperic.hq.livedata.shared.LiveDataCommand;
 import org.hyperic.hq.livedata.shared.LiveDataException;
 import org.hyperic.hq.livedata.shared.LiveDataManager;
 import org.hyperic.hq.livedata.shared.LiveDataResult;
+import org.hyperic.hq.livedata.shared.LiveDataResultListener;
 import org.hyperic.hq.product.GenericPlugin;
 import org.hyperic.hq.product.LiveDataPluginManager;
 import org.hyperic.hq.product.PluginException;
@@ -78,6 +87,7 @@ import org.hyperic.util.StringUtil;
 import org.hyperic.util.config.ConfigResponse;
 import org.hyperic.util.config.ConfigSchema;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -93,18 +103,29 @@ public class LiveDataManagerImpl implements LiveDataManager {
     private final String CACHENAME = "LiveData";
     private final long NO_CACHE = -1;
 
+    private static final int DEFAULT_THREADS = 30;
+    private static final long DEFAULT_TIMEOUT = 60000;
+
     private ProductManager productManager;
 
     private ConfigManager configManager;
 
     private LiveDataCommandsClientFactory liveDataCommandsClientFactory;
 
+    private final LiveDataExecutor executor;
+    private final long timeout;
+
     @Autowired
     public LiveDataManagerImpl(ProductManager productManager, ConfigManager configManager,
-                               LiveDataCommandsClientFactory liveDataCommandsClientFactory) {
+                               LiveDataCommandsClientFactory liveDataCommandsClientFactory,
+                               @Value("#{tweakProperties['hq.liveData.threads'] }") Integer threads,
+                               @Value("#{tweakProperties['hq.liveData.timeout'] }") Long timeout) {
         this.productManager = productManager;
         this.configManager = configManager;
         this.liveDataCommandsClientFactory = liveDataCommandsClientFactory;
+        this.executor = new LiveDataExecutor((threads == null || threads < 1) ?
+            DEFAULT_THREADS : threads.intValue());
+        this.timeout = (timeout == null || timeout < 1) ? DEFAULT_TIMEOUT : timeout.longValue();
     }
 
     @PostConstruct
@@ -127,6 +148,11 @@ public class LiveDataManagerImpl implements LiveDataManager {
         registerFormatter(new NetstatFormatter());
     }
 
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
     /**
      * Live data subsystem uses measurement configs.
      */
@@ -302,16 +328,39 @@ public class LiveDataManagerImpl implements LiveDataManager {
     public LiveDataResult[] getData(AuthzSubject subject, LiveDataCommand[] commands,
                                     long cacheTimeout) throws PermissionException,
         AppdefEntityNotFoundException, AgentNotFoundException, LiveDataException {
-        // Attempt load from cache
-        LiveDataResult[] res;
-        if (cacheTimeout != NO_CACHE) {
-            res = getElement(commands, cacheTimeout);
-            if (res != null) {
-                return res;
+        // cached results are looked up per resource, so a request that
+        // overlaps an earlier one only calls the agents it has to
+        final List<LiveDataResult> results =
+            Collections.synchronizedList(new ArrayList<LiveDataResult>(commands.length));
+        getData(subject, commands, cacheTimeout, timeout, new LiveDataResultListener() {
+            public void resultReceived(LiveDataResult result) {
+                results.add(result);
             }
-        }
+        });
+        return results.toArray(new LiveDataResult[results.size()]);
+    }
 
-        HashMap<AppdefEntityID, List<LiveDataExecutorCommand>> buckets = new HashMap<AppdefEntityID, List<LiveDataExecutorCommand>>();
+    /**
+     * Run a list of live data commands, calling the agents of all the
+     * resources at once.  Results are passed to the listener as each
+     * resource answers, in the calling thread.
+     * 
+     * @param cacheTimeout The cache timeout given in milliseconds, cached
+     *        results are used per resource
+     * @param timeout Milliseconds to wait for all of the resources to
+     *        answer.  The commands of any resource which has not answered by
+     *        then get an error result and its agent call is cancelled.
+     * 
+     */
+    public void getData(AuthzSubject subject, LiveDataCommand[] commands, long cacheTimeout,
+                        long timeout, LiveDataResultListener listener)
+        throws PermissionException, AppdefEntityNotFoundException, AgentNotFoundException,
+        LiveDataException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        final Map<AppdefEntityID, List<LiveDataCommand>> commandBuckets =
+            new LinkedHashMap<AppdefEntityID, List<LiveDataCommand>>();
+        final Map<AppdefEntityID, List<LiveDataExecutorCommand>> buckets =
+            new LinkedHashMap<AppdefEntityID, List<LiveDataExecutorCommand>>();
         for (int i = 0; i < commands.length; i++) {
             LiveDataCommand cmd = commands[i];
             AppdefEntityID id = cmd.getAppdefEntityID();
@@ -334,31 +383,89 @@ public class LiveDataManagerImpl implements LiveDataManager {
             List<LiveDataExecutorCommand> queue = buckets.get(id);
             if (queue == null) {
                 queue = new ArrayList<LiveDataExecutorCommand>();
-                queue.add(exec);
                 buckets.put(id, queue);
-            } else {
-                queue.add(exec);
+                commandBuckets.put(id, new ArrayList<LiveDataCommand>());
             }
+            queue.add(exec);
+            commandBuckets.get(id).add(cmd);
         }
 
-        LiveDataExecutor executor = new LiveDataExecutor();
-        for (AppdefEntityID id : buckets.keySet()) {
-            List<LiveDataExecutorCommand> cmds = buckets.get(id);
-
-            LiveDataCommandsClient client = liveDataCommandsClientFactory.getClient(id);
-
-            executor.getData(client, cmds);
+        final BlockingQueue<LiveDataExecutor.GatherTask> completed =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        final Map<LiveDataCacheKey, List<LiveDataCommand>> pending =
+            new LinkedHashMap<LiveDataCacheKey, List<LiveDataCommand>>();
+        for (Map.Entry<AppdefEntityID, List<LiveDataCommand>> entry : commandBuckets.entrySet()) {
+            final LiveDataCommand[] cmds =
+                entry.getValue().toArray(new LiveDataCommand[entry.getValue().size()]);
+            if (cacheTimeout != NO_CACHE) {
+                final LiveDataResult[] cached = getElement(cmds, cacheTimeout);
+                if (cached != null) {
+                    fireResults(listener, cached);
+                    continue;
+                }
+            }
+            final LiveDataCacheKey key = new LiveDataCacheKey(cmds);
+            pending.put(key, entry.getValue());
+            LiveDataCommandsClient client = liveDataCommandsClientFactory.getClient(entry.getKey());
+            if (executor.getData(key, client, buckets.get(entry.getKey()), completed) &&
+                log.isDebugEnabled()) {
+                log.debug("Joined running live data request for " + entry.getKey());
+            }
         }
 
-        executor.shutdown();
+        final Set<LiveDataCacheKey> done = new HashSet<LiveDataCacheKey>();
+        try {
+            while (done.size() < pending.size()) {
+                final long wait = deadline - System.currentTimeMillis();
+                final LiveDataExecutor.GatherTask task =
+                    (wait <= 0) ? completed.poll() : completed.poll(wait, TimeUnit.MILLISECONDS);
+                if (task == null) {
+                    break;
+                }
+                done.add(task.getKey());
+                LiveDataResult[] res;
+                try {
+                    res = task.get();
+                    if (cacheTimeout != NO_CACHE) {
+                        putElement(task.getKey().getCommands(), res);
+                    }
+                } catch (ExecutionException e) {
+                    res = getErrorResults(pending.get(task.getKey()), e.getCause(),
+                        "Unable to get live data: " + e.getCause());
+                }
+                fireResults(listener, res);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted waiting for live data");
+            Thread.currentThread().interrupt();
+        }
 
-        res = executor.getResult();
+        // the agent calls of the late resources are cancelled unless another
+        // request is still waiting for them
+        for (Map.Entry<LiveDataCacheKey, List<LiveDataCommand>> entry : pending.entrySet()) {
+            if (!done.contains(entry.getKey())) {
+                executor.abandon(entry.getKey(), completed);
+                fireResults(listener, getErrorResults(entry.getValue(), null,
+                    "No live data received within " + timeout + " ms"));
+            }
+        }
+    }
 
-        if (cacheTimeout != NO_CACHE) {
-            putElement(commands, res);
+    private LiveDataResult[] getErrorResults(List<LiveDataCommand> cmds, Throwable cause,
+                                             String msg) {
+        final LiveDataResult[] rtn = new LiveDataResult[cmds.size()];
+        for (int i = 0; i < rtn.length; i++) {
+            final AppdefEntityID id = cmds.get(i).getAppdefEntityID();
+            rtn[i] = new LiveDataResult(id, (cause == null) ? new LiveDataException(msg) : cause,
+                msg);
         }
+        return rtn;
+    }
 
-        return res;
+    private void fireResults(LiveDataResultListener listener, LiveDataResult[] results) {
+        for (int i = 0; i < results.length; i++) {
+            listener.resultReceived(results[i]);
+        }
     }
 
     /**
@@ -69,6 +69,18 @@ public interface LiveDataManager {
     public LiveDataResult[] getData(AuthzSubject subject, LiveDataCommand[] commands, long cacheTimeout)
         throws PermissionException, AppdefEntityNotFoundException, AgentNotFoundException, LiveDataException;
 
+    /**
+     * Run a list of live data commands, calling the agents of all the
+     * resources at once. Results are passed to the listener as each resource
+     * answers, and any resource which has not answered within the timeout
+     * gets error results.
+     * @param cacheTimeout The cache timeout given in milliseconds.
+     * @param timeout Milliseconds to wait for all of the resources.
+     */
+    public void getData(AuthzSubject subject, LiveDataCommand[] commands, long cacheTimeout, long timeout,
+                        LiveDataResultListener listener)
+        throws PermissionException, AppdefEntityNotFoundException, AgentNotFoundException, LiveDataException;
+
     /**
      * Get the available commands for a given resources.
      */
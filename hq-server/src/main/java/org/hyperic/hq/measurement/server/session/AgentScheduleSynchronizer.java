@@ -40,6 +40,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.agent.server.session.AgentDataTransferJob;
 import org.hyperic.hq.agent.server.session.AgentSynchronizer;
+import org.hyperic.hq.agent.server.session.CoalescingAgentDataTransferJob;
 import org.hyperic.hq.appdef.Agent;
 import org.hyperic.hq.appdef.shared.AgentManager;
 import org.hyperic.hq.appdef.shared.AgentNotFoundException;
@@ -255,7 +256,9 @@ public class AgentScheduleSynchronizer {
         if (log.isDebugEnabled()) {
             log.debug("adding " + (schedule ? "schedule" : "unschedule") + " job for agentId=" + agentId);
         }
-        final AgentDataTransferJob job = new AgentDataTransferJob() {
+        // takes whatever was queued for the agent when it runs, so one queued
+        // job per agent and direction is enough
+        final AgentDataTransferJob job = new CoalescingAgentDataTransferJob() {
             private Collection<AppdefEntityID> aeids;
             private AtomicBoolean success = new AtomicBoolean(false);
             public String toString() {
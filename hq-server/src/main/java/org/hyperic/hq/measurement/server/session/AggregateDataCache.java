@@ -0,0 +1,305 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Caches the aggregated buckets of historical metric queries keyed by the set
+ * of measurement ids, the time window and the bucket size, so that refreshing
+ * the same charts doesn't scan the measurement data tables again.
+ * 
+ * An entry is dropped as soon as data is inserted for one of its measurements
+ * within its window, or a rollup lands within its window, and in any case
+ * once it is older than maxAge.  A result is not cached if data for one of
+ * its measurements was inserted while it was being queried, which is tracked
+ * through a sequence number stamped per measurement id stripe.
+ */
+@Repository
+public class AggregateDataCache {
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_MAX_AGE = 5 * 60 * 1000;
+    private static final int STAMP_BITS = 16;
+
+    private final int maxEntries;
+    private final long maxAge;
+    private final AtomicLong sequence = new AtomicLong();
+    // sequence number of the last insert per measurement id stripe
+    private final AtomicLongArray stamps = new AtomicLongArray(1 << STAMP_BITS);
+    private volatile long lastRangeInvalidation = 0;
+    private volatile boolean empty = true;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<Key,Buckets> entries;
+    private final Map<Integer,Set<Key>> keysByMid = new HashMap<Integer,Set<Key>>();
+
+    @Autowired
+    public AggregateDataCache(@Value("#{tweakProperties['hq.aggDataCache.maxEntries'] }") Integer maxEntries,
+                              @Value("#{tweakProperties['hq.aggDataCache.maxAge'] }") Long maxAge) {
+        this.maxEntries = (maxEntries == null || maxEntries < 0) ? DEFAULT_MAX_ENTRIES : maxEntries.intValue();
+        this.maxAge = (maxAge == null || maxAge < 0) ? DEFAULT_MAX_AGE : maxAge.longValue();
+        this.entries = new LinkedHashMap<Key,Buckets>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key,Buckets> eldest) {
+                if (size() <= AggregateDataCache.this.maxEntries) {
+                    return false;
+                }
+                unindex(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    private static int stripe(int mid) {
+        return (mid * 0x9E3779B9) >>> (32 - STAMP_BITS);
+    }
+
+    /**
+     * Creates the key of a query about to be run, the key remembers when the
+     * query started so that a result racing with inserts isn't cached.
+     */
+    public Key newKey(Integer[] mids, long start, long finish, long windowSize) {
+        return new Key(mids, start, finish, windowSize, sequence.get());
+    }
+
+    public Buckets get(Key key) {
+        if (empty) {
+            return null;
+        }
+        synchronized (lock) {
+            Buckets rtn = entries.get(key);
+            if (rtn != null && System.currentTimeMillis() - rtn.created > maxAge) {
+                remove(key);
+                return null;
+            }
+            return rtn;
+        }
+    }
+
+    public void put(Key key, Buckets buckets) {
+        if (maxEntries == 0) {
+            return;
+        }
+        synchronized (lock) {
+            if (lastRangeInvalidation > key.sequence) {
+                return;
+            }
+            for (int mid : key.mids) {
+                if (stamps.get(stripe(mid)) > key.sequence) {
+                    return;
+                }
+            }
+            if (entries.put(key, buckets) == null) {
+                for (int mid : key.mids) {
+                    Set<Key> keys = keysByMid.get(mid);
+                    if (keys == null) {
+                        keys = new HashSet<Key>(4);
+                        keysByMid.put(mid, keys);
+                    }
+                    keys.add(key);
+                }
+            }
+            empty = false;
+        }
+    }
+
+    /**
+     * Drops the entries the inserted data points fall into
+     */
+    public void invalidate(List<DataPoint> data) {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+        final long seq = sequence.incrementAndGet();
+        for (DataPoint pt : data) {
+            stamps.set(stripe(pt.getMeasurementId().intValue()), seq);
+        }
+        if (empty) {
+            return;
+        }
+        synchronized (lock) {
+            for (DataPoint pt : data) {
+                Set<Key> keys = keysByMid.get(pt.getMeasurementId());
+                if (keys == null) {
+                    continue;
+                }
+                final long timestamp = pt.getTimestamp();
+                for (Key key : new ArrayList<Key>(keys)) {
+                    if (key.overlaps(timestamp, timestamp)) {
+                        remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the entries overlapping a window data was rolled up for
+     */
+    public void invalidate(long begin, long end) {
+        lastRangeInvalidation = sequence.incrementAndGet();
+        if (empty) {
+            return;
+        }
+        synchronized (lock) {
+            for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext();) {
+                Key key = it.next();
+                if (key.overlaps(begin, end)) {
+                    it.remove();
+                    unindex(key);
+                }
+            }
+            empty = entries.isEmpty();
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last insert or rollup which touched
+     * any of the measurements.  Measurements sharing a stripe share a stamp,
+     * so the stamp may move without the measurements getting new data.
+     */
+    public long getStamp(Integer[] mids) {
+        long rtn = lastRangeInvalidation;
+        for (Integer mid : mids) {
+            rtn = Math.max(rtn, stamps.get(stripe(mid.intValue())));
+        }
+        return rtn;
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    private void remove(Key key) {
+        if (entries.remove(key) != null) {
+            unindex(key);
+        }
+        empty = entries.isEmpty();
+    }
+
+    private void unindex(Key key) {
+        for (int mid : key.mids) {
+            Set<Key> keys = keysByMid.get(mid);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByMid.remove(mid);
+            }
+        }
+    }
+
+    public static class Key {
+        private final int[] mids;
+        private final long start;
+        private final long finish;
+        private final long windowSize;
+        private final int hashCode;
+        // not part of the identity, see newKey()
+        private final long sequence;
+
+        private Key(Integer[] mids, long start, long finish, long windowSize, long sequence) {
+            this.mids = new int[mids.length];
+            for (int i = 0; i < mids.length; i++) {
+                this.mids[i] = mids[i].intValue();
+            }
+            Arrays.sort(this.mids);
+            this.start = start;
+            this.finish = finish;
+            this.windowSize = windowSize;
+            this.sequence = sequence;
+            int h = Arrays.hashCode(this.mids);
+            h = 31 * h + (int) (start ^ (start >>> 32));
+            h = 31 * h + (int) (finish ^ (finish >>> 32));
+            h = 31 * h + (int) (windowSize ^ (windowSize >>> 32));
+            this.hashCode = h;
+        }
+
+        private boolean overlaps(long begin, long end) {
+            return begin <= finish && end >= start;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return start == other.start && finish == other.finish && windowSize == other.windowSize &&
+                   Arrays.equals(mids, other.mids);
+        }
+    }
+
+    /**
+     * The aggregates of each bucket of a window, buckets without data have a
+     * count of 0.  Not to be modified once cached.
+     */
+    public static class Buckets {
+        final long[] timestamps;
+        final double[] sums;
+        final double[] maxs;
+        final double[] mins;
+        final int[] counts;
+        // the interval of the rollup table the data was read from, 0 if none
+        final long publishedInterval;
+        private final long created = System.currentTimeMillis();
+
+        Buckets(int size, long publishedInterval) {
+            this.timestamps = new long[size];
+            this.sums = new double[size];
+            this.maxs = new double[size];
+            this.mins = new double[size];
+            this.counts = new int[size];
+            this.publishedInterval = publishedInterval;
+        }
+
+        int size() {
+            return counts.length;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.hq.measurement.shared.DataManager;
+import org.hyperic.hq.measurement.shared.MeasRangeObj;
+import org.hyperic.hq.stats.ConcurrentStatsCollector;
+import org.hyperic.util.stats.StatCollector;
+import org.hyperic.util.stats.StatUnreachableException;
+import org.hyperic.util.thread.LoggingThreadGroup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * A {@link DataInserter} which hands the data to a bounded buffer and returns
+ * without waiting for the DB.  A pool of writer threads drains the buffer,
+ * coalescing the points from many agents into large batches which are split
+ * up by measurement data table and written through
+ * {@link DataManager#addData(List)}, one connection per writer.
+ * 
+ * When the buffer has no room for a report the caller is rejected with a
+ * {@link DataInserterException}, which the agent sees as a failed send and
+ * retries later.  Priority data is still written on the caller's thread.
+ * 
+ * The agent is told a report was sent once it is in the buffer, so a batch
+ * the DB fails to take is retried, backing off, until it is written.  The
+ * writers stuck retrying leave the buffer to fill up, which turns new
+ * reports away until the DB is back.
+ * 
+ * Enabled by hq.data.inserter.async in tweak.properties, in which case it
+ * registers itself with the {@link MeasurementInserterHolder}.
+ */
+@Component
+public class AsyncDataInserter implements DataInserter<DataPoint> {
+    private static final Log log = LogFactory.getLog(AsyncDataInserter.class);
+
+    private static final String BUFFER_SIZE = ConcurrentStatsCollector.DATA_INSERTER_BUFFER_SIZE;
+    private static final String BATCH_SIZE = ConcurrentStatsCollector.DATA_INSERTER_BATCH_SIZE;
+    private static final String COMMIT_TIME = ConcurrentStatsCollector.DATA_INSERTER_COMMIT_TIME;
+    private static final String REJECTED = ConcurrentStatsCollector.DATA_INSERTER_REJECTED;
+
+    private static final int DEFAULT_CAPACITY = 200000;
+    private static final int DEFAULT_WRITERS = 4;
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+    private static final long DEFAULT_OFFER_TIMEOUT = 5000;
+    private static final long DEFAULT_LINGER = 250;
+    private static final long SHUTDOWN_WAIT = 30000;
+    private static final long MIN_RETRY_WAIT = 1000;
+    private static final long MAX_RETRY_WAIT = 30000;
+
+    private final Object lock = new Object();
+    private final DataManager dataManager;
+    private final MeasurementInserterHolder inserterHolder;
+    private final ConcurrentStatsCollector concurrentStatsCollector;
+    private final boolean enabled;
+    private final int numWriters;
+    private final int batchSize;
+    private final long offerTimeout;
+    private final long linger;
+    private final DataPointRingBuffer buffer;
+    private final LoggingThreadGroup threadGroup = new LoggingThreadGroup("DataInserter");
+    private Thread[] writers = new Thread[0];
+    private volatile boolean running = false;
+
+    @Autowired
+    public AsyncDataInserter(DataManager dataManager, MeasurementInserterHolder inserterHolder,
+                             ConcurrentStatsCollector concurrentStatsCollector,
+                             @Value("#{tweakProperties['hq.data.inserter.async'] }") Boolean enabled,
+                             @Value("#{tweakProperties['hq.data.inserter.async.capacity'] }") Integer capacity,
+                             @Value("#{tweakProperties['hq.data.inserter.async.writers'] }") Integer writers,
+                             @Value("#{tweakProperties['hq.data.inserter.async.batchSize'] }") Integer batchSize,
+                             @Value("#{tweakProperties['hq.data.inserter.async.offerTimeout'] }") Long offerTimeout,
+                             @Value("#{tweakProperties['hq.data.inserter.async.linger'] }") Long linger) {
+        this.dataManager = dataManager;
+        this.inserterHolder = inserterHolder;
+        this.concurrentStatsCollector = concurrentStatsCollector;
+        this.enabled = (enabled != null) && enabled.booleanValue();
+        this.numWriters = (writers == null || writers < 1) ? DEFAULT_WRITERS : writers.intValue();
+        this.batchSize = (batchSize == null || batchSize < 1) ? DEFAULT_BATCH_SIZE : batchSize.intValue();
+        this.offerTimeout = (offerTimeout == null || offerTimeout < 0) ?
+            DEFAULT_OFFER_TIMEOUT : offerTimeout.longValue();
+        this.linger = (linger == null || linger < 0) ? DEFAULT_LINGER : linger.longValue();
+        this.buffer = new DataPointRingBuffer(
+            (capacity == null || capacity < 1) ? DEFAULT_CAPACITY : capacity.intValue());
+        this.threadGroup.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        concurrentStatsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                return buffer.size();
+            }
+            public String getId() {
+                return BUFFER_SIZE;
+            }
+        });
+        concurrentStatsCollector.register(BATCH_SIZE);
+        concurrentStatsCollector.register(COMMIT_TIME);
+        concurrentStatsCollector.register(REJECTED);
+
+        running = true;
+        writers = new Thread[numWriters];
+        for (int i = 0; i < numWriters; i++) {
+            writers[i] = new Thread(threadGroup, new Writer(), "DataInserter-" + i);
+            writers[i].setDaemon(true);
+            writers[i].start();
+        }
+        inserterHolder.setDataInserter(this);
+        log.info("Asynchronous metric data inserter started with " + numWriters +
+                 " writers and room for " + buffer.getCapacity() + " data points");
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        // anything arriving from here on is written synchronously again
+        inserterHolder.setDataInserter(null);
+        running = false;
+        buffer.close();
+        final long deadline = System.currentTimeMillis() + SHUTDOWN_WAIT;
+        for (Thread writer : writers) {
+            writer.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        final int left = buffer.size();
+        if (left > 0) {
+            log.warn("Shutting down with " + left + " data points still waiting to be written");
+        }
+    }
+
+    public void insertData(List<DataPoint> metricData)
+        throws InterruptedException, DataInserterException {
+        if (metricData.isEmpty()) {
+            return;
+        }
+        if (!running || metricData.size() > buffer.getCapacity()) {
+            dataManager.addData(metricData);
+            return;
+        }
+        if (!buffer.offer(metricData, offerTimeout)) {
+            concurrentStatsCollector.addStat(1, REJECTED);
+            throw new DataInserterException("Metric data buffer is full (" + buffer.size() +
+                                            " data points), try again later");
+        }
+    }
+
+    public void insertData(List<DataPoint> metricData, boolean isPriority)
+        throws InterruptedException, DataInserterException {
+        if (isPriority) {
+            dataManager.addData(metricData);
+        } else {
+            insertData(metricData);
+        }
+    }
+
+    public void insertDataFromServer(List<DataPoint> metricData)
+        throws InterruptedException, DataInserterException {
+        insertData(metricData);
+    }
+
+    public Object getLock() {
+        return lock;
+    }
+
+    /**
+     * Writes one batch, a transaction per measurement data table so that
+     * concurrent writers contend on as few tables as possible.
+     */
+    private void write(List<DataPoint> batch) {
+        concurrentStatsCollector.addStat(batch.size(), BATCH_SIZE);
+        final Map<String, List<DataPoint>> buckets = MeasRangeObj.getInstance().bucketData(batch);
+        for (final Entry<String, List<DataPoint>> entry : buckets.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Writes the points of one table, retrying until they are written or
+     * the inserter is shut down.  The agents were told the points were
+     * accepted, so an interrupt doesn't stop the retries.
+     */
+    private void write(String table, List<DataPoint> points) {
+        long wait = MIN_RETRY_WAIT;
+        for (int attempt = 1; ; attempt++) {
+            final long start = System.currentTimeMillis();
+            Exception error = null;
+            boolean written = false;
+            try {
+                written = dataManager.addData(points);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            concurrentStatsCollector.addStat(System.currentTimeMillis() - start, COMMIT_TIME);
+            if (written) {
+                if (attempt > 1) {
+                    log.info("Wrote " + points.size() + " data points to " + table +
+                             " after " + attempt + " attempts");
+                }
+                return;
+            }
+            if (!running) {
+                log.error("Shutting down, dropping " + points.size() + " data points which could not be " +
+                          "written to " + table + ((error == null) ? "" : ": " + error), error);
+                return;
+            }
+            if (attempt == 1) {
+                log.error("Unable to write " + points.size() + " data points to " + table +
+                          ", retrying" + ((error == null) ? "" : ": " + error), error);
+            } else if (log.isDebugEnabled()) {
+                log.debug("Attempt " + attempt + " to write " + points.size() + " data points to " +
+                          table + " failed" + ((error == null) ? "" : ": " + error));
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                // retry now, the points are dropped above if shutting down
+            }
+            wait = Math.min(wait * 2, MAX_RETRY_WAIT);
+        }
+    }
+
+    private class Writer implements Runnable {
+        public void run() {
+            final List<DataPoint> batch = new ArrayList<DataPoint>(batchSize);
+            while (true) {
+                try {
+                    if (batch.isEmpty() && buffer.drain(batch, batchSize, 1000) == 0) {
+                        if (!running) {
+                            break;
+                        }
+                        continue;
+                    }
+                    // give other agents' reports a moment to fill out the batch
+                    if (batch.size() < batchSize && linger > 0 && running) {
+                        buffer.drain(batch, batchSize - batch.size(), linger);
+                    }
+                    write(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    // the points drained so far are written on the next pass
+                } catch (Throwable t) {
+                    log.error(t, t);
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,8 @@ import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Dynamic EhCache that is allowed to grow over time as needed.
@@ -42,6 +44,11 @@ import org.springframework.stereotype.Repository;
  * OR Backfiller operations.  In big environments it will be very contentious
  * and due to its nature may not have the data being sought at any given time.
  * Use AvailabilityManager.getLastAvail().
+ *
+ * Only one thread at a time may have a cache transaction open.  Other
+ * threads only wait for it when they put a measurement the transaction has
+ * already changed.  When the transaction is committed inside a Spring
+ * transaction, its changes are undone if the Spring transaction rolls back.
  */
 @Repository
 public class AvailabilityCache {
@@ -52,7 +59,7 @@ public class AvailabilityCache {
 	static final int    CACHESIZEINCREMENT = 1000;
 
 	private final Object _cacheLock = new Object();
-	private final Map _tranCacheState = new HashMap();
+	private final Map<Integer, DataPoint> _tranCacheState = new HashMap<Integer, DataPoint>();
 	private Thread _tranThread;
 	private boolean _inTran = false;
 
@@ -100,35 +107,107 @@ public class AvailabilityCache {
 		}
 	}
 
-	public void rollbackTran() {
+	/**
+	 * Waits while another thread's transaction has changed metricId.
+	 */
+	private void awaitTran(Integer metricId) {
 		synchronized (_tranCacheState) {
-			if (!_inTran || !Thread.currentThread().equals(_tranThread)) {
-				return;
+			while (isChangedByOtherTran(metricId)) {
+				try {
+					_tranCacheState.wait();
+				} catch (InterruptedException e) {
+				}
 			}
-			_inTran = false;
-			// scottmf, when I use an iterator here, under certain circumstances
-			// ConcurrentModificationException is thrown.  It is very hard
-			// to reproduce and not straight forward
-			Integer[] keys = (Integer[])_tranCacheState.keySet().toArray(new Integer[0]);
-			for (int i=0; i<keys.length; i++) {
-				DataPoint pt = (DataPoint)_tranCacheState.get(keys[i]);
-				if (pt == null) {
-					remove(keys[i]);
-				} else {
-					put(keys[i], pt);
+		}
+	}
+
+	private boolean isChangedByOtherTran(Integer metricId) {
+		synchronized (_tranCacheState) {
+			return _inTran && !Thread.currentThread().equals(_tranThread) &&
+			       _tranCacheState.containsKey(metricId);
+		}
+	}
+
+	/**
+	 * Undoes the changes of a committed cache transaction if the Spring
+	 * transaction it ran in rolls back.  Measurements which have been put
+	 * again since are left alone.
+	 */
+	private void undoOnRollback(final Map<Integer, DataPoint> before) {
+		if (before.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		final Map<Integer, DataPoint> after = new HashMap<Integer, DataPoint>(before.size());
+		for (Integer id : before.keySet()) {
+			after.put(id, get(id));
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_ROLLED_BACK) {
+					return;
+				}
+				for (Map.Entry<Integer, DataPoint> entry : before.entrySet()) {
+					Integer id = entry.getKey();
+					synchronized (_cacheLock) {
+						if (get(id) != after.get(id)) {
+							continue;
+						}
+						if (entry.getValue() == null) {
+							remove(id);
+						} else {
+							doPut(id, entry.getValue());
+						}
+					}
+				}
+				if (_log.isDebugEnabled()) {
+					_log.debug("Transaction rolled back, restored " + before.size() +
+					           " availability states");
 				}
 			}
-			_tranThread = null;
-			_tranCacheState.clear();
-			_tranCacheState.notifyAll();
+		});
+	}
+
+	public void rollbackTran() {
+		Map<Integer, DataPoint> before = getTranState();
+		if (before == null) {
+			return;
+		}
+		// other threads keep waiting for these ids until the tran ends
+		for (Map.Entry<Integer, DataPoint> entry : before.entrySet()) {
+			if (entry.getValue() == null) {
+				remove(entry.getKey());
+			} else {
+				doPut(entry.getKey(), entry.getValue());
+			}
 		}
+		endTran();
 	}
 
 	public void commitTran() {
+		Map<Integer, DataPoint> before = getTranState();
+		if (before == null) {
+			return;
+		}
+		undoOnRollback(before);
+		endTran();
+	}
+
+	/**
+	 * @return a copy of the states captured by the current thread's
+	 * transaction, null if the thread has no transaction open
+	 */
+	private Map<Integer, DataPoint> getTranState() {
 		synchronized (_tranCacheState) {
 			if (!_inTran || !Thread.currentThread().equals(_tranThread)) {
-				return;
+				return null;
 			}
+			return new HashMap<Integer, DataPoint>(_tranCacheState);
+		}
+	}
+
+	private void endTran() {
+		synchronized (_tranCacheState) {
 			_inTran = false;
 			_tranThread = null;
 			_tranCacheState.clear();
@@ -210,25 +289,33 @@ public class AvailabilityCache {
 	 * @param state The DataPoint to store for the given id.
 	 */
 	public void put(Integer id, DataPoint state) {
-		synchronized (_cacheLock) {
-			boolean newTran = false;
-			try {
-				newTran = beginTran();
-				captureCacheState(id);
-				if (!_cache.isKeyInCache(id)) {
-					if (isFull()) {
-						incrementCacheSize();
-					}
-					_cache.put(new Element(id, state));
-					_cacheSize++;
-				} else {
-					// Update only, don't increment counter.
-					_cache.put(new Element(id, state));
+		while (true) {
+			// must not hold _cacheLock while waiting, the transaction's
+			// thread needs it to finish
+			awaitTran(id);
+			synchronized (_cacheLock) {
+				// a transaction only captures ids while holding _cacheLock
+				if (isChangedByOtherTran(id)) {
+					continue;
 				}
-			} finally {
-				if (newTran) {
-					commitTran();
+				captureCacheState(id);
+				doPut(id, state);
+				return;
+			}
+		}
+	}
+
+	private void doPut(Integer id, DataPoint state) {
+		synchronized (_cacheLock) {
+			if (!_cache.isKeyInCache(id)) {
+				if (isFull()) {
+					incrementCacheSize();
 				}
+				_cache.put(new Element(id, state));
+				_cacheSize++;
+			} else {
+				// Update only, don't increment counter.
+				_cache.put(new Element(id, state));
 			}
 		}
 	}
@@ -247,16 +334,16 @@ public class AvailabilityCache {
 	 * Remove all elements from the AvailabilityCache.
 	 */
 	void clear() {
-		synchronized (_cacheLock) {
-			boolean newTran = false;
-			try {
-				newTran = beginTran();
+		boolean newTran = false;
+		try {
+			newTran = beginTran();
+			synchronized (_cacheLock) {
 				_cache.removeAll();
 				_cacheSize = 0;
-			} finally {
-				if (newTran) {
-					commitTran();
-				}
+			}
+		} finally {
+			if (newTran) {
+				commitTran();
 			}
 		}
 	}
@@ -25,11 +25,13 @@
 
 package org.hyperic.hq.measurement.server.session;
 
+import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -43,6 +45,7 @@ import java.util.TreeSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.type.IntegerType;
 import org.hyperic.hibernate.dialect.HQDialect;
@@ -79,6 +82,17 @@ public class AvailabilityDataDAO
                                              + "- greatest(rle.availabilityDataId.startime,:startime)";
     private static final String TOTAL_UPTIME = "(" + TOTAL_TIME + ") * rle.availVal";
 
+    private static final int JDBC_BATCH_SIZE = 1000;
+    private static final int BATCH_DELETE = 0;
+    private static final int BATCH_UPDATE = 1;
+    private static final int BATCH_INSERT = 2;
+    private static final String SQL_DELETE_RLE =
+        "DELETE FROM HQ_AVAIL_DATA_RLE WHERE MEASUREMENT_ID = ? AND STARTIME = ?";
+    private static final String SQL_UPDATE_RLE =
+        "UPDATE HQ_AVAIL_DATA_RLE SET ENDTIME = ?, AVAILVAL = ? WHERE MEASUREMENT_ID = ? AND STARTIME = ?";
+    private static final String SQL_INSERT_RLE =
+        "INSERT INTO HQ_AVAIL_DATA_RLE (MEASUREMENT_ID, STARTIME, ENDTIME, AVAILVAL) VALUES (?, ?, ?, ?)";
+
     private final DBUtil dbUtil;
 
     @Autowired
@@ -514,6 +528,72 @@ public class AvailabilityDataDAO
         return availObj;
     }
 
+    /**
+     * Removes the objects from the session so that changes made to them are
+     * not flushed by hibernate.  Used before the changes are written with
+     * {@link #writeChanges(Collection, Collection, Collection)}.
+     */
+    void evict(Collection<AvailabilityDataRLE> avails) {
+        final Session session = getSession();
+        for (AvailabilityDataRLE avail : avails) {
+            session.evict(avail);
+        }
+    }
+
+    /**
+     * Writes the rows changed by an availability update with JDBC batches
+     * rather than one hibernate operation per row.  None of the objects may
+     * be attached to the session.
+     */
+    void writeChanges(Collection<AvailabilityDataRLE> removes, Collection<AvailabilityDataRLE> updates,
+                      Collection<AvailabilityDataRLE> creates) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = dbUtil.getConnection();
+            executeBatch(conn, SQL_DELETE_RLE, removes, BATCH_DELETE);
+            executeBatch(conn, SQL_UPDATE_RLE, updates, BATCH_UPDATE);
+            executeBatch(conn, SQL_INSERT_RLE, creates, BATCH_INSERT);
+        } finally {
+            DBUtil.closeConnection(logCtx, conn);
+        }
+    }
+
+    private void executeBatch(Connection conn, String sql, Collection<AvailabilityDataRLE> avails, int type)
+        throws SQLException {
+        if (avails.isEmpty()) {
+            return;
+        }
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            int rows = 0;
+            for (AvailabilityDataRLE avail : avails) {
+                int i = 1;
+                if (type == BATCH_INSERT) {
+                    stmt.setInt(i++, avail.getMeasurement().getId().intValue());
+                    stmt.setLong(i++, avail.getStartime());
+                }
+                if (type != BATCH_DELETE) {
+                    stmt.setLong(i++, avail.getEndtime());
+                    stmt.setDouble(i++, avail.getAvailVal());
+                }
+                if (type != BATCH_INSERT) {
+                    stmt.setInt(i++, avail.getMeasurement().getId().intValue());
+                    stmt.setLong(i++, avail.getStartime());
+                }
+                stmt.addBatch();
+                if (++rows % JDBC_BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            if (rows % JDBC_BATCH_SIZE != 0) {
+                stmt.executeBatch();
+            }
+        } finally {
+            DBUtil.closeStatement(logCtx, stmt);
+        }
+    }
+
     /**
      * @return List of down Measurements
      */
@@ -913,7 +913,6 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         List<DataPoint> updateList = new ArrayList<DataPoint>(availPoints.size());
         List<DataPoint> outOfOrderAvail = new ArrayList<DataPoint>(availPoints.size());
         Map<DataPoint, AvailabilityDataRLE> createMap = new HashMap<DataPoint, AvailabilityDataRLE>();
-        Map<DataPoint, AvailabilityDataRLE> removeMap = new HashMap<DataPoint, AvailabilityDataRLE>();
         Map<Integer, StringBuilder> state = null;
         Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails = Collections.emptyMap();
         if (log.isDebugEnabled()) {
@@ -924,10 +923,11 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
                 availabilityCache.beginTran();
                 updateCache(availPoints, updateList, outOfOrderAvail);
                 currAvails = createCurrAvails(outOfOrderAvail, updateList); // get current DB Availability state for the measurements.
+                final Map<AvailabilityDataId, AvailabilityDataRLE> loaded = detach(currAvails);
                 state = captureCurrAvailState(currAvails); // this method is called for logging.
-                updateStates(updateList, currAvails, createMap, removeMap);
-                updateOutOfOrderState(outOfOrderAvail, currAvails, createMap, removeMap);
-                flushCreateAndRemoves(createMap, removeMap);
+                updateStates(updateList, currAvails, createMap);
+                updateOutOfOrderState(outOfOrderAvail, currAvails, createMap);
+                flushChanges(loaded, currAvails, createMap);
                 checkAvailabilityState(availPoints);
                 logErrorInfo(state, availPoints, currAvails);
                 availabilityCache.commitTran();
@@ -947,56 +947,73 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         }
     }
 
-	private void flushCreateAndRemoves(Map<DataPoint, AvailabilityDataRLE> createMap,
-                                       Map<DataPoint, AvailabilityDataRLE> removeMap) {
-        final StopWatch watch = new StopWatch();
-        final boolean debug = log.isDebugEnabled();
+    /**
+     * Takes the loaded rows out of the hibernate session, so that the state
+     * transitions of the whole batch can be worked out in memory and only
+     * the net changes written by {@link #flushChanges(Map, Map, Map)}.
+     * @return copies of the rows as they are in the DB
+     */
+    private Map<AvailabilityDataId, AvailabilityDataRLE> detach(Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails) {
+        final Map<AvailabilityDataId, AvailabilityDataRLE> rtn = new HashMap<AvailabilityDataId, AvailabilityDataRLE>();
+        for (TreeSet<AvailabilityDataRLE> rles : currAvails.values()) {
+            availabilityDataDAO.evict(rles);
+            for (AvailabilityDataRLE rle : rles) {
+                AvailabilityDataRLE copy =
+                    _createAvail(rle.getMeasurement(), rle.getStartime(), rle.getEndtime(), rle.getAvailVal());
+                rtn.put(getId(rle), copy);
+            }
+        }
+        return rtn;
+    }
 
-        if (debug)
-            watch.markTimeBegin("remove");
-        for (Map.Entry<DataPoint, AvailabilityDataRLE> entry : removeMap.entrySet()) {
-            AvailabilityDataRLE rle = (AvailabilityDataRLE) entry.getValue();
-            // if we call remove() on an object which is already in the session
-            // hibernate will throw NonUniqueObjectExceptions
-            AvailabilityDataRLE tmp = availabilityDataDAO.get(rle.getAvailabilityDataId());
-            if (tmp != null) {
-                availabilityDataDAO.remove(tmp);
-            } else {
-                availabilityDataDAO.remove(rle);
+    private AvailabilityDataId getId(AvailabilityDataRLE rle) {
+        return new AvailabilityDataId(rle.getStartime(), rle.getMeasurement());
+    }
+
+    /**
+     * Compares the rows left in currAvails with the rows loaded from the DB
+     * and writes the difference with JDBC batches.  A row that was rewritten
+     * several times while the batch was processed is written once.
+     */
+    private void flushChanges(Map<AvailabilityDataId, AvailabilityDataRLE> loaded,
+                              Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails,
+                              Map<DataPoint, AvailabilityDataRLE> createMap) throws SQLException {
+        final StopWatch watch = new StopWatch();
+        final List<AvailabilityDataRLE> creates = new ArrayList<AvailabilityDataRLE>();
+        final List<AvailabilityDataRLE> updates = new ArrayList<AvailabilityDataRLE>();
+        final List<AvailabilityDataRLE> removes = new ArrayList<AvailabilityDataRLE>();
+        final Set<AvailabilityDataId> kept = new HashSet<AvailabilityDataId>(loaded.size());
+        for (TreeSet<AvailabilityDataRLE> rles : currAvails.values()) {
+            for (AvailabilityDataRLE rle : rles) {
+                AvailabilityDataId id = getId(rle);
+                AvailabilityDataRLE orig = loaded.get(id);
+                if (orig == null) {
+                    creates.add(rle);
+                    continue;
+                }
+                kept.add(id);
+                if (orig.getEndtime() != rle.getEndtime() || orig.getAvailVal() != rle.getAvailVal()) {
+                    updates.add(rle);
+                }
             }
         }
-        if (debug) {
-            watch.markTimeEnd("remove");
-            watch.markTimeBegin("flush");
-        }
-        // addData() could be overwriting RLE data points (i.e. from 0.0 to 1.0)
-        // with the same ID. If this is the scenario, then we must run
-        // flush() in order to ensure that these old objects are not in the
-        // session when the equivalent create() on the same ID is run,
-        // thus avoiding NonUniqueObjectExceptions
-        availabilityDataDAO.getSession().flush();
-        if (debug) {
-            watch.markTimeEnd("flush");
-            watch.markTimeBegin("create");
+        for (Map.Entry<AvailabilityDataId, AvailabilityDataRLE> entry : loaded.entrySet()) {
+            if (!kept.contains(entry.getKey())) {
+                removes.add(entry.getValue());
+            }
         }
-        List<MeasurementZevent> events = new ArrayList<MeasurementZevent>(createMap.entrySet().size());
+        availabilityDataDAO.writeChanges(removes, updates, creates);
+
+        List<MeasurementZevent> events = new ArrayList<MeasurementZevent>(createMap.size());
         for (Map.Entry<DataPoint, AvailabilityDataRLE> entry : createMap.entrySet()) {
             DataPoint dp = entry.getKey();
-            AvailabilityDataRLE rle = (AvailabilityDataRLE) entry.getValue();
-            AvailabilityDataId id = new AvailabilityDataId();
-            Measurement m = rle.getMeasurement();
-            id.setMeasurement(m);
-            id.setStartime(rle.getStartime());
-            
-            availabilityDataDAO.create(rle.getMeasurement(), rle.getStartime(), rle.getEndtime(), rle.getAvailVal());
-            log.debug("added: Availability "+rle.getAvailVal() + " starttime " + rle.getStartime() + " endtime " + rle.getEndtime());
+            Measurement m = entry.getValue().getMeasurement();
             events.add(new MeasurementZevent(m.getId().intValue(), dp.getMetricValue()));
         }
         ZeventManager.getInstance().enqueueEventsAfterCommit(events);
-        if (debug) {
-            watch.markTimeEnd("create");
-            log.debug("AvailabilityInserter flushCreateAndRemoves: " + watch + ", points {remove=" + removeMap.size()
-                    + ", create=" + createMap.size() + "}");
+        if (log.isDebugEnabled()) {
+            log.debug("AvailabilityInserter flushChanges: " + watch + ", rows {remove=" + removes.size()
+                    + ", update=" + updates.size() + ", create=" + creates.size() + "}");
         }
     }
 
@@ -1080,8 +1097,8 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
     }
 
     private void updateDup(DataPoint state, AvailabilityDataRLE dup,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) throws BadAvailStateException {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap)
+            throws BadAvailStateException {
         if (dup.getAvailVal() == state.getValue()) {
             // nothing to do
         } else if (dup.getAvailVal() != AVAIL_DOWN) {
@@ -1095,7 +1112,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         } else {
             Measurement meas = dup.getMeasurement();
             long newStartime = dup.getStartime() + meas.getInterval();
-            insertPointOnBoundry(dup, newStartime, state, currAvails, createMap, removeMap);
+            insertPointOnBoundry(dup, newStartime, state, currAvails, createMap);
         }
     }
 
@@ -1105,8 +1122,8 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
      * specifically for a point which collides with a RLE on its startime
      */
     private void insertPointOnBoundry(AvailabilityDataRLE avail, long newStartime, DataPoint pt,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) throws BadAvailStateException {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap)
+            throws BadAvailStateException {
         if (newStartime <= avail.getStartime()) {
             return;
         }
@@ -1114,14 +1131,14 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         if (avail.getEndtime() == MAX_AVAIL_TIMESTAMP) {
             DataPoint tmp = availabilityCache.get(pt.getMeasurementId());
             if (tmp == null || pt.getTimestamp() >= tmp.getTimestamp()) {
-                updateAvailVal(avail, pt.getValue(), currAvails, createMap, removeMap);
+                updateAvailVal(avail, pt.getValue(), currAvails, createMap);
             } else {
-                prependState(pt, avail, currAvails, createMap, removeMap);
+                prependState(pt, avail, currAvails, createMap);
             }
         } else if (newStartime < avail.getEndtime()) {
-            prependState(pt, avail, currAvails, createMap, removeMap);
+            prependState(pt, avail, currAvails, createMap);
         } else if (newStartime > avail.getEndtime()) {
-            removeAvail(avail, currAvails, createMap, removeMap);
+            removeAvail(avail, currAvails, createMap);
         } else if (newStartime == avail.getEndtime()) {
             AvailabilityDataRLE after = findAvailAfter(pt, currAvails);
             if (after == null) {
@@ -1134,11 +1151,11 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
                 // and sliding back the start time of after obj
                 AvailabilityDataRLE before = findAvailBefore(pt, currAvails);
                 if (before == null) {
-                    after = updateStartime(after, avail.getStartime(), currAvails, createMap, removeMap);
+                    after = updateStartime(after, avail.getStartime(), currAvails, createMap);
                 } else if (before.getAvailVal() == after.getAvailVal()) {
-                    removeAvail(avail, currAvails, createMap, removeMap);
-                    removeAvail(before, currAvails, createMap, removeMap);
-                    after = updateStartime(after, before.getStartime(), currAvails, createMap, removeMap);
+                    removeAvail(avail, currAvails, createMap);
+                    removeAvail(before, currAvails, createMap);
+                    after = updateStartime(after, before.getStartime(), currAvails, createMap);
                 }
             } else {
                 // newStartime == avail.getEndtime() &&
@@ -1148,15 +1165,15 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
                 // therefore, need to push back startTime and set the value
                 long interval = meas.getInterval();
                 if ((after.getStartime() + interval) < after.getEndtime()) {
-                    prependState(pt, after, currAvails, createMap, removeMap);
+                    prependState(pt, after, currAvails, createMap);
                 } else {
                     DataPoint afterPt = new DataPoint(meas.getId().intValue(), after.getAvailVal(), after.getStartime());
                     AvailabilityDataRLE afterAfter = findAvailAfter(afterPt, currAvails);
                     if (afterAfter.getAvailVal() == pt.getValue()) {
-                        removeAvail(after, currAvails, createMap, removeMap);
-                        afterAfter = updateStartime(afterAfter, pt.getTimestamp(), currAvails, createMap, removeMap);
+                        removeAvail(after, currAvails, createMap);
+                        afterAfter = updateStartime(afterAfter, pt.getTimestamp(), currAvails, createMap);
                     } else {
-                        updateAvailVal(after, pt.getValue(), currAvails, createMap, removeMap);
+                        updateAvailVal(after, pt.getValue(), currAvails, createMap);
                     }
                 }
             }
@@ -1204,12 +1221,11 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
     }
 
     private void merge(DataPoint state, Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails,
-                       Map<DataPoint, AvailabilityDataRLE> createMap,
-                       Map<DataPoint, AvailabilityDataRLE> removeMap)
+                       Map<DataPoint, AvailabilityDataRLE> createMap)
     throws BadAvailStateException {
         AvailabilityDataRLE dup = findAvail(state, currAvails);
         if (dup != null) {
-            updateDup(state, dup, currAvails, createMap, removeMap);
+            updateDup(state, dup, currAvails, createMap);
             return;
         }
         AvailabilityDataRLE before = findAvailBefore(state, currAvails);
@@ -1224,30 +1240,29 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
             create(meas, state.getTimestamp(), state.getValue(), currAvails, createMap);
         } else if (before == null) {
             if (after.getAvailVal() != state.getValue()) {
-                prependState(state, after, currAvails, createMap, removeMap);
+                prependState(state, after, currAvails, createMap);
             } else {
-                after = updateStartime(after, state.getTimestamp(), currAvails, createMap, removeMap);
+                after = updateStartime(after, state.getTimestamp(), currAvails, createMap);
             }
         } else if (after == null) {
             // this shouldn't happen here
-            updateState(state, currAvails, createMap, removeMap);
+            updateState(state, currAvails, createMap);
         } else {
-            insertAvail(before, after, state, currAvails, createMap, removeMap);
+            insertAvail(before, after, state, currAvails, createMap);
         }
     }
 
     private void insertAvail(AvailabilityDataRLE before, AvailabilityDataRLE after, DataPoint state,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap) {
         if (state.getValue() != after.getAvailVal() && state.getValue() != before.getAvailVal()) {
             Measurement meas = getMeasurement(state.getMeasurementId());
             long pivotTime = state.getTimestamp() + meas.getInterval();
             create(meas, state.getTimestamp(), pivotTime, state.getValue(), currAvails, createMap);
             updateEndtime(before, state.getTimestamp());
-            after = updateStartime(after, pivotTime, currAvails, createMap, removeMap);
+            after = updateStartime(after, pivotTime, currAvails, createMap);
         } else if (state.getValue() == after.getAvailVal() && state.getValue() != before.getAvailVal()) {
             updateEndtime(before, state.getTimestamp());
-            after = updateStartime(after, state.getTimestamp(), currAvails, createMap, removeMap);
+            after = updateStartime(after, state.getTimestamp(), currAvails, createMap);
         } else if (state.getValue() != after.getAvailVal() && state.getValue() == before.getAvailVal()) {
             // this is fine
         } else if (state.getValue() == after.getAvailVal() && state.getValue() == before.getAvailVal()) {
@@ -1257,39 +1272,37 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
                     + "] have the same values.  This should not be the case.  " + "Cleaning up";
             log.warn(msg);
             updateEndtime(before, after.getEndtime());
-            removeAvail(after, currAvails, createMap, removeMap);
+            removeAvail(after, currAvails, createMap);
         }
     }
 
     private boolean prependState(DataPoint state, AvailabilityDataRLE avail,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap) {
         AvailabilityDataRLE before = findAvailBefore(state, currAvails);
         Measurement meas = avail.getMeasurement();
         if (before != null && before.getAvailVal() == state.getValue()) {
             long newStart = state.getTimestamp() + meas.getInterval();
             updateEndtime(before, newStart);
-            avail = updateStartime(avail, newStart, currAvails, createMap, removeMap);
+            avail = updateStartime(avail, newStart, currAvails, createMap);
         } else {
             long newStart = state.getTimestamp() + meas.getInterval();
             long endtime = newStart;
-            avail = updateStartime(avail, newStart, currAvails, createMap, removeMap);
+            avail = updateStartime(avail, newStart, currAvails, createMap);
             create(avail.getMeasurement(), state.getTimestamp(), endtime, state.getValue(), currAvails, createMap);
         }
         return true;
     }
 
     private void updateAvailVal(AvailabilityDataRLE avail, double val,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap) {
         Measurement meas = avail.getMeasurement();
         DataPoint state = new DataPoint(meas.getId().intValue(), val, avail.getStartime());
         AvailabilityDataRLE before = findAvailBefore(state, currAvails);
         if (before == null || before.getAvailVal() != val) {
             avail.setAvailVal(val);
         } else {
-            removeAvail(before, currAvails, createMap, removeMap);
-            avail = updateStartime(avail, before.getStartime(), currAvails, createMap, removeMap);
+            removeAvail(before, currAvails, createMap);
+            avail = updateStartime(avail, before.getStartime(), currAvails, createMap);
             avail.setAvailVal(val);
         }
     }
@@ -1299,8 +1312,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
     }
 
     private AvailabilityDataRLE updateStartime(AvailabilityDataRLE avail, long start,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap) {
         // this should not be the case here, but want to make sure and
         // avoid HibernateUniqueKeyExceptions :(
         AvailabilityDataRLE tmp;
@@ -1308,21 +1320,20 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         Integer mId = meas.getId();
         DataPoint tmpState = new DataPoint(mId.intValue(), avail.getAvailVal(), start);
         if (null != (tmp = findAvail(tmpState, currAvails))) {
-            removeAvail(tmp, currAvails, createMap, removeMap);
+            removeAvail(tmp, currAvails, createMap);
         }
-        removeAvail(avail, currAvails, createMap, removeMap);
+        removeAvail(avail, currAvails, createMap);
         return create(meas, start, avail.getEndtime(), avail.getAvailVal(), currAvails, createMap);
     }
 
     private void removeAvail(AvailabilityDataRLE avail, Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails,
-            Map<DataPoint, AvailabilityDataRLE> createMap, Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<DataPoint, AvailabilityDataRLE> createMap) {
         long start = avail.getStartime();
         Integer mId = avail.getMeasurement().getId();
         TreeSet<AvailabilityDataRLE> rles = currAvails.get(mId);
         if (rles.remove(avail)) {
             DataPoint key = new DataPoint(mId.intValue(), avail.getAvailVal(), start);
             createMap.remove(key);
-            removeMap.put(key, avail);
         }
     }
 
@@ -1367,7 +1378,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
     }
 
     private boolean updateState(DataPoint state, Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails,
-            Map<DataPoint, AvailabilityDataRLE> createMap, Map<DataPoint, AvailabilityDataRLE> removeMap)
+            Map<DataPoint, AvailabilityDataRLE> createMap)
             throws BadAvailStateException {
         AvailabilityDataRLE avail = getLastAvail(state, currAvails);
         final boolean debug = log.isDebugEnabled();
@@ -1380,7 +1391,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
             if (debug) {
                 begin = System.currentTimeMillis();
             }
-            merge(state, currAvails, createMap, removeMap);
+            merge(state, currAvails, createMap);
             if (debug) {
                 long now = System.currentTimeMillis();
                 log.debug("updateState.merge() -> " + (now - begin) + " ms");
@@ -1390,7 +1401,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
             if (debug) {
                 begin = System.currentTimeMillis();
             }
-            updateDup(state, avail, currAvails, createMap, removeMap);
+            updateDup(state, avail, currAvails, createMap);
             if (debug) {
                 long now = System.currentTimeMillis();
                 log.debug("updateState.updateDup() -> " + (now - begin) + " ms");
@@ -1413,14 +1424,13 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
     
     /**
      * update DB and availabilityCache with the changes marked in list states.
-     * Create/Remove is not actually done here - should call flushCreateAndRemove for the createMap and removeMap.
+     * Nothing is written here, the changes are left in currAvails for flushChanges.
      * @param states - States to update.
      * @param currAvails - current DB state for measurement IDs.
      * @param createMap - in/out param. filled with new AvailabilityDataRLEs
-     * @param removeMap - in/out param. filled with AvailabilityDataRLEs to remove.
      */
     private void updateStates(List<DataPoint> states, Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails,
-            Map<DataPoint, AvailabilityDataRLE> createMap, Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<DataPoint, AvailabilityDataRLE> createMap) {
 
         if (states.size() == 0) {
             return;
@@ -1438,7 +1448,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
                 if (currState != null && currState.getValue() == state.getValue()) {
                     continue;
                 }
-                boolean updateCache = updateState(state, currAvails, createMap, removeMap);
+                boolean updateCache = updateState(state, currAvails, createMap);
                 if (debug) {
                     log.debug("state " + state + " was updated, cache updated: " + updateCache);
                 }
@@ -1459,15 +1469,13 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
     /**
      * update DB with the changes marked in list states.
      * do not update the cache here, the timestamp is out of order.
-     * Create/Remove is not actually done here - should call flushCreateAndRemove for the createMap and removeMap.
+     * Nothing is written here, the changes are left in currAvails for flushChanges.
      * @param outOfOrderAvail - States that are not synched with the cache.
      * @param currAvails - current DB state for measurement IDs.
      * @param createMap - in/out param. filled with new AvailabilityDataRLEs
-     * @param removeMap - in/out param. filled with AvailabilityDataRLEs to remove.
      */
     private void updateOutOfOrderState(List<DataPoint> outOfOrderAvail,
-            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap,
-            Map<DataPoint, AvailabilityDataRLE> removeMap) {
+            Map<Integer, TreeSet<AvailabilityDataRLE>> currAvails, Map<DataPoint, AvailabilityDataRLE> createMap) {
         if (outOfOrderAvail.size() == 0) {
             return;
         }
@@ -1476,7 +1484,7 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         for (DataPoint state : outOfOrderAvail) {
             try {
                 // do not update the cache here, the timestamp is out of order
-                merge(state, currAvails, createMap, removeMap);
+                merge(state, currAvails, createMap);
             } catch (BadAvailStateException e) {
                 numBadAvailState++;
                 log.warn(e.getMessage());
@@ -1557,6 +1565,8 @@ public class AvailabilityManagerImpl implements AvailabilityManager {
         // Find all of the availPoints in the database and check if the same datapoint 
         // is not in sync with the cache
         final List<AvailabilityDataRLE> avails = availabilityDataDAO.findLastAvail(includes);
+        // these rows may be rewritten over JDBC by the next batch in this session
+        availabilityDataDAO.evict(avails);
         final List<Integer> mids = new ArrayList<Integer>();
         for (final AvailabilityDataRLE data : avails) {
             final Integer mid = data.getMeasurement().getId();
@@ -25,20 +25,40 @@
 
 package org.hyperic.hq.measurement.server.session;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.hq.measurement.MeasurementConstants;
 import org.hyperic.hq.measurement.TimingVoodoo;
 import org.hyperic.hq.measurement.shared.DataCompress;
+import org.hyperic.hq.stats.ConcurrentStatsCollector;
 import org.hyperic.util.TimeUtil;
+import org.hyperic.util.thread.ThreadGroupFactory;
 import org.hyperic.util.timer.StopWatch;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
  * The DataCompressImpl handles all compression and purging of measurement data
  * in the HQ system.
+ * 
+ * Unless hq.dataCompress.threads is set to 1, each compression window is
+ * split into hq.dataCompress.slices measurement id ranges which are compacted
+ * in parallel, each in its own transaction on its own connection.  A slice
+ * replaces whatever the target table holds for its range, so the window which
+ * was being worked on when the server went down is simply compacted again.
  */
 @Service
 @Transactional
@@ -51,11 +71,49 @@ public class DataCompressImpl implements DataCompress {
     private static final String TAB_DATA_6H = MeasurementConstants.TAB_DATA_6H;
     private static final String TAB_DATA_1D = MeasurementConstants.TAB_DATA_1D;
 
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_SLICES = 16;
+
     private DataCompressionDAO dataCompressionDAO;
+    private ConcurrentStatsCollector concurrentStatsCollector;
+    private AggregateDataCache aggregateDataCache;
+    private final int numThreads;
+    private final int numSlices;
+    private ExecutorService executor;
 
     @Autowired
-    public DataCompressImpl(DataCompressionDAO dataCompressionDAO) {
+    public DataCompressImpl(DataCompressionDAO dataCompressionDAO,
+                            ConcurrentStatsCollector concurrentStatsCollector,
+                            AggregateDataCache aggregateDataCache,
+                            @Value("#{tweakProperties['hq.dataCompress.threads'] }") Integer threads,
+                            @Value("#{tweakProperties['hq.dataCompress.slices'] }") Integer slices) {
         this.dataCompressionDAO = dataCompressionDAO;
+        this.concurrentStatsCollector = concurrentStatsCollector;
+        this.aggregateDataCache = aggregateDataCache;
+        this.numThreads = (threads == null || threads < 1) ? DEFAULT_THREADS : threads.intValue();
+        this.numSlices = (slices == null || slices < 1) ? DEFAULT_SLICES : slices.intValue();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        concurrentStatsCollector.register(ConcurrentStatsCollector.METRIC_DATA_COMPRESS_ROWS_PER_SEC);
+        concurrentStatsCollector.register(ConcurrentStatsCollector.METRIC_DATA_COMPRESS_LAG);
+        if (isParallel()) {
+            ThreadGroupFactory factory = new ThreadGroupFactory("DataCompress-");
+            factory.createDaemonThreads(true);
+            executor = Executors.newFixedThreadPool(numThreads, factory);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean isParallel() {
+        return numThreads > 1 && numSlices > 1;
     }
 
     public void createMetricDataViews() {
@@ -71,17 +129,91 @@ public class DataCompressImpl implements DataCompress {
     }
 
     public void compressData(long toInterval, long now, long startWindow, long endWindow) {
+        final String fromTable;
+        final String toTable;
         if (toInterval == MeasurementConstants.HOUR) {
-            dataCompressionDAO.compactData(dataCompressionDAO.getMeasurementUnionStatement(now),
-                TAB_DATA_1H, startWindow, endWindow);
+            fromTable = dataCompressionDAO.getMeasurementUnionStatement(now);
+            toTable = TAB_DATA_1H;
         } else if (toInterval == MeasurementConstants.SIX_HOUR) {
-            dataCompressionDAO.compactData(TAB_DATA_1H, TAB_DATA_6H, startWindow, endWindow);
+            fromTable = TAB_DATA_1H;
+            toTable = TAB_DATA_6H;
         } else if (toInterval == MeasurementConstants.DAY) {
-            dataCompressionDAO.compactData(TAB_DATA_6H, TAB_DATA_1D, startWindow, endWindow);
+            fromTable = TAB_DATA_6H;
+            toTable = TAB_DATA_1D;
         } else {
             throw new UnsupportedOperationException(
                 "Cannot compress data for intervals other than 1 hour, 6 hours, or 1 day");
         }
+        if (isParallel()) {
+            compressInSlices(fromTable, toTable, startWindow, endWindow);
+        } else {
+            dataCompressionDAO.compactData(fromTable, toTable, startWindow, endWindow);
+        }
+        aggregateDataCache.invalidate(startWindow, endWindow);
+        if (toInterval == MeasurementConstants.HOUR) {
+            concurrentStatsCollector.addStat(System.currentTimeMillis() - endWindow,
+                ConcurrentStatsCollector.METRIC_DATA_COMPRESS_LAG);
+        }
+    }
+
+    private void compressInSlices(final String fromTable, final String toTable,
+                                  final long begin, final long end) {
+        final int[] range = dataCompressionDAO.getMeasurementIdRange(fromTable, begin, end);
+        if (range == null) {
+            return;
+        }
+        log.info("Compressing from: " + fromTable + " to " + toTable + " in " + numSlices +
+                 " slices");
+        final long start = System.currentTimeMillis();
+        // use longs so that the last slice can end past Integer.MAX_VALUE
+        final long min = range[0];
+        final long width = Math.max(1, (range[1] - min + numSlices) / numSlices);
+        final List<Callable<Integer>> slices = new ArrayList<Callable<Integer>>(numSlices);
+        for (long lo = min; lo <= range[1]; lo += width) {
+            final int fromMid = (int) lo;
+            final int toMid = (int) Math.min(Integer.MAX_VALUE, lo + width);
+            slices.add(new Callable<Integer>() {
+                public Integer call() {
+                    return dataCompressionDAO.recompactData(fromTable, toTable, begin, end,
+                        fromMid, toMid);
+                }
+                public String toString() {
+                    return "measurement ids " + fromMid + " to " + toMid;
+                }
+            });
+        }
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>(slices.size());
+        for (Callable<Integer> slice : slices) {
+            results.add(executor.submit(slice));
+        }
+        long rows = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                rows += results.get(i).get();
+            } catch (ExecutionException e) {
+                log.warn("Unable to compress " + slices.get(i) + " from " + fromTable + " to " +
+                         toTable + " at " + TimeUtil.toString(begin) + ", retrying: " + e.getCause());
+                // a slice replaces its range, so it can simply be done again.
+                // It runs on the executor as well, out of the caller's
+                // transaction
+                try {
+                    rows += executor.submit(slices.get(i)).get();
+                } catch (ExecutionException retry) {
+                    log.error("Unable to compress " + slices.get(i) + " from " + fromTable +
+                              " to " + toTable + " at " + TimeUtil.toString(begin) +
+                              ", their data is missing from " + toTable, retry.getCause());
+                } catch (InterruptedException retry) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        concurrentStatsCollector.addStat(rows * 1000 / elapsed,
+            ConcurrentStatsCollector.METRIC_DATA_COMPRESS_ROWS_PER_SEC);
     }
 
     public long getMinTimestamp(long dataInterval) {
@@ -118,6 +250,9 @@ public class DataCompressImpl implements DataCompress {
             if (start == 0) {
                 return 0;
             }
+        } else if (isParallel()) {
+            // The last window may have been left partially compressed, so
+            // compress it again.  Its slices replace what is already there.
         } else {
             // Start at next interval
             start = start + toInterval;
@@ -139,6 +274,7 @@ public class DataCompressImpl implements DataCompress {
         log.info("Purging data older than " + TimeUtil.toString(endWindow) + " in " + tableName);
         StopWatch watch = new StopWatch();
         dataCompressionDAO.purgeMeasurements(tableName, startWindow, endWindow);
+        aggregateDataCache.invalidate(startWindow, endWindow);
         log.info("Done (" + ((watch.getElapsed()) / 1000) + " seconds)");
     }
 
@@ -42,6 +42,7 @@ import org.hyperic.util.TimeUtil;
 import org.hyperic.util.jdbc.DBUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -172,21 +173,8 @@ public class DataCompressionDAO {
 
                 public PreparedStatement createPreparedStatement(Connection con)
                     throws SQLException {
-                    String minMax;
-                    if (fromTable.endsWith(TAB_DATA)) {
-                        minMax = "AVG(value), MIN(value), MAX(value) ";
-                    } else {
-                        minMax = "AVG(value), MIN(minvalue), MAX(maxvalue) ";
-                    }
-
-                    PreparedStatement insStmt = con
-                        .prepareStatement("INSERT INTO " +
-                                          toTable +
-                                          " (measurement_id, timestamp, value, minvalue, maxvalue)" +
-                                          " (SELECT measurement_id, ? AS timestamp, " + minMax +
-                                          "FROM " + fromTable +
-                                          " WHERE timestamp >= ? AND timestamp < ? " +
-                                          "GROUP BY measurement_id)");
+                    PreparedStatement insStmt = con.prepareStatement(
+                        getCompactSQL(fromTable, toTable, ""));
                     insStmt.setLong(1, begin);
                     insStmt.setLong(2, begin);
                     insStmt.setLong(3, end);
@@ -199,6 +187,91 @@ public class DataCompressionDAO {
         }
     }
 
+    /**
+     * Compacts the data of the measurements with ids in [fromMid, toMid) only,
+     * so that a window may be compacted in several pieces.  Whatever toTable
+     * already holds for those measurements at begin is deleted first, in the
+     * same transaction, so a piece which was cut short or which overlaps one
+     * compacted by an earlier run is simply done over.
+     * 
+     * @return the number of rows inserted into toTable
+     */
+    public int recompactData(final String fromTable, final String toTable, final long begin,
+                             final long end, final int fromMid, final int toMid) {
+        return jdbcTemplate.execute(new ConnectionCallback<Integer>() {
+            public Integer doInConnection(Connection conn) throws SQLException {
+                boolean autocommit = conn.getAutoCommit();
+                PreparedStatement delStmt = null;
+                PreparedStatement insStmt = null;
+                try {
+                    conn.setAutoCommit(false);
+                    delStmt = conn.prepareStatement("DELETE FROM " + toTable +
+                                                    " WHERE timestamp = ? AND measurement_id >= ?" +
+                                                    " AND measurement_id < ?");
+                    delStmt.setLong(1, begin);
+                    delStmt.setInt(2, fromMid);
+                    delStmt.setInt(3, toMid);
+                    delStmt.executeUpdate();
+
+                    insStmt = conn.prepareStatement(getCompactSQL(fromTable, toTable,
+                        "AND measurement_id >= ? AND measurement_id < ? "));
+                    insStmt.setLong(1, begin);
+                    insStmt.setLong(2, begin);
+                    insStmt.setLong(3, end);
+                    insStmt.setInt(4, fromMid);
+                    insStmt.setInt(5, toMid);
+                    int rows = insStmt.executeUpdate();
+                    conn.commit();
+                    return rows;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    DBUtil.closeStatement(log, delStmt);
+                    DBUtil.closeStatement(log, insStmt);
+                    conn.setAutoCommit(autocommit);
+                }
+            }
+        });
+    }
+
+    private String getCompactSQL(String fromTable, String toTable, String extraWhere) {
+        String minMax;
+        if (fromTable.endsWith(TAB_DATA)) {
+            minMax = "AVG(value), MIN(value), MAX(value) ";
+        } else {
+            minMax = "AVG(value), MIN(minvalue), MAX(maxvalue) ";
+        }
+        return "INSERT INTO " + toTable +
+               " (measurement_id, timestamp, value, minvalue, maxvalue)" +
+               " (SELECT measurement_id, ? AS timestamp, " + minMax +
+               "FROM " + fromTable +
+               " WHERE timestamp >= ? AND timestamp < ? " + extraWhere +
+               "GROUP BY measurement_id)";
+    }
+
+    /**
+     * @return the lowest and highest measurement id with data in the window,
+     *         or null if there is none
+     */
+    public int[] getMeasurementIdRange(String dataTable, long begin, long end) {
+        return jdbcTemplate.query("SELECT MIN(measurement_id), MAX(measurement_id) FROM " +
+                                  dataTable + " WHERE timestamp >= ? AND timestamp < ?",
+            new Object[] { begin, end },
+            new ResultSetExtractor<int[]>() {
+                public int[] extractData(ResultSet rs) throws SQLException, DataAccessException {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    int min = rs.getInt(1);
+                    if (rs.wasNull()) {
+                        return null;
+                    }
+                    return new int[] { min, rs.getInt(2) };
+                }
+            });
+    }
+
     /**
      * Get the most recent measurement.
      */
@@ -49,10 +49,18 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang.time.DateUtils;
 import org.apache.commons.logging.Log;
@@ -86,8 +94,10 @@ import org.hyperic.util.TimeUtil;
 import org.hyperic.util.jdbc.DBUtil;
 import org.hyperic.util.pager.PageControl;
 import org.hyperic.util.pager.PageList;
+import org.hyperic.util.thread.ThreadGroupFactory;
 import org.hyperic.util.timer.StopWatch;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.orm.hibernate3.HibernateTransactionManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -164,8 +174,16 @@ public class DataManagerImpl implements DataManager {
     private final ConcurrentStatsCollector concurrentStatsCollector;
     private final int transactionTimeout;
     private final TopNManager topNManager;
+    private final AggregateDataCache aggregateDataCache;
+    private final RecentMetricDataTier recentMetricDataTier;
+    // runs the historical data sub-queries of all requests, each request
+    // having at most aggQueriesPerRequest of them queued or running
+    private final ExecutorService aggQueryExecutor;
+    private final int aggQueriesPerRequest;
+
+    private static final int DEFAULT_AGG_QUERY_THREADS = 8;
+    private static final int DEFAULT_AGG_QUERIES_PER_REQUEST = 4;
 
-    
     @Autowired
     public DataManagerImpl(DBUtil dbUtil, MeasurementDAO measurementDAO,
                            MeasurementManager measurementManager,
@@ -175,7 +193,10 @@ public class DataManagerImpl implements DataManager {
                            MessagePublisher messagePublisher, RegisteredTriggers registeredTriggers,
                            ConcurrentStatsCollector concurrentStatsCollector,
                            HibernateTransactionManager transactionManager,
-                           TopNManager topNManager) {
+                           TopNManager topNManager, AggregateDataCache aggregateDataCache,
+                           RecentMetricDataTier recentMetricDataTier,
+                           @Value("#{tweakProperties['hq.aggData.queryThreads'] }") Integer aggQueryThreads,
+                           @Value("#{tweakProperties['hq.aggData.queriesPerRequest'] }") Integer aggQueriesPerRequest) {
         this.dbUtil = dbUtil;
         this.measurementDAO = measurementDAO;
         this.measurementManager = measurementManager;
@@ -188,6 +209,15 @@ public class DataManagerImpl implements DataManager {
         this.concurrentStatsCollector = concurrentStatsCollector;
         this.transactionTimeout = transactionManager.getDefaultTimeout();
         this.topNManager = topNManager;
+        this.aggregateDataCache = aggregateDataCache;
+        this.recentMetricDataTier = recentMetricDataTier;
+        this.aggQueriesPerRequest = (aggQueriesPerRequest == null || aggQueriesPerRequest < 1) ?
+            DEFAULT_AGG_QUERIES_PER_REQUEST : aggQueriesPerRequest.intValue();
+        final ThreadGroupFactory factory = new ThreadGroupFactory("AggDataQuery-");
+        factory.createDaemonThreads(true);
+        this.aggQueryExecutor = Executors.newFixedThreadPool(
+            (aggQueryThreads == null || aggQueryThreads < 1) ? DEFAULT_AGG_QUERY_THREADS : aggQueryThreads.intValue(),
+            factory);
     }
 
     @PostConstruct
@@ -196,6 +226,11 @@ public class DataManagerImpl implements DataManager {
     	concurrentStatsCollector.register(DATA_MANAGER_RETRIES_TIME);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        aggQueryExecutor.shutdownNow();
+    }
+
     private double getValue(ResultSet rs) throws SQLException {
         double val = rs.getDouble("value");
 
@@ -277,6 +312,7 @@ public class DataManagerImpl implements DataManager {
         try {
             insertDataWithOneInsert(data, aggTable, conn);
             conn.commit();
+            aggregateDataCache.invalidate(data);
         } catch (Exception e) {
             conn.rollback();
             throw e;
@@ -335,10 +371,10 @@ public class DataManagerImpl implements DataManager {
      * Write metric data points to the DB with transaction
      * 
      * @param data a list of {@link DataPoint}s
+     * @return false if nothing was written, true once the data is written,
+     *         also when the points the DB refused one by one were dropped
      * @throws NumberFormatException if the value from the
      *         DataPoint.getMetricValue() cannot instantiate a BigDecimal
-     * 
-     * 
      */
     protected boolean _addData(List<DataPoint> data, Connection conn) {
         if (shouldAbortDataInsertion(data)) {
@@ -351,6 +387,8 @@ public class DataManagerImpl implements DataManager {
 
         HQDialect dialect = measurementDAO.getHQDialect();
         boolean succeeded = false;
+        // the data went in, in the one transaction or point by point
+        boolean written = false;
         final boolean debug = log.isDebugEnabled();
 
         if (conn == null) {
@@ -372,12 +410,15 @@ public class DataManagerImpl implements DataManager {
                 if (succeeded) {
                     conn.commit();
                     final long end = System.currentTimeMillis();
+                    written = true;
                     if (debug) {
                         log.debug("Inserting data in a single transaction " + "succeeded");
                         log.debug("Data Insertion process took " + (end - start) + " ms");
                     }
                     
                     concurrentStatsCollector.addStat(end - start, DATA_MANAGER_INSERT_TIME);
+                    aggregateDataCache.invalidate(data);
+                    recentMetricDataTier.add(data);
                     sendMetricEvents(data);
                 } else {
                     if (debug) {
@@ -387,9 +428,12 @@ public class DataManagerImpl implements DataManager {
                     conn.rollback();
                     conn.setAutoCommit(true);
                     List<DataPoint> processed = addDataWithCommits(data, true, conn);
+                    written = true;
                     final long end = System.currentTimeMillis();
                     
                     concurrentStatsCollector.addStat(end - start, DATA_MANAGER_INSERT_TIME);
+                    aggregateDataCache.invalidate(processed);
+                    recentMetricDataTier.add(processed);
                     sendMetricEvents(processed);
                     if (debug) {
                         log.debug("Data Insertion process took " + (end - start) + " ms");
@@ -407,7 +451,7 @@ public class DataManagerImpl implements DataManager {
         } finally {
             DBUtil.closeConnection(LOG_CTX, conn);
         }
-        return succeeded;
+        return written;
     }
 
 
@@ -512,7 +556,9 @@ public class DataManagerImpl implements DataManager {
 
             try {
                 conn.setAutoCommit(true);
-                addDataWithCommits(data, overwrite, conn);
+                final List<DataPoint> processed = addDataWithCommits(data, overwrite, conn);
+                aggregateDataCache.invalidate(processed);
+                recentMetricDataTier.add(processed);
             } finally {
                 conn.setAutoCommit(autocommit);
             }
@@ -1455,6 +1501,10 @@ public class DataManagerImpl implements DataManager {
         checkTimeArguments(begin, end);
         begin = TimingVoodoo.roundDownTime(begin, MINUTE);
         end = TimingVoodoo.roundDownTime(end, MINUTE);
+        final List<HighLowMetricValue> recent = getRecentData(m.getId(), begin, end);
+        if (recent != null) {
+            return getPage(recent, pc);
+        }
         final ArrayList<HighLowMetricValue> history = new ArrayList<HighLowMetricValue>();
         // Get the data points and add to the ArrayList
         Connection conn = null;
@@ -1528,6 +1578,12 @@ public class DataManagerImpl implements DataManager {
         ResultSet rs = null;
         // The table to query from
         final String table = getDataTable(begin, end, m,maxDTPs);
+        if (!table.equals(TAB_DATA_1H) && !table.equals(TAB_DATA_6H) && !table.equals(TAB_DATA_1D)) {
+            final List<HighLowMetricValue> recent = getRecentData(m.getId(), begin, end);
+            if (recent != null) {
+                return recent;
+            }
+        }
         try {
             conn = dbUtil.getConnection();
             stmt = conn.createStatement();
@@ -1579,9 +1635,14 @@ public class DataManagerImpl implements DataManager {
 
     private TreeSet<HighLowMetricValue> getRawDataPoints(Measurement m, long begin, long end,
                                                          AtomicLong publishedInterval) {
-        final StringBuilder sqlBuf = getRawDataSql(m, begin, end, publishedInterval);
         final TreeSet<HighLowMetricValue> rtn =
             new TreeSet<HighLowMetricValue>(getTimestampComparator());
+        final List<HighLowMetricValue> recent = getRecentData(m.getId(), begin, end);
+        if (recent != null) {
+            rtn.addAll(recent);
+            return rtn;
+        }
+        final StringBuilder sqlBuf = getRawDataSql(m, begin, end, publishedInterval);
         Connection conn = null;
         Statement stmt = null;
         ResultSet rs = null;
@@ -1629,6 +1690,42 @@ public class DataManagerImpl implements DataManager {
         return sqlBuf;
     }
 
+    /**
+     * @return the raw data points of the measurement within begin - end,
+     *         inclusive, in ascending order if the recent data tier holds all
+     *         of them and the window would be read from the raw data tables,
+     *         null otherwise
+     */
+    private List<HighLowMetricValue> getRecentData(Integer mid, long begin, long end) {
+        if (!recentMetricDataTier.isEnabled() || !usesMetricUnion(begin, end, false)) {
+            return null;
+        }
+        final List<HighLowMetricValue> rtn = new ArrayList<HighLowMetricValue>();
+        final boolean held = recentMetricDataTier.visit(new Integer[] { mid }, begin, end,
+            new RecentMetricDataTier.PointVisitor() {
+                public void visit(int measurementId, long timestamp, double value) {
+                    rtn.add(new HighLowMetricValue(value, timestamp));
+                }
+            });
+        return held ? rtn : null;
+    }
+
+    private PageList<HighLowMetricValue> getPage(List<HighLowMetricValue> points, PageControl pc) {
+        if (points.isEmpty()) {
+            return new PageList<HighLowMetricValue>();
+        }
+        if (!pc.isAscending()) {
+            Collections.reverse(points);
+        }
+        if (pc.getPagesize() == PageControl.SIZE_UNLIMITED) {
+            return new PageList<HighLowMetricValue>(points, points.size());
+        }
+        final int from = Math.min(pc.getPageEntityIndex(), points.size());
+        final int to = Math.min(from + pc.getPagesize(), points.size());
+        return new PageList<HighLowMetricValue>(
+            new ArrayList<HighLowMetricValue>(points.subList(from, to)), points.size());
+    }
+
     private Comparator<MetricValue> getTimestampComparator() {
         return new Comparator<MetricValue>() {
             public int compare(MetricValue arg0, MetricValue arg1) {
@@ -1795,6 +1892,10 @@ public class DataManagerImpl implements DataManager {
         return data;
     }
 
+    public long getDataStamp(Integer[] mids) {
+        return aggregateDataCache.getStamp(mids);
+    }
+
     /**
      * Fetch the list of historical data points given a start and stop time
      * range and interval
@@ -1910,7 +2011,6 @@ public class DataManagerImpl implements DataManager {
                 min  = (val.min < min)  ? val.min : min;
                 sum += val.sum;
         }
-        @SuppressWarnings("unused")
         private void set(double val) {
                 count++;
                 max = (val > max) ? val : max;
@@ -1978,6 +2078,90 @@ public class DataManagerImpl implements DataManager {
                                              final long start, final long finish,
                                              final long windowSize, final boolean returnNulls,
                                              final AtomicLong publishedInterval) {
+        final AggregateDataCache.Key key = aggregateDataCache.newKey(mids, start, finish, windowSize);
+        final AggregateDataCache.Buckets cached = aggregateDataCache.get(key);
+        if (cached != null) {
+            if (publishedInterval != null && cached.publishedInterval != 0) {
+                publishedInterval.set(cached.publishedInterval);
+            }
+            return fromBuckets(cached);
+        }
+        final AggMetricValue[] recent = getRecentAggValueSets(mids, start, finish, windowSize);
+        if (recent != null) {
+            return recent;
+        }
+        final AtomicLong interval = new AtomicLong();
+        final AggMetricValue[] rtn = queryAggValueSets(mids, start, finish, windowSize, returnNulls, interval);
+        if (publishedInterval != null && interval.get() != 0) {
+            publishedInterval.set(interval.get());
+        }
+        aggregateDataCache.put(key, toBuckets(rtn, interval.get()));
+        return rtn;
+    }
+
+    /**
+     * Buckets the raw data of the window from the recent data tier the same
+     * way {@link #getHistDataSet} buckets the rows of the raw data tables.
+     * 
+     * @return null if the window isn't read from the raw data tables or the
+     *         tier doesn't hold all of it
+     */
+    private AggMetricValue[] getRecentAggValueSets(final Integer[] mids, final long start,
+                                                   final long finish, final long windowSize) {
+        if (!recentMetricDataTier.isEnabled() || !usesMetricUnion(start, finish, false)) {
+            return null;
+        }
+        final int buckets = (int) ((finish - start) / windowSize);
+        final AggMetricValue[] rtn = new AggMetricValue[buckets];
+        final boolean held = recentMetricDataTier.visit(mids, start, finish,
+            new RecentMetricDataTier.PointVisitor() {
+                public void visit(int measurementId, long timestamp, double value) {
+                    final int bucket = (int) (buckets - ((finish - timestamp) / (float) windowSize));
+                    if (bucket < 0 || bucket >= buckets) {
+                        return;
+                    }
+                    if (rtn[bucket] == null) {
+                        rtn[bucket] = new AggMetricValue(timestamp, value, value, value, 1);
+                    } else {
+                        rtn[bucket].set(value);
+                    }
+                }
+            });
+        return held ? rtn : null;
+    }
+
+    private AggregateDataCache.Buckets toBuckets(AggMetricValue[] values, long publishedInterval) {
+        final AggregateDataCache.Buckets rtn = new AggregateDataCache.Buckets(values.length, publishedInterval);
+        for (int i = 0; i < values.length; i++) {
+            final AggMetricValue val = values[i];
+            if (val == null) {
+                continue;
+            }
+            rtn.timestamps[i] = val.timestamp;
+            rtn.sums[i] = val.sum;
+            rtn.maxs[i] = val.max;
+            rtn.mins[i] = val.min;
+            rtn.counts[i] = val.count;
+        }
+        return rtn;
+    }
+
+    private AggMetricValue[] fromBuckets(AggregateDataCache.Buckets buckets) {
+        final AggMetricValue[] rtn = new AggMetricValue[buckets.size()];
+        for (int i = 0; i < rtn.length; i++) {
+            if (buckets.counts[i] == 0) {
+                continue;
+            }
+            rtn[i] = new AggMetricValue(buckets.timestamps[i], buckets.sums[i], buckets.maxs[i],
+                                        buckets.mins[i], buckets.counts[i]);
+        }
+        return rtn;
+    }
+
+    private AggMetricValue[] queryAggValueSets(final Integer[] mids,
+                                               final long start, final long finish,
+                                               final long windowSize, final boolean returnNulls,
+                                               final AtomicLong publishedInterval) {
         final String[] tables = getDataTables(start, finish, false);
         if (tables.length <= 0) {
             throw new SystemException(
@@ -1988,48 +2172,66 @@ public class DataManagerImpl implements DataManager {
             MeasTabManagerUtil.getMetricRanges(start, finish) :
             new MeasRange[] {new MeasRange(tables[0], start, finish)};
         final String threadName = Thread.currentThread().getName();
-        final List<Thread> threads = new ArrayList<Thread>(ranges.length);
         final Collection<AggMetricValue[]> data = new ArrayList<AggMetricValue[]>(ranges.length);
-        final int maxThreads = 4;
+        final CompletionService<AggMetricValue[]> completionService =
+            new ExecutorCompletionService<AggMetricValue[]>(aggQueryExecutor);
+        final List<Future<AggMetricValue[]>> futures = new ArrayList<Future<AggMetricValue[]>>(ranges.length);
         // The result encapsulates the timeframe start -> finish.  The results are gathered
         // via sub-queries.  Each sub-query is from begin -> end
         // start                                                                    finish
         // <----------------------------------------------------------------------------->
         // (begin-end)(begin-end)(begin-end)(begin-end)(begin-end)(begin-end)(begin-end)..
-        for (final MeasRange range : ranges) {
-            final long min = range.getMinTimestamp();
-            final long max = range.getMaxTimestamp();
-            final long begin = (min < start) ? start : min;
-            final long end = (max > finish) ? finish : max;
-            waitForThreads(threads, maxThreads);
-            // XXX may want to add a thread pool or a static Executor here so that these
-            // queries don't overwhelm the DB
-            Thread thread = getNewDataWorkerThread(mids, start, finish, begin, end, windowSize,
-                                                   returnNulls, publishedInterval, threadName,
-                                                   data);
-            thread.start();
-            threads.add(thread);
-        }
-        waitForThreads(threads);
+        // The sub-queries run on the shared executor, no more than aggQueriesPerRequest
+        // at a time so that requests share the executor's threads in turn.
+        try {
+            int next = 0;
+            for (; next < ranges.length && next < aggQueriesPerRequest; next++) {
+                futures.add(completionService.submit(getDataWorker(mids, start, finish, ranges[next],
+                                                                    windowSize, returnNulls,
+                                                                    publishedInterval, threadName)));
+            }
+            for (int done = 0; done < ranges.length; done++) {
+                data.add(completionService.take().get());
+                if (next < ranges.length) {
+                    futures.add(completionService.submit(getDataWorker(mids, start, finish, ranges[next++],
+                                                                        windowSize, returnNulls,
+                                                                        publishedInterval, threadName)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SystemException) {
+                throw (SystemException) cause;
+            }
+            throw new SystemException(cause);
+        } finally {
+            for (final Future<AggMetricValue[]> future : futures) {
+                future.cancel(true);
+            }
+        }
         return mergeThreadData(start, finish, windowSize, data);
     }
     
     /**
-     * @param begin - the begin time of the sub window
-     * @param end - the end time of the sub window
+     * @param range - the sub window
      * @param start - the start time of the user specified window
      * @param finish - the finish time of the user specified window
      */
-    private Thread getNewDataWorkerThread(final Integer[] mids, final long start,
-                                          final long finish, final long begin, final long end,
-                                          final long windowSize, final boolean returnNulls,
-                                          final AtomicLong publishedInterval,
-                                          final String threadName,
-                                          final Collection<AggMetricValue[]> data) {
+    private Callable<AggMetricValue[]> getDataWorker(final Integer[] mids, final long start,
+                                                     final long finish, final MeasRange range,
+                                                     final long windowSize, final boolean returnNulls,
+                                                     final AtomicLong publishedInterval,
+                                                     final String threadName) {
+        final long min = range.getMinTimestamp();
+        final long max = range.getMaxTimestamp();
+        final long begin = (min < start) ? start : min;
+        final long end = (max > finish) ? finish : max;
         final boolean debug = log.isDebugEnabled();
-        final Thread thread = new Thread() {
-            @Override
-            public void run() {
+        return new Callable<AggMetricValue[]>() {
+            public AggMetricValue[] call() {
                 final StopWatch watch = new StopWatch();
                 if (debug) {
                     watch.markTimeBegin("data gatherer begin=" + TimeUtil.toString(begin) + 
@@ -2043,12 +2245,9 @@ public class DataManagerImpl implements DataManager {
                                       ", end=" + TimeUtil.toString(end));
                     log.debug(watch);
                 }
-                synchronized (data) {
-                    data.add(array);
-                }
+                return array;
             }
         };
-        return thread;
     }
 
     private AggMetricValue[] getHistDataSet(Integer[] mids, long start, long finish,
@@ -2119,41 +2318,6 @@ public class DataManagerImpl implements DataManager {
         return rtn;
     }
 
-    private void waitForThreads(List<Thread> threads) {
-        for (final Thread thread : threads) {
-            while (thread.isAlive()) {
-                try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    log.debug(e, e);
-                }
-            }
-        }
-    }
-
-    private void waitForThreads(List<Thread> threads, int maxThreads) {
-        if (threads.isEmpty() || (threads.size() < maxThreads)) {
-            return;
-        }
-        int i=0;
-        while (threads.size() >= maxThreads) {
-            i = ((i >= threads.size()) || (i < 0)) ? 0 : i;
-            final Thread thread = threads.get(i);
-            try {
-                if (thread.isAlive()) {
-                    thread.join(100);
-                }
-                if (!thread.isAlive()) {
-                    threads.remove(i);
-                } else {
-                    i++;
-                }
-            } catch (InterruptedException e) {
-                log.debug(e,e);
-            }
-        }
-    }
-
     private void merge(PageList<HighLowMetricValue> master, PageList<HighLowMetricValue> toMerge) {
         if (master.size() == 0) {
             master.addAll(toMerge);
@@ -0,0 +1,162 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded ring buffer of {@link DataPoint}s which admits a whole list or
+ * nothing, so that a report rejected because the buffer is full can simply
+ * be resent by the agent without leaving half of it behind.
+ */
+class DataPointRingBuffer {
+    private final DataPoint[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    DataPointRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        ring = new DataPoint[capacity];
+    }
+
+    /**
+     * Adds all of the points, waiting up to timeout ms for room.
+     * 
+     * @return false if there was not enough room in time or the buffer has
+     *         been closed
+     * @throws IllegalArgumentException if the list can never fit
+     */
+    boolean offer(List<DataPoint> points, long timeout) throws InterruptedException {
+        final int size = points.size();
+        if (size > ring.length) {
+            throw new IllegalArgumentException(size + " points exceed the buffer capacity of " +
+                                               ring.length);
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!closed && ring.length - count < size) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (closed) {
+                return false;
+            }
+            put(points);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(List<DataPoint> points) {
+        int tail = (head + count) % ring.length;
+        for (DataPoint pt : points) {
+            ring[tail] = pt;
+            if (++tail == ring.length) {
+                tail = 0;
+            }
+        }
+        count += points.size();
+        notEmpty.signal();
+    }
+
+    /**
+     * Moves up to max points into the collection, waiting up to timeout ms
+     * for at least one to arrive.
+     * 
+     * @return the number of points drained, 0 on timeout or once the buffer
+     *         is closed and empty
+     */
+    int drain(Collection<DataPoint> out, int max, long timeout) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (closed || nanos <= 0) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            final int n = Math.min(max, count);
+            for (int i = 0; i < n; i++) {
+                out.add(ring[head]);
+                ring[head] = null;
+                if (++head == ring.length) {
+                    head = 0;
+                }
+            }
+            count -= n;
+            if (count > 0) {
+                notEmpty.signal();
+            }
+            notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new points.  Points already in the buffer may still be
+     * drained.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getCapacity() {
+        return ring.length;
+    }
+}
@@ -35,7 +35,6 @@ import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
 
 import org.hyperic.hq.product.MetricValue;
-import org.springframework.stereotype.Repository;
 
 /**
  * The MetricDataCache caches the last measurement keyed on the derived
@@ -46,8 +45,9 @@ import org.springframework.stereotype.Repository;
  * ditching ehcache and just using a straight HashMap -- the code is 
  * simpler, and locking straightforward.  However, it is currently nice to
  * keep ehcache, as it allows us to configure sizes and get stats.  
+ * 
+ * No longer the MetricDataCache in use, see {@link StripedMetricDataCache}.
  */
-@Repository
 public class EhCacheMetricDataCache implements MetricDataCache {
     // The cache name, must match what is in ehcache.xml
     private static final String CACHENAME = "MetricDataCache";
@@ -59,6 +59,10 @@ public class EhCacheMetricDataCache implements MetricDataCache {
     public EhCacheMetricDataCache() {
         cache = CacheManager.getInstance().getCache(CACHENAME);
     }
+
+    EhCacheMetricDataCache(Cache cache) {
+        this.cache = cache;
+    }
     
    
     public Collection<DataPoint> bulkAdd(List<DataPoint> data) {
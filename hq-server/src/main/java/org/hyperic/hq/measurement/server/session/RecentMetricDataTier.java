@@ -0,0 +1,398 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.hq.stats.ConcurrentStatsCollector;
+import org.hyperic.util.stats.StatCollector;
+import org.hyperic.util.stats.StatUnreachableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Keeps the raw metric data of the last few hours in memory, one ring buffer
+ * of timestamps and values per measurement, so that queries for recent
+ * windows don't have to go through the measurement data tables.
+ * 
+ * The tier is fed with the data points once they are committed and only
+ * answers for a window when it holds every point of it: the window must start
+ * after the tier was created and within its retention, and no point the
+ * window asks for may have been dropped because a buffer or the tier was
+ * full.  Otherwise the caller is expected to go to the DB.
+ */
+@Repository
+public class RecentMetricDataTier {
+    private static final Log log = LogFactory.getLog(RecentMetricDataTier.class);
+
+    // 16 bytes a point, so the defaults hold at most about 20 MB
+    private static final int DEFAULT_HOURS = 2;
+    private static final int DEFAULT_MAX_MEASUREMENTS = 10000;
+    private static final int DEFAULT_MAX_POINTS = 128;
+    private static final int INITIAL_POINTS = 16;
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long SWEEP_INTERVAL = 10 * 60 * 1000;
+
+    private static final String HITS = ConcurrentStatsCollector.RECENT_DATA_TIER_HITS;
+    private static final String MISSES = ConcurrentStatsCollector.RECENT_DATA_TIER_MISSES;
+    private static final String POINTS = ConcurrentStatsCollector.RECENT_DATA_TIER_POINTS;
+
+    private final long retention;
+    private final int maxMeasurements;
+    private final int maxPoints;
+    // nothing inserted before this is in the tier
+    private final long created;
+    private final ConcurrentHashMap<Integer,Series> series = new ConcurrentHashMap<Integer,Series>();
+    // newest timestamp of a point dropped because the tier was full, a
+    // measurement without a series, or with one created since, can only be
+    // answered for after it
+    private final AtomicLong lastDropped = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lastSweep = new AtomicLong();
+    private final AtomicInteger points = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sampledHits = new AtomicLong();
+    private final AtomicLong sampledMisses = new AtomicLong();
+    private ConcurrentStatsCollector concurrentStatsCollector;
+
+    @Autowired
+    public RecentMetricDataTier(ConcurrentStatsCollector concurrentStatsCollector,
+                                @Value("#{tweakProperties['hq.recentData.hours'] }") Integer hours,
+                                @Value("#{tweakProperties['hq.recentData.maxMeasurements'] }") Integer maxMeasurements,
+                                @Value("#{tweakProperties['hq.recentData.maxPoints'] }") Integer maxPoints) {
+        this(hours, maxMeasurements, maxPoints, System.currentTimeMillis());
+        this.concurrentStatsCollector = concurrentStatsCollector;
+    }
+
+    RecentMetricDataTier(Integer hours, Integer maxMeasurements, Integer maxPoints, long created) {
+        this.retention = ((hours == null || hours < 0) ? DEFAULT_HOURS : hours.intValue()) * HOUR;
+        this.maxMeasurements = (maxMeasurements == null || maxMeasurements < 1) ?
+            DEFAULT_MAX_MEASUREMENTS : maxMeasurements.intValue();
+        this.maxPoints = (maxPoints == null || maxPoints < 1) ? DEFAULT_MAX_POINTS : maxPoints.intValue();
+        this.created = created;
+        this.lastSweep.set(created);
+    }
+
+    @PostConstruct
+    public void initStatsCollector() {
+        if (concurrentStatsCollector == null || retention == 0) {
+            return;
+        }
+        concurrentStatsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                final long total = hits.get();
+                return total - sampledHits.getAndSet(total);
+            }
+            public String getId() {
+                return HITS;
+            }
+        });
+        concurrentStatsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                final long total = misses.get();
+                return total - sampledMisses.getAndSet(total);
+            }
+            public String getId() {
+                return MISSES;
+            }
+        });
+        concurrentStatsCollector.register(new StatCollector() {
+            public long getVal() throws StatUnreachableException {
+                return points.get();
+            }
+            public String getId() {
+                return POINTS;
+            }
+        });
+    }
+
+    /**
+     * Receives the points of a query answered by {@link #visit}, in ascending
+     * timestamp order per measurement.
+     */
+    public interface PointVisitor {
+        void visit(int measurementId, long timestamp, double value);
+    }
+
+    public boolean isEnabled() {
+        return retention > 0;
+    }
+
+    /**
+     * Adds data points which were committed to the measurement data tables,
+     * a point replaces the one of its measurement with the same timestamp.
+     */
+    public void add(List<DataPoint> data) {
+        if (retention == 0 || data == null || data.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long oldest = now - retention;
+        for (DataPoint pt : data) {
+            final long timestamp = pt.getTimestamp();
+            if (timestamp < oldest || timestamp < created) {
+                continue;
+            }
+            add(pt.getMeasurementId(), timestamp, pt.getValue(), oldest);
+        }
+        final long last = lastSweep.get();
+        if (now - last > SWEEP_INTERVAL && lastSweep.compareAndSet(last, now)) {
+            sweep(oldest);
+        }
+    }
+
+    private void add(Integer mid, long timestamp, double value, long oldest) {
+        while (true) {
+            Series s = series.get(mid);
+            if (s == null) {
+                if (series.size() >= maxMeasurements) {
+                    raise(lastDropped, timestamp);
+                    return;
+                }
+                // the measurement may have lost points while the tier was
+                // full, the new series can't vouch for anything before
+                s = new Series(Math.max(created, lastDropped.get() + 1));
+                final Series prev = series.putIfAbsent(mid, s);
+                s = (prev == null) ? s : prev;
+            }
+            synchronized (s) {
+                if (s.removed) {
+                    continue;
+                }
+                points.addAndGet(s.add(timestamp, value, oldest));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Visits the points of the measurements which fall into the window
+     * begin - end, inclusive.
+     * 
+     * @return false if the tier doesn't hold every point of the window, the
+     *         visitor may have seen some of the points already and the query
+     *         has to be answered from the DB
+     */
+    public boolean visit(Integer[] mids, long begin, long end, PointVisitor visitor) {
+        if (retention == 0) {
+            return false;
+        }
+        if (begin < created || begin < System.currentTimeMillis() - retention) {
+            misses.incrementAndGet();
+            return false;
+        }
+        for (Integer mid : mids) {
+            final Series s = series.get(mid);
+            if (s == null) {
+                if (lastDropped.get() >= begin) {
+                    misses.incrementAndGet();
+                    return false;
+                }
+                continue;
+            }
+            synchronized (s) {
+                if (s.completeFrom > begin) {
+                    misses.incrementAndGet();
+                    return false;
+                }
+                s.visit(mid.intValue(), begin, end, visitor);
+            }
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the share of queries answered by the tier since it was created
+     */
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return (total == 0) ? 0d : (double) h / total;
+    }
+
+    public int getPointCount() {
+        return points.get();
+    }
+
+    public int getMeasurementCount() {
+        return series.size();
+    }
+
+    /**
+     * Drops the series of measurements which didn't get any data within the
+     * retention, e.g. because they were unscheduled or deleted.
+     */
+    void sweep(long oldest) {
+        int removed = 0;
+        for (Iterator<Series> it = series.values().iterator(); it.hasNext();) {
+            final Series s = it.next();
+            synchronized (s) {
+                points.addAndGet(s.expire(oldest));
+                if (s.size == 0) {
+                    s.removed = true;
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("removed " + removed + " idle measurements, " + series.size() + " left with " +
+                      points.get() + " points, hit rate " + getHitRate());
+        }
+    }
+
+    private static void raise(AtomicLong value, long to) {
+        long current;
+        while ((current = value.get()) < to) {
+            if (value.compareAndSet(current, to)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ring buffer of the points of one measurement in ascending timestamp
+     * order, guarded by its own monitor.
+     */
+    private class Series {
+        private long[] timestamps = new long[Math.min(INITIAL_POINTS, maxPoints)];
+        private double[] values = new double[timestamps.length];
+        private int head;
+        private int size;
+        // the series holds every point from this timestamp on
+        private long completeFrom;
+        private boolean removed;
+
+        private Series(long completeFrom) {
+            this.completeFrom = completeFrom;
+        }
+
+        private int index(int i) {
+            final int idx = head + i;
+            return (idx >= timestamps.length) ? idx - timestamps.length : idx;
+        }
+
+        /**
+         * @return the change in the number of points held
+         */
+        private int add(long timestamp, double value, long oldest) {
+            int delta = expire(oldest);
+            if (timestamp < completeFrom) {
+                return delta;
+            }
+            // find the first point not older than timestamp, points almost
+            // always arrive in order so start looking from the newest one
+            int pos = size;
+            if (size > 0 && timestamps[index(size - 1)] >= timestamp) {
+                int lo = 0, hi = size - 1;
+                while (lo < hi) {
+                    final int mid = (lo + hi) >>> 1;
+                    if (timestamps[index(mid)] < timestamp) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                pos = lo;
+                if (timestamps[index(pos)] == timestamp) {
+                    values[index(pos)] = value;
+                    return delta;
+                }
+            }
+            if (size == timestamps.length) {
+                if (size < maxPoints) {
+                    grow();
+                } else if (pos == 0) {
+                    // older than everything held and no room for it
+                    completeFrom = timestamp + 1;
+                    return delta;
+                } else {
+                    completeFrom = timestamps[head] + 1;
+                    head = index(1);
+                    size--;
+                    pos--;
+                    delta--;
+                }
+            }
+            for (int i = size; i > pos; i--) {
+                timestamps[index(i)] = timestamps[index(i - 1)];
+                values[index(i)] = values[index(i - 1)];
+            }
+            timestamps[index(pos)] = timestamp;
+            values[index(pos)] = value;
+            size++;
+            return delta + 1;
+        }
+
+        /**
+         * @return the change in the number of points held
+         */
+        private int expire(long oldest) {
+            int delta = 0;
+            while (size > 0 && timestamps[head] < oldest) {
+                head = index(1);
+                size--;
+                delta--;
+            }
+            return delta;
+        }
+
+        private void grow() {
+            final int capacity = Math.min(timestamps.length * 2, maxPoints);
+            final long[] newTimestamps = new long[capacity];
+            final double[] newValues = new double[capacity];
+            for (int i = 0; i < size; i++) {
+                newTimestamps[i] = timestamps[index(i)];
+                newValues[i] = values[index(i)];
+            }
+            timestamps = newTimestamps;
+            values = newValues;
+            head = 0;
+        }
+
+        private void visit(int mid, long begin, long end, PointVisitor visitor) {
+            for (int i = 0; i < size; i++) {
+                final int idx = index(i);
+                final long timestamp = timestamps[idx];
+                if (timestamp > end) {
+                    return;
+                }
+                if (timestamp >= begin) {
+                    visitor.visit(mid, timestamp, values[idx]);
+                }
+            }
+        }
+    }
+}
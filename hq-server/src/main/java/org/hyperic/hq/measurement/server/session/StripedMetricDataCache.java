@@ -0,0 +1,278 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperic.hq.product.MetricValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The MetricDataCache caches the last measurement keyed on the derived
+ * measurement id.  The purpose of this cache is to avoid needing to go to
+ * the database when looking up the last value for a metric.
+ * 
+ * The ids, timestamps and values are kept in primitive arrays, open
+ * addressed per stripe, so there is no object per entry and no boxing of
+ * the measurement ids.  Each stripe has its own lock, so report ingestion,
+ * UI lookups and alert evaluation only contend when they touch the same
+ * stripe.  MetricValues are created on the way out.
+ * 
+ * Once the cache is full, adding a new id evicts the entry with the oldest
+ * timestamp out of a small sample of the stripe.
+ */
+@Repository
+public class StripedMetricDataCache implements MetricDataCache {
+    private static final int DEFAULT_MAX_ENTRIES = 500000;
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = 32 - 6;
+    private static final int INITIAL_STRIPE_SIZE = 256;
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    @Autowired
+    public StripedMetricDataCache(@Value("#{tweakProperties['hq.metricDataCache.maxEntries'] }") Integer maxEntries) {
+        int max = (maxEntries == null || maxEntries < 1) ? DEFAULT_MAX_ENTRIES : maxEntries.intValue();
+        int perStripe = Math.max(1, (max + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    private static int hash(int mid) {
+        return mid * 0x9E3779B9;
+    }
+
+    private Stripe stripeFor(int hash) {
+        return stripes[hash >>> STRIPE_SHIFT];
+    }
+
+    public Collection<DataPoint> bulkAdd(List<DataPoint> data) {
+        // a later point for the same id replaces an earlier one, as before
+        HashMap<Integer,DataPoint> cachedData = new HashMap<Integer,DataPoint>(data.size());
+        for (DataPoint dp : data) {
+            if (add(dp.getMeasurementId(), dp.getMetricValue())) {
+                cachedData.put(dp.getMeasurementId(), dp);
+            }
+        }
+        return cachedData.values();
+    }
+
+    public boolean add(Integer mid, MetricValue mval) {
+        final int h = hash(mid.intValue());
+        return stripeFor(h).put(mid.intValue(), h, mval.getTimestamp(), mval.getValue());
+    }
+
+    public MetricValue get(Integer mid, long timestamp) {
+        final int h = hash(mid.intValue());
+        return stripeFor(h).get(mid.intValue(), h, timestamp);
+    }
+
+    public Map<Integer,MetricValue> getAll(List<Integer> mids, long timestamp) {
+        final Map<Integer,MetricValue> rtn = new HashMap<Integer,MetricValue>(mids.size());
+        for (final Integer mid : mids) {
+            final MetricValue val = get(mid, timestamp);
+            if (val != null) {
+                rtn.put(mid, val);
+            }
+        }
+        return rtn;
+    }
+
+    public void remove(Integer mid) {
+        final int h = hash(mid.intValue());
+        stripeFor(h).remove(mid.intValue(), h);
+    }
+
+    int size() {
+        int rtn = 0;
+        for (Stripe stripe : stripes) {
+            rtn += stripe.size();
+        }
+        return rtn;
+    }
+
+    /**
+     * Linear probing table.  A slot is free when its timestamp is
+     * {@link #FREE}; removals shift the rest of the cluster back instead of
+     * leaving tombstones.
+     */
+    private static class Stripe {
+        private static final long FREE = Long.MIN_VALUE;
+
+        private final int maxEntries;
+        private int[] mids;
+        private long[] timestamps;
+        private double[] values;
+        private int size = 0;
+        private int evictCursor = 0;
+
+        Stripe(int maxEntries) {
+            this.maxEntries = maxEntries;
+            allocate(INITIAL_STRIPE_SIZE);
+        }
+
+        private void allocate(int len) {
+            mids = new int[len];
+            timestamps = new long[len];
+            values = new double[len];
+            Arrays.fill(timestamps, FREE);
+        }
+
+        private int indexOf(int mid, int h) {
+            final int mask = mids.length - 1;
+            int i = h & mask;
+            while (timestamps[i] != FREE) {
+                if (mids[i] == mid) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1 - i;
+        }
+
+        synchronized boolean put(int mid, int h, long timestamp, double value) {
+            int i = indexOf(mid, h);
+            if (i >= 0) {
+                if (timestamps[i] > timestamp) {
+                    return false;
+                }
+                timestamps[i] = timestamp;
+                values[i] = value;
+                return true;
+            }
+            if (size >= maxEntries) {
+                evict();
+                i = indexOf(mid, h);
+            } else if (2 * (size + 1) > mids.length) {
+                grow();
+                i = indexOf(mid, h);
+            }
+            insert(-1 - i, mid, timestamp, value);
+            return true;
+        }
+
+        private void insert(int i, int mid, long timestamp, double value) {
+            mids[i] = mid;
+            timestamps[i] = timestamp;
+            values[i] = value;
+            size++;
+        }
+
+        synchronized MetricValue get(int mid, int h, long timestamp) {
+            final int i = indexOf(mid, h);
+            if (i < 0 || timestamps[i] < timestamp) {
+                return null;
+            }
+            return new MetricValue(values[i], timestamps[i]);
+        }
+
+        synchronized void remove(int mid, int h) {
+            final int i = indexOf(mid, h);
+            if (i >= 0) {
+                delete(i);
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void delete(int i) {
+            final int mask = mids.length - 1;
+            int free = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (timestamps[j] == FREE) {
+                    break;
+                }
+                final int home = hash(mids[j]) & mask;
+                // move j back into the hole unless its home lies cyclically
+                // between the hole and j
+                final boolean stays = (free <= j) ? (free < home && home <= j)
+                                                  : (free < home || home <= j);
+                if (!stays) {
+                    mids[free] = mids[j];
+                    timestamps[free] = timestamps[j];
+                    values[free] = values[j];
+                    free = j;
+                }
+            }
+            timestamps[free] = FREE;
+            size--;
+        }
+
+        private void grow() {
+            final int[] oldMids = mids;
+            final long[] oldTimestamps = timestamps;
+            final double[] oldValues = values;
+            allocate(mids.length << 1);
+            final int mask = mids.length - 1;
+            for (int j = 0; j < oldMids.length; j++) {
+                if (oldTimestamps[j] == FREE) {
+                    continue;
+                }
+                int i = hash(oldMids[j]) & mask;
+                while (timestamps[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                mids[i] = oldMids[j];
+                timestamps[i] = oldTimestamps[j];
+                values[i] = oldValues[j];
+            }
+        }
+
+        /**
+         * Drops the least recently reported of a few occupied slots.
+         */
+        private void evict() {
+            final int mask = mids.length - 1;
+            int victim = -1;
+            int seen = 0;
+            for (int n = 0; n < mids.length && seen < EVICTION_SAMPLE; n++) {
+                evictCursor = (evictCursor + 1) & mask;
+                if (timestamps[evictCursor] == FREE) {
+                    continue;
+                }
+                seen++;
+                if (victim < 0 || timestamps[evictCursor] < timestamps[victim]) {
+                    victim = evictCursor;
+                }
+            }
+            if (victim >= 0) {
+                delete(victim);
+            }
+        }
+    }
+}
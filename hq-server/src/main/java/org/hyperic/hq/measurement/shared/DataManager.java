@@ -60,6 +60,8 @@ public interface DataManager {
     /**
      * Write metric data points to the DB with transaction
      * @param data a list of {@link DataPoint}s
+     * @return false if nothing was written, so the data may be written
+     *         again.  Points the DB refuses one by one are dropped.
      * @throws NumberFormatException if the value from the
      *         DataPoint.getMetricValue() cannot instantiate a BigDecimal
      */
@@ -160,6 +162,16 @@ public interface DataManager {
                                                           long interval, int type, boolean returnMetricNulls,
                                                           PageControl pc);
 
+    /**
+     * Get a stamp of the data stored for the measurements.  The stamp grows
+     * whenever data is inserted for or rolled up over the measurements, so
+     * anything rendered from their data is current while the stamp is
+     * unchanged.
+     * @param mids The measurement ids
+     * @return the stamp
+     */
+    public long getDataStamp(Integer[] mids);
+
     /**
      * Get the last MetricValue for the given Measurement.
      * @param m The Measurement
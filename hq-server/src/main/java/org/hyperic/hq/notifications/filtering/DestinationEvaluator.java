@@ -22,6 +22,16 @@ public abstract class DestinationEvaluator<N extends BaseNotification> {
     protected Map<NotificationEndpoint,FilterChain<N>> destToFilter = new HashMap<NotificationEndpoint,FilterChain<N>>();
 
     protected abstract FilterChain<N> instantiateFilterChain(Collection<Filter<N,? extends FilteringCondition<?>>> filters);
+
+    /**
+     * called while holding the destToFilter lock whenever the filters of an endpoint change, so that sub classes may
+     * keep an index of the registrations up to date
+     * 
+     * @param endpoint
+     * @param filterChain the endpoint's filters, or null if it is no longer registered
+     */
+    protected void filtersChanged(NotificationEndpoint endpoint, FilterChain<N> filterChain) {
+    }
     
     /**
      * append filters
@@ -50,6 +60,7 @@ public abstract class DestinationEvaluator<N extends BaseNotification> {
                     log.debug("appending the following filters to destination " + endpoint + ":\n" + filters);
                 }
             }
+            filtersChanged(endpoint, filterChain);
         }
     }
 
@@ -61,6 +72,7 @@ public abstract class DestinationEvaluator<N extends BaseNotification> {
         FilterChain<N> filterChain = null;
         synchronized (destToFilter) {
             filterChain = destToFilter.remove(endpoint);
+            filtersChanged(endpoint, null);
         }
         if (log.isDebugEnabled()) {
             if (filterChain == null) {
@@ -105,7 +117,9 @@ public abstract class DestinationEvaluator<N extends BaseNotification> {
                     if (log.isDebugEnabled()) {
                         log.debug("un-registering the following endpoint " + endpoint);
                     }
+                    filterChain = null;
                 }
+                filtersChanged(endpoint, filterChain);
             }
         }
     }
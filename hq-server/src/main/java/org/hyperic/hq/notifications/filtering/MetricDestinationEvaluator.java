@@ -2,24 +2,60 @@ package org.hyperic.hq.notifications.filtering;
 
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.ObjectMessage;
 
 import org.hyperic.hq.measurement.shared.MeasurementManager;
+import org.hyperic.hq.notifications.NotificationEndpoint;
 import org.hyperic.hq.notifications.model.MetricNotification;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component("metricDestinationEvaluator")
 public class MetricDestinationEvaluator extends DestinationEvaluator<MetricNotification> {
+    @Autowired
+    protected MeasurementManager measurementManager;
+    protected final MetricEndpointIndex index = new MetricEndpointIndex();
+
     @Override
     protected FilterChain<MetricNotification> instantiateFilterChain(Collection<Filter<MetricNotification,? extends FilteringCondition<?>>> filters) {
         return new FilterChain<MetricNotification>(filters);
     }
+
+    @Override
+    protected void filtersChanged(NotificationEndpoint endpoint, FilterChain<MetricNotification> filterChain) {
+        index.update(endpoint, filterChain);
+    }
+
+    /**
+     * matches each notification once against the endpoints indexed under its resource, endpoints with filters which
+     * can't be indexed run their filter chain over the notifications
+     */
+    @Override
+    public Map<NotificationEndpoint, Collection<MetricNotification>> evaluate(List<MetricNotification> entities) {
+        final Map<NotificationEndpoint, Collection<MetricNotification>> rtn = new HashMap<NotificationEndpoint, Collection<MetricNotification>>();
+        final Map<NotificationEndpoint, FilterChain<MetricNotification>> unindexed = index.route(entities, measurementManager, rtn);
+        if (unindexed == null) {
+            return rtn;
+        }
+        for (final Entry<NotificationEndpoint,FilterChain<MetricNotification>> entry : unindexed.entrySet()) {
+            @SuppressWarnings("unchecked")
+            final Collection<MetricNotification> filteredEntities = ((Collection<MetricNotification>) entry.getValue().filter(entities));
+            if (filteredEntities != null && !filteredEntities.isEmpty()) {
+                rtn.put(entry.getKey(), new ArrayList<MetricNotification>(filteredEntities));
+            }
+        }
+        return rtn;
+    }
 }
 
 class DummyMsg implements ObjectMessage {
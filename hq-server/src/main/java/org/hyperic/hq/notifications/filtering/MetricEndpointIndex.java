@@ -0,0 +1,203 @@
+package org.hyperic.hq.notifications.filtering;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hyperic.hq.measurement.server.session.Measurement;
+import org.hyperic.hq.measurement.shared.MeasurementManager;
+import org.hyperic.hq.notifications.NotificationEndpoint;
+import org.hyperic.hq.notifications.model.MetricNotification;
+
+/**
+ * inverted index from resource id to the endpoints whose filters may let a metric of that resource in, so that each
+ * notification is matched once against the endpoints interested in its resource instead of every endpoint running its
+ * whole filter chain over every notification.
+ * 
+ * chains made of {@link MetricFilterByResource}, {@link MetricFilter} and {@link AgnosticFilter} filters are indexed,
+ * endpoints with any other filter are kept aside and evaluated through their chain.
+ */
+class MetricEndpointIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer,List<IndexedEndpoint>> byResource = new HashMap<Integer,List<IndexedEndpoint>>();
+    // endpoints not filtering by resource
+    private final List<IndexedEndpoint> anyResource = new ArrayList<IndexedEndpoint>();
+    private final Map<NotificationEndpoint,IndexedEndpoint> indexed = new HashMap<NotificationEndpoint,IndexedEndpoint>();
+    private final Map<NotificationEndpoint,FilterChain<MetricNotification>> unindexed = new HashMap<NotificationEndpoint,FilterChain<MetricNotification>>();
+
+    /**
+     * replaces the endpoint's entries with ones for its current filters
+     * 
+     * @param endpoint
+     * @param filterChain the endpoint's filters, or null to remove it
+     */
+    void update(NotificationEndpoint endpoint, FilterChain<MetricNotification> filterChain) {
+        lock.writeLock().lock();
+        try {
+            remove(endpoint);
+            if (filterChain == null) {
+                return;
+            }
+            IndexedEndpoint entry = toIndexedEndpoint(endpoint, filterChain);
+            if (entry == null) {
+                unindexed.put(endpoint, filterChain);
+                return;
+            }
+            indexed.put(endpoint, entry);
+            if (entry.postedIds == null) {
+                anyResource.add(entry);
+                return;
+            }
+            for (Integer rid : entry.postedIds) {
+                List<IndexedEndpoint> endpoints = byResource.get(rid);
+                if (endpoints == null) {
+                    endpoints = new ArrayList<IndexedEndpoint>(2);
+                    byResource.put(rid, endpoints);
+                }
+                endpoints.add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(NotificationEndpoint endpoint) {
+        unindexed.remove(endpoint);
+        IndexedEndpoint entry = indexed.remove(endpoint);
+        if (entry == null) {
+            return;
+        }
+        if (entry.postedIds == null) {
+            anyResource.remove(entry);
+            return;
+        }
+        for (Integer rid : entry.postedIds) {
+            List<IndexedEndpoint> endpoints = byResource.get(rid);
+            if (endpoints != null) {
+                endpoints.remove(entry);
+                if (endpoints.isEmpty()) {
+                    byResource.remove(rid);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return null if the chain has filters which can't be indexed
+     */
+    private IndexedEndpoint toIndexedEndpoint(NotificationEndpoint endpoint, FilterChain<MetricNotification> filterChain) {
+        IndexedEndpoint entry = new IndexedEndpoint(endpoint);
+        for (Filter<MetricNotification,? extends FilteringCondition<?>> filter : filterChain) {
+            if (filter instanceof AgnosticFilter) {
+                continue;
+            } else if (filter instanceof MetricFilterByResource) {
+                ResourceFilteringCondition cond = ((MetricFilterByResource<?>) filter).cond;
+                entry.resourceConds.add(cond);
+                Set<Integer> rids = cond.getResourceIds();
+                // post under the smallest resource set, the other ones are checked when matching
+                if (rids != null && !rids.isEmpty() && (entry.postedIds == null || rids.size() < entry.postedIds.size())) {
+                    entry.postedIds = new HashSet<Integer>(rids);
+                }
+            } else if (filter instanceof MetricFilter) {
+                entry.metricConds.add(((MetricFilter<?>) filter).cond);
+            } else {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * adds each notification to the results of the indexed endpoints which let it in, keeping the notifications order
+     * 
+     * @return the endpoints whose filters could not be indexed, to be evaluated through their filter chains
+     */
+    Map<NotificationEndpoint,FilterChain<MetricNotification>> route(List<MetricNotification> notifications,
+                                                                     MeasurementManager measurementManager,
+                                                                     Map<NotificationEndpoint,Collection<MetricNotification>> rtn) {
+        lock.readLock().lock();
+        try {
+            if (!indexed.isEmpty()) {
+                for (MetricNotification n : notifications) {
+                    Measurement msmt = null;
+                    List<IndexedEndpoint> endpoints = byResource.get(n.getResourceID());
+                    if (endpoints != null) {
+                        msmt = route(n, msmt, endpoints, measurementManager, rtn);
+                    }
+                    route(n, msmt, anyResource, measurementManager, rtn);
+                }
+            }
+            return unindexed.isEmpty() ? null : new HashMap<NotificationEndpoint,FilterChain<MetricNotification>>(unindexed);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param msmt the notification's measurement if it was already looked up, otherwise null
+     * @return the notification's measurement if it was looked up
+     */
+    private Measurement route(MetricNotification n, Measurement msmt, List<IndexedEndpoint> endpoints,
+                              MeasurementManager measurementManager,
+                              Map<NotificationEndpoint,Collection<MetricNotification>> rtn) {
+        for (IndexedEndpoint entry : endpoints) {
+            if (!entry.checkResource(n.getResourceID())) {
+                continue;
+            }
+            if (!entry.metricConds.isEmpty()) {
+                if (msmt == null) {
+                    msmt = measurementManager.getMeasurement(n.getMeasurementId());
+                    if (msmt == null) { // the measurement was erased since the notification was created
+                        continue;
+                    }
+                }
+                if (!entry.checkMetric(msmt)) {
+                    continue;
+                }
+            }
+            Collection<MetricNotification> list = rtn.get(entry.endpoint);
+            if (list == null) {
+                list = new ArrayList<MetricNotification>();
+                rtn.put(entry.endpoint, list);
+            }
+            list.add(n);
+        }
+        return msmt;
+    }
+
+    private static class IndexedEndpoint {
+        private final NotificationEndpoint endpoint;
+        private final List<ResourceFilteringCondition> resourceConds = new ArrayList<ResourceFilteringCondition>(1);
+        private final List<FilteringCondition<Measurement>> metricConds = new ArrayList<FilteringCondition<Measurement>>(1);
+        // the resource ids this endpoint is listed under, null if listed for any resource
+        private Set<Integer> postedIds = null;
+
+        private IndexedEndpoint(NotificationEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private boolean checkResource(Integer rid) {
+            for (ResourceFilteringCondition cond : resourceConds) {
+                if (!cond.check(rid)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean checkMetric(Measurement msmt) {
+            for (FilteringCondition<Measurement> cond : metricConds) {
+                if (!cond.check(msmt)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
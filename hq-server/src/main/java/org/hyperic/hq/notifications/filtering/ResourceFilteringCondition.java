@@ -11,6 +11,10 @@ public class ResourceFilteringCondition extends FilteringCondition<Integer> {
         this.resourceIds = resourceIds;
     }
 
+    public Set<Integer> getResourceIds() {
+        return resourceIds;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
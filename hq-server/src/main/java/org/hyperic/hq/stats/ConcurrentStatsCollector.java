@@ -57,17 +57,23 @@ public class ConcurrentStatsCollector extends AbstractStatsCollector {
     						   MEASUREMENT_SCHEDULE_TIME = "MEASUREMENT_SCHEDULE_TIME",
     						   SEND_ALERT_TIME = "SEND_ALERT_TIME",
     						   ZEVENT_QUEUE_SIZE = "ZEVENT_QUEUE_SIZE",
+    						   ZEVENT_QUEUE_TIME = "ZEVENT_QUEUE_TIME",
     						   TRIGGER_INIT_TIME = "TRIGGER_INIT_TIME", 
     						   FIRED_ALERT_TIME = "FIRED_ALERT_TIME",
     						   SCHEDULE_QUEUE_SIZE = "SCHEDULE_QUEUE_SIZE",
     						   UNSCHEDULE_QUEUE_SIZE = "UNSCHEDULE_QUEUE_SIZE",
     						   ESCALATION_EXECUTE_STATE_TIME = "ESCALATION_EXECUTE_STATE_TIME",
+                               ESCALATION_STEP_LAG = "ESCALATION_STEP_LAG",
+                               ESCALATION_BACKLOG = "ESCALATION_BACKLOG",
     						   JDBC_HQ_DS_MAX_ACTIVE = "JDBC_HQ_DS_MAX_ACTIVE", 
     						   JDBC_HQ_DS_IN_USE = "JDBC_HQ_DS_IN_USE",
                                AVAIL_BACKFILLER_TIME = "AVAIL_BACKFILLER_TIME",
                                AGENT_PLUGIN_TRANSFER = "AGENT_PLUGIN_TRANSFER",
                                AGENT_PLUGIN_REMOVE = "AGENT_PLUGIN_REMOVE",
                                AGENT_SYNC_JOB_QUEUE_ADDS = "AGENT_SYNC_JOB_QUEUE_ADDS",
+                               AGENT_SYNC_JOB_QUEUE_TIME = "AGENT_SYNC_JOB_QUEUE_TIME",
+                               AGENT_SYNC_JOBS_EXECUTED = "AGENT_SYNC_JOBS_EXECUTED",
+                               AGENT_SYNC_JOBS_COALESCED = "AGENT_SYNC_JOBS_COALESCED",
                                AVAIL_BACKFILLER_NUMPLATFORMS = "AVAIL_BACKFILLER_NUMPLATFORMS",
                                AGENT_PLUGIN_SYNC_PENDING_RESTARTS = "AGENT_PLUGIN_SYNC_PENDING_RESTARTS",
                                CMD_PING = "LATHER_" + CommandInfo.CMD_PING.toUpperCase(),
@@ -87,6 +93,16 @@ public class ConcurrentStatsCollector extends AbstractStatsCollector {
                                LATHER_RUN_COMMAND_TIME = "LATHER_RUN_COMMAND_TIME",
                                AGENT_SYNCHRONIZER_QUEUE_SIZE = "AGENT_SYNCHRONIZER_QUEUE_SIZE",
                                LATHER_REMOTE_EXCEPTION = "LATHER_REMOTE_EXCEPTION",
+                               LATHER_BINARY_REQUESTS = "LATHER_BINARY_REQUESTS",
+                               DATA_INSERTER_BUFFER_SIZE = "DATA_INSERTER_BUFFER_SIZE",
+                               DATA_INSERTER_BATCH_SIZE = "DATA_INSERTER_BATCH_SIZE",
+                               DATA_INSERTER_COMMIT_TIME = "DATA_INSERTER_COMMIT_TIME",
+                               DATA_INSERTER_REJECTED = "DATA_INSERTER_REJECTED",
+                               METRIC_DATA_COMPRESS_ROWS_PER_SEC = "METRIC_DATA_COMPRESS_ROWS_PER_SEC",
+                               METRIC_DATA_COMPRESS_LAG = "METRIC_DATA_COMPRESS_LAG",
+                               RECENT_DATA_TIER_HITS = "RECENT_DATA_TIER_HITS",
+                               RECENT_DATA_TIER_MISSES = "RECENT_DATA_TIER_MISSES",
+                               RECENT_DATA_TIER_POINTS = "RECENT_DATA_TIER_POINTS",
                                ZEVENT_REGISTERED_BUFFER_SIZE = "ZEVENT_REGISTERED_BUFFER_SIZE",
                                METRIC_NOTIFICATION_FILTERING_TIME = "METRIC_NOTIFICATION_FILTERING_TIME",
                                INVENTORY_NOTIFICATION_FILTERING_TIME = "INVENTORY_NOTIFICATION_FILTERING_TIME",
@@ -45,14 +45,16 @@ class QueueProcessor
     private final BlockingQueue _eventQueue;
     private final ZeventManager _manager;
     private final int           _batchSize;
+    private final int           _partition;
     private final Object        DATA_LOCK = new Object();        
     
     QueueProcessor(ZeventManager manager, BlockingQueue eventQueue,
-                   int batchSize)
+                   int batchSize, int partition)
     {
         _manager    = manager;
         _eventQueue = eventQueue;
         _batchSize  = batchSize;
+        _partition  = partition;
     }
 
     public void run() {
@@ -91,7 +93,7 @@ class QueueProcessor
                 e.leaveQueue();
             }
             
-            _manager.dispatchEvents(batch);
+            _manager.dispatchEvents(batch, _partition);
 
             // TODO The thread is not actually interrupted since the run continue the process batch
         } catch(InterruptedException exc) {
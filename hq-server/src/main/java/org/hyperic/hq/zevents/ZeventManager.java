@@ -80,8 +80,8 @@ public class ZeventManager implements ZeventEnqueuer {
     // The thread group that the {@link EventQueueProcessor} comes from
     private final LoggingThreadGroup _threadGroup;
 
-    // The actual queue processor thread
-    private Thread _processorThread;
+    // The actual queue processor threads, one per partition
+    private Thread[] _processorThreads;
 
     private final Object _listenerLock = new Object();
 
@@ -108,11 +108,17 @@ public class ZeventManager implements ZeventEnqueuer {
     private long _maxTimeInQueue;
     private long _numEvents;
 
-    private BlockingQueue<Zevent> _eventQueue;
+    /*
+     * Events are split by {@link ZeventSourceId} across these queues, each
+     * drained by its own {@link QueueProcessor}.  Events from the same source
+     * always land on the same queue, so their relative order is preserved.
+     */
+    private BlockingQueue<Zevent>[] _eventQueues;
     private DiagnosticsLogger diagnosticsLogger;
     private final ThreadWatchdog threadWatchdog;
     private final long maxQueue;
     private final long batchSize;
+    private final int numPartitions;
     private final ConcurrentStatsCollector concurrentStatsCollector;
     
     @Autowired
@@ -122,7 +128,8 @@ public class ZeventManager implements ZeventEnqueuer {
                          @Value("#{tweakProperties['hq.zevent.batchSize'] }") Long batchSize,
                          @Value("#{tweakProperties['hq.zevent.warnInterval'] }") Long warnInterval,  
                          @Value("#{tweakProperties['hq.zevent.warnSize'] }") Long warnSize,
-                         @Value("#{tweakProperties['hq.zevent.listenerTimeout'] }") Long listenerTimeout) {
+                         @Value("#{tweakProperties['hq.zevent.listenerTimeout'] }") Long listenerTimeout,
+                         @Value("#{tweakProperties['hq.zevent.partitions'] }") Long partitions) {
         this._threadGroup = new LoggingThreadGroup("ZEventProcessor");
         this._threadGroup.setDaemon(true);
         this.diagnosticsLogger = diagnosticsLogger;
@@ -133,19 +140,25 @@ public class ZeventManager implements ZeventEnqueuer {
         this._warnInterval = warnInterval;
         this._warnSize = warnSize;
         this._listenerTimeout = listenerTimeout;
-        
+        this.numPartitions = (partitions == null || partitions < 1) ? 1 : partitions.intValue();
     }
 
     @PostConstruct
     @SuppressWarnings("unused")
     private void initialize() {
-        _eventQueue = new LinkedBlockingQueue<Zevent>((int) maxQueue);
-
-        QueueProcessor p = new QueueProcessor(this, _eventQueue, (int) batchSize);
-
-        _processorThread = new Thread(_threadGroup, p, "ZeventProcessor");
-        _processorThread.setDaemon(true);
-        _processorThread.start();
+        // the total capacity stays bounded by maxQueueEnts regardless of the
+        // number of partitions
+        final int partitionCapacity = (int) Math.max(1, maxQueue / numPartitions);
+        _eventQueues = new BlockingQueue[numPartitions];
+        _processorThreads = new Thread[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            _eventQueues[i] = new LinkedBlockingQueue<Zevent>(partitionCapacity);
+            QueueProcessor p = new QueueProcessor(this, _eventQueues[i], (int) batchSize, i);
+            String name = (numPartitions == 1) ? "ZeventProcessor" : "ZeventProcessor-" + i;
+            _processorThreads[i] = new Thread(_threadGroup, p, name);
+            _processorThreads[i].setDaemon(true);
+            _processorThreads[i].start();
+        }
 
         DiagnosticObject myDiag = new DiagnosticObject() {
             public String getStatus() {
@@ -172,6 +185,12 @@ public class ZeventManager implements ZeventEnqueuer {
 
         diagnosticsLogger.addDiagnosticObject(myDiag);
         concurrentStatsCollector.register(ConcurrentStatsCollector.ZEVENT_QUEUE_SIZE);
+        if (numPartitions > 1) {
+            for (int i = 0; i < numPartitions; i++) {
+                concurrentStatsCollector.register(getPartitionQueueSizeStatId(i));
+                concurrentStatsCollector.register(getPartitionQueueTimeStatId(i));
+            }
+        }
         concurrentStatsCollector.register(new StatCollector() {
             public long getVal() throws StatUnreachableException {
                 return getTotalRegisteredBufferSize();
@@ -183,23 +202,63 @@ public class ZeventManager implements ZeventEnqueuer {
     }
 
     public long getQueueSize() {
-        return _eventQueue.size();
+        long rtn = 0;
+        for (BlockingQueue<Zevent> queue : _eventQueues) {
+            rtn += queue.size();
+        }
+        return rtn;
+    }
+
+    /**
+     * @return the number of partitioned queues (and processor threads) used
+     *         to dispatch events
+     */
+    public int getNumPartitions() {
+        return numPartitions;
+    }
+
+    private static String getPartitionQueueSizeStatId(int partition) {
+        return ConcurrentStatsCollector.ZEVENT_QUEUE_SIZE + "_" + partition;
+    }
+
+    private static String getPartitionQueueTimeStatId(int partition) {
+        return ConcurrentStatsCollector.ZEVENT_QUEUE_TIME + "_" + partition;
+    }
+
+    /**
+     * Maps an event onto its partition. All events from the same
+     * {@link ZeventSourceId} are mapped onto the same partition.
+     */
+    private int getPartition(Zevent e) {
+        if (numPartitions == 1) {
+            return 0;
+        }
+        ZeventSourceId id = e.getSourceId();
+        if (id == null) {
+            return 0;
+        }
+        return (id.hashCode() & Integer.MAX_VALUE) % numPartitions;
     }
 
     @PreDestroy
     public void shutdown() throws InterruptedException {
-        while (!_eventQueue.isEmpty()) {
-            System.out.println("Waiting for empty queue: " + _eventQueue.size());
+        long size;
+        while ((size = getQueueSize()) != 0) {
+            System.out.println("Waiting for empty queue: " + size);
             Thread.sleep(1000);
         }
-        _processorThread.interrupt();
-        _processorThread.join(5000);
+        for (Thread processorThread : _processorThreads) {
+            processorThread.interrupt();
+        }
+        for (Thread processorThread : _processorThreads) {
+            processorThread.join(5000);
+        }
         
         _threadGroup.interrupt() ;
         diagnosticsLogger = null ;
         this._globalListeners = null ; 
         this._listeners = null ; 
-        this._eventQueue = null ;
+        this._eventQueues = null ;
         synchronized(this._registeredBuffers) { 
             
             for (Entry<Queue<?>, TimingListenerWrapper<Zevent>> entry : _registeredBuffers.entrySet()) {
@@ -451,22 +510,35 @@ public class ZeventManager implements ZeventEnqueuer {
      *         interrupted
      */
     public void enqueueEvents(List<? extends Zevent> events, long timeout) throws InterruptedException {
-        if (_eventQueue.size() > getWarnSize() &&
+        final long queueSize = getQueueSize();
+        if (queueSize > getWarnSize() &&
             (System.currentTimeMillis() - _lastWarnTime) > getWarnInterval()) {
             _lastWarnTime = System.currentTimeMillis();
             _log.warn("Your event queue is having a hard time keeping up.  "
                       + "Get a faster CPU, or reduce the amount of events!");
         }
         boolean debug = _log.isDebugEnabled();
+        boolean[] touched = (numPartitions > 1) ? new boolean[numPartitions] : null;
         for (Zevent e : events) {
+            int partition = getPartition(e);
             e.enterQueue();
-            boolean b = _eventQueue.offer(e, timeout, TimeUnit.SECONDS);
+            boolean b = _eventQueues[partition].offer(e, timeout, TimeUnit.SECONDS);
             if (debug) {
-                _log.debug((b?"succeed":"failed") + " pushing " + e);
+                _log.debug((b?"succeed":"failed") + " pushing " + e + " to partition " + partition);
+            }
+            if (touched != null) {
+                touched[partition] = true;
             }
         }
         
-        concurrentStatsCollector.addStat(_eventQueue.size(), ConcurrentStatsCollector.ZEVENT_QUEUE_SIZE);
+        concurrentStatsCollector.addStat(getQueueSize(), ConcurrentStatsCollector.ZEVENT_QUEUE_SIZE);
+        if (touched != null) {
+            for (int i = 0; i < numPartitions; i++) {
+                if (touched[i]) {
+                    concurrentStatsCollector.addStat(_eventQueues[i].size(), getPartitionQueueSizeStatId(i));
+                }
+            }
+        }
     }
 
     public void enqueueEvents(List<? extends Zevent> events) throws InterruptedException {
@@ -539,7 +611,7 @@ public class ZeventManager implements ZeventEnqueuer {
      * please only use it in test suites.
      */
     public void waitUntilNoEvents() throws InterruptedException {
-        while (_eventQueue.size() != 0)
+        while (getQueueSize() != 0)
             Thread.sleep(100);
     }
 
@@ -557,19 +629,31 @@ public class ZeventManager implements ZeventEnqueuer {
     }
 
     /**
-     * Internal method to dispatch events. Called by the {@link QueueProcessor}.
+     * Internal method to dispatch events. Called by the {@link QueueProcessor}
+     * of the given partition.
      * 
      * The strategy used in this method creates mini-batches of events to send
      * to each listener. There is no defined order for listener execution.
+     * 
+     * With a single partition listeners are invoked under the global listener
+     * lock, as they always have been. With several partitions each listener is
+     * only locked against itself, so a listener is never invoked concurrently
+     * but a slow listener no longer holds up the other partitions' listeners.
      */
-    void dispatchEvents(List<? extends Zevent> events) {
+    void dispatchEvents(List<? extends Zevent> events, int partition) {
+        long batchMaxTimeInQueue = 0;
+        for (Zevent z : events) {
+            long timeInQueue = z.getQueueExitTime() - z.getQueueEntryTime();
+            if (timeInQueue > batchMaxTimeInQueue)
+                batchMaxTimeInQueue = timeInQueue;
+        }
         synchronized (INIT_LOCK) {
-            for (Zevent z : events) {
-                long timeInQueue = z.getQueueExitTime() - z.getQueueEntryTime();
-                if (timeInQueue > _maxTimeInQueue)
-                    _maxTimeInQueue = timeInQueue;
-                _numEvents++;
-            }
+            if (batchMaxTimeInQueue > _maxTimeInQueue)
+                _maxTimeInQueue = batchMaxTimeInQueue;
+            _numEvents += events.size();
+        }
+        if (numPartitions > 1) {
+            concurrentStatsCollector.addStat(batchMaxTimeInQueue, getPartitionQueueTimeStatId(partition));
         }
 
         List<Zevent> validEvents = new ArrayList<Zevent>(events.size());
@@ -607,7 +691,7 @@ public class ZeventManager implements ZeventEnqueuer {
             ZeventListener<Zevent> listener = ent.getKey();
             List<Zevent> batch = ent.getValue();
 
-            synchronized (_listenerLock) {
+            synchronized ((numPartitions == 1) ? _listenerLock : listener) {
                 InterruptToken t = null;
                 try {
                     t = threadWatchdog.interruptMeIn(timeout, TimeUnit.SECONDS,
@@ -629,7 +713,13 @@ public class ZeventManager implements ZeventEnqueuer {
             StringBuffer res = new StringBuffer();
 
             res.append("ZEvent Manager Diagnostics:\n").append(
-                "    Queue Size:        " + _eventQueue.size() + "\n").append(
+                "    Queue Size:        " + getQueueSize() + "\n");
+            if (numPartitions > 1) {
+                for (int i = 0; i < numPartitions; i++) {
+                    res.append("    Partition " + i + " Size: " + _eventQueues[i].size() + "\n");
+                }
+            }
+            res.append(
                 "    Events Handled:    " + _numEvents + "\n").append(
                 "    Max Time In Queue: " + _maxTimeInQueue + "ms\n\n").append(
                 "ZEvent Listener Diagnostics:\n");
@@ -0,0 +1,171 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.agent.server.session;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.appdef.server.session.AgentPluginSyncRestartThrottle;
+import org.hyperic.hq.appdef.shared.AgentManager;
+import org.hyperic.hq.authz.shared.AuthzSubjectManager;
+import org.hyperic.hq.common.DiagnosticsLogger;
+import org.hyperic.hq.measurement.shared.AvailabilityManager;
+import org.hyperic.hq.stats.ConcurrentStatsCollector;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+
+public class AgentSynchronizerTest extends TestCase {
+    private static final int AGENT = 1;
+
+    private ScheduledExecutorService scheduler;
+    private AgentSynchronizer synchronizer;
+    private final BlockingQueue<String> executed = new LinkedBlockingQueue<String>();
+
+    public void setUp() throws Exception {
+        super.setUp();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        final ConcurrentTaskScheduler taskScheduler = new ConcurrentTaskScheduler(scheduler);
+        final ConcurrentStatsCollector stats = new ConcurrentStatsCollector(null, taskScheduler);
+        final AuthzSubjectManager authzSubjectManager = createNiceMock(AuthzSubjectManager.class);
+        final AgentManager agentManager = createNiceMock(AgentManager.class);
+        final AvailabilityManager availabilityManager = createNiceMock(AvailabilityManager.class);
+        expect(availabilityManager.platformIsAvailableOrUnknown(anyInt())).andStubReturn(true);
+        final ApplicationContext ctx = createNiceMock(ApplicationContext.class);
+        expect(ctx.getBean(AgentManager.class)).andStubReturn(agentManager);
+        expect(ctx.getBean(AvailabilityManager.class)).andStubReturn(availabilityManager);
+        replay(authzSubjectManager, agentManager, availabilityManager, ctx);
+        synchronizer = new AgentSynchronizer(stats, new DiagnosticsLogger(taskScheduler),
+            new AgentPluginSyncRestartThrottle(authzSubjectManager, stats, null, taskScheduler),
+            authzSubjectManager, 1, 1);
+        synchronizer.setApplicationContext(ctx);
+        synchronizer.initialize();
+    }
+
+    public void tearDown() throws Exception {
+        synchronizer.shutdown();
+        scheduler.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testCoalescedJobsRunOnce() throws Exception {
+        final TestJob blocking = new TestJob("blocking");
+        blocking.release = new CountDownLatch(1);
+        synchronizer.addAgentJob(blocking);
+        assertEquals("blocking", next());
+
+        synchronizer.addAgentJob(new CoalescingTestJob("sync"));
+        synchronizer.addAgentJob(new TestJob("other"));
+        // a priority job takes the queued one ahead of the other jobs
+        synchronizer.addAgentJob(new CoalescingTestJob("sync"), true);
+        blocking.release.countDown();
+
+        assertEquals("sync", next());
+        assertEquals("other", next());
+        assertNull(executed.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    public void testFailedJobIsRetriedBehindNewJobs() throws Exception {
+        final TestJob failing = new CoalescingTestJob("sync");
+        failing.successful = false;
+        synchronizer.addAgentJob(failing);
+        assertEquals("sync", next());
+        awaitQueued("sync");
+
+        // the failed job waits a minute to be retried, it neither takes in
+        // nor holds up the new jobs
+        synchronizer.addAgentJob(new CoalescingTestJob("sync"));
+        synchronizer.addAgentJob(new TestJob("other"));
+        assertEquals("sync", next());
+        assertEquals("other", next());
+        assertEquals(1, failing.runs);
+        assertEquals(Collections.singleton(AGENT),
+            synchronizer.getJobListByDescription(Collections.singleton("sync")));
+    }
+
+    private String next() throws InterruptedException {
+        return executed.poll(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitQueued(String description) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (!synchronizer.getJobListByDescription(Collections.singleton(description)).isEmpty()) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail(description + " was not queued again");
+    }
+
+    private class TestJob implements AgentDataTransferJob {
+        private final String description;
+        private CountDownLatch release;
+        private boolean successful = true;
+        private volatile int runs;
+
+        private TestJob(String description) {
+            this.description = description;
+        }
+        public int getAgentId() {
+            return AGENT;
+        }
+        public String getJobDescription() {
+            return description;
+        }
+        public void execute() {
+            runs++;
+            executed.add(description);
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        public boolean wasSuccessful() {
+            return successful;
+        }
+        public void onFailure(String reason) {
+        }
+    }
+
+    private class CoalescingTestJob extends TestJob implements CoalescingAgentDataTransferJob {
+        private CoalescingTestJob(String description) {
+            super(description);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.authz.server.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.authz.shared.AuthzConstants;
+
+public class ViewableResourceIndexTest extends TestCase {
+
+    private static final Integer PLATFORM = AuthzConstants.authzPlatform;
+    private static final Integer SERVER = AuthzConstants.authzServer;
+
+    private ViewableResourceIndex.Snapshot snapshot() {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] { 10001, PLATFORM, 2, 1 });
+        rows.add(new Object[] { 10002, SERVER, 2, 5 });
+        rows.add(new Object[] { 10003, SERVER, 3, 6 });
+        rows.add(new Object[] { 10004, SERVER, null, 7 });
+        return new ViewableResourceIndex.Snapshot(rows);
+    }
+
+    public void testOwnerSeesOnlyOwnedResourcesOfType() {
+        final ViewableResourceIndex.Snapshot snapshot = snapshot();
+        BitSet ids = snapshot.getViewable(2, Arrays.asList(SERVER));
+        assertEquals(1, ids.cardinality());
+        assertTrue(ids.get(10002));
+
+        ids = snapshot.getViewable(2, Arrays.asList(PLATFORM, SERVER));
+        assertEquals(2, ids.cardinality());
+        assertTrue(ids.get(10001));
+
+        assertTrue(snapshot.getViewable(4, Arrays.asList(PLATFORM, SERVER)).isEmpty());
+    }
+
+    public void testRootSubjectSeesAllResourcesOfType() {
+        final ViewableResourceIndex.Snapshot snapshot = snapshot();
+        final BitSet ids = snapshot.getViewable(AuthzConstants.rootSubjectId, Arrays.asList(SERVER));
+        assertEquals(3, ids.cardinality());
+        assertTrue(ids.get(10004));
+        assertEquals(SERVER, snapshot.getResourceTypeId(10004));
+        assertEquals(Integer.valueOf(7), snapshot.getInstanceId(10004));
+    }
+
+    public void testUnknownResource() {
+        final List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] { 10005, SERVER, 2, null });
+        final ViewableResourceIndex.Snapshot snapshot = new ViewableResourceIndex.Snapshot(rows);
+        assertEquals(SERVER, snapshot.getResourceTypeId(10005));
+        assertNull(snapshot.getInstanceId(10005));
+        assertNull(snapshot.getResourceTypeId(10004));
+        assertNull(snapshot.getResourceTypeId(10006));
+        assertNull(snapshot.getInstanceId(10006));
+        assertNull(new ViewableResourceIndex.Snapshot(new ArrayList<Object[]>()).getResourceTypeId(1));
+    }
+
+    public void testLookupDoesNotModifySnapshot() {
+        final ViewableResourceIndex.Snapshot snapshot = snapshot();
+        snapshot.getViewable(2, Arrays.asList(SERVER)).clear();
+        assertEquals(1, snapshot.getViewable(2, Arrays.asList(SERVER)).cardinality());
+        assertEquals(4, snapshot.size());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of HQ.
+ *
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.escalation.server.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.escalation.server.session.EscalationTimingWheel.Timeout;
+
+public class EscalationTimingWheelTest extends TestCase {
+    private final List<List<Timeout>> fired = new ArrayList<List<Timeout>>();
+    private EscalationTimingWheel wheel;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        // 8 slots of 20ms, a revolution takes 160ms
+        wheel = new EscalationTimingWheel("EscalationTimingWheelTest", 20, 5,
+            new EscalationTimingWheel.Handler() {
+                public void expired(List<Timeout> due) {
+                    synchronized (fired) {
+                        fired.add(due);
+                        fired.notifyAll();
+                    }
+                }
+            });
+    }
+
+    public void tearDown() throws Exception {
+        wheel.stop();
+        super.tearDown();
+    }
+
+    private Set<Integer> waitForFired(int count, long timeout) throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeout;
+        final Set<Integer> rtn = new HashSet<Integer>();
+        synchronized (fired) {
+            while (true) {
+                rtn.clear();
+                for (List<Timeout> due : fired) {
+                    for (Timeout t : due) {
+                        rtn.add(t.getStateId());
+                        assertTrue(System.currentTimeMillis() >= t.getDeadline());
+                    }
+                }
+                final long left = end - System.currentTimeMillis();
+                if (rtn.size() >= count || left <= 0) {
+                    return rtn;
+                }
+                fired.wait(left);
+            }
+        }
+    }
+
+    public void testFiresAfterDeadlineAcrossRevolutions() throws Exception {
+        final long now = System.currentTimeMillis();
+        wheel.schedule(1, now + 50);
+        wheel.schedule(2, now + 400);
+        wheel.schedule(3, now - 1000);
+        assertEquals(3, wheel.size());
+        Set<Integer> ids = waitForFired(2, 2000);
+        assertTrue(ids.contains(1) && ids.contains(3));
+        assertFalse(ids.contains(2));
+        ids = waitForFired(3, 2000);
+        assertTrue(ids.contains(2));
+        assertTrue(System.currentTimeMillis() >= now + 400);
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCancel() throws Exception {
+        final long now = System.currentTimeMillis();
+        wheel.schedule(1, now + 60).cancel();
+        wheel.schedule(2, now + 60);
+        assertEquals(1, wheel.size());
+        Thread.sleep(200);
+        final Set<Integer> ids = waitForFired(1, 2000);
+        assertEquals(1, ids.size());
+        assertTrue(ids.contains(2));
+    }
+
+    public void testDueTogetherFireInOneBatch() throws Exception {
+        final long deadline = System.currentTimeMillis() + 100;
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(i, deadline);
+        }
+        assertEquals(100, waitForFired(100, 2000).size());
+        synchronized (fired) {
+            assertEquals(1, fired.size());
+        }
+    }
+}
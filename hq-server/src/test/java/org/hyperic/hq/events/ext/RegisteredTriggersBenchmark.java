@@ -0,0 +1,156 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.events.ext;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hyperic.hq.events.AbstractEvent;
+import org.hyperic.hq.events.MockEvent;
+import org.hyperic.hq.events.server.session.AlertRegulator;
+
+/**
+ * Compares dispatch lookups through the {@link TriggerIndex} with the
+ * HashSet building lookups over a Map of TriggerEventKeys it replaced, with a
+ * trigger registered for each of many instances.  Not a unit test, run it
+ * by hand through main().
+ */
+public class RegisteredTriggersBenchmark {
+    private static final int NUM_TRIGGERS = 300000;
+    private static final int NUM_EVENTS = 10000;
+    private static final int ROUNDS = 200;
+
+    private Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> legacy;
+    private RegisteredTriggers registeredTriggers;
+    private AbstractEvent[] events;
+
+    public static void main(String[] args) {
+        RegisteredTriggersBenchmark benchmark = new RegisteredTriggersBenchmark();
+        benchmark.setUp();
+        benchmark.run();
+    }
+
+    private void setUp() {
+        MockTrigger.enabled = true;
+        legacy = new ConcurrentHashMap<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>>();
+        for (int i = 1; i <= NUM_TRIGGERS; i++) {
+            Map<Integer, RegisterableTriggerInterface> triggersById = new ConcurrentHashMap<Integer, RegisterableTriggerInterface>();
+            triggersById.put(i, new MockTrigger());
+            legacy.put(new TriggerEventKey(MockEvent.class, i), triggersById);
+        }
+        registeredTriggers = new RegisteredTriggers(new AlertRegulator() {
+            public boolean alertNotificationsAllowed() {
+                return true;
+            }
+
+            public boolean alertsAllowed() {
+                return true;
+            }
+        });
+        registeredTriggers.setTriggers(legacy);
+        Random r = new Random(0);
+        events = new AbstractEvent[NUM_EVENTS];
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            // one in four events is for an instance without triggers
+            events[i] = new MockEvent(i, 1 + r.nextInt(NUM_TRIGGERS * 4 / 3));
+        }
+    }
+
+    private void run() {
+        for (int i = 0; i < 2; i++) {
+            long legacyFound = runLegacy();
+            long indexFound = runIndex();
+            if (legacyFound != indexFound) {
+                throw new IllegalStateException("map found " + legacyFound +
+                                                " triggers, index found " + indexFound);
+            }
+        }
+    }
+
+    private long runLegacy() {
+        long found = 0;
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (AbstractEvent event : events) {
+                found += getLegacyInterestedTriggers(event).size();
+            }
+        }
+        print("map", begin);
+        return found;
+    }
+
+    private long runIndex() {
+        final long[] found = new long[1];
+        TriggerVisitor visitor = new TriggerVisitor() {
+            public void visit(AbstractEvent event, RegisterableTriggerInterface trigger) {
+                found[0]++;
+            }
+        };
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (AbstractEvent event : events) {
+                registeredTriggers.visitInterestedTriggers(event, visitor);
+            }
+        }
+        print("index", begin);
+        return found[0];
+    }
+
+    private void print(String name, long begin) {
+        long end = System.currentTimeMillis();
+        System.out.println(name + ": " + ROUNDS * NUM_EVENTS + " events in " + (end - begin) + " ms");
+    }
+
+    /**
+     * The lookup RegisteredTriggers did before the TriggerIndex
+     */
+    private Collection<RegisterableTriggerInterface> getLegacyInterestedTriggers(AbstractEvent event) {
+        HashSet<RegisterableTriggerInterface> trigs = new HashSet<RegisterableTriggerInterface>();
+        trigs.addAll(getLegacyInterestedTriggers(event, event.getInstanceId()));
+        trigs.addAll(getLegacyInterestedTriggers(event, RegisteredTriggers.KEY_ALL));
+        return trigs;
+    }
+
+    private Collection<RegisterableTriggerInterface> getLegacyInterestedTriggers(AbstractEvent event,
+                                                                                 Integer instanceId) {
+        HashSet<RegisterableTriggerInterface> trigs = new HashSet<RegisterableTriggerInterface>();
+        TriggerEventKey key = new TriggerEventKey(event.getClass(), instanceId.intValue());
+        Map<Integer, RegisterableTriggerInterface> triggersById = legacy.get(key);
+        if (triggersById != null) {
+            trigs.addAll(triggersById.values());
+        }
+        for (Iterator<RegisterableTriggerInterface> iterator = trigs.iterator(); iterator.hasNext();) {
+            if (!iterator.next().isEnabled()) {
+                iterator.remove();
+            }
+        }
+        return trigs;
+    }
+}
@@ -35,6 +35,7 @@ import java.util.Map;
 import junit.framework.TestCase;
 
 import org.easymock.EasyMock;
+import org.hyperic.hq.events.AbstractEvent;
 import org.hyperic.hq.events.InvalidTriggerDataException;
 import org.hyperic.hq.events.MockEvent;
 import org.hyperic.hq.events.server.session.AlertRegulator;
@@ -318,6 +319,64 @@ public class RegisteredTriggersTest
         assertEquals(trigger2, actualTriggers.get(trigger2Id));
     }
 
+    /**
+     * Verifies that a trigger interested in both the event's instance and all
+     * instances is only visited once
+     */
+    public void testVisitInterestedTriggersInstanceAndAll() {
+        RegisterableTriggerInterface trigger1 = EasyMock.createMock(RegisterableTriggerInterface.class);
+        Map<Integer, RegisterableTriggerInterface> triggersById = new HashMap<Integer, RegisterableTriggerInterface>();
+        triggersById.put(567, trigger1);
+        Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> testTriggers = new HashMap<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>>();
+        testTriggers.put(new TriggerEventKey(MockEvent.class, 123), triggersById);
+        testTriggers.put(new TriggerEventKey(MockEvent.class, RegisteredTriggers.KEY_ALL), triggersById);
+        registeredTriggers.setTriggers(testTriggers);
+
+        EasyMock.expect(trigger1.isEnabled()).andReturn(true).times(3);
+        EasyMock.expect(alertRegulator.alertsAllowed()).andReturn(true).times(4);
+        EasyMock.replay(trigger1);
+        replay();
+        final List<RegisterableTriggerInterface> visited = new ArrayList<RegisterableTriggerInterface>();
+        TriggerVisitor visitor = new TriggerVisitor() {
+            public void visit(AbstractEvent event, RegisterableTriggerInterface trigger) {
+                visited.add(trigger);
+            }
+        };
+        assertEquals(1, registeredTriggers.visitInterestedTriggers(new MockEvent(7l, 123), visitor));
+        assertEquals(1, registeredTriggers.visitInterestedTriggers(new MockEvent(8l, 999), visitor));
+        assertEquals(2, visited.size());
+        EasyMock.verify(trigger1);
+        verify();
+    }
+
+    /**
+     * Verifies that removing a trigger registered for many instances clears
+     * all of them and leaves other triggers in place
+     */
+    public void testUnregisterTriggerManyInstances() {
+        RegisterableTriggerInterface trigger1 = EasyMock.createMock(RegisterableTriggerInterface.class);
+        RegisterableTriggerInterface trigger2 = EasyMock.createMock(RegisterableTriggerInterface.class);
+        Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> testTriggers = new HashMap<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>>();
+        for (int i = 1; i <= 1000; i++) {
+            Map<Integer, RegisterableTriggerInterface> triggersById = new HashMap<Integer, RegisterableTriggerInterface>();
+            triggersById.put(567, trigger1);
+            if (i == 500) {
+                triggersById.put(9908, trigger2);
+            }
+            testTriggers.put(new TriggerEventKey(MockEvent.class, i), triggersById);
+        }
+        registeredTriggers.setTriggers(testTriggers);
+        assertEquals(1000, registeredTriggers.getTriggers().size());
+        assertEquals(trigger1, registeredTriggers.getTriggerById(567));
+
+        registeredTriggers.removeTrigger(567);
+        assertNull(registeredTriggers.getTriggerById(567));
+        assertEquals(trigger2, registeredTriggers.getTriggerById(9908));
+        Map<TriggerEventKey, Map<Integer, RegisterableTriggerInterface>> trigMap = registeredTriggers.getTriggers();
+        assertEquals(1, trigMap.size());
+        assertEquals(trigger2, trigMap.get(new TriggerEventKey(MockEvent.class, 500)).get(9908));
+    }
+
     private void verify() {
         EasyMock.verify(alertRegulator);
     }
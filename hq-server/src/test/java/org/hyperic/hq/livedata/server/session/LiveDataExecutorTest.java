@@ -0,0 +1,153 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.livedata.server.session;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.appdef.shared.AppdefEntityConstants;
+import org.hyperic.hq.appdef.shared.AppdefEntityID;
+import org.hyperic.hq.livedata.agent.client.LiveDataCommandsClient;
+import org.hyperic.hq.livedata.shared.LiveDataCommand;
+import org.hyperic.hq.livedata.shared.LiveDataResult;
+import org.hyperic.util.config.ConfigResponse;
+
+public class LiveDataExecutorTest extends TestCase {
+
+    private final AppdefEntityID id = new AppdefEntityID(AppdefEntityConstants.APPDEF_TYPE_PLATFORM, 10001);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final LiveDataCommandsClient client = new LiveDataCommandsClient() {
+        public LiveDataResult getData(AppdefEntityID id, String type, String command,
+                                      ConfigResponse config) {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new LiveDataResult(id, "<" + command + "/>");
+        }
+    };
+    private LiveDataExecutor executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = new LiveDataExecutor(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    private LiveDataCacheKey key(String command) {
+        return new LiveDataCacheKey(new LiveDataCommand[] { new LiveDataCommand(id, command,
+            new ConfigResponse()) });
+    }
+
+    private List<LiveDataExecutorCommand> commands(String command) {
+        return Collections.singletonList(new LiveDataExecutorCommand(id, "Linux", command,
+            new ConfigResponse(), null));
+    }
+
+    public void testIdenticalRequestsShareOneAgentCall() throws Exception {
+        final BlockingQueue<LiveDataExecutor.GatherTask> first =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        final BlockingQueue<LiveDataExecutor.GatherTask> second =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        assertFalse(executor.getData(key("top"), client, commands("top"), first));
+        assertTrue(executor.getData(key("top"), client, commands("top"), second));
+        assertEquals(1, executor.getInFlightCount());
+        release.countDown();
+
+        final LiveDataExecutor.GatherTask done = first.poll(5, TimeUnit.SECONDS);
+        assertSame(done, second.poll(5, TimeUnit.SECONDS));
+        assertEquals("<top/>", done.get()[0].getXMLResult());
+        assertEquals(1, calls.get());
+    }
+
+    public void testDifferentRequestsRunInParallel() throws Exception {
+        final BlockingQueue<LiveDataExecutor.GatherTask> completed =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        assertFalse(executor.getData(key("top"), client, commands("top"), completed));
+        assertFalse(executor.getData(key("df"), client, commands("df"), completed));
+        assertEquals(2, executor.getInFlightCount());
+        release.countDown();
+        assertNotNull(completed.poll(5, TimeUnit.SECONDS));
+        assertNotNull(completed.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
+    public void testAbandonedTaskIsCancelled() throws Exception {
+        executor.shutdownNow();
+        executor = new LiveDataExecutor(1);
+        final BlockingQueue<LiveDataExecutor.GatherTask> first =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        final BlockingQueue<LiveDataExecutor.GatherTask> second =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        executor.getData(key("top"), client, commands("top"), first);
+        executor.getData(key("df"), client, commands("df"), first);
+        executor.getData(key("top"), client, commands("top"), second);
+        for (int i = 0; i < 100 && calls.get() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, executor.getQueue().size());
+
+        // still waited for by the second request
+        assertFalse(executor.abandon(key("top"), first));
+        assertTrue(executor.abandon(key("df"), first));
+        assertTrue(executor.getQueue().isEmpty());
+        assertTrue(executor.abandon(key("top"), second));
+        assertEquals(0, executor.getInFlightCount());
+        assertNull(first.poll());
+        assertNull(second.poll());
+
+        // the interrupted agent call doesn't hold up the next request
+        release.countDown();
+        executor.getData(key("df"), client, commands("df"), first);
+        assertEquals("<df/>", first.poll(5, TimeUnit.SECONDS).get()[0].getXMLResult());
+        assertEquals(2, calls.get());
+    }
+
+    public void testRequestAfterCompletionCallsAgentAgain() throws Exception {
+        release.countDown();
+        final BlockingQueue<LiveDataExecutor.GatherTask> completed =
+            new LinkedBlockingQueue<LiveDataExecutor.GatherTask>();
+        executor.getData(key("top"), client, commands("top"), completed);
+        assertNotNull(completed.poll(5, TimeUnit.SECONDS));
+        assertFalse(executor.getData(key("top"), client, commands("top"), completed));
+        assertNotNull(completed.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+public class AggregateDataCacheTest extends TestCase {
+    private static final Integer[] MIDS = new Integer[] { 3, 1, 2 };
+
+    private AggregateDataCache cache;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        cache = new AggregateDataCache(2, 60000l);
+    }
+
+    public void testGetIgnoresMidOrder() {
+        AggregateDataCache.Buckets buckets = new AggregateDataCache.Buckets(10, 0);
+        cache.put(cache.newKey(MIDS, 1000, 2000, 100), buckets);
+        assertSame(buckets, cache.get(cache.newKey(new Integer[] { 1, 2, 3 }, 1000, 2000, 100)));
+        assertNull(cache.get(cache.newKey(MIDS, 1000, 2000, 50)));
+    }
+
+    public void testInvalidateInWindow() {
+        cache.put(cache.newKey(MIDS, 1000, 2000, 100), new AggregateDataCache.Buckets(10, 0));
+        cache.invalidate(Collections.singletonList(new DataPoint(2, 1, 3000)));
+        cache.invalidate(Collections.singletonList(new DataPoint(4, 1, 1500)));
+        assertNotNull(cache.get(cache.newKey(MIDS, 1000, 2000, 100)));
+        cache.invalidate(Collections.singletonList(new DataPoint(2, 1, 1500)));
+        assertNull(cache.get(cache.newKey(MIDS, 1000, 2000, 100)));
+        assertEquals(0, cache.size());
+    }
+
+    public void testInsertDuringQueryNotCached() {
+        AggregateDataCache.Key key = cache.newKey(MIDS, 1000, 2000, 100);
+        cache.invalidate(Collections.singletonList(new DataPoint(3, 1, 5000)));
+        cache.put(key, new AggregateDataCache.Buckets(10, 0));
+        assertNull(cache.get(key));
+        key = cache.newKey(MIDS, 1000, 2000, 100);
+        cache.put(key, new AggregateDataCache.Buckets(10, 0));
+        assertNotNull(cache.get(key));
+    }
+
+    public void testInvalidateRange() {
+        cache.put(cache.newKey(MIDS, 1000, 2000, 100), new AggregateDataCache.Buckets(10, 0));
+        cache.put(cache.newKey(MIDS, 3000, 4000, 100), new AggregateDataCache.Buckets(10, 0));
+        cache.invalidate(1800, 2500);
+        assertNull(cache.get(cache.newKey(MIDS, 1000, 2000, 100)));
+        assertNotNull(cache.get(cache.newKey(MIDS, 3000, 4000, 100)));
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        cache.put(cache.newKey(MIDS, 1000, 2000, 100), new AggregateDataCache.Buckets(10, 0));
+        cache.put(cache.newKey(MIDS, 3000, 4000, 100), new AggregateDataCache.Buckets(10, 0));
+        assertNotNull(cache.get(cache.newKey(MIDS, 1000, 2000, 100)));
+        cache.put(cache.newKey(MIDS, 5000, 6000, 100), new AggregateDataCache.Buckets(10, 0));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(cache.newKey(MIDS, 3000, 4000, 100)));
+        assertNotNull(cache.get(cache.newKey(MIDS, 1000, 2000, 100)));
+    }
+}
@@ -30,6 +30,8 @@ import junit.framework.TestCase;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 public class AvailabilityCacheTest extends TestCase {
 
@@ -122,6 +124,44 @@ public class AvailabilityCacheTest extends TestCase {
         assertTrue(cache.get(new Integer(id)) == null);
     }
 
+    public void testTransactionRollbackAfterCommit() throws Exception {
+        DataPoint first = new DataPoint(0, 0.0, 0);
+        cache.put(new Integer(0), first);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.beginTran();
+            cache.put(new Integer(0), new DataPoint(0, 1.0, 1));
+            cache.put(new Integer(1), new DataPoint(1, 1.0, 1));
+            cache.commitTran();
+            // put again after the commit, must survive the rollback
+            DataPoint later = new DataPoint(1, 0.0, 2);
+            cache.put(new Integer(1), later);
+
+            for (Object sync : TransactionSynchronizationManager.getSynchronizations()) {
+                ((TransactionSynchronization) sync).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+            assertSame(first, cache.get(new Integer(0)));
+            assertSame(later, cache.get(new Integer(1)));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    public void testPutOutsideTransactionDoesNotWait() throws Exception {
+        cache.beginTran();
+        cache.put(new Integer(0), new DataPoint(0, 1.0, 1));
+        Thread thread = new Thread() {
+            public void run() {
+                cache.put(new Integer(1), new DataPoint(1, 1.0, 1));
+            }
+        };
+        thread.start();
+        thread.join(5000);
+        boolean alive = thread.isAlive();
+        cache.commitTran();
+        assertFalse(alive);
+    }
+
     /**
      * Test a full load of the cache.
      * @throws Exception If any error occurs within the test.
@@ -0,0 +1,149 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.measurement.MeasurementConstants;
+import org.hyperic.hq.stats.ConcurrentStatsCollector;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+
+public class DataCompressImplTest extends TestCase {
+    private static final long BEGIN = 6 * MeasurementConstants.HOUR;
+    private static final long END = BEGIN + MeasurementConstants.SIX_HOUR;
+
+    private ScheduledExecutorService scheduler;
+    private SliceRecordingDAO dao;
+    private DataCompressImpl dataCompress;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        dao = new SliceRecordingDAO();
+        dataCompress = new DataCompressImpl(dao,
+            new ConcurrentStatsCollector(null, new ConcurrentTaskScheduler(scheduler)),
+            new AggregateDataCache(null, null), 4, 16);
+        dataCompress.initialize();
+    }
+
+    public void tearDown() throws Exception {
+        dataCompress.shutdown();
+        scheduler.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testSlicesCoverTheIdRange() {
+        dao.range = new int[] { 10, 1000 };
+        dataCompress.compressData(MeasurementConstants.SIX_HOUR, END, BEGIN, END);
+
+        List<int[]> slices = dao.getSlices();
+        assertEquals(16, slices.size());
+        int next = 10;
+        for (int[] slice : slices) {
+            // contiguous and not overlapping
+            assertEquals(next, slice[0]);
+            assertTrue(slice[1] > slice[0]);
+            next = slice[1];
+        }
+        assertTrue(next > 1000);
+    }
+
+    public void testFailedSliceIsRetried() {
+        dao.range = new int[] { 10, 1000 };
+        dao.failures = 1;
+        dataCompress.compressData(MeasurementConstants.SIX_HOUR, END, BEGIN, END);
+
+        // the failed slice is done once more
+        List<int[]> slices = dao.getSlices();
+        assertEquals(17, slices.size());
+        assertEquals(0, dao.failures);
+        int next = 10;
+        for (int[] slice : slices) {
+            // the retried slice shows up twice
+            if (slice[0] != next) {
+                assertEquals(next, slice[1]);
+                continue;
+            }
+            next = slice[1];
+        }
+        assertTrue(next > 1000);
+    }
+
+    public void testNoDataNoSlices() {
+        dao.range = null;
+        dataCompress.compressData(MeasurementConstants.SIX_HOUR, END, BEGIN, END);
+        assertTrue(dao.getSlices().isEmpty());
+    }
+
+    private static class SliceRecordingDAO extends DataCompressionDAO {
+        private int[] range;
+        private int failures;
+        private final List<int[]> slices = new ArrayList<int[]>();
+
+        SliceRecordingDAO() {
+            super(null, null);
+        }
+
+        public int[] getMeasurementIdRange(String dataTable, long begin, long end) {
+            assertEquals(MeasurementConstants.TAB_DATA_1H, dataTable);
+            return range;
+        }
+
+        public int recompactData(String fromTable, String toTable, long begin, long end,
+                                 int fromMid, int toMid) {
+            assertEquals(MeasurementConstants.TAB_DATA_6H, toTable);
+            assertEquals(BEGIN, begin);
+            assertEquals(END, end);
+            synchronized (this) {
+                slices.add(new int[] { fromMid, toMid });
+                if (failures > 0) {
+                    failures--;
+                    throw new IllegalStateException("connection lost");
+                }
+            }
+            return 1;
+        }
+
+        /**
+         * @return the slices compacted, ordered by their first id
+         */
+        synchronized List<int[]> getSlices() {
+            List<int[]> rtn = new ArrayList<int[]>(slices);
+            Collections.sort(rtn, new Comparator<int[]>() {
+                public int compare(int[] a, int[] b) {
+                    return (a[0] < b[0]) ? -1 : (a[0] == b[0] ? 0 : 1);
+                }
+            });
+            return rtn;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the DataPointRingBuffer class.
+ */
+public class DataPointRingBufferTest extends TestCase {
+
+    public DataPointRingBufferTest(String name) {
+        super(name);
+    }
+
+    private List<DataPoint> points(int start, int n) {
+        List<DataPoint> rtn = new ArrayList<DataPoint>(n);
+        for (int i = start; i < start + n; i++) {
+            rtn.add(new DataPoint(i, i, i));
+        }
+        return rtn;
+    }
+
+    public void testDrainKeepsOrderAcrossWrap() throws Exception {
+        DataPointRingBuffer buffer = new DataPointRingBuffer(5);
+        assertTrue(buffer.offer(points(0, 3), 0));
+        List<DataPoint> out = new ArrayList<DataPoint>();
+        assertEquals(2, buffer.drain(out, 2, 0));
+        assertTrue(buffer.offer(points(3, 4), 0));
+        assertEquals(5, buffer.size());
+        assertEquals(5, buffer.drain(out, 10, 0));
+        for (int i = 0; i < 7; i++) {
+            assertEquals(new Integer(i), out.get(i).getMeasurementId());
+        }
+        assertEquals(0, buffer.size());
+    }
+
+    public void testFullBufferRejectsWholeList() throws Exception {
+        DataPointRingBuffer buffer = new DataPointRingBuffer(5);
+        assertTrue(buffer.offer(points(0, 4), 0));
+        assertFalse(buffer.offer(points(4, 2), 10));
+        assertEquals(4, buffer.size());
+        assertTrue(buffer.offer(points(4, 1), 0));
+    }
+
+    public void testOversizedList() throws Exception {
+        DataPointRingBuffer buffer = new DataPointRingBuffer(5);
+        try {
+            buffer.offer(points(0, 6), 0);
+            fail("Expected IllegalArgumentException.");
+        } catch (IllegalArgumentException e) {
+            // expected outcome
+        }
+    }
+
+    public void testClose() throws Exception {
+        DataPointRingBuffer buffer = new DataPointRingBuffer(5);
+        assertTrue(buffer.offer(points(0, 2), 0));
+        buffer.close();
+        assertFalse(buffer.offer(points(2, 1), 0));
+        List<DataPoint> out = new ArrayList<DataPoint>();
+        assertEquals(2, buffer.drain(out, 10, 1000));
+        assertEquals(0, buffer.drain(out, 10, 1000));
+    }
+}
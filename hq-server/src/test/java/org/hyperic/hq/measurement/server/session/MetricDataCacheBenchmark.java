@@ -0,0 +1,106 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+
+/**
+ * Compares the EhCacheMetricDataCache with the StripedMetricDataCache under
+ * concurrent report ingestion and last value lookups.  Not a unit test,
+ * run it by hand through main().
+ */
+public class MetricDataCacheBenchmark {
+    private static final int NUM_MEAS = 200000;
+    private static final int BATCH = 500;
+    private static final int ROUNDS = 200;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        CacheManager manager = CacheManager.create();
+        Cache ehcache = new Cache("MetricDataCacheBenchmark", NUM_MEAS, false, true, 0, 0);
+        manager.addCache(ehcache);
+        try {
+            run("ehcache", new EhCacheMetricDataCache(ehcache));
+            run("striped", new StripedMetricDataCache(NUM_MEAS));
+            run("ehcache", new EhCacheMetricDataCache(ehcache));
+            run("striped", new StripedMetricDataCache(NUM_MEAS));
+        } finally {
+            manager.removeCache("MetricDataCacheBenchmark");
+            manager.shutdown();
+        }
+    }
+
+    private static void run(String name, final MetricDataCache cache) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < WRITERS + READERS; t++) {
+            final boolean writer = t < WRITERS;
+            final Random r = new Random(t);
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < ROUNDS; i++) {
+                        if (writer) {
+                            List<DataPoint> pts = new ArrayList<DataPoint>(BATCH);
+                            for (int j = 0; j < BATCH; j++) {
+                                pts.add(new DataPoint(r.nextInt(NUM_MEAS), j, i * 60000L + j));
+                            }
+                            cache.bulkAdd(pts);
+                        } else {
+                            List<Integer> mids = new ArrayList<Integer>(BATCH);
+                            for (int j = 0; j < BATCH; j++) {
+                                mids.add(r.nextInt(NUM_MEAS));
+                            }
+                            cache.getAll(mids, 0);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        long begin = System.currentTimeMillis();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long end = System.currentTimeMillis();
+        System.out.println(name + ": " + (WRITERS + READERS) * ROUNDS * BATCH +
+                           " operations in " + (end - begin) + " ms");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class RecentMetricDataTierTest extends TestCase {
+    private static final long MINUTE = 60000l;
+
+    private long now;
+    private RecentMetricDataTier tier;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        now = System.currentTimeMillis();
+        // created an hour ago, holds 4 points for at most 2 measurements
+        tier = new RecentMetricDataTier(8, 2, 4, now - 60 * MINUTE);
+    }
+
+    private List<Long> timestamps(Integer mid, long begin, long end) {
+        final List<Long> rtn = new ArrayList<Long>();
+        boolean held = tier.visit(new Integer[] { mid }, begin, end, new RecentMetricDataTier.PointVisitor() {
+            public void visit(int measurementId, long timestamp, double value) {
+                rtn.add(timestamp);
+            }
+        });
+        return held ? rtn : null;
+    }
+
+    public void testOrdersAndReplacesPoints() {
+        final long t = now - 10 * MINUTE;
+        tier.add(Arrays.asList(new DataPoint(1, 1, t + MINUTE), new DataPoint(1, 1, t),
+                               new DataPoint(1, 1, t + 2 * MINUTE), new DataPoint(1, 5, t)));
+        assertEquals(Arrays.asList(t, t + MINUTE, t + 2 * MINUTE), timestamps(1, t, t + 2 * MINUTE));
+        assertEquals(Arrays.asList(t + MINUTE), timestamps(1, t + MINUTE, t + MINUTE));
+        assertEquals(3, tier.getPointCount());
+        final double[] sum = new double[1];
+        tier.visit(new Integer[] { 1 }, t, t, new RecentMetricDataTier.PointVisitor() {
+            public void visit(int measurementId, long timestamp, double value) {
+                sum[0] += value;
+            }
+        });
+        assertEquals(5d, sum[0]);
+    }
+
+    public void testWindowBeforeCreationIsMiss() {
+        tier.add(Arrays.asList(new DataPoint(1, 1, now - 10 * MINUTE)));
+        assertNull(timestamps(1, now - 2 * 60 * MINUTE, now));
+        assertNotNull(timestamps(1, now - 30 * MINUTE, now));
+        // no data for the measurement at all
+        assertEquals(0, timestamps(2, now - 30 * MINUTE, now).size());
+        assertEquals(2d / 3, tier.getHitRate(), 0.0001d);
+    }
+
+    public void testFullSeriesOnlyAnswersAfterEvictedPoint() {
+        final long t = now - 10 * MINUTE;
+        for (int i = 0; i < 6; i++) {
+            tier.add(Arrays.asList(new DataPoint(1, i, t + i * MINUTE)));
+        }
+        assertEquals(4, tier.getPointCount());
+        assertNull(timestamps(1, t + MINUTE, now));
+        assertEquals(4, timestamps(1, t + 2 * MINUTE, now).size());
+    }
+
+    public void testFullTierOnlyAnswersAfterDroppedPoint() {
+        final long t = now - 10 * MINUTE;
+        tier.add(Arrays.asList(new DataPoint(1, 1, t), new DataPoint(2, 1, t), new DataPoint(3, 1, t)));
+        assertEquals(2, tier.getMeasurementCount());
+        assertNull(timestamps(3, t, now));
+        assertEquals(0, timestamps(3, t + 1, now).size());
+    }
+
+    public void testNewSeriesOnlyAnswersAfterDroppedPoint() {
+        final long t = now - 10 * MINUTE;
+        tier.add(Arrays.asList(new DataPoint(1, 1, t), new DataPoint(2, 1, t), new DataPoint(3, 1, t)));
+        // measurements 1 and 2 go idle and make room for 3
+        tier.sweep(now);
+        assertEquals(0, tier.getMeasurementCount());
+        tier.add(Arrays.asList(new DataPoint(3, 1, t + MINUTE)));
+        assertNull(timestamps(3, t, now));
+        assertEquals(Arrays.asList(t + MINUTE), timestamps(3, t + 1, now));
+        // measurements which never lost a point can't be told apart
+        tier.add(Arrays.asList(new DataPoint(1, 1, t + MINUTE)));
+        assertNull(timestamps(1, t, now));
+    }
+
+    public void testDisabled() {
+        tier = new RecentMetricDataTier(0, null, null, now - 60 * MINUTE);
+        tier.add(Arrays.asList(new DataPoint(1, 1, now - MINUTE)));
+        assertFalse(tier.isEnabled());
+        assertNull(timestamps(1, now - 10 * MINUTE, now));
+        assertEquals(0, tier.getPointCount());
+    }
+}
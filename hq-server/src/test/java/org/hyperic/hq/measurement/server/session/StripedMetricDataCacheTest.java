@@ -0,0 +1,119 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use Hyperic
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ *
+ * Copyright (C) [2004-2014], VMware, Inc.
+ * This file is part of Hyperic.
+ *
+ * Hyperic is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.measurement.server.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.product.MetricValue;
+
+/**
+ * Tests the StripedMetricDataCache class.
+ */
+public class StripedMetricDataCacheTest extends TestCase {
+
+    public StripedMetricDataCacheTest(String name) {
+        super(name);
+    }
+
+    public void testAddAndGet() {
+        StripedMetricDataCache cache = new StripedMetricDataCache(1000);
+        assertTrue(cache.add(10001, new MetricValue(1.5, 1000)));
+        assertEquals(new MetricValue(1.5, 1000), cache.get(10001, 0));
+        assertNull("outside the window", cache.get(10001, 1001));
+        assertNull(cache.get(10002, 0));
+    }
+
+    public void testOlderValueIgnored() {
+        StripedMetricDataCache cache = new StripedMetricDataCache(1000);
+        assertTrue(cache.add(10001, new MetricValue(2, 2000)));
+        assertFalse(cache.add(10001, new MetricValue(1, 1000)));
+        assertTrue(cache.add(10001, new MetricValue(3, 2000)));
+        assertEquals(3.0, cache.get(10001, 0).getValue(), 0);
+    }
+
+    public void testBulkAddReturnsLatestPerId() {
+        StripedMetricDataCache cache = new StripedMetricDataCache(1000);
+        cache.add(1, new MetricValue(0, 5000));
+        List<DataPoint> pts = Arrays.asList(new DataPoint(1, 1, 1000),
+                                            new DataPoint(2, 2, 1000),
+                                            new DataPoint(2, 3, 2000));
+        List<DataPoint> added = new ArrayList<DataPoint>(cache.bulkAdd(pts));
+        assertEquals(1, added.size());
+        assertEquals(3.0, added.get(0).getValue(), 0);
+    }
+
+    public void testGetAll() {
+        StripedMetricDataCache cache = new StripedMetricDataCache(1000);
+        cache.add(1, new MetricValue(1, 1000));
+        cache.add(2, new MetricValue(2, 3000));
+        Map<Integer, MetricValue> vals = cache.getAll(Arrays.asList(1, 2, 3), 2000);
+        assertEquals(1, vals.size());
+        assertEquals(2.0, vals.get(2).getValue(), 0);
+    }
+
+    public void testRemoveKeepsOtherEntriesReachable() {
+        StripedMetricDataCache cache = new StripedMetricDataCache(100000);
+        Random r = new Random(0);
+        Set<Integer> unique = new LinkedHashSet<Integer>();
+        while (unique.size() < 20000) {
+            unique.add(r.nextInt(1000000));
+        }
+        List<Integer> mids = new ArrayList<Integer>(unique);
+        for (Integer mid : mids) {
+            cache.add(mid, new MetricValue(mid, 1));
+        }
+        for (int i = 0; i < mids.size(); i += 2) {
+            cache.remove(mids.get(i));
+        }
+        for (int i = 0; i < mids.size(); i++) {
+            MetricValue val = cache.get(mids.get(i), 0);
+            if (i % 2 == 0) {
+                assertNull(val);
+            } else {
+                assertNotNull("mid " + mids.get(i) + " lost", val);
+                assertEquals((double) mids.get(i), val.getValue(), 0);
+            }
+        }
+    }
+
+    public void testBoundedSize() {
+        StripedMetricDataCache cache = new StripedMetricDataCache(640);
+        for (int i = 0; i < 10000; i++) {
+            cache.add(i, new MetricValue(i, i));
+        }
+        assertTrue(cache.size() <= 640);
+        // the newest values survive eviction
+        assertNotNull(cache.get(9999, 0));
+    }
+}
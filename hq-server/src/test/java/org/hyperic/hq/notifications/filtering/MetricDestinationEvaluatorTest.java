@@ -0,0 +1,83 @@
+package org.hyperic.hq.notifications.filtering;
+
+import static org.hyperic.hq.notifications.filtering.MetricEndpointIndexTest.ALL;
+import static org.hyperic.hq.notifications.filtering.MetricEndpointIndexTest.byResource;
+import static org.hyperic.hq.notifications.filtering.MetricEndpointIndexTest.indicators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.measurement.shared.MeasurementManager;
+import org.hyperic.hq.notifications.DefaultEndpoint;
+import org.hyperic.hq.notifications.NotificationEndpoint;
+import org.hyperic.hq.notifications.model.MetricNotification;
+
+public class MetricDestinationEvaluatorTest extends TestCase {
+    private MeasurementManager measurementManager;
+    private MetricDestinationEvaluator evaluator;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        measurementManager = MetricEndpointIndexTest.measurementManager();
+        evaluator = new MetricDestinationEvaluator();
+        evaluator.measurementManager = measurementManager;
+    }
+
+    private void register(NotificationEndpoint endpoint,
+                          Filter<MetricNotification,? extends FilteringCondition<?>>... filters) {
+        evaluator.register(endpoint,
+            new ArrayList<Filter<MetricNotification,? extends FilteringCondition<?>>>(Arrays.asList(filters)));
+    }
+
+    /**
+     * the index matches the notification's resource id, the filters the id of the resource of its measurement
+     */
+    private void assertSameAsFilterChains(Map<NotificationEndpoint,Collection<MetricNotification>> rtn) {
+        for (Map.Entry<NotificationEndpoint,FilterChain<MetricNotification>> entry : evaluator.destToFilter.entrySet()) {
+            Collection<?> expected = entry.getValue().filter(ALL);
+            if (expected.isEmpty()) {
+                assertFalse(rtn.containsKey(entry.getKey()));
+            } else {
+                assertEquals(new ArrayList<Object>(expected), new ArrayList<Object>(rtn.get(entry.getKey())));
+            }
+        }
+        assertTrue(evaluator.destToFilter.keySet().containsAll(rtn.keySet()));
+    }
+
+    public void testEvaluateMatchesFilterChains() {
+        register(new DefaultEndpoint("1"), byResource(measurementManager, 1));
+        register(new DefaultEndpoint("2"), byResource(measurementManager, 2), indicators(measurementManager));
+        register(new DefaultEndpoint("3"), indicators(measurementManager));
+        register(new DefaultEndpoint("4"), byResource(measurementManager, 3));
+        assertSameAsFilterChains(evaluator.evaluate(ALL));
+    }
+
+    public void testRegisterAppendsFilters() {
+        NotificationEndpoint endpoint = new DefaultEndpoint("1");
+        register(endpoint, byResource(measurementManager, 1));
+        register(endpoint, indicators(measurementManager));
+        List<MetricNotification> expected = Arrays.asList(MetricEndpointIndexTest.IND_1);
+        assertEquals(expected, evaluator.evaluate(ALL).get(endpoint));
+        assertSameAsFilterChains(evaluator.evaluate(ALL));
+    }
+
+    public void testUnregister() {
+        NotificationEndpoint one = new DefaultEndpoint("1");
+        NotificationEndpoint two = new DefaultEndpoint("2");
+        Filter<MetricNotification,? extends FilteringCondition<?>> indicators = indicators(measurementManager);
+        register(one, byResource(measurementManager, 1), indicators);
+        register(two, byResource(measurementManager, 2));
+        evaluator.unregister(one, Arrays.<Filter<MetricNotification,? extends FilteringCondition<?>>>asList(indicators));
+        assertEquals(Arrays.asList(MetricEndpointIndexTest.IND_1, MetricEndpointIndexTest.OTHER_1),
+                     evaluator.evaluate(ALL).get(one));
+        evaluator.unregisterAll(two);
+        Map<NotificationEndpoint,Collection<MetricNotification>> rtn = evaluator.evaluate(ALL);
+        assertFalse(rtn.containsKey(two));
+        assertSameAsFilterChains(rtn);
+    }
+}
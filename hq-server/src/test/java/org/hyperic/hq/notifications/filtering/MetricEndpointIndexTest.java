@@ -0,0 +1,142 @@
+package org.hyperic.hq.notifications.filtering;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.hyperic.hq.authz.server.session.Resource;
+import org.hyperic.hq.measurement.server.session.Measurement;
+import org.hyperic.hq.measurement.server.session.MeasurementTemplate;
+import org.hyperic.hq.measurement.shared.MeasurementManager;
+import org.hyperic.hq.notifications.DefaultEndpoint;
+import org.hyperic.hq.notifications.NotificationEndpoint;
+import org.hyperic.hq.notifications.model.MetricNotification;
+import org.hyperic.hq.product.MetricValue;
+
+public class MetricEndpointIndexTest extends TestCase {
+    static final MetricNotification IND_1 = notification(1, 10);
+    static final MetricNotification OTHER_1 = notification(1, 11);
+    static final MetricNotification IND_2 = notification(2, 20);
+    static final List<MetricNotification> ALL = Arrays.asList(IND_1, OTHER_1, IND_2);
+
+    private MeasurementManager measurementManager;
+    private MetricEndpointIndex index;
+
+    static MetricNotification notification(int rid, int mid) {
+        return new MetricNotification(rid, mid, "m" + mid, null, null, null, new MetricValue(mid, 1000));
+    }
+
+    /**
+     * @return a manager knowing the measurements of the notifications, the ones with an id ending in 0 are indicators
+     */
+    static MeasurementManager measurementManager() {
+        MeasurementManager rtn = createMock(MeasurementManager.class);
+        for (MetricNotification n : ALL) {
+            final Resource resource = new Resource(null, null, "r" + n.getResourceID(), null, n.getResourceID(), false);
+            resource.setId(n.getResourceID());
+            MeasurementTemplate tmpl = new MeasurementTemplate(n.getMeasurementName(), n.getMeasurementName(), null, 0,
+                true, 60000, n.getMeasurementId() % 10 == 0, null, null, null, null);
+            Measurement msmt = new Measurement(n.getResourceID(), tmpl) {
+                public Resource getResource() {
+                    return resource;
+                }
+            };
+            expect(rtn.getMeasurement(n.getMeasurementId())).andReturn(msmt).anyTimes();
+        }
+        replay(rtn);
+        return rtn;
+    }
+
+    static FilterChain<MetricNotification> chain(Filter<MetricNotification,? extends FilteringCondition<?>>... filters) {
+        return new FilterChain<MetricNotification>(
+            new ArrayList<Filter<MetricNotification,? extends FilteringCondition<?>>>(Arrays.asList(filters)));
+    }
+
+    static Filter<MetricNotification,? extends FilteringCondition<?>> byResource(MeasurementManager mm, Integer... rids) {
+        return new MetricFilterByResource<ResourceFilteringCondition>(mm,
+            new ResourceFilteringCondition(new HashSet<Integer>(Arrays.asList(rids))));
+    }
+
+    static Filter<MetricNotification,? extends FilteringCondition<?>> indicators(MeasurementManager mm) {
+        return new MetricFilter<MetricFilteringCondition>(mm, new MetricFilteringCondition(Boolean.TRUE));
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        measurementManager = measurementManager();
+        index = new MetricEndpointIndex();
+    }
+
+    private Map<NotificationEndpoint,Collection<MetricNotification>> route() {
+        Map<NotificationEndpoint,Collection<MetricNotification>> rtn =
+            new HashMap<NotificationEndpoint,Collection<MetricNotification>>();
+        assertNull(index.route(ALL, measurementManager, rtn));
+        return rtn;
+    }
+
+    public void testLookupByResource() {
+        NotificationEndpoint one = new DefaultEndpoint("1");
+        NotificationEndpoint both = new DefaultEndpoint("2");
+        index.update(one, chain(byResource(measurementManager, 1)));
+        index.update(both, chain(byResource(measurementManager, 1, 2), indicators(measurementManager)));
+        Map<NotificationEndpoint,Collection<MetricNotification>> rtn = route();
+        assertEquals(Arrays.asList(IND_1, OTHER_1), rtn.get(one));
+        assertEquals(Arrays.asList(IND_1, IND_2), rtn.get(both));
+    }
+
+    public void testAnyResource() {
+        NotificationEndpoint any = new DefaultEndpoint("1");
+        index.update(any, chain(new AgnosticFilter<MetricNotification,FilteringCondition<?>>()));
+        assertEquals(ALL, route().get(any));
+    }
+
+    public void testRemove() {
+        NotificationEndpoint one = new DefaultEndpoint("1");
+        NotificationEndpoint any = new DefaultEndpoint("2");
+        index.update(one, chain(byResource(measurementManager, 1)));
+        index.update(any, chain(indicators(measurementManager)));
+        index.update(one, null);
+        Map<NotificationEndpoint,Collection<MetricNotification>> rtn = route();
+        assertFalse(rtn.containsKey(one));
+        assertEquals(Arrays.asList(IND_1, IND_2), rtn.get(any));
+        index.update(any, null);
+        assertTrue(route().isEmpty());
+    }
+
+    public void testUpdateReplacesFilters() {
+        NotificationEndpoint one = new DefaultEndpoint("1");
+        index.update(one, chain(byResource(measurementManager, 1)));
+        index.update(one, chain(byResource(measurementManager, 2)));
+        assertEquals(Arrays.asList(IND_2), route().get(one));
+    }
+
+    public void testUnindexedFilter() {
+        NotificationEndpoint custom = new DefaultEndpoint("1");
+        FilterChain<MetricNotification> filterChain = chain(new Filter<MetricNotification,FilteringCondition<?>>(null) {
+            protected Class<? extends MetricNotification> getHandledNotificationClass() {
+                return MetricNotification.class;
+            }
+
+            protected MetricNotification filter(MetricNotification notification) {
+                return notification;
+            }
+        });
+        index.update(custom, filterChain);
+        Map<NotificationEndpoint,Collection<MetricNotification>> rtn =
+            new HashMap<NotificationEndpoint,Collection<MetricNotification>>();
+        Map<NotificationEndpoint,FilterChain<MetricNotification>> unindexed =
+            index.route(ALL, measurementManager, rtn);
+        assertTrue(rtn.isEmpty());
+        assertSame(filterChain, unindexed.get(custom));
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -80,4 +81,20 @@ public class HQHttpClient extends DefaultHttpClient {
     	
         return execute(post);
     }
+    
+    public HttpResponse post(String url, Map<String, String> headers, HttpEntity entity) throws ClientProtocolException, IOException {
+    	Assert.hasText(url);
+    	
+    	HttpPost post = new HttpPost(url);
+        
+    	if (headers != null && !headers.isEmpty()) {
+    		for (Map.Entry<String, String> entry : headers.entrySet()) {
+    			post.addHeader(entry.getKey(), entry.getValue());
+    		}
+    	}
+    	
+    	post.setEntity(entity);
+    	
+        return execute(post);
+    }
 }
\ No newline at end of file
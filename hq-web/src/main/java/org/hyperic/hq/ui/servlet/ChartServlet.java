@@ -32,10 +32,10 @@ import org.hyperic.image.chart.Chart;
 import org.hyperic.util.units.UnitsConstants;
 
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * <p>This servlet returns a response that contains the binary data of
@@ -167,7 +167,7 @@ public abstract class ChartServlet extends ImageServlet {
      *
      * @param out the output stream
      */
-    protected void renderPngImage(ServletOutputStream out, Object imgObj)
+    protected void renderPngImage(OutputStream out, Object imgObj)
         throws IOException {
         Chart chart = (Chart) imgObj;
         chart.writePngImage(out);
@@ -178,7 +178,7 @@ public abstract class ChartServlet extends ImageServlet {
      *
      * @param out the output stream
      */
-    protected void renderJpegImage(ServletOutputStream out, Object imgObj)
+    protected void renderJpegImage(OutputStream out, Object imgObj)
         throws IOException {
         Chart chart = (Chart) imgObj;
         chart.writeJpegImage(out);
@@ -25,7 +25,9 @@
 
 package org.hyperic.hq.ui.servlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -73,6 +75,10 @@ public abstract class ImageServlet extends ParameterizedServlet {
     /** Default image height. */
     public static final int IMAGE_HEIGHT_DEFAULT = 350;
 
+    // rendered images shared by all the image servlets
+    private static final RenderedImageCache imageCache =
+        new RenderedImageCache(RenderedImageCache.DEFAULT_MAX_BYTES);
+
     // member data
     private Log log = LogFactory.getLog( ImageServlet.class.getName() );
     public ImageServlet () {}
@@ -105,18 +111,36 @@ public abstract class ImageServlet extends ParameterizedServlet {
                 log.debug(sb.toString());
             }
 
-            Object imgObj = createImage(request);
-        
-            // render the chart
-            log.debug("Rendering image.");
-            ServletOutputStream out = response.getOutputStream();
-            if ( imageFormat.equals(IMAGE_FORMAT_PNG) ) {
-                response.setContentType("image/png");
-                renderPngImage(out, imgObj);
-            } else {
-                response.setContentType("image/jpeg");
-                renderJpegImage(out, imgObj);
+            String cacheKey = getCacheKey(request);
+            if (cacheKey == null) {
+                Object imgObj = createImage(request);
+
+                // render the chart
+                log.debug("Rendering image.");
+                ServletOutputStream out = response.getOutputStream();
+                setContentType(response, imageFormat);
+                renderImage(out, imgObj, imageFormat);
+                out.flush();
+                return;
+            }
+
+            cacheKey = imageFormat + '|' + cacheKey;
+            byte[] image = imageCache.get(cacheKey);
+            if (image == null) {
+                Object imgObj = createImage(request);
+
+                log.debug("Rendering image into the cache.");
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                renderImage(buf, imgObj, imageFormat);
+                image = buf.toByteArray();
+                imageCache.put(cacheKey, image);
+            } else if (log.isDebugEnabled()) {
+                log.debug("Using cached image " + cacheKey);
             }
+            ServletOutputStream out = response.getOutputStream();
+            setContentType(response, imageFormat);
+            response.setContentLength(image.length);
+            out.write(image);
             out.flush();
         } catch (IOException e) {
             // it's okay to ignore this one
@@ -127,6 +151,36 @@ public abstract class ImageServlet extends ParameterizedServlet {
         }
     }
 
+    private void setContentType(HttpServletResponse response,
+                                String imageFormat) {
+        if ( imageFormat.equals(IMAGE_FORMAT_PNG) ) {
+            response.setContentType("image/png");
+        } else {
+            response.setContentType("image/jpeg");
+        }
+    }
+
+    private void renderImage(OutputStream out, Object imgObj,
+                             String imageFormat) throws IOException {
+        if ( imageFormat.equals(IMAGE_FORMAT_PNG) ) {
+            renderPngImage(out, imgObj);
+        } else {
+            renderJpegImage(out, imgObj);
+        }
+    }
+
+    /**
+     * Return the key the image rendered for the request is cached under,
+     * or null if the image should not be cached.  The key has to cover
+     * everything the image depends on, including the state of the data
+     * it is drawn from.  By default images are not cached.
+     *
+     * @param request the servlet request
+     */
+    protected String getCacheKey(HttpServletRequest request) {
+        return null;
+    }
+
     /**
      * Create the image being rendered.
      *
@@ -139,7 +193,7 @@ public abstract class ImageServlet extends ParameterizedServlet {
      *
      * @param out the output stream
      */
-    protected abstract void renderPngImage(ServletOutputStream out,
+    protected abstract void renderPngImage(OutputStream out,
                                            Object imgObj) throws IOException;
 
     /**
@@ -147,7 +201,7 @@ public abstract class ImageServlet extends ParameterizedServlet {
      *
      * @param out the output stream
      */
-    protected abstract void renderJpegImage(ServletOutputStream out,
+    protected abstract void renderJpegImage(OutputStream out,
                                             Object imgObj) throws IOException;
 
     /**
@@ -29,6 +29,8 @@ import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -94,6 +96,69 @@ public class MetricChartServlet extends VerticalChartServlet {
 
     public MetricChartServlet () {}
 
+    /**
+     * Charts are cached per user under their parameters and the stamp of
+     * the data they are drawn from.  The time range is rounded to the
+     * chart interval so that refreshes within an interval share a chart.
+     * Charts showing control events are not cached, as the stamp doesn't
+     * cover the events.
+     *
+     * @param request the servlet request
+     */
+    protected String getCacheKey(HttpServletRequest request) {
+        String[] eids = request.getParameterValues( Constants.ENTITY_ID_PARAM );
+        String m = request.getParameter("m");
+        if (eids == null || eids.length == 0 || m == null) {
+            return null;
+        }
+        if (parseBooleanParameter(request, SHOW_EVENTS_PARAM, getDefaultShowEvents())) {
+            return null;
+        }
+        try {
+            long startDate = Long.parseLong(request.getParameter("start"));
+            long endDate = Long.parseLong(request.getParameter("end"));
+            long interval = TimeUtil.getInterval(startDate, endDate,
+                                                 Constants.DEFAULT_CHART_POINTS);
+            if (interval <= 0) {
+                return null;
+            }
+
+            AppdefEntityID[] resources = new AppdefEntityID[eids.length];
+            for (int i = 0; i < eids.length; i++) {
+                resources[i] = new AppdefEntityID(eids[i]);
+            }
+            int sessionId = RequestUtils.getSessionId(request).intValue();
+            MeasurementBoss mb = Bootstrap.getBean(MeasurementBoss.class);
+            long stamp = mb.getMeasurementDataStamp(sessionId, new Integer(m),
+                                                    resources);
+            if (stamp < 0) {
+                return null;
+            }
+
+            StringBuffer key = new StringBuffer(getClass().getName());
+            key.append('|').append(RequestUtils.getWebUser(request).getId())
+               .append('|').append(stamp)
+               .append('|').append(startDate / interval)
+               .append('|').append(endDate / interval);
+            Map params = new TreeMap(request.getParameterMap());
+            params.remove("start");
+            params.remove("end");
+            for (Iterator it = params.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry param = (Map.Entry) it.next();
+                key.append('|').append(param.getKey());
+                String[] values = (String[]) param.getValue();
+                for (int i = 0; i < values.length; i++) {
+                    key.append(i == 0 ? '=' : ',').append(values[i]);
+                }
+            }
+            return key.toString();
+        } catch (Exception e) {
+            // the chart reports bad parameters when it is created
+            log.debug("Not caching chart: " + e);
+            return null;
+        }
+    }
+
     /**
      * Create the image being rendered.
      *
@@ -31,9 +31,9 @@ import org.hyperic.image.WebImage;
 import org.hyperic.image.widget.ResourceTree;
 
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * <p>This servlet returns a response that contains the binary data of
@@ -83,7 +83,7 @@ public class NavMapImageServlet extends ImageServlet {
      *
      * @param out the output stream
      */
-    protected void renderPngImage(ServletOutputStream out, Object imgObj)
+    protected void renderPngImage(OutputStream out, Object imgObj)
         throws IOException {
         WebImage image = (WebImage) imgObj;
         if (null != image) {
@@ -96,7 +96,7 @@ public class NavMapImageServlet extends ImageServlet {
      *
      * @param out the output stream
      */
-    protected void renderJpegImage(ServletOutputStream out, Object imgObj)
+    protected void renderJpegImage(OutputStream out, Object imgObj)
         throws IOException {
         WebImage image = (WebImage) imgObj;
         if (null != image) {
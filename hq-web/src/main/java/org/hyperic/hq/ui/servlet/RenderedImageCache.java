@@ -0,0 +1,85 @@
+/*
+ * NOTE: This copyright does *not* cover user programs that use HQ
+ * program services by normal system calls through the application
+ * program interfaces provided as part of the Hyperic Plug-in Development
+ * Kit or the Hyperic Client Development Kit - this is merely considered
+ * normal use of the program, and does *not* fall under the heading of
+ * "derived work".
+ * 
+ * Copyright (C) [2004, 2005, 2006], Hyperic, Inc.
+ * This file is part of HQ.
+ * 
+ * HQ is free software; you can redistribute it and/or modify
+ * it under the terms version 2 of the GNU General Public License as
+ * published by the Free Software Foundation. This program is distributed
+ * in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA.
+ */
+
+package org.hyperic.hq.ui.servlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <p>A cache of rendered images, bounded by the number of bytes the images
+ * add up to.  The least recently used images are dropped first, which is
+ * also how images keyed off stale data leave the cache.</p>
+ */
+public class RenderedImageCache {
+    /** Default bound of the cache, in bytes. */
+    public static final int DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private final int maxBytes;
+    private final LinkedHashMap<String, byte[]> images =
+        new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+    private int bytes = 0;
+
+    public RenderedImageCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return the image cached under the key, or null if there is none.
+     */
+    public synchronized byte[] get(String key) {
+        return images.get(key);
+    }
+
+    /**
+     * Cache an image.  Images taking more than a quarter of the cache are
+     * not kept so a single large chart doesn't flush every other one.
+     */
+    public synchronized void put(String key, byte[] image) {
+        if (image.length > maxBytes / 4) {
+            return;
+        }
+        byte[] old = images.put(key, image);
+        bytes += image.length - (old == null ? 0 : old.length);
+        for (Iterator<byte[]> it = images.values().iterator();
+             bytes > maxBytes && it.hasNext(); ) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Return the number of bytes the cached images add up to.
+     */
+    public synchronized int getBytes() {
+        return bytes;
+    }
+}
+
+// EOF
@@ -25,11 +25,13 @@
 
 package org.hyperic.lather.server;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -39,6 +41,7 @@ import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -60,6 +63,7 @@ import org.hyperic.lather.LatherRemoteException;
 import org.hyperic.lather.LatherValue;
 import org.hyperic.lather.NullLatherValue;
 import org.hyperic.lather.client.LatherHTTPClient;
+import org.hyperic.lather.client.LatherValueEntity;
 import org.hyperic.lather.xcode.LatherXCoder;
 import org.hyperic.util.encoding.Base64;
 
@@ -75,6 +79,13 @@ import org.hyperic.util.encoding.Base64;
  * argsClass = the class which the 'args' is encoded for
  *
  * The response is an encoded LatherValue object.
+ *
+ * Alternatively the request may be a binary request, with a content type of
+ * application/octet-stream, the method passed on the URL, the args class in
+ * the X-latherValue-class header and the raw LatherXCoder encoding of the
+ * args as the (optionally gzipped) body.  Binary requests are answered with
+ * a binary response.  Responses to form requests carry the X-lather-binary
+ * header so that clients know they may switch to binary requests.
  */
 @SuppressWarnings("serial")
 public class LatherServlet extends HttpServlet {
@@ -139,12 +150,22 @@ public class LatherServlet extends HttpServlet {
     }
 
     private static void issueSuccessResponse(HttpServletResponse resp, LatherXCoder xCoder, 
-                                             LatherValue res)
+                                             LatherValue res, LatherContext ctx, boolean gzip)
     throws IOException {
         ByteArrayOutputStream bOs;
         DataOutputStream dOs;
         byte[] rawData;
 
+        if (ctx.isBinary()) {
+            resp.setContentType(LatherValueEntity.CONTENT_TYPE);
+            resp.setHeader(LatherHTTPClient.HDR_VALUECLASS, res.getClass().getName());
+            if (gzip) {
+                resp.setHeader("Content-Encoding", LatherValueEntity.GZIP);
+            }
+            LatherValueEntity.write(xCoder, res, resp.getOutputStream(), gzip);
+            return;
+        }
+
         resp.setContentType("text/latherValue");
         resp.setHeader(LatherHTTPClient.HDR_VALUECLASS, 
                        res.getClass().getName());
@@ -163,6 +184,9 @@ public class LatherServlet extends HttpServlet {
         int connRnd;
         connRnd = this.rand.nextInt();
         String method = req.getParameter("method");
+        // tell clients binary requests are accepted, on errors as well, so
+        // a client can tell our failures from those of an older server
+        resp.setIntHeader(LatherHTTPClient.HDR_BINARY, 1);
         try {
             gotConn = connManager.get().grabConn(method);
             if (!gotConn) {
@@ -209,6 +233,11 @@ public class LatherServlet extends HttpServlet {
 
         xCoder    = new LatherXCoder();
 
+        if (isBinaryRequest(req)) {
+            doBinaryPost(req, resp, xCoder, ctx);
+            return;
+        }
+
         method = req.getParameterValues("method");
         args = req.getParameterValues("args");
         argsClass = req.getParameterValues("argsClass");
@@ -249,7 +278,69 @@ public class LatherServlet extends HttpServlet {
             return;
         }
 
-        this.doServiceCall(req, resp, method[0], val, xCoder, ctx);
+        this.doServiceCall(req, resp, method[0], val, xCoder, ctx, false);
+    }
+
+    private static boolean isBinaryRequest(HttpServletRequest req) {
+        String contentType = req.getContentType();
+        return (contentType != null) && contentType.startsWith(LatherValueEntity.CONTENT_TYPE);
+    }
+
+    private static boolean isGzipped(HttpServletRequest req) {
+        return LatherValueEntity.GZIP.equalsIgnoreCase(req.getHeader("Content-Encoding"));
+    }
+
+    /**
+     * Handles a binary request, decoding the args straight from the request
+     * body.
+     */
+    private void doBinaryPost(HttpServletRequest req, HttpServletResponse resp,
+                              LatherXCoder xCoder, LatherContext ctx)
+    throws IOException {
+        String method = req.getParameter("method");
+        String argsClass = req.getHeader(LatherHTTPClient.HDR_VALUECLASS);
+        Class<?> valClass;
+        LatherValue val;
+
+        if (method == null || argsClass == null) {
+            String msg = "Invalid binary Lather request made from " + req.getRemoteAddr();
+            log.error(msg);
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Invoking binary method '" + method +
+                      "' for connID=" +  req.getAttribute(PROP_CONNID));
+        }
+
+        try {
+            valClass = Class.forName(argsClass, true, 
+                                     xCoder.getClass().getClassLoader());
+        } catch(ClassNotFoundException exc){
+            String msg = "Lather request from " + req.getRemoteAddr() + 
+                         " required an argument object of class '" +  argsClass +
+                         "' which could not be found";
+            log.error(msg);
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, msg);
+            return;
+        }
+
+        boolean gzip = isGzipped(req);
+        InputStream in = new BufferedInputStream(req.getInputStream());
+        if (gzip) {
+            in = new GZIPInputStream(in);
+        }
+
+        try {
+            val = xCoder.decode(new DataInputStream(in), valClass);
+        } catch(LatherRemoteException exc){
+            LatherServlet.issueErrorResponse(resp, exc.toString());
+            return;
+        }
+
+        ctx.setBinary(true);
+        this.doServiceCall(req, resp, method, val, xCoder, ctx, gzip);
     }
 
     private class ServiceCaller implements Runnable {
@@ -261,6 +352,7 @@ public class LatherServlet extends HttpServlet {
         private LatherContext ctx;
         private String method;
         private LatherDispatcher latherDispatcher;
+        private boolean gzip;
         
         private Thread thread;
         private final AtomicBoolean finished = new AtomicBoolean(false);
@@ -268,7 +360,7 @@ public class LatherServlet extends HttpServlet {
         
 
         private ServiceCaller(HttpServletResponse resp, LatherXCoder xcoder, LatherContext ctx, String method,
-                LatherValue arg, LatherDispatcher latherDispatcher) {
+                LatherValue arg, LatherDispatcher latherDispatcher, boolean gzip) {
             
             this.resp = resp;
             this.xcoder = xcoder;
@@ -276,6 +368,7 @@ public class LatherServlet extends HttpServlet {
             this.method = method;
             this.arg = arg;
             this.latherDispatcher = latherDispatcher;
+            this.gzip = gzip;
             this.thread = Thread.currentThread();
         }
 
@@ -305,7 +398,7 @@ public class LatherServlet extends HttpServlet {
                     res = handleAutoApprovals(res);
                 }
                 
-                issueSuccessResponse(this.resp, this.xcoder, res);
+                issueSuccessResponse(this.resp, this.xcoder, res, this.ctx, this.gzip);
             
             } catch(Exception e) {
                 Throwable cause = e.getCause();
@@ -370,11 +463,11 @@ public class LatherServlet extends HttpServlet {
     }
 
     private void doServiceCall(HttpServletRequest req, HttpServletResponse resp, String methName, LatherValue args,
-            LatherXCoder xCoder, LatherContext ctx)
+            LatherXCoder xCoder, LatherContext ctx, boolean gzip)
                     throws IOException {
         
         final LatherDispatcher latherDispatcher = Bootstrap.getBean(LatherDispatcher.class);
-        final ServiceCaller caller = new ServiceCaller(resp, xCoder, ctx, methName, args, latherDispatcher);
+        final ServiceCaller caller = new ServiceCaller(resp, xCoder, ctx, methName, args, latherDispatcher, gzip);
         final Thread currentThread = Thread.currentThread();
         final String threadName = currentThread.getName();
 
@@ -0,0 +1,43 @@
+package org.hyperic.hq.ui.servlet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RenderedImageCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedImagesAreDropped() {
+        RenderedImageCache cache = new RenderedImageCache(100);
+        cache.put("a", new byte[25]);
+        cache.put("b", new byte[25]);
+        cache.put("c", new byte[25]);
+        cache.put("d", new byte[25]);
+        assertEquals(100, cache.getBytes());
+
+        assertNotNull(cache.get("a"));
+        cache.put("e", new byte[25]);
+        assertEquals(4, cache.size());
+        assertEquals(100, cache.getBytes());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("e"));
+    }
+
+    @Test
+    public void testReplacedImagesAreCountedOnce() {
+        RenderedImageCache cache = new RenderedImageCache(100);
+        cache.put("a", new byte[20]);
+        cache.put("a", new byte[10]);
+        assertEquals(1, cache.size());
+        assertEquals(10, cache.getBytes());
+    }
+
+    @Test
+    public void testLargeImagesAreNotCached() {
+        RenderedImageCache cache = new RenderedImageCache(100);
+        cache.put("a", new byte[26]);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getBytes());
+    }
+}